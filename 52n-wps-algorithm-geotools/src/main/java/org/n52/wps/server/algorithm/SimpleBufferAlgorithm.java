@@ -72,7 +72,7 @@ import org.n52.wps.algorithm.annotation.LiteralDataInput;
 import org.n52.wps.algorithm.annotation.Execute;
 import org.n52.wps.server.AbstractAnnotatedAlgorithm;
 
-@Algorithm(version = "1.1.0")
+@Algorithm(version = "1.1.0", deterministic = true)
 public class SimpleBufferAlgorithm extends AbstractAnnotatedAlgorithm {
 
     private static Logger LOGGER = LoggerFactory.getLogger(SimpleBufferAlgorithm.class);
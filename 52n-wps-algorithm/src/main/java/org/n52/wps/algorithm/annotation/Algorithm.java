@@ -34,4 +34,8 @@ public @interface Algorithm {
     String version();
     boolean storeSupported() default true;
     boolean statusSupported() default true;
+    // outputs depend on the inputs only, results may be reused for identical requests
+    boolean deterministic() default false;
+    // instances keep no state between executions and may be reused by later requests
+    boolean stateless() default false;
 }
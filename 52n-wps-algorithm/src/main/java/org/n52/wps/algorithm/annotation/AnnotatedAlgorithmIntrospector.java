@@ -24,7 +24,6 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -88,15 +87,16 @@ public class AnnotatedAlgorithmIntrospector {
         PROCESS_PARSER = new ExecuteAnnotationParser();
     }
     
-    private final static Map<Class<?>, AnnotatedAlgorithmIntrospector> INTROSPECTOR_MAP =
-            new HashMap<Class<?>, AnnotatedAlgorithmIntrospector>();
-    public static synchronized AnnotatedAlgorithmIntrospector getInstrospector(Class<?> algorithmClass) {
-        AnnotatedAlgorithmIntrospector introspector = INTROSPECTOR_MAP.get(algorithmClass);
-        if (introspector == null) {
-            introspector = new AnnotatedAlgorithmIntrospector(algorithmClass);
-            INTROSPECTOR_MAP.put(algorithmClass, introspector);
+    // introspected once per class, lookups don't lock
+    private final static ClassValue<AnnotatedAlgorithmIntrospector> INTROSPECTORS =
+            new ClassValue<AnnotatedAlgorithmIntrospector>() {
+        @Override
+        protected AnnotatedAlgorithmIntrospector computeValue(Class<?> algorithmClass) {
+            return new AnnotatedAlgorithmIntrospector(algorithmClass);
         }
-        return introspector;
+    };
+    public static AnnotatedAlgorithmIntrospector getInstrospector(Class<?> algorithmClass) {
+        return INTROSPECTORS.get(algorithmClass);
     }
     
     private Class<?> algorithmClass;
@@ -155,7 +155,8 @@ public class AnnotatedAlgorithmIntrospector {
                 abstrakt(algorithm.abstrakt()).
                 version(algorithm.version()).
                 storeSupported(algorithm.storeSupported()).
-                statusSupported(algorithm.statusSupported());
+                statusSupported(algorithm.statusSupported()).
+                deterministic(algorithm.deterministic());
         
         parseElements(algorithmClass.getDeclaredMethods(),
                 INPUT_METHOD_PARSERS,
@@ -16,10 +16,12 @@
  */
 package org.n52.wps.algorithm.annotation;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -44,7 +46,11 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(AnnotationBinding.class);
     
+    protected final static MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    
     private M member;
+    
+    private volatile MethodHandle handle;
 
     public AnnotationBinding(M member) {
         this.member = member;
@@ -54,6 +60,29 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         return member;
     }
     
+    /**
+     * Creates the handle used to access the member, adapted to a signature
+     * with {@link Object} parameters and return type so it can be invoked
+     * exactly without knowing the annotated class.
+     */
+    protected abstract MethodHandle createHandle() throws IllegalAccessException;
+    
+    /**
+     * @return the handle of the member, created once on first use
+     */
+    protected MethodHandle getHandle() {
+        MethodHandle memberHandle = handle;
+        if (memberHandle == null) {
+            try {
+                memberHandle = createHandle();
+            } catch (IllegalAccessException ex) {
+                throw new RuntimeException("Internal error accessing " + member, ex);
+            }
+            handle = memberHandle;
+        }
+        return memberHandle;
+    }
+    
     protected boolean checkModifier() {
         return (getMember().getModifiers() & Modifier.PUBLIC) != 0;
     }
@@ -84,15 +113,16 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
             return true;
         }
         
+        @Override
+        protected MethodHandle createHandle() throws IllegalAccessException {
+            return LOOKUP.unreflect(getMember()).asType(MethodType.methodType(void.class, Object.class));
+        }
+        
         public void execute(Object annotatedInstance) {
+            MethodHandle executeHandle = getHandle();
             try {
-                getMember().invoke(annotatedInstance);
-            }catch (IllegalAccessException ex) {
-                throw new RuntimeException("Internal error executing process", ex);
-            } catch (IllegalArgumentException ex) {
-                throw new RuntimeException("Internal error executing process", ex);
-            } catch (InvocationTargetException ex) {
-                Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                executeHandle.invokeExact(annotatedInstance);
+            } catch (Throwable cause) {
                 throw new RuntimeException(cause.getMessage(), cause);
             }
         }
@@ -142,6 +172,10 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
 
     public static abstract class InputBinding<M extends AccessibleObject & Member, D extends InputDescriptor> extends DataBinding<M,D> {
         
+        // resolved once, the generic type information doesn't change between executions
+        private volatile Boolean memberTypeList;
+        private Class<? extends Enum> enumType;
+        
         public InputBinding(M member) {
             super(member);
         }
@@ -223,34 +257,39 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         }
         
         public Object unbindInput(List<IData> boundValueList) {
+            if (memberTypeList == null) {
+                enumType = isTypeEnum() ? (Class<? extends Enum>) getType() : null;
+                memberTypeList = isMemberTypeList();
+            }
             Object value = null;
-            if (boundValueList != null && boundValueList.size() > 0) {
-                if (isMemberTypeList()) {
-                    List valueList = new ArrayList(boundValueList.size());
+            int size = boundValueList == null ? 0 : boundValueList.size();
+            if (size > 0) {
+                if (memberTypeList) {
+                    List valueList = new ArrayList(size);
                     for (IData bound : boundValueList) {
-                        value = bound.getPayload();
-                        if (isTypeEnum()) {
-                            value = Enum.valueOf((Class<? extends Enum>)getType(), (String)value);
-                        }
-                        valueList.add(value);
+                        valueList.add(unbindValue(bound));
                     }
                     value = valueList;
-                } else if (boundValueList.size() == 1) {
-                    value = boundValueList.get(0).getPayload();
-                    if (isTypeEnum()) {
-                        value = Enum.valueOf((Class<? extends Enum>)getType(), (String)value);
-                    }
+                } else if (size == 1) {
+                    value = unbindValue(boundValueList.get(0));
                 }
             }
             return value;
         }
         
+        private Object unbindValue(IData bound) {
+            Object value = bound.getPayload();
+            return enumType == null ? value : Enum.valueOf(enumType, (String) value);
+        }
+        
         public abstract void set(Object annotatedObject, List<IData> boundInputList);
     }
 
     public static abstract class OutputBinding<M extends AccessibleObject & Member,  D extends OutputDescriptor> extends DataBinding<M,D> {
         
-        private Constructor<? extends IData> bindingConstructor;
+        private volatile Constructor<? extends IData> bindingConstructor;
+        private volatile MethodHandle bindingHandle;
+        private boolean typeEnum;
         
         public OutputBinding(M member) {
             super(member);
@@ -261,26 +300,38 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         }
         
         public IData bindOutputValue(Object outputValue) {
+            MethodHandle constructorHandle = getBindingHandle();
+            if (typeEnum) {
+                outputValue = ((Enum<?>)outputValue).name();
+            }
             try {
-                if (isTypeEnum()) {
-                    outputValue = ((Enum<?>)outputValue).name();
-                }
-                return getConstructor().newInstance(outputValue);
-            } catch (InstantiationException ex) {
-                throw new RuntimeException("Internal error processing outputs", ex);
-            } catch (SecurityException ex) {
-                throw new RuntimeException("Internal error processing outputs", ex);
-            } catch (IllegalAccessException ex) {
-                throw new RuntimeException("Internal error processing outputs", ex);
-            } catch (InvocationTargetException ex) {
-                Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                return (IData) constructorHandle.invokeExact(outputValue);
+            } catch (Throwable cause) {
                 throw new RuntimeException(cause.getMessage(), cause);
             }
         }
         
+        private MethodHandle getBindingHandle() {
+            MethodHandle constructorHandle = bindingHandle;
+            if (constructorHandle == null) {
+                Constructor<? extends IData> constructor = getConstructor();
+                if (constructor == null) {
+                    throw new RuntimeException("Internal error processing outputs, no binding constructor for " + getMember());
+                }
+                typeEnum = isTypeEnum();
+                try {
+                    constructorHandle = LOOKUP.unreflectConstructor(constructor).asType(MethodType.methodType(IData.class, Object.class));
+                } catch (IllegalAccessException ex) {
+                    throw new RuntimeException("Internal error processing outputs", ex);
+                }
+                bindingHandle = constructorHandle;
+            }
+            return constructorHandle;
+        }
+        
         public abstract IData get(Object annotatedInstance);
         
-        private synchronized Constructor<? extends IData> getConstructor() {
+        private Constructor<? extends IData> getConstructor() {
             if (bindingConstructor == null ){
                 try {
                     Class<? extends IData> bindingClass = getDescriptor().getBinding();
@@ -328,14 +379,19 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
             return true;
         }
         
+        @Override
+        protected MethodHandle createHandle() throws IllegalAccessException {
+            return LOOKUP.unreflectSetter(getMember()).asType(MethodType.methodType(void.class, Object.class, Object.class));
+        }
+        
         @Override
         public void set(Object annotatedObject, List<IData> boundInputList) {
+            MethodHandle setter = getHandle();
+            Object value = unbindInput(boundInputList);
             try {
-                getMember().set(annotatedObject, unbindInput(boundInputList));
-            } catch (IllegalArgumentException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (IllegalAccessException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
+                setter.invokeExact(annotatedObject, value);
+            } catch (Throwable cause) {
+                throw new RuntimeException("Internal error processing inputs", cause);
             }
         }
     }
@@ -369,16 +425,18 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
             return true;
         }
         
+        @Override
+        protected MethodHandle createHandle() throws IllegalAccessException {
+            return LOOKUP.unreflect(getMember()).asType(MethodType.methodType(void.class, Object.class, Object.class));
+        }
+        
         @Override
         public void set(Object annotatedObject, List<IData> boundInputList) {
+            MethodHandle setter = getHandle();
+            Object value = unbindInput(boundInputList);
             try {
-                getMember().invoke(annotatedObject, unbindInput(boundInputList));
-            } catch (IllegalAccessException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (IllegalArgumentException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (InvocationTargetException ex) {
-                Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                setter.invokeExact(annotatedObject, value);
+            } catch (Throwable cause) {
                 throw new RuntimeException(cause.getMessage(), cause);
             }
         }
@@ -408,15 +466,19 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
             return true;
         }
         
+        @Override
+        protected MethodHandle createHandle() throws IllegalAccessException {
+            return LOOKUP.unreflectGetter(getMember()).asType(MethodType.methodType(Object.class, Object.class));
+        }
+        
         @Override
         public IData get(Object annotatedInstance) {
+            MethodHandle getter = getHandle();
             Object value;
             try {
-                value = getMember().get(annotatedInstance);
-            } catch (IllegalArgumentException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (IllegalAccessException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
+                value = getter.invokeExact(annotatedInstance);
+            } catch (Throwable cause) {
+                throw new RuntimeException("Internal error processing inputs", cause);
             }
             return value == null ? null : bindOutputValue(value);
         }
@@ -451,17 +513,18 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
             return true;
         }
         
+        @Override
+        protected MethodHandle createHandle() throws IllegalAccessException {
+            return LOOKUP.unreflect(getMember()).asType(MethodType.methodType(Object.class, Object.class));
+        }
+        
         @Override
         public IData get(Object annotatedInstance) {
+            MethodHandle getter = getHandle();
             Object value;
             try {
-                value = getMember().invoke(annotatedInstance);
-            } catch (IllegalAccessException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (IllegalArgumentException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (InvocationTargetException ex) {
-                Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                value = getter.invokeExact(annotatedInstance);
+            } catch (Throwable cause) {
                 throw new RuntimeException(cause.getMessage(), cause);
             }
             return value == null ? null : bindOutputValue(value);
@@ -323,6 +323,14 @@ public abstract class AbstractDescriptorAlgorithm implements IAlgorithm, ISubjec
         return valid;
     }
 
+    /**
+     * @return <code>true</code> if the outputs depend on the inputs only, so
+     *         results of identical requests may be reused
+     */
+    public boolean isDeterministic() {
+        return getAlgorithmDescriptor().getDeterministic();
+    }
+
     protected final synchronized AlgorithmDescriptor getAlgorithmDescriptor() {
         if (descriptor == null) {
             descriptor = createAlgorithmDescriptor();
@@ -0,0 +1,193 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import net.opengis.wps.x100.ProcessDescriptionType;
+
+import org.n52.wps.algorithm.annotation.Algorithm;
+
+/**
+ * Creates the instances of a single algorithm class for a repository.
+ * 
+ * <p>The class is loaded and its process description validated once, when
+ * the algorithm is registered; later instances are created through a
+ * cached constructor handle. Instances of algorithms declared stateless (see
+ * {@link Algorithm#stateless()}) are handed back through
+ * {@link #releaseAlgorithm(IAlgorithm)} and reused by subsequent requests.
+ */
+public class AlgorithmProvider {
+	
+	public static final int DEFAULT_POOL_SIZE = 8;
+	
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	
+	private final String algorithmClassName;
+	private final Class<?> algorithmClass;
+	// typed as () -> IAlgorithm, null for annotated algorithms wrapped in a proxy
+	private final MethodHandle constructor;
+	private final ProcessDescriptionType description;
+	// the validated instance, only asked for metadata and never executed
+	private final IAlgorithm prototype;
+	private final BlockingQueue<IAlgorithm> pool;
+	
+	private AlgorithmProvider(String algorithmClassName, Class<?> algorithmClass,
+			MethodHandle constructor, boolean stateless, int poolSize) throws Exception {
+		this.algorithmClassName = algorithmClassName;
+		this.algorithmClass = algorithmClass;
+		this.constructor = constructor;
+		this.prototype = newAlgorithm();
+		if(!prototype.processDescriptionIsValid()) {
+			throw new Exception("Could not load algorithm " + algorithmClassName + ". ProcessDescription Not Valid.");
+		}
+		this.description = prototype.getDescription();
+		if(stateless && poolSize > 0) {
+			pool = new ArrayBlockingQueue<IAlgorithm>(poolSize);
+		} else {
+			pool = null;
+		}
+	}
+	
+	/**
+	 * Loads and validates an algorithm class.
+	 * 
+	 * @param algorithmClassName the class implementing {@link IAlgorithm} or
+	 *        carrying an {@link Algorithm} annotation
+	 * @param stateless <code>true</code> if instances may be reused even though
+	 *        the class is not annotated as stateless
+	 * @param poolSize the maximum number of idle instances kept for reuse
+	 * @throws Exception if the class cannot be loaded or its process
+	 *         description is not valid
+	 */
+	public static AlgorithmProvider create(String algorithmClassName, boolean stateless, int poolSize) throws Exception {
+		return create(AlgorithmProvider.class.getClassLoader().loadClass(algorithmClassName), stateless, poolSize);
+	}
+	
+	/**
+	 * Validates an algorithm class that has already been loaded.
+	 * 
+	 * @see #create(String, boolean, int)
+	 */
+	public static AlgorithmProvider create(Class<?> algorithmClass, boolean stateless, int poolSize) throws Exception {
+		String algorithmClassName = algorithmClass.getName();
+		MethodHandle constructor = null;
+		if (IAlgorithm.class.isAssignableFrom(algorithmClass)) {
+			constructor = LOOKUP.unreflectConstructor(algorithmClass.getConstructor())
+					.asType(MethodType.methodType(IAlgorithm.class));
+		} else if (!algorithmClass.isAnnotationPresent(Algorithm.class)) {
+			throw new Exception("Could not load algorithm " + algorithmClassName + " does not implement IAlgorithm or have a Algorithm annotation.");
+		}
+		Algorithm annotation = algorithmClass.getAnnotation(Algorithm.class);
+		if (annotation != null && annotation.stateless()) {
+			stateless = true;
+		}
+		return new AlgorithmProvider(algorithmClassName, algorithmClass, constructor, stateless, poolSize);
+	}
+	
+	/**
+	 * Returns an idle pooled instance or creates a new one.
+	 */
+	public IAlgorithm getAlgorithm() throws Exception {
+		if (pool != null) {
+			IAlgorithm algorithm = pool.poll();
+			if (algorithm != null) {
+				return algorithm;
+			}
+		}
+		return newAlgorithm();
+	}
+	
+	/**
+	 * Hands an instance obtained from {@link #getAlgorithm()} back after its
+	 * execution. Instances of algorithms that are not stateless, that
+	 * reported errors or that exceed the pool size are dropped.
+	 */
+	public void releaseAlgorithm(IAlgorithm algorithm) {
+		if (pool == null || algorithm == null || algorithm.getClass() != getInstanceClass()) {
+			return;
+		}
+		if (algorithm.getErrors() != null && !algorithm.getErrors().isEmpty()) {
+			return;
+		}
+		pool.offer(algorithm);
+	}
+	
+	/**
+	 * @return the description validated when the algorithm was registered
+	 */
+	public ProcessDescriptionType getDescription() {
+		return description;
+	}
+	
+	/**
+	 * @return the binding of the input, answered without taking an instance
+	 */
+	public Class<?> getInputDataType(String inputIdentifier) {
+		return prototype.getInputDataType(inputIdentifier);
+	}
+	
+	/**
+	 * @return the binding of the output, answered without taking an instance
+	 */
+	public Class<?> getOutputDataType(String outputIdentifier) {
+		return prototype.getOutputDataType(outputIdentifier);
+	}
+	
+	public String getAlgorithmClassName() {
+		return algorithmClassName;
+	}
+	
+	public boolean isStateless() {
+		return pool != null;
+	}
+	
+	private Class<?> getInstanceClass() {
+		return constructor == null ? AbstractAnnotatedAlgorithm.Proxy.class : algorithmClass;
+	}
+	
+	private IAlgorithm newAlgorithm() throws Exception {
+		if (constructor == null) {
+			// we have an annotated algorithm that doesn't implement IAlgorithm
+			// wrap it in a proxy class
+			return new AbstractAnnotatedAlgorithm.Proxy(algorithmClass);
+		}
+		try {
+			return (IAlgorithm) constructor.invokeExact();
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable cause) {
+			throw new Exception("Could not instantiate algorithm " + algorithmClassName, cause);
+		}
+	}
+}
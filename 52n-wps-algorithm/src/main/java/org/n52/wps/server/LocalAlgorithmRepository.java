@@ -19,15 +19,14 @@ package org.n52.wps.server;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.opengis.wps.x100.ProcessDescriptionType;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.n52.wps.PropertyDocument.Property;
-import org.n52.wps.algorithm.annotation.Algorithm;
 import org.n52.wps.commons.WPSConfig;
 
 
@@ -37,23 +36,35 @@ import org.n52.wps.commons.WPSConfig;
  * @author foerster
  *
  */
-public class LocalAlgorithmRepository implements ITransactionalAlgorithmRepository{
+public class LocalAlgorithmRepository implements ITransactionalAlgorithmRepository, IPooledAlgorithmRepository{
 	
 	private static Logger LOGGER = LoggerFactory.getLogger(LocalAlgorithmRepository.class);
-	private Map<String, String> algorithmMap;
-	private Map<String, ProcessDescriptionType> processDescriptionMap;
+	private Map<String, AlgorithmProvider> algorithmMap;
+	private int poolSize = AlgorithmProvider.DEFAULT_POOL_SIZE;
 	
 	public LocalAlgorithmRepository() {
-		algorithmMap = new HashMap<String, String>();
-		processDescriptionMap = new HashMap<String, ProcessDescriptionType>(); 
+		algorithmMap = new ConcurrentHashMap<String, AlgorithmProvider>();
 		
 		// check if the repository is active
 		if(WPSConfig.getInstance().isRepositoryActive(this.getClass().getCanonicalName())){
 			Property[] propertyArray = WPSConfig.getInstance().getPropertiesForRepositoryClass(this.getClass().getCanonicalName());
+			for(Property property : propertyArray){
+				if(property.getName().equalsIgnoreCase("AlgorithmPoolSize") && property.getActive()){
+					try {
+						poolSize = Integer.parseInt(property.getStringValue().trim());
+					} catch (NumberFormatException e) {
+						LOGGER.warn("Invalid AlgorithmPoolSize: " + property.getStringValue());
+					}
+				}
+			}
 			for(Property property : propertyArray){
 				// check the name and active state
 				if(property.getName().equalsIgnoreCase("Algorithm") && property.getActive()){
-					addAlgorithm(property.getStringValue());
+					addAlgorithm(property.getStringValue(), false);
+				}
+				// instances of stateless algorithms are reused
+				else if(property.getName().equalsIgnoreCase("StatelessAlgorithm") && property.getActive()){
+					addAlgorithm(property.getStringValue(), true);
 				}
 			}
 		} else {
@@ -71,14 +82,38 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
 	}
 	
 	public IAlgorithm getAlgorithm(String className) {
+		AlgorithmProvider provider = algorithmMap.get(className);
+		if(provider == null){
+			return null;
+		}
 		try {
-			return loadAlgorithm(algorithmMap.get(className));
+			return provider.getAlgorithm();
 		} catch (Exception e) {
-			e.printStackTrace();
+			LOGGER.error("Could not load algorithm " + className, e);
 			return null;
 		}
 	}
 	
+	@Override
+	public void releaseAlgorithm(String className, IAlgorithm algorithm) {
+		AlgorithmProvider provider = algorithmMap.get(className);
+		if(provider != null){
+			provider.releaseAlgorithm(algorithm);
+		}
+	}
+
+	@Override
+	public Class<?> getInputDataType(String processID, String inputID) {
+		AlgorithmProvider provider = algorithmMap.get(processID);
+		return provider == null ? null : provider.getInputDataType(inputID);
+	}
+
+	@Override
+	public Class<?> getOutputDataType(String processID, String outputID) {
+		AlgorithmProvider provider = algorithmMap.get(processID);
+		return provider == null ? null : provider.getOutputDataType(outputID);
+	}
+	
 	public Collection<String> getAlgorithmNames() {
 		return new ArrayList<String>(algorithmMap.keySet());
 	}
@@ -87,40 +122,23 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
 		return algorithmMap.containsKey(className);
 	}
 	
-	private IAlgorithm loadAlgorithm(String algorithmClassName) throws Exception {
-        Class<?> algorithmClass = LocalAlgorithmRepository.class.getClassLoader().loadClass(algorithmClassName);
-        IAlgorithm algorithm = null;
-        if (IAlgorithm.class.isAssignableFrom(algorithmClass)) {
-            algorithm = IAlgorithm.class.cast(algorithmClass.newInstance());
-        } else if (algorithmClass.isAnnotationPresent(Algorithm.class)) {
-            // we have an annotated algorithm that doesn't implement IAlgorithm
-            // wrap it in a proxy class
-            algorithm = new AbstractAnnotatedAlgorithm.Proxy(algorithmClass);
-        }
-        else {
-            throw new Exception("Could not load algorithm " + algorithmClassName + " does not implement IAlgorithm or have a Algorithm annotation.");
-        }
-		
-		if(!algorithm.processDescriptionIsValid()) {
-			LOGGER.warn("Algorithm description is not valid: " + algorithmClassName);
-			throw new Exception("Could not load algorithm " +algorithmClassName +". ProcessDescription Not Valid.");
-		}
-		return algorithm;
-	}
-
 	public boolean addAlgorithm(Object processID) {
 		if(!(processID instanceof String)){
 			return false;
 		}
-		String algorithmClassName = (String) processID;
-				
-		algorithmMap.put(algorithmClassName, algorithmClassName);
+		return addAlgorithm((String) processID, false);
+	}
+	
+	private boolean addAlgorithm(String algorithmClassName, boolean stateless) {
+		// the class is loaded and its description validated once, here
+		try {
+			algorithmMap.put(algorithmClassName, AlgorithmProvider.create(algorithmClassName, stateless, poolSize));
+		} catch (Exception e) {
+			LOGGER.warn("Algorithm could not be registered: " + algorithmClassName, e);
+			return false;
+		}
 		LOGGER.info("Algorithm class registered: " + algorithmClassName);
-					
-			
-		
 		return true;
-
 	}
 
 	public boolean removeAlgorithm(Object processID) {
@@ -128,19 +146,13 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
 			return false;
 		}
 		String className = (String) processID;
-		if(algorithmMap.containsKey(className)){
-			algorithmMap.remove(className);
-			return true;
-		}
-		return false;
+		return algorithmMap.remove(className) != null;
 	}
 
 	@Override
 	public ProcessDescriptionType getProcessDescription(String processID) {
-		if(!processDescriptionMap.containsKey(processID)){
-			processDescriptionMap.put(processID, getAlgorithm(processID).getDescription());
-		}
-		return processDescriptionMap.get(processID);
+		AlgorithmProvider provider = algorithmMap.get(processID);
+		return provider == null ? null : provider.getDescription();
 	}
 
 	@Override
@@ -148,15 +160,5 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
 		// TODO Auto-generated method stub
 		
     }
-		
-	
-	
-
-	
-
-	
-
-
-	
 
 }
@@ -26,23 +26,28 @@ import org.slf4j.LoggerFactory;
 
 import net.opengis.wps.x100.ProcessDescriptionType;
 
-public class ServiceLoaderAlgorithmRepository implements IAlgorithmRepository {
+public class ServiceLoaderAlgorithmRepository implements IPooledAlgorithmRepository {
 
 	private static final Logger logger = LoggerFactory.getLogger(ServiceLoaderAlgorithmRepository.class);
-	private Map<String, Class<? extends IAlgorithm>> currentAlgorithms;
+	private Map<String, AlgorithmProvider> currentAlgorithms;
 
 	public ServiceLoaderAlgorithmRepository() {
 		this.currentAlgorithms = loadAlgorithms();
 	}
 	
-	private Map<String, Class<? extends IAlgorithm>> loadAlgorithms() {
-		Map<String, Class<? extends IAlgorithm>> result = new HashMap<String, Class<? extends IAlgorithm>>();
+	private Map<String, AlgorithmProvider> loadAlgorithms() {
+		Map<String, AlgorithmProvider> result = new HashMap<String, AlgorithmProvider>();
 		ServiceLoader<IAlgorithm> loader = ServiceLoader.load(IAlgorithm.class);
 		
 		for (IAlgorithm ia : loader) {
 			logger.debug("Adding algorithm with identifier {} and class {}",
 					ia.getWellKnownName(), ia.getClass().getCanonicalName());
-			result.put(ia.getWellKnownName(), ia.getClass());
+			try {
+				result.put(ia.getWellKnownName(), AlgorithmProvider.create(ia.getClass(),
+						false, AlgorithmProvider.DEFAULT_POOL_SIZE));
+			} catch (Exception e) {
+				logger.warn("Algorithm could not be registered: " + ia.getWellKnownName(), e);
+			}
 		}
 		
 		return result;
@@ -55,24 +60,42 @@ public class ServiceLoaderAlgorithmRepository implements IAlgorithmRepository {
 
 	@Override
 	public IAlgorithm getAlgorithm(String processID) {
-		Class<? extends IAlgorithm> clazz = this.currentAlgorithms.get(processID);
-		if (clazz != null) {
+		AlgorithmProvider provider = this.currentAlgorithms.get(processID);
+		if (provider != null) {
 			try {
-				return clazz.newInstance();
-			} catch (InstantiationException e) {
-				logger.warn(e.getMessage(), e);
-			} catch (IllegalAccessException e) {
+				return provider.getAlgorithm();
+			} catch (Exception e) {
 				logger.warn(e.getMessage(), e);
 			}
 		}
 		return null;
 	}
 
+	@Override
+	public void releaseAlgorithm(String processID, IAlgorithm algorithm) {
+		AlgorithmProvider provider = this.currentAlgorithms.get(processID);
+		if (provider != null) {
+			provider.releaseAlgorithm(algorithm);
+		}
+	}
+
+	@Override
+	public Class<?> getInputDataType(String processID, String inputID) {
+		AlgorithmProvider provider = this.currentAlgorithms.get(processID);
+		return provider == null ? null : provider.getInputDataType(inputID);
+	}
+
+	@Override
+	public Class<?> getOutputDataType(String processID, String outputID) {
+		AlgorithmProvider provider = this.currentAlgorithms.get(processID);
+		return provider == null ? null : provider.getOutputDataType(outputID);
+	}
+
 	@Override
 	public ProcessDescriptionType getProcessDescription(String processID) {
-		IAlgorithm algo = getAlgorithm(processID);
-		if (algo != null) {
-			return algo.getDescription();
+		AlgorithmProvider provider = this.currentAlgorithms.get(processID);
+		if (provider != null) {
+			return provider.getDescription();
 		}
 		return null;
 	}
@@ -18,8 +18,8 @@ package org.n52.wps.server;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.opengis.wps.x100.ProcessDescriptionType;
 
@@ -35,16 +35,14 @@ import org.n52.wps.commons.WPSConfig;
  * 
  */
 public class UploadedAlgorithmRepository implements
-		ITransactionalAlgorithmRepository {
+		ITransactionalAlgorithmRepository, IPooledAlgorithmRepository {
 
 	private static Logger LOGGER = LoggerFactory
 			.getLogger(LocalAlgorithmRepository.class);
-	private Map<String, String> algorithmMap;
-	private Map<String, ProcessDescriptionType> processDescriptionMap;
+	private Map<String, AlgorithmProvider> algorithmMap;
 
 	public UploadedAlgorithmRepository() {
-		algorithmMap = new HashMap<String, String>();
-		processDescriptionMap = new HashMap<String, ProcessDescriptionType>();
+		algorithmMap = new ConcurrentHashMap<String, AlgorithmProvider>();
 
 		if (WPSConfig.getInstance().isRepositoryActive(
 				this.getClass().getCanonicalName())) {
@@ -73,26 +71,45 @@ public class UploadedAlgorithmRepository implements
 	}
 
 	public IAlgorithm getAlgorithm(String className) {
+		AlgorithmProvider provider = algorithmMap.get(className);
+		if (provider == null) {
+			return null;
+		}
 		try {
-			return loadAlgorithm(algorithmMap.get(className));
+			return provider.getAlgorithm();
 		} catch (Exception e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			LOGGER.error("Could not load algorithm " + className, e);
 			return null;
 		}
 	}
 
+	@Override
+	public void releaseAlgorithm(String className, IAlgorithm algorithm) {
+		AlgorithmProvider provider = algorithmMap.get(className);
+		if (provider != null) {
+			provider.releaseAlgorithm(algorithm);
+		}
+	}
+
+	@Override
+	public Class<?> getInputDataType(String processID, String inputID) {
+		AlgorithmProvider provider = algorithmMap.get(processID);
+		return provider == null ? null : provider.getInputDataType(inputID);
+	}
+
+	@Override
+	public Class<?> getOutputDataType(String processID, String outputID) {
+		AlgorithmProvider provider = algorithmMap.get(processID);
+		return provider == null ? null : provider.getOutputDataType(outputID);
+	}
+
 	public Collection<IAlgorithm> getAlgorithms() {
 		Collection<IAlgorithm> resultList = new ArrayList<IAlgorithm>();
-		try {
-			for (String algorithmClasses : algorithmMap.values()) {
-				resultList
-						.add(loadAlgorithm(algorithmMap.get(algorithmClasses)));
+		for (String className : algorithmMap.keySet()) {
+			IAlgorithm algorithm = getAlgorithm(className);
+			if (algorithm != null) {
+				resultList.add(algorithm);
 			}
-		} catch (Exception e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-
 		}
 		return resultList;
 	}
@@ -105,26 +122,22 @@ public class UploadedAlgorithmRepository implements
 		return algorithmMap.containsKey(className);
 	}
 
-	private IAlgorithm loadAlgorithm(String algorithmClassName)
-			throws Exception {
-		IAlgorithm algorithm = (IAlgorithm) LocalAlgorithmRepository.class
-				.getClassLoader().loadClass(algorithmClassName).newInstance();
-		if (!algorithm.processDescriptionIsValid()) {
-			LOGGER.warn("Algorithm description is not valid: "
-					+ algorithmClassName);
-			throw new Exception("Could not load algorithm "
-					+ algorithmClassName + ". ProcessDescription Not Valid.");
-		}
-		return algorithm;
-	}
-
 	public boolean addAlgorithm(Object processID) {
 		if (!(processID instanceof String)) {
 			return false;
 		}
 		String algorithmClassName = (String) processID;
 
-		algorithmMap.put(algorithmClassName, algorithmClassName);
+		// the class is loaded and its description validated once, here
+		try {
+			algorithmMap.put(algorithmClassName, AlgorithmProvider.create(
+					algorithmClassName, false,
+					AlgorithmProvider.DEFAULT_POOL_SIZE));
+		} catch (Exception e) {
+			LOGGER.warn("Algorithm could not be registered: "
+					+ algorithmClassName, e);
+			return false;
+		}
 		LOGGER.info("Algorithm class registered: " + algorithmClassName);
 
 		return true;
@@ -136,20 +149,13 @@ public class UploadedAlgorithmRepository implements
 			return false;
 		}
 		String className = (String) processID;
-		if (algorithmMap.containsKey(className)) {
-			algorithmMap.remove(className);
-			return true;
-		}
-		return false;
+		return algorithmMap.remove(className) != null;
 	}
 
 	@Override
 	public ProcessDescriptionType getProcessDescription(String processID) {
-		if (!processDescriptionMap.containsKey(processID)) {
-			processDescriptionMap.put(processID, getAlgorithm(processID)
-					.getDescription());
-		}
-		return processDescriptionMap.get(processID);
+		AlgorithmProvider provider = algorithmMap.get(processID);
+		return provider == null ? null : provider.getDescription();
 	}
 
 	@Override
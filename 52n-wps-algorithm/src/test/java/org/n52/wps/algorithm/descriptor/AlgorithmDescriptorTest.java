@@ -136,6 +136,18 @@ public class AlgorithmDescriptorTest extends TestCase {
         assertFalse(descriptor.getStoreSupported());
     }
 
+    public void testDeterministic() {
+        AlgorithmDescriptor descriptor = null;
+        
+        // test default is false
+        descriptor = createMinimumCompliantBuilder().build();
+        assertFalse(descriptor.getDeterministic());
+        
+        // test we can set to true
+        descriptor = createMinimumCompliantBuilder().deterministic(true).build();
+        assertTrue(descriptor.getDeterministic());
+    }
+
     public void testStatusSupported() {
         AlgorithmDescriptor descriptor = null;
         
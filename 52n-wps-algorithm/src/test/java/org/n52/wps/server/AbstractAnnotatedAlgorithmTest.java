@@ -0,0 +1,68 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.n52.wps.algorithm.annotation.AnnotatedAlgorithmIntrospector;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.binding.literal.LiteralStringBinding;
+
+public class AbstractAnnotatedAlgorithmTest {
+
+	@Test
+	public void shouldBindListAndEnumInputs() {
+		Map<String, List<IData>> inputs = new HashMap<String, List<IData>>();
+		inputs.put("INPUT_STRINGS", Arrays.<IData>asList(new LiteralStringBinding("a"), new LiteralStringBinding("b"), new LiteralStringBinding("c")));
+		inputs.put("INPUT_DELIMITER", Arrays.<IData>asList(new LiteralStringBinding("PIPE")));
+		Map<String, IData> outputs = new StringJoinAnnotatedAlgorithm().run(inputs);
+		Assert.assertEquals("a|b|c", outputs.get("OUTPUT_STRING").getPayload());
+	}
+
+	@Test
+	public void shouldRunRepeatedly() {
+		Map<String, List<IData>> inputs = new HashMap<String, List<IData>>();
+		StringReverseAnnotatedAlgorithm algorithm = new StringReverseAnnotatedAlgorithm();
+		inputs.put("INPUT_STRING", Arrays.<IData>asList(new LiteralStringBinding("abc")));
+		Assert.assertEquals("cba", algorithm.run(inputs).get("OUTPUT_STRING").getPayload());
+		inputs.put("INPUT_STRING", Arrays.<IData>asList(new LiteralStringBinding("xyz")));
+		Assert.assertEquals("zyx", algorithm.run(inputs).get("OUTPUT_STRING").getPayload());
+	}
+
+	@Test
+	public void shouldIntrospectClassOnce() {
+		Assert.assertSame(AnnotatedAlgorithmIntrospector.getInstrospector(StringJoinAnnotatedAlgorithm.class),
+				AnnotatedAlgorithmIntrospector.getInstrospector(StringJoinAnnotatedAlgorithm.class));
+	}
+}
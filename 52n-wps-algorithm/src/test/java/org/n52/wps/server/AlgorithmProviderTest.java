@@ -0,0 +1,89 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import static org.hamcrest.CoreMatchers.*;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.n52.test.mock.MockUtil;
+import org.n52.wps.io.data.binding.literal.LiteralStringBinding;
+
+public class AlgorithmProviderTest {
+
+	@BeforeClass
+	public static void setUpClass() {
+		MockUtil.getMockConfig();
+	}
+
+	@Test
+	public void shouldReuseInstancesOfStatelessAlgorithms() throws Exception {
+		AlgorithmProvider provider = AlgorithmProvider.create(StringReverseSelfDescribingAlgorithm.class.getName(), true, 1);
+		Assert.assertThat(provider.isStateless(), is(true));
+		IAlgorithm first = provider.getAlgorithm();
+		IAlgorithm second = provider.getAlgorithm();
+		Assert.assertThat(second, is(not(sameInstance(first))));
+		provider.releaseAlgorithm(first);
+		provider.releaseAlgorithm(second);
+		Assert.assertThat(provider.getAlgorithm(), is(sameInstance(first)));
+		Assert.assertThat(provider.getAlgorithm(), is(not(sameInstance(second))));
+	}
+
+	@Test
+	public void shouldAnswerDataTypesWithoutTakingInstances() throws Exception {
+		AlgorithmProvider provider = AlgorithmProvider.create(StringReverseSelfDescribingAlgorithm.class.getName(), true, 1);
+		IAlgorithm first = provider.getAlgorithm();
+		provider.releaseAlgorithm(first);
+		Assert.assertEquals(LiteralStringBinding.class, provider.getInputDataType(StringReverseSelfDescribingAlgorithm.INPUT_STRING));
+		Assert.assertEquals(LiteralStringBinding.class, provider.getOutputDataType(StringReverseSelfDescribingAlgorithm.OUTPUT_STRING));
+		Assert.assertThat(provider.getAlgorithm(), is(sameInstance(first)));
+	}
+
+	@Test
+	public void shouldCreateNewInstancesOfOtherAlgorithms() throws Exception {
+		AlgorithmProvider provider = AlgorithmProvider.create(StringReverseAnnotatedAlgorithm.class.getName(), false, 1);
+		Assert.assertThat(provider.isStateless(), is(false));
+		IAlgorithm first = provider.getAlgorithm();
+		provider.releaseAlgorithm(first);
+		Assert.assertThat(provider.getAlgorithm(), is(not(sameInstance(first))));
+	}
+
+	@Test
+	public void shouldKeepValidatedDescription() throws Exception {
+		AlgorithmProvider provider = AlgorithmProvider.create(StringReverseAnnotatedAlgorithm.class.getName(), false, 1);
+		Assert.assertThat(provider.getDescription(), is(notNullValue()));
+		Assert.assertThat(provider.getDescription(), is(sameInstance(provider.getDescription())));
+	}
+
+	@Test(expected = ClassNotFoundException.class)
+	public void shouldRejectUnknownClasses() throws Exception {
+		AlgorithmProvider.create("org.n52.wps.server.NoSuchAlgorithm", false, 1);
+	}
+}
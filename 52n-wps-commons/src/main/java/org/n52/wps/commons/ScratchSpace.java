@@ -0,0 +1,564 @@
+/**
+ * ﻿Copyright (C) 2006 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.commons;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Places temporary files on the scratch volumes listed in the server property
+ * <code>scratch.volumes</code> (directories separated by commas, by default
+ * <code>java.io.tmpdir</code>). A file goes to the first volume whose
+ * <code>scratch.maxFileSize.&lt;directory&gt;</code> admits its expected size,
+ * so small files can be kept on a memory file system and large ones on a
+ * dedicated disk. Files of unknown size go to the volumes without a limit,
+ * the last volume takes whatever no other volume admits.
+ * <p>
+ * The space of the tracked files is limited by <code>scratch.maxSize</code>
+ * in total and by <code>scratch.maxSize.&lt;directory&gt;</code> per volume.
+ * A volume is not used while its usable space would fall below
+ * <code>scratch.minFreeSpace.&lt;directory&gt;</code> (default
+ * <code>scratch.minFreeSpace</code>). If no admitting volume has room, the
+ * caller waits up to <code>scratch.maxWait</code> (ISO 8601 period) for
+ * space to be released before the allocation fails. Sizes are in bytes, 0
+ * disables a limit.
+ * <p>
+ * The expected size of a file is reserved until the file is released. The
+ * volumes only keep counters of the reserved and reported sizes, they are
+ * not rescanned while a file is allocated. Files that grow beyond their
+ * reservation are accounted for when their size is reported through
+ * {@link #updateSize(File, long)}, files deleted without being released
+ * only when no volume has room: then the tracked files are checked, without
+ * holding the lock, before the caller waits. Limits per request are enforced
+ * by {@link org.n52.wps.commons.context.TempFileArena}.
+ */
+public class ScratchSpace {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ScratchSpace.class);
+
+    public static final String PROP_VOLUMES = "scratch.volumes";
+
+    public static final String PROP_MAX_FILE_SIZE = "scratch.maxFileSize";
+
+    public static final String PROP_MAX_SIZE = "scratch.maxSize";
+
+    public static final String PROP_MIN_FREE_SPACE = "scratch.minFreeSpace";
+
+    public static final String PROP_MAX_WAIT = "scratch.maxWait";
+
+    public static final long UNKNOWN_SIZE = -1;
+
+    public static final long DEFAULT_MAX_WAIT = 30 * 1000;
+
+    /** files deleted without being released do not wake up waiting callers */
+    private static final long RECHECK_INTERVAL = 1000;
+
+    /** incremented whenever space is given back, to not miss it between rescan and wait */
+    private long releaseCount;
+
+    private static ScratchSpace instance;
+
+    private final List<Volume> volumes;
+
+    private final long maxSize;
+
+    private final long maxWait;
+
+    private long waitCount;
+
+    private long rejectedCount;
+
+    public static synchronized ScratchSpace getInstance() {
+        if (instance == null) {
+            instance = create();
+        }
+        return instance;
+    }
+
+    private static ScratchSpace create() {
+        PropertyUtil propertyUtil;
+        try {
+            propertyUtil = new PropertyUtil(WPSConfig.getInstance().getPropertiesForServer());
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not read the scratch volumes, using {}", System.getProperty("java.io.tmpdir"));
+            return new ScratchSpace(Collections.singletonList(new Volume(new File(System.getProperty("java.io.tmpdir")),
+                    0, 0, 0)), 0, DEFAULT_MAX_WAIT);
+        }
+        long minFreeSpace = propertyUtil.extractLong(PROP_MIN_FREE_SPACE, 0);
+        List<Volume> volumes = new ArrayList<Volume>();
+        for (String path : propertyUtil.extractString(PROP_VOLUMES, System.getProperty("java.io.tmpdir")).split(",")) {
+            path = path.trim();
+            if (path.isEmpty()) {
+                continue;
+            }
+            File directory = new File(path);
+            if ( !directory.isDirectory() && !directory.mkdirs()) {
+                LOGGER.warn("Scratch volume {} is no directory and could not be created", path);
+                continue;
+            }
+            volumes.add(new Volume(directory,
+                                   propertyUtil.extractLong(PROP_MAX_FILE_SIZE + "." + path, 0),
+                                   propertyUtil.extractLong(PROP_MAX_SIZE + "." + path, 0),
+                                   propertyUtil.extractLong(PROP_MIN_FREE_SPACE + "." + path, minFreeSpace)));
+        }
+        if (volumes.isEmpty()) {
+            volumes.add(new Volume(new File(System.getProperty("java.io.tmpdir")), 0, 0, minFreeSpace));
+        }
+        ScratchSpace scratchSpace = new ScratchSpace(volumes, propertyUtil.extractLong(PROP_MAX_SIZE, 0),
+                propertyUtil.extractPeriodAsMillis(PROP_MAX_WAIT, DEFAULT_MAX_WAIT));
+        LOGGER.info("Using scratch volumes {}", volumes);
+        return scratchSpace;
+    }
+
+    ScratchSpace(List<Volume> volumes, long maxSize, long maxWait) {
+        this.volumes = Collections.unmodifiableList(new ArrayList<Volume>(volumes));
+        this.maxSize = maxSize;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Creates an empty temporary file, which has to be deleted by the caller.
+     * 
+     * @param expectedSize
+     *        the expected size of the file in bytes, or {@link #UNKNOWN_SIZE}
+     * @throws IOException
+     *         if no volume has room for the file
+     */
+    public File createTempFile(String prefix, String suffix, long expectedSize) throws IOException {
+        Volume volume = allocate(expectedSize);
+        boolean tracked = false;
+        try {
+            File file = File.createTempFile(prefix, suffix, volume.directory);
+            volume.track(file, expectedSize);
+            tracked = true;
+            return file;
+        } finally {
+            if ( !tracked) {
+                cancel(volume, expectedSize);
+            }
+        }
+    }
+
+    /**
+     * Creates an empty temporary directory, which has to be deleted by the
+     * caller.
+     * 
+     * @param expectedSize
+     *        the expected size of the content in bytes, or
+     *        {@link #UNKNOWN_SIZE}
+     * @throws IOException
+     *         if no volume has room for the directory
+     */
+    public File createTempDirectory(String prefix, long expectedSize) throws IOException {
+        Volume volume = allocate(expectedSize);
+        boolean tracked = false;
+        try {
+            File directory = new File(volume.directory, prefix + UUID.randomUUID());
+            if ( !directory.mkdir()) {
+                throw new IOException("Could not create directory " + directory);
+            }
+            volume.track(directory, expectedSize);
+            tracked = true;
+            return directory;
+        } finally {
+            if ( !tracked) {
+                cancel(volume, expectedSize);
+            }
+        }
+    }
+
+    /**
+     * Selects a volume for files that are created by other means, like
+     * external tools. The files are not tracked, only the usable space of
+     * the volume is taken into account.
+     * 
+     * @return the directory of the volume
+     * @throws IOException
+     *         if no volume has room for the files
+     */
+    public File getDirectory(long expectedSize) throws IOException {
+        Volume volume = allocate(expectedSize);
+        volume.cancel(expectedSize);
+        return volume.directory;
+    }
+
+    /**
+     * Stops tracking a file or directory, its reserved space becomes
+     * available to other callers. The file itself is not deleted.
+     */
+    public synchronized void release(File file) {
+        for (Volume volume : volumes) {
+            if (volume.untrack(file)) {
+                released();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reports the current size of a tracked file or directory, so that space
+     * it uses beyond its reservation is accounted for. The size should be
+     * determined by the caller without holding any locks.
+     */
+    public synchronized void updateSize(File file, long size) {
+        for (Volume volume : volumes) {
+            Boolean shrunk = volume.update(file, size);
+            if (shrunk != null) {
+                if (shrunk.booleanValue()) {
+                    released();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the file is located on one of the scratch
+     *         volumes
+     */
+    public boolean contains(File file) {
+        String path = file.getAbsolutePath();
+        for (Volume volume : volumes) {
+            if (path.startsWith(volume.directory.getAbsolutePath() + File.separator)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if the directory is one of the scratch volumes
+     */
+    public boolean isVolume(File directory) {
+        for (Volume volume : volumes) {
+            if (volume.directory.getAbsoluteFile().equals(directory.getAbsoluteFile())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<Volume> getVolumes() {
+        return volumes;
+    }
+
+    /**
+     * @return the space used or reserved by tracked files on all volumes, as
+     *         far as it has been reserved or reported
+     */
+    public synchronized long getUsedBytes() {
+        long usedBytes = 0;
+        for (Volume volume : volumes) {
+            usedBytes += volume.getUsedBytes();
+        }
+        return usedBytes;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of allocations that had to wait for space
+     */
+    public synchronized long getWaitCount() {
+        return waitCount;
+    }
+
+    /**
+     * @return the number of allocations that failed for lack of space
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ScratchSpace [volumes=" + volumes + ", usedBytes=" + getUsedBytes() + ", waits=" + waitCount
+                + ", rejected=" + rejectedCount + "]";
+    }
+
+    private Volume allocate(long expectedSize) throws IOException {
+        long reserved = Math.max(expectedSize, 0);
+        long deadline = System.currentTimeMillis() + maxWait;
+        boolean waited = false;
+        while (true) {
+            long releases;
+            synchronized (this) {
+                Volume volume = selectVolume(expectedSize, reserved);
+                if (volume != null) {
+                    volume.reserve(reserved);
+                    return volume;
+                }
+                releases = releaseCount;
+            }
+            // files deleted without being released are only noticed here, the file system is not
+            // scanned while holding the lock
+            rescan();
+            synchronized (this) {
+                Volume volume = selectVolume(expectedSize, reserved);
+                if (volume != null) {
+                    volume.reserve(reserved);
+                    return volume;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    rejectedCount++;
+                    throw new IOException("No scratch space available for "
+                            + (expectedSize < 0 ? "a file of unknown size" : expectedSize + " bytes") + ", " + this);
+                }
+                if ( !waited) {
+                    waited = true;
+                    waitCount++;
+                    LOGGER.debug("Waiting for scratch space, {}", this);
+                }
+                if (releases == releaseCount) {
+                    try {
+                        wait(Math.min(remaining, RECHECK_INTERVAL));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for scratch space");
+                    }
+                }
+            }
+        }
+    }
+
+    private synchronized void cancel(Volume volume, long expectedSize) {
+        volume.cancel(expectedSize);
+        released();
+    }
+
+    private void released() {
+        releaseCount++;
+        notifyAll();
+    }
+
+    /**
+     * Determines the sizes of the tracked files and forgets those that have
+     * been deleted. Must not be called while holding the lock.
+     */
+    private void rescan() {
+        boolean freed = false;
+        for (Volume volume : volumes) {
+            for (File file : volume.getTrackedFiles()) {
+                long size = file.exists() ? Volume.sizeOf(file) : -1;
+                synchronized (this) {
+                    Boolean shrunk = size < 0 ? Boolean.valueOf(volume.untrack(file)) : volume.update(file, size);
+                    if (shrunk != null && shrunk.booleanValue()) {
+                        freed = true;
+                    }
+                }
+            }
+        }
+        if (freed) {
+            synchronized (this) {
+                released();
+            }
+        }
+    }
+
+    private Volume selectVolume(long expectedSize, long reserved) {
+        if (maxSize > 0 && getUsedBytes() + reserved > maxSize) {
+            return null;
+        }
+        for (int i = 0; i < volumes.size(); i++) {
+            Volume volume = volumes.get(i);
+            boolean last = i == volumes.size() - 1;
+            if ( !last && !volume.admits(expectedSize)) {
+                continue;
+            }
+            if (volume.hasRoom(reserved)) {
+                return volume;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A directory holding scratch files.
+     */
+    public static class Volume {
+
+        private final File directory;
+
+        private final long maxFileSize;
+
+        private final long maxSize;
+
+        private final long minFreeSpace;
+
+        private final Map<File, Usage> files = new LinkedHashMap<File, Usage>();
+
+        /** space reserved for files that are about to be created */
+        private long pendingBytes;
+
+        /** space charged for the tracked files */
+        private long usedBytes;
+
+        private long allocationCount;
+
+        Volume(File directory, long maxFileSize, long maxSize, long minFreeSpace) {
+            this.directory = directory;
+            this.maxFileSize = maxFileSize;
+            this.maxSize = maxSize;
+            this.minFreeSpace = minFreeSpace;
+        }
+
+        public File getDirectory() {
+            return directory;
+        }
+
+        /**
+         * @return the largest expected size of a file placed on the volume,
+         *         0 if there is no limit
+         */
+        public long getMaxFileSize() {
+            return maxFileSize;
+        }
+
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        public long getMinFreeSpace() {
+            return minFreeSpace;
+        }
+
+        public long getUsableSpace() {
+            return directory.getUsableSpace();
+        }
+
+        public synchronized long getAllocationCount() {
+            return allocationCount;
+        }
+
+        public synchronized int getFileCount() {
+            return files.size();
+        }
+
+        /**
+         * @return the space reserved by or reported for the tracked files,
+         *         the file system is not scanned
+         */
+        public synchronized long getUsedBytes() {
+            return usedBytes + pendingBytes;
+        }
+
+        boolean admits(long expectedSize) {
+            return maxFileSize <= 0 || (expectedSize >= 0 && expectedSize <= maxFileSize);
+        }
+
+        boolean hasRoom(long reserved) {
+            if (maxSize > 0 && getUsedBytes() + reserved > maxSize) {
+                return false;
+            }
+            return minFreeSpace <= 0 || getUsableSpace() - reserved >= minFreeSpace;
+        }
+
+        synchronized void reserve(long reserved) {
+            pendingBytes += reserved;
+            allocationCount++;
+        }
+
+        synchronized void cancel(long expectedSize) {
+            pendingBytes -= Math.max(expectedSize, 0);
+        }
+
+        synchronized void track(File file, long expectedSize) {
+            long reserved = Math.max(expectedSize, 0);
+            pendingBytes -= reserved;
+            Usage previous = files.put(file.getAbsoluteFile(), new Usage(reserved));
+            usedBytes += reserved - (previous == null ? 0 : previous.charged());
+        }
+
+        synchronized boolean untrack(File file) {
+            Usage usage = files.remove(file.getAbsoluteFile());
+            if (usage == null) {
+                return false;
+            }
+            usedBytes -= usage.charged();
+            return true;
+        }
+
+        /**
+         * @return <code>null</code> if the file is not tracked, otherwise
+         *         whether its charged space shrunk
+         */
+        synchronized Boolean update(File file, long size) {
+            Usage usage = files.get(file.getAbsoluteFile());
+            if (usage == null) {
+                return null;
+            }
+            long charged = usage.charged();
+            usage.size = size;
+            usedBytes += usage.charged() - charged;
+            return Boolean.valueOf(usage.charged() < charged);
+        }
+
+        synchronized List<File> getTrackedFiles() {
+            return new ArrayList<File>(files.keySet());
+        }
+
+        @Override
+        public synchronized String toString() {
+            return directory + " [files=" + files.size() + ", maxFileSize=" + maxFileSize + ", maxSize=" + maxSize
+                    + ", minFreeSpace=" + minFreeSpace + ", allocations=" + allocationCount + "]";
+        }
+
+        private static class Usage {
+
+            private final long reserved;
+
+            private long size;
+
+            Usage(long reserved) {
+                this.reserved = reserved;
+            }
+
+            long charged() {
+                return Math.max(reserved, size);
+            }
+        }
+
+        static long sizeOf(File file) {
+            // links are not followed, their targets do not belong to the volume
+            if (file.isDirectory() && !Files.isSymbolicLink(file.toPath())) {
+                long size = 0;
+                File[] children = file.listFiles();
+                if (children != null) {
+                    for (File child : children) {
+                        size += sizeOf(child);
+                    }
+                }
+                return size;
+            }
+            return file.length();
+        }
+    }
+
+}
@@ -27,6 +27,7 @@ public class ExecutionContext {
 
     private String tempFolderName;
     private List<OutputDefinitionType> outputDefinitionTypes;
+    private TempFileArena tempFileArena;
 
     public ExecutionContext() {
         this(Arrays.asList(new OutputDefinitionType[0]));
@@ -37,9 +38,24 @@ public class ExecutionContext {
     }
 
     public ExecutionContext(List< ? extends OutputDefinitionType> outputs) {
+        this(outputs, TempFileArena.createForRequest());
+    }
+
+    /**
+     * Creates a context for the same request, which registers temporary files
+     * with another arena.
+     */
+    public ExecutionContext(ExecutionContext context, TempFileArena tempFileArena) {
+        this.tempFolderName = context.tempFolderName;
+        this.outputDefinitionTypes = context.outputDefinitionTypes;
+        this.tempFileArena = tempFileArena;
+    }
+
+    ExecutionContext(List< ? extends OutputDefinitionType> outputs, TempFileArena tempFileArena) {
         this.tempFolderName = UUID.randomUUID().toString();
         this.outputDefinitionTypes = Collections.unmodifiableList(outputs != null ? outputs
                                                                                  : Arrays.asList(new OutputDefinitionType[0]));
+        this.tempFileArena = tempFileArena;
     }
 
     public String getTempDirectoryPath() {
@@ -50,4 +66,12 @@ public class ExecutionContext {
     public List<OutputDefinitionType> getOutputs() {
         return this.outputDefinitionTypes;
     }
+
+    /**
+     * @return the arena deleting the temporary files of the request once the
+     *         response has been written
+     */
+    public TempFileArena getTempFileArena() {
+        return this.tempFileArena;
+    }
 }
@@ -16,6 +16,10 @@
  */
 package org.n52.wps.commons.context;
 
+import java.util.Arrays;
+
+import net.opengis.wps.x100.OutputDefinitionType;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,7 +48,7 @@ public class ExecutionContextFactory {
 
     public synchronized static ExecutionContext getDefault() {
         if (defaultContext == null) {
-            defaultContext = new ExecutionContext();
+            defaultContext = new ExecutionContext(Arrays.asList(new OutputDefinitionType[0]), TempFileArena.getDefault());
         }
         return defaultContext;
     }
@@ -0,0 +1,417 @@
+/**
+ * ﻿Copyright (C) 2006 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.commons.context;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.ScratchSpace;
+import org.n52.wps.commons.WPSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of the temporary files and directories written on behalf of a
+ * single Execute request, see {@link ExecutionContext#getTempFileArena()}.
+ * The files are deleted when the arena is closed once the response has been
+ * written. The total size of the registered files may be limited by the
+ * server property <code>tempFiles.maxRequestSize</code> (bytes, 0 for no
+ * limit), the limit is checked whenever a file is registered and through
+ * {@link #checkQuota()}. Registering a file only measures that file and adds
+ * it to a running total; {@link #checkQuota()} measures all registered files
+ * again, as they may have grown since they were registered. Resources the
+ * request holds on to, like leases on shared data, may be registered to be
+ * closed with the arena.
+ */
+public class TempFileArena implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger(TempFileArena.class);
+
+    public static final String PROP_MAX_REQUEST_SIZE = "tempFiles.maxRequestSize";
+
+    public static final long DEFAULT_MAX_REQUEST_SIZE = 0;
+
+    private static final TempFileArena DEFAULT = new TempFileArena(0, true);
+
+    private final long maxSize;
+
+    private final boolean retained;
+
+    private final List<File> files = new ArrayList<File>();
+
+    private final List<Closeable> resources = new ArrayList<Closeable>();
+
+    /**
+     * The measured sizes of the registered files that are not within a
+     * registered directory, by absolute file.
+     */
+    private final Map<File, Long> sizes = new HashMap<File, Long>();
+
+    private long usedBytes;
+
+    private boolean closed;
+
+    /**
+     * Creates an arena without a size limit.
+     */
+    public TempFileArena() {
+        this(0);
+    }
+
+    /**
+     * @param maxSize
+     *        the maximum total size of the registered files in bytes, 0 for
+     *        no limit
+     */
+    public TempFileArena(long maxSize) {
+        this(maxSize, false);
+    }
+
+    private TempFileArena(long maxSize, boolean retained) {
+        this.maxSize = Math.max(maxSize, 0);
+        this.retained = retained;
+    }
+
+    /**
+     * Creates an arena limited by the server property
+     * <code>tempFiles.maxRequestSize</code>.
+     */
+    public static TempFileArena createForRequest() {
+        long maxSize = DEFAULT_MAX_REQUEST_SIZE;
+        try {
+            PropertyUtil propertyUtil = new PropertyUtil(WPSConfig.getInstance().getPropertiesForServer());
+            maxSize = propertyUtil.extractLong(PROP_MAX_REQUEST_SIZE, DEFAULT_MAX_REQUEST_SIZE);
+        } catch (RuntimeException e) {
+            log.warn("Could not read property {}, temporary files are not limited", PROP_MAX_REQUEST_SIZE);
+        }
+        return new TempFileArena(maxSize);
+    }
+
+    /**
+     * The arena used outside of requests. It is never closed, its files are
+     * deleted when the JVM exits.
+     */
+    public static TempFileArena getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Creates an empty temporary file of unknown size that is deleted with
+     * the arena.
+     */
+    public File createTempFile(String prefix, String suffix) throws IOException {
+        return createTempFile(prefix, suffix, ScratchSpace.UNKNOWN_SIZE);
+    }
+
+    /**
+     * Creates an empty temporary file on a volume of the {@link ScratchSpace}
+     * that is deleted with the arena.
+     * 
+     * @param expectedSize
+     *        the expected size of the file in bytes, or
+     *        {@link ScratchSpace#UNKNOWN_SIZE}
+     * @throws IOException
+     *         if the file would exceed the size limit of the arena or no
+     *         scratch space is available
+     */
+    public File createTempFile(String prefix, String suffix, long expectedSize) throws IOException {
+        checkQuota(Math.max(expectedSize, 0));
+        File file = ScratchSpace.getInstance().createTempFile(prefix, suffix, expectedSize);
+        register(file);
+        return file;
+    }
+
+    /**
+     * Creates an empty temporary directory on a volume of the
+     * {@link ScratchSpace} that is deleted with the arena.
+     * 
+     * @param expectedSize
+     *        the expected size of the content in bytes, or
+     *        {@link ScratchSpace#UNKNOWN_SIZE}
+     * @throws IOException
+     *         if the content would exceed the size limit of the arena or no
+     *         scratch space is available
+     */
+    public File createTempDirectory(String prefix, long expectedSize) throws IOException {
+        checkQuota(Math.max(expectedSize, 0));
+        File directory = ScratchSpace.getInstance().createTempDirectory(prefix, expectedSize);
+        register(directory);
+        return directory;
+    }
+
+    /**
+     * Registers a temporary file or directory to be deleted with the arena.
+     * Files registered after the arena has been closed are deleted when the
+     * JVM exits.
+     * 
+     * @throws IOException
+     *         if the registered files exceed the size limit of the arena
+     */
+    public void register(File file) throws IOException {
+        if (file == null) {
+            return;
+        }
+        synchronized (this) {
+            if ( !retained && !closed) {
+                if ( !files.contains(file)) {
+                    files.add(file);
+                    measure(file.getAbsoluteFile());
+                }
+                checkQuota(usedBytes, 0);
+                return;
+            }
+            if ( !retained) {
+                log.debug("Temporary file {} registered after the request has finished", file);
+            }
+        }
+        file.deleteOnExit();
+    }
+
+    /**
+     * Registers a resource to be closed with the arena, before the files are
+     * deleted. Resources registered after the arena has been closed, or with
+     * the default arena, are closed immediately.
+     */
+    public void registerResource(Closeable resource) {
+        if (resource == null) {
+            return;
+        }
+        synchronized (this) {
+            if ( !retained && !closed) {
+                resources.add(resource);
+                return;
+            }
+        }
+        closeQuietly(resource);
+    }
+
+    /**
+     * Measures all registered files again and checks them against the size
+     * limit.
+     * 
+     * @throws IOException
+     *         if the registered files exceed the size limit of the arena
+     */
+    public void checkQuota() throws IOException {
+        if (maxSize <= 0) {
+            return;
+        }
+        checkQuota(getUsedBytes(), 0);
+    }
+
+    private void checkQuota(long additionalBytes) throws IOException {
+        long registeredBytes;
+        synchronized (this) {
+            registeredBytes = usedBytes;
+        }
+        checkQuota(registeredBytes, additionalBytes);
+    }
+
+    private void checkQuota(long registeredBytes, long additionalBytes) throws IOException {
+        if (maxSize <= 0) {
+            return;
+        }
+        long usedBytes = registeredBytes + additionalBytes;
+        if (usedBytes > maxSize) {
+            throw new IOException("Temporary files of the request exceed the limit of " + maxSize + " bytes ("
+                    + usedBytes + " bytes)");
+        }
+    }
+
+    /**
+     * @return the current size of the registered files in bytes, files
+     *         within registered directories are counted once. All files are
+     *         measured again, the sizes are reported to the
+     *         {@link ScratchSpace}.
+     */
+    public long getUsedBytes() {
+        Set<File> registered = new HashSet<File>();
+        synchronized (this) {
+            for (File file : files) {
+                registered.add(file.getAbsoluteFile());
+            }
+        }
+        Map<File, Long> measured = new HashMap<File, Long>();
+        long measuredBytes = 0;
+        ScratchSpace scratchSpace = registered.isEmpty() ? null : ScratchSpace.getInstance();
+        for (File file : registered) {
+            if ( !isWithin(file, registered)) {
+                long size = sizeOf(file);
+                scratchSpace.updateSize(file, size);
+                measured.put(file, Long.valueOf(size));
+                measuredBytes += size;
+            }
+        }
+        synchronized (this) {
+            // files registered meanwhile are measured with the next check
+            if ( !closed) {
+                for (Map.Entry<File, Long> entry : sizes.entrySet()) {
+                    if ( !registered.contains(entry.getKey())) {
+                        measured.put(entry.getKey(), entry.getValue());
+                        measuredBytes += entry.getValue().longValue();
+                    }
+                }
+                sizes.clear();
+                sizes.putAll(measured);
+                usedBytes = measuredBytes;
+            }
+        }
+        return measuredBytes;
+    }
+
+    /**
+     * @return the maximum size of the registered files in bytes, 0 if there
+     *         is no limit
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Closes the registered resources and deletes all registered files,
+     * starting with the last one.
+     */
+    @Override
+    public void close() {
+        List<File> registered;
+        List<Closeable> registeredResources;
+        synchronized (this) {
+            if (closed || retained) {
+                return;
+            }
+            closed = true;
+            registered = new ArrayList<File>(files);
+            files.clear();
+            sizes.clear();
+            usedBytes = 0;
+            registeredResources = new ArrayList<Closeable>(resources);
+            resources.clear();
+        }
+        for (int i = registeredResources.size() - 1; i >= 0; i--) {
+            closeQuietly(registeredResources.get(i));
+        }
+        if (registered.isEmpty()) {
+            return;
+        }
+        ScratchSpace scratchSpace = ScratchSpace.getInstance();
+        for (int i = registered.size() - 1; i >= 0; i--) {
+            File file = registered.get(i);
+            if ( !delete(file)) {
+                log.warn("Could not delete temporary file {}", file);
+                file.deleteOnExit();
+            }
+            scratchSpace.release(file);
+        }
+        log.debug("Deleted {} temporary files", registered.size());
+    }
+
+    /**
+     * Adds a newly registered file to the running total. A file within a
+     * registered directory is already counted by the directory, files within
+     * a newly registered directory are replaced by it.
+     */
+    private void measure(File file) {
+        if (isWithin(file, sizes.keySet())) {
+            return;
+        }
+        long size = sizeOf(file);
+        if (isDirectory(file)) {
+            for (Iterator<Map.Entry<File, Long>> it = sizes.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<File, Long> entry = it.next();
+                if (isWithin(entry.getKey(), file)) {
+                    usedBytes -= entry.getValue().longValue();
+                    it.remove();
+                }
+            }
+        }
+        ScratchSpace.getInstance().updateSize(file, size);
+        sizes.put(file, Long.valueOf(size));
+        usedBytes += size;
+    }
+
+    private static void closeQuietly(Closeable resource) {
+        try {
+            resource.close();
+        } catch (IOException e) {
+            log.warn("Could not close resource " + resource, e);
+        } catch (RuntimeException e) {
+            log.warn("Could not close resource " + resource, e);
+        }
+    }
+
+    private static boolean isWithin(File file, Set<File> directories) {
+        for (File parent = file.getParentFile(); parent != null; parent = parent.getParentFile()) {
+            if (directories.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWithin(File file, File directory) {
+        for (File parent = file.getParentFile(); parent != null; parent = parent.getParentFile()) {
+            if (parent.equals(directory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long sizeOf(File file) {
+        if (isDirectory(file)) {
+            long size = 0;
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    size += sizeOf(child);
+                }
+            }
+            return size;
+        }
+        return file.length();
+    }
+
+    private static boolean delete(File file) {
+        if (isDirectory(file)) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    delete(child);
+                }
+            }
+        }
+        return file.delete() || !file.exists();
+    }
+
+    /**
+     * Links are not followed, their targets do not belong to the arena.
+     */
+    private static boolean isDirectory(File file) {
+        return file.isDirectory() && !Files.isSymbolicLink(file.toPath());
+    }
+
+}
@@ -85,6 +85,18 @@ public class ExceptionReport extends Exception {
 		ExceptionType ex = exceptionReport.addNewException();
 		ex.setExceptionCode(errorKey);
 		ex.addExceptionText(this.getMessage());
+		// reports aggregated into this one are listed as exceptions of their own
+		for (Throwable suppressed : getSuppressed()) {
+			if (suppressed instanceof ExceptionReport) {
+				ExceptionReport aggregated = (ExceptionReport) suppressed;
+				ExceptionType aggregatedException = exceptionReport.addNewException();
+				aggregatedException.setExceptionCode(aggregated.errorKey);
+				aggregatedException.addExceptionText(aggregated.getMessage());
+				if (aggregated.locator != null) {
+					aggregatedException.setLocator(aggregated.locator);
+				}
+			}
+		}
 		// Adding additional Java exception
 		ExceptionType stackTrace = exceptionReport.addNewException();
 		stackTrace.addExceptionText(encodeStackTrace(this));
@@ -102,6 +114,14 @@ public class ExceptionReport extends Exception {
 		return report;
 	}
 
+	public String getErrorKey() {
+		return errorKey;
+	}
+
+	public String getLocator() {
+		return locator;
+	}
+
 	private String encodeStackTrace(Throwable t) {
         StringWriter w = new StringWriter();
         PrintWriter p = new PrintWriter(w);
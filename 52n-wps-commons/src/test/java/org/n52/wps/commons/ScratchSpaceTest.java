@@ -0,0 +1,158 @@
+/**
+ * ﻿Copyright (C) 2006 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScratchSpaceTest {
+
+    private File small;
+
+    private File large;
+
+    @Before
+    public void setUp() throws IOException {
+        small = createTempDirectory();
+        large = createTempDirectory();
+    }
+
+    @After
+    public void tearDown() {
+        delete(small);
+        delete(large);
+    }
+
+    @Test
+    public void testPlacementByExpectedSize() throws IOException {
+        ScratchSpace scratchSpace = new ScratchSpace(Arrays.asList(new ScratchSpace.Volume(small, 100, 0, 0),
+                new ScratchSpace.Volume(large, 0, 0, 0)), 0, 0);
+
+        assertEquals(small, scratchSpace.createTempFile("scratch", ".tmp", 100).getParentFile());
+        assertEquals(large, scratchSpace.createTempFile("scratch", ".tmp", 101).getParentFile());
+        assertEquals(large, scratchSpace.createTempFile("scratch", ".tmp", ScratchSpace.UNKNOWN_SIZE).getParentFile());
+        File directory = scratchSpace.createTempDirectory("scratch", 10);
+        assertTrue(directory.isDirectory());
+        assertEquals(small, directory.getParentFile());
+
+        assertEquals(2, scratchSpace.getVolumes().get(0).getAllocationCount());
+        assertEquals(2, scratchSpace.getVolumes().get(1).getAllocationCount());
+        assertEquals(211, scratchSpace.getUsedBytes());
+        assertTrue(scratchSpace.contains(directory));
+        assertFalse(scratchSpace.contains(small));
+        assertTrue(scratchSpace.isVolume(large));
+    }
+
+    @Test
+    public void testVolumeLimit() throws IOException {
+        ScratchSpace scratchSpace = new ScratchSpace(Arrays.asList(new ScratchSpace.Volume(small, 100, 150, 0),
+                new ScratchSpace.Volume(large, 0, 0, 0)), 0, 0);
+
+        assertEquals(small, scratchSpace.createTempFile("scratch", ".tmp", 100).getParentFile());
+        // the small volume is full, the file falls through to the next volume
+        assertEquals(large, scratchSpace.createTempFile("scratch", ".tmp", 100).getParentFile());
+        assertEquals(1, scratchSpace.getVolumes().get(0).getFileCount());
+    }
+
+    @Test
+    public void testTotalLimit() throws IOException {
+        ScratchSpace scratchSpace = new ScratchSpace(Arrays.asList(new ScratchSpace.Volume(large, 0, 0, 0)), 150, 10);
+
+        File file = scratchSpace.createTempFile("scratch", ".tmp", 100);
+        try {
+            scratchSpace.createTempFile("scratch", ".tmp", 100);
+            fail("limit exceeded");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(1, scratchSpace.getWaitCount());
+        assertEquals(1, scratchSpace.getRejectedCount());
+
+        scratchSpace.release(file);
+        assertEquals(0, scratchSpace.getUsedBytes());
+        scratchSpace.createTempFile("scratch", ".tmp", 100);
+    }
+
+    @Test
+    public void testDeletedFilesAreReclaimedWhenSpaceIsShort() throws IOException {
+        ScratchSpace scratchSpace = new ScratchSpace(Arrays.asList(new ScratchSpace.Volume(large, 0, 150, 0)), 0, 0);
+
+        File file = scratchSpace.createTempFile("scratch", ".tmp", 100);
+        assertEquals(100, scratchSpace.getUsedBytes());
+        assertTrue(file.delete());
+        // the volume is not rescanned until it runs out of space
+        assertEquals(100, scratchSpace.getUsedBytes());
+        scratchSpace.createTempFile("scratch", ".tmp", 100);
+        assertEquals(100, scratchSpace.getUsedBytes());
+        assertEquals(0, scratchSpace.getRejectedCount());
+    }
+
+    @Test
+    public void testReportedSizesAreCounted() throws IOException {
+        ScratchSpace scratchSpace = new ScratchSpace(Arrays.asList(new ScratchSpace.Volume(large, 0, 0, 0)), 0, 0);
+
+        File file = scratchSpace.createTempFile("scratch", ".tmp", 10);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[100]);
+        } finally {
+            out.close();
+        }
+        assertEquals(10, scratchSpace.getUsedBytes());
+        scratchSpace.updateSize(file, file.length());
+        assertEquals(100, scratchSpace.getUsedBytes());
+        scratchSpace.release(file);
+        assertEquals(0, scratchSpace.getUsedBytes());
+    }
+
+    @Test
+    public void testMinFreeSpace() throws IOException {
+        ScratchSpace scratchSpace = new ScratchSpace(Arrays.asList(new ScratchSpace.Volume(small, 0, 0,
+                Long.MAX_VALUE), new ScratchSpace.Volume(large, 0, 0, 0)), 0, 0);
+
+        assertEquals(large, scratchSpace.createTempFile("scratch", ".tmp", 1).getParentFile());
+    }
+
+    private static File createTempDirectory() throws IOException {
+        File directory = File.createTempFile("scratch", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        return directory;
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                delete(file);
+            }
+        }
+        directory.delete();
+    }
+
+}
@@ -0,0 +1,144 @@
+/**
+ * ﻿Copyright (C) 2006 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.commons.context;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class TempFileArenaTest {
+
+    @Test
+    public void testCloseDeletesRegisteredFiles() throws IOException {
+        TempFileArena arena = new TempFileArena();
+        File file = arena.createTempFile("arena", ".tmp");
+        write(file, 10);
+        File directory = createTempDirectory();
+        write(new File(directory, "child"), 5);
+        arena.register(directory);
+        // files within registered directories are counted once
+        arena.register(new File(directory, "child"));
+        arena.register(file);
+
+        assertEquals(15, arena.getUsedBytes());
+
+        arena.close();
+        assertFalse(file.exists());
+        assertFalse(directory.exists());
+        assertEquals(0, arena.getUsedBytes());
+    }
+
+    @Test
+    public void testQuota() throws IOException {
+        TempFileArena arena = new TempFileArena(8);
+        try {
+            File file = arena.createTempFile("arena", ".tmp");
+            write(file, 8);
+            arena.checkQuota();
+
+            File second = File.createTempFile("arena", ".tmp");
+            write(second, 1);
+            try {
+                arena.register(second);
+                fail("limit exceeded");
+            } catch (IOException e) {
+                // expected
+            }
+            arena.close();
+            assertFalse(second.exists());
+        } finally {
+            arena.close();
+        }
+    }
+
+    @Test
+    public void testRegisterMeasuresOnlyTheRegisteredFile() throws IOException {
+        TempFileArena arena = new TempFileArena(9);
+        try {
+            File directory = createTempDirectory();
+            File child = new File(directory, "child");
+            write(child, 5);
+            arena.register(child);
+            // the directory replaces its child in the running total
+            arena.register(directory);
+
+            File file = arena.createTempFile("arena", ".tmp");
+            write(file, 5);
+            File grown = arena.createTempFile("arena", ".tmp");
+            // growth after registration is only seen by checkQuota
+            write(grown, 5);
+            arena.register(File.createTempFile("arena", ".tmp"));
+            try {
+                arena.checkQuota();
+                fail("limit exceeded");
+            } catch (IOException e) {
+                // expected
+            }
+            assertEquals(15, arena.getUsedBytes());
+        } finally {
+            arena.close();
+        }
+    }
+
+    @Test
+    public void testDefaultArenaIsNotClosed() throws IOException {
+        File file = File.createTempFile("arena", ".tmp");
+        try {
+            TempFileArena.getDefault().register(file);
+            TempFileArena.getDefault().close();
+            assertTrue(file.exists());
+        } finally {
+            file.delete();
+        }
+        assertSame(TempFileArena.getDefault(), ExecutionContextFactory.getDefault().getTempFileArena());
+    }
+
+    @Test
+    public void testContextWithOtherArena() {
+        ExecutionContext context = new ExecutionContext();
+        TempFileArena arena = new TempFileArena();
+        ExecutionContext other = new ExecutionContext(context, arena);
+        assertSame(arena, other.getTempFileArena());
+        assertEquals(context.getTempDirectoryPath(), other.getTempDirectoryPath());
+        assertSame(context.getOutputs(), other.getOutputs());
+    }
+
+    private static File createTempDirectory() throws IOException {
+        File directory = File.createTempFile("arena", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        return directory;
+    }
+
+    private static void write(File file, int length) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(new byte[length]);
+        } finally {
+            os.close();
+        }
+    }
+
+}
@@ -388,6 +388,24 @@ public abstract class AbstractDatabase implements IDatabase{
 	public File lookupResponseAsFile(String id) {
 		return null;
 	}
+
+    @Override
+	public StoredResponse lookupStoredResponse(String id) {
+		String mimeType = getMimeTypeForStoreResponse(id);
+		if (mimeType == null) {
+			return null;
+		}
+		File file = lookupResponseAsFile(id);
+		if (file == null || !file.isFile()) {
+			return new StoredResponse(id, mimeType, getContentLengthForStoreResponse(id), -1, null);
+		}
+		// gzipped files do not hold the response bytes, they are either sent
+		// as-is or inflated via lookupResponse(...)
+		if (file.getName().endsWith(".gz")) {
+			return new StoredResponse(id, mimeType, getContentLengthForStoreResponse(id), file.lastModified(), null, file);
+		}
+		return new StoredResponse(id, mimeType, file.length(), file.lastModified(), file);
+	}
     
     public String getBaseResultURL() {
 
@@ -235,5 +235,10 @@ public class DatabaseFactory implements IDatabase
 	public File lookupResponseAsFile(String id) {
 		return DatabaseFactory.database.lookupResponseAsFile(id);
 	}
+
+    @Override
+	public StoredResponse lookupStoredResponse(String id) {
+		return DatabaseFactory.database.lookupStoredResponse(id);
+	}
 	
 }
@@ -465,6 +465,47 @@ public final class FlatFileDatabase extends AbstractDatabase {
         }
     }
 
+    @Override
+    public StoredResponse lookupStoredResponse(String id) {
+
+        File responseDirectory = generateResponseDirectory(id);
+        if (responseDirectory.exists()) {
+            synchronized (storeResponseSerialNumberLock) {
+                File responseFile = findLatestResponseFile(responseDirectory);
+                return responseFile == null ? null
+                                           : new StoredResponse(id,
+                                                                "text/xml",
+                                                                responseFile.length(),
+                                                                responseFile.lastModified(),
+                                                                responseFile);
+            }
+        }
+        else {
+            String mimeType = getMimeTypeForStoreResponse(id);
+            if (mimeType != null) {
+                File responseFile = generateComplexDataFile(id, mimeType, false);
+                if (responseFile.exists()) {
+                    return new StoredResponse(id,
+                                              mimeType,
+                                              responseFile.length(),
+                                              responseFile.lastModified(),
+                                              responseFile);
+                }
+                // gzipped content is either sent as-is or inflated through lookupResponse(...)
+                responseFile = generateComplexDataFile(id, mimeType, true);
+                if (responseFile.exists()) {
+                    return new StoredResponse(id,
+                                              mimeType,
+                                              getContentLengthForStoreResponse(id),
+                                              responseFile.lastModified(),
+                                              null,
+                                              responseFile);
+                }
+            }
+            return null;
+        }
+    }
+
     @Override
     public boolean deleteStoredResponse(String id) {
         return false;
@@ -91,5 +91,10 @@ public interface IDatabase {
     public File lookupRequestAsFile(String id);
 
 	public File lookupResponseAsFile(String id);
+
+	// Retrieve mime type, content length, modification date and (if available)
+	// the backing file of a stored response in one lookup, or null if the
+	// id is unknown.
+	public StoredResponse lookupStoredResponse(String id);
 	
 }
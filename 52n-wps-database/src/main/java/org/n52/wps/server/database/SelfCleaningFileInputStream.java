@@ -49,6 +49,7 @@ public class SelfCleaningFileInputStream extends FileInputStream {
 
 	public SelfCleaningFileInputStream(File file) throws FileNotFoundException {
 		super(file);
+		this.file = file;
 	}
 
 	@Override
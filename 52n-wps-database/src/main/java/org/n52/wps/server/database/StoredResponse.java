@@ -0,0 +1,131 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.database;
+
+import java.io.File;
+
+/**
+ * Metadata of a stored response as needed to serve it through the
+ * RetrieveResultServlet, resolved with a single lookup against the database.
+ * 
+ * @see IDatabase#lookupStoredResponse(String)
+ */
+public class StoredResponse {
+
+    private final String id;
+
+    private final String mimeType;
+
+    private final long contentLength;
+
+    private final long lastModified;
+
+    private final File file;
+
+    private final File gzipFile;
+
+    /**
+     * @param id
+     *        the id of the stored response
+     * @param mimeType
+     *        the mime type of the stored response
+     * @param contentLength
+     *        the length of the response content in bytes, or <code>-1</code> if unknown
+     * @param lastModified
+     *        the time the response was stored in milliseconds since the epoch, or <code>-1</code> if
+     *        unknown
+     * @param file
+     *        the file holding the exact bytes of the response, or <code>null</code> if the response is
+     *        not file-backed (or is stored in an encoded form)
+     */
+    public StoredResponse(String id, String mimeType, long contentLength, long lastModified, File file) {
+        this(id, mimeType, contentLength, lastModified, file, null);
+    }
+
+    /**
+     * @param id
+     *        the id of the stored response
+     * @param mimeType
+     *        the mime type of the stored response
+     * @param contentLength
+     *        the length of the (decoded) response content in bytes, or <code>-1</code> if unknown
+     * @param lastModified
+     *        the time the response was stored in milliseconds since the epoch, or <code>-1</code> if
+     *        unknown
+     * @param file
+     *        the file holding the exact bytes of the response, or <code>null</code>
+     * @param gzipFile
+     *        the file holding the gzip compressed response, or <code>null</code>
+     */
+    public StoredResponse(String id, String mimeType, long contentLength, long lastModified, File file, File gzipFile) {
+        this.id = id;
+        this.mimeType = mimeType;
+        this.contentLength = contentLength;
+        this.lastModified = lastModified;
+        this.file = file;
+        this.gzipFile = gzipFile;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isFileBacked() {
+        return file != null;
+    }
+
+    /**
+     * @return the gzip compressed response, which may be sent as-is to clients accepting the gzip content
+     *         coding, or <code>null</code>
+     */
+    public File getGzipFile() {
+        return gzipFile;
+    }
+
+    public boolean isGzipBacked() {
+        return gzipFile != null;
+    }
+
+}
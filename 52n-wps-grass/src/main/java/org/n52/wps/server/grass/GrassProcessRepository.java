@@ -29,6 +29,7 @@
 package org.n52.wps.server.grass;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -37,6 +38,7 @@ import java.util.Map;
 import net.opengis.wps.x100.ProcessDescriptionType;
 
 import org.n52.wps.PropertyDocument.Property;
+import org.n52.wps.commons.ScratchSpace;
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.server.IAlgorithm;
 import org.n52.wps.server.IAlgorithmRepository;
@@ -116,6 +118,17 @@ public class GrassProcessRepository implements IAlgorithmRepository {
 				}
 			}
 
+			if (tmpDir == null) {
+				// the directory is emptied on startup, so it must not be a scratch volume itself
+				try {
+					tmpDir = new File(ScratchSpace.getInstance().getDirectory(ScratchSpace.UNKNOWN_SIZE), "wps-grass")
+							.getAbsolutePath();
+					LOGGER.info("Using GRASS temporary directory " + tmpDir);
+				} catch (IOException e) {
+					LOGGER.warn("No scratch space available for GRASS", e);
+				}
+			}
+
 			HashMap<String, String> variableMap = new HashMap<String, String>();
 
 			variableMap.put(GRASSWPSConfigVariables.TMP_Dir.toString(), tmpDir);
@@ -262,15 +275,13 @@ public class GrassProcessRepository implements IAlgorithmRepository {
 	}
 
 	public boolean containsAlgorithm(String processID) {
-		if (registeredProcesses.containsKey(processID)) {
-			return true;
-		}
-		LOGGER.warn("Could not find Grass process " + processID);
-		return false;
+		// the RepositoryManager probes every repository, a miss is expected
+		return registeredProcesses.containsKey(processID);
 	}
 
 	public IAlgorithm getAlgorithm(String processID) {
 		if (!containsAlgorithm(processID)) {
+			LOGGER.warn("Could not find Grass process " + processID);
 			throw new RuntimeException("Could not allocate process");
 		}
 		return new GrassProcessDelegator(processID,
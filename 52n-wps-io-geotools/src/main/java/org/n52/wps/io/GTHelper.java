@@ -61,6 +61,7 @@ import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.gml2.SrsSyntax;
 import org.geotools.referencing.CRS;
+import org.n52.wps.commons.ScratchSpace;
 import org.n52.wps.commons.WPSConfig;
 import org.opengis.feature.Feature;
 import org.opengis.feature.Property;
@@ -457,7 +458,7 @@ public class GTHelper {
 			int startIndex = domain.indexOf("WEB-INF");
 			if(startIndex<0){
 				//not running as webapp				
-				File f = File.createTempFile(uuid, ".xsd");
+				File f = ScratchSpace.getInstance().createTempFile(uuid, ".xsd", schema.length());
 				f.deleteOnExit();
 				FileWriter writer = new FileWriter(f);
 				writer.write(schema);
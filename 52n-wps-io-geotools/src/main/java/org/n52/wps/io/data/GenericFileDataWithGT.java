@@ -89,6 +89,7 @@ import org.opengis.filter.identity.Identifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.n52.wps.commons.ScratchSpace;
 import org.n52.wps.io.IOHandler;
 import org.n52.wps.io.data.binding.complex.GTRasterDataBinding;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
@@ -476,7 +477,8 @@ public class GenericFileDataWithGT {
 			if(fileExtension.equals("shp")){
 				extension = "zip";
 			}
-			primaryFile = File.createTempFile(UUID.randomUUID().toString(), "."+extension);
+			primaryFile = ScratchSpace.getInstance().createTempFile(UUID.randomUUID().toString(), "."+extension,
+					ScratchSpace.UNKNOWN_SIZE);
 			OutputStream out = new FileOutputStream(primaryFile);
 			byte buf[]=new byte[1024];
 			int len;
@@ -494,8 +496,7 @@ public class GenericFileDataWithGT {
 		}
 		if(unzipIfPossible && extension.contains("zip")){
 			try{
-			File tempFile1 = File.createTempFile(UUID.randomUUID().toString(),"");
-			File dir = new File(tempFile1.getParentFile()+"/"+UUID.randomUUID().toString());
+			File dir = new File(ScratchSpace.getInstance().getDirectory(ScratchSpace.UNKNOWN_SIZE), UUID.randomUUID().toString());
 			dir.mkdir();
 			FileInputStream fis = new FileInputStream(primaryFile);
 			ZipInputStream zis = new ZipInputStream(fis);
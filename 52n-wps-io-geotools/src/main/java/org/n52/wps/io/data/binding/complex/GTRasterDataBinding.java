@@ -47,12 +47,18 @@
  */
 package org.n52.wps.io.data.binding.complex;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.awt.image.WritableRenderedImage;
 import java.io.IOException;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
 import org.n52.wps.io.data.IComplexData;
+import org.n52.wps.io.data.ICopyableData;
 
-public class GTRasterDataBinding implements IComplexData {
+public class GTRasterDataBinding implements IComplexData, ICopyableData {
 	protected GridCoverage2D payload; 
 	
 	public GTRasterDataBinding(GridCoverage2D coverage){
@@ -67,6 +73,27 @@ public class GTRasterDataBinding implements IComplexData {
 		return GridCoverage2D.class;
 	}
 
+	/**
+	 * Copies the pixels of a writable image. Read-only images, like those of
+	 * coverages read from files, can not be modified through the coverage and
+	 * are shared by the copy.
+	 */
+	@Override
+	public GTRasterDataBinding copy() {
+		RenderedImage image = payload.getRenderedImage();
+		if ( !(image instanceof WritableRenderedImage)) {
+			return new GTRasterDataBinding(payload);
+		}
+		if (image.getColorModel() == null || image.getMinX() != 0 || image.getMinY() != 0) {
+			throw new UnsupportedOperationException("Only images with a color model and origin 0,0 can be copied");
+		}
+		WritableRaster raster = image.copyData(null);
+		BufferedImage copy = new BufferedImage(image.getColorModel(), raster,
+				image.getColorModel().isAlphaPremultiplied(), null);
+		return new GTRasterDataBinding(new GridCoverageFactory().create(payload.getName(), copy,
+				payload.getGridGeometry(), payload.getSampleDimensions(), null, payload.getProperties()));
+	}
+
 	private synchronized void writeObject(java.io.ObjectOutputStream oos) throws IOException
 	{
 		throw new RuntimeException("Serialization of 'GTRasterDataBinding' data type not implemented yet.");
@@ -52,15 +52,24 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 
 import org.n52.wps.io.data.GenericFileDataWithGT;
 import org.n52.wps.io.data.IComplexData;
+import org.n52.wps.io.data.ICopyableData;
 import org.n52.wps.io.datahandler.generator.SimpleGMLGenerator;
 import org.n52.wps.io.datahandler.parser.SimpleGMLParser;
 
-public class GTVectorDataBinding implements IComplexData{
+public class GTVectorDataBinding implements IComplexData, ICopyableData {
 	
 	protected transient FeatureCollection<?, ?> featureCollection;	
 	
@@ -85,6 +94,34 @@ public class GTVectorDataBinding implements IComplexData{
 		}
 		
 	}
+	/**
+	 * Copies the features including their geometries into a collection held
+	 * in memory. Only collections of simple features can be copied.
+	 */
+	@Override
+	public GTVectorDataBinding copy() {
+		if ( !(featureCollection.getSchema() instanceof SimpleFeatureType)) {
+			throw new UnsupportedOperationException("Only simple features can be copied, not "
+					+ featureCollection.getSchema().getName());
+		}
+		List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+		FeatureIterator<?> iterator = featureCollection.features();
+		try {
+			while (iterator.hasNext()) {
+				Feature feature = iterator.next();
+				if ( !(feature instanceof SimpleFeature)) {
+					throw new UnsupportedOperationException("Only simple features can be copied, not "
+							+ feature.getClass().getName());
+				}
+				features.add(SimpleFeatureBuilder.deep((SimpleFeature) feature));
+			}
+		} finally {
+			iterator.close();
+		}
+		return new GTVectorDataBinding(new ListFeatureCollection((SimpleFeatureType) featureCollection.getSchema(),
+				features));
+	}
+
 	private synchronized void writeObject(java.io.ObjectOutputStream oos) throws IOException
 	{
 		StringWriter buffer = new StringWriter();
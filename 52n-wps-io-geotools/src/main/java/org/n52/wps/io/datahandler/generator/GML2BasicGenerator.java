@@ -47,11 +47,9 @@
  */
 package org.n52.wps.io.datahandler.generator;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -110,6 +108,7 @@ public class GML2BasicGenerator extends AbstractGenerator {
 			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
 			writer.write("<wfs:FeatureCollection xmlns:wfs=\"http://www.opengis.net/wfs\" xmlns:gml=\"http://www.opengis.net/gml\"/>");
 			writer.flush();
+			return;
 		}
 		Feature f = fc.features().next();
 		FeatureType ft = f.getType();
@@ -160,7 +159,7 @@ public class GML2BasicGenerator extends AbstractGenerator {
 		
 		try{
 			tx.transform( fc, writer);
-			writer.close();
+			writer.flush();
 		}
 		catch(TransformerException e) {
 			LOGGER.error(e.getMessage());
@@ -169,16 +168,8 @@ public class GML2BasicGenerator extends AbstractGenerator {
 	}
 	
 	@Override
-	public InputStream generateStream(IData data, String mimeType, String schema) throws IOException {
-		
-		File tempFile = File.createTempFile("gml2", "xml");
-		finalizeFiles.add(tempFile);
-		FileWriter fw = new FileWriter(tempFile);
-		write(data, fw);
-		fw.close();
-		InputStream is = new FileInputStream(tempFile);
-		return is;
-		
+	public void writeTo(IData data, OutputStream os, String mimeType, String schema) throws IOException {
+		write(data, new OutputStreamWriter(os, "UTF-8"));
 	}
 
 }
@@ -47,11 +47,7 @@
  */
 package org.n52.wps.io.datahandler.generator;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
@@ -155,20 +151,8 @@ public class GML3BasicGenerator extends AbstractGenerator {
 	}
 
 	@Override
-	public InputStream generateStream(final IData data, String mimeType, String schema) throws IOException {
-		String uuid = UUID.randomUUID().toString();
-		File file = File.createTempFile("gml3"+uuid, ".xml");
-		FileOutputStream outputStream = new FileOutputStream(file);
-		this.writeToStream(data, outputStream);
-		outputStream.flush();
-		outputStream.close();
-		if(file.length() <= 0) {
-			return null;
-		}
-		FileInputStream inputStream = new FileInputStream(file);
-		
-		return inputStream;
-		
+	public void writeTo(IData data, OutputStream os, String mimeType, String schema) throws IOException {
+		writeToStream(data, os);
 	}
 
 	private SimpleFeatureCollection createCorrectFeatureCollection(FeatureCollection<?,?> fc) {
@@ -48,13 +48,15 @@
 package org.n52.wps.io.datahandler.generator;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 
+import org.apache.commons.io.FileUtils;
 import org.n52.wps.io.IOUtils;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Generator to create a zipped shapefile by using GDMS drivers:
@@ -64,34 +66,33 @@ import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
  */
 public class GTBinZippedSHPGenerator extends AbstractGenerator {
 	
+	private static Logger LOGGER = LoggerFactory.getLogger(GTBinZippedSHPGenerator.class);
+	
 	public GTBinZippedSHPGenerator(){
 		super();
 		supportedIDataTypes.add(GTVectorDataBinding.class);	
 	}
 	
 	@Override
-	public InputStream generateStream(IData data, String mimeType, String schema) throws IOException {
+	public void writeTo(IData data, OutputStream os, String mimeType, String schema) throws IOException {
 		
 //		// check for correct request before returning the stream
 //		if (!(this.isSupportedGenerate(data.getSupportedClass(), mimeType, schema))){
 //			throw new IOException("I don't support the incoming datatype");
 //		}
 		GTBinDirectorySHPGenerator directoryShp = new GTBinDirectorySHPGenerator(); 
-		InputStream stream = new FileInputStream(createZippedShapefile(
-				directoryShp.writeFeatureCollectionToDirectory(data)));
-		
-		return stream;
-	}
-
-	private File createZippedShapefile(File shapeDirectory) throws IOException {
+		File shapeDirectory = directoryShp.writeFeatureCollectionToDirectory(data);
 		if (shapeDirectory != null && shapeDirectory.isDirectory()) {
-			File[] files = shapeDirectory.listFiles();
-			return IOUtils.zip(files);
+			// the shapefile has to be written to disk, but is zipped directly into the stream
+			try {
+				IOUtils.zip(os, shapeDirectory.listFiles());
+			} finally {
+				// the directory still holds the .shp, .shx, .dbf and .prj files
+				if (!FileUtils.deleteQuietly(shapeDirectory)) {
+					LOGGER.warn("Could not delete temporary shapefile directory {}", shapeDirectory);
+				}
+			}
 		}
-
-		return null;
 	}
-	
 
-	
 }
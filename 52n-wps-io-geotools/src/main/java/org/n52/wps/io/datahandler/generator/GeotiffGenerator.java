@@ -88,10 +88,7 @@ public class GeotiffGenerator  extends AbstractGenerator {
 			
 			GridCoverage coverage = ((GTRasterDataBinding)data).getPayload();
 			GeoTiffWriter geoTiffWriter = null;
-			String tmpDirPath = System.getProperty("java.io.tmpdir");			
-			String fileName = tmpDirPath + File.separatorChar + "temp" + UUID.randomUUID() + ".tmp";
-			File outputFile = new File(fileName);
-			this.finalizeFiles.add(outputFile); // mark file for final delete
+			File outputFile = createTempFile("temp" + UUID.randomUUID(), ".tmp");
 			
 			try {
 				geoTiffWriter = new GeoTiffWriter(outputFile);
@@ -76,10 +76,7 @@ public class GTBinZippedSHPParser extends AbstractParser {
 	@Override
 	public GTVectorDataBinding parse(InputStream stream, String mimeType, String schema) {
 		try {
-			String fileName = "tempfile" + UUID.randomUUID() + ".zip";
-			String tmpDirPath = System.getProperty("java.io.tmpdir");
-			File tempFile = new File(tmpDirPath + File.separatorChar + fileName);
-			finalizeFiles.add(tempFile); // mark tempFile for final delete
+			File tempFile = createTempFile("tempfile" + UUID.randomUUID(), ".zip");
 			try {
 				FileOutputStream outputStream = new FileOutputStream(tempFile);
 				byte buf[] = new byte[4096];
@@ -80,8 +80,7 @@ public class GeotiffParser extends AbstractParser {
 		File tempFile;
 		
 		try {
-            tempFile = File.createTempFile("tempfile" + UUID.randomUUID(),"tmp");
-            finalizeFiles.add(tempFile); // mark for final delete
+            tempFile = createTempFile("tempfile" + UUID.randomUUID(),"tmp");
 			FileOutputStream outputStream = new FileOutputStream(tempFile);
 			byte buf[] = new byte[4096];
 			int len;
@@ -75,10 +75,12 @@ public class GeotiffZippedParser extends AbstractParser {
 		File zippedFile;
 		try {
 			zippedFile = IOUtils.writeStreamToFile(input, "zip");
-			finalizeFiles.add(zippedFile); // mark for final delete
+			registerTempFile(zippedFile);
 		
 			List<File> files = IOUtils.unzipAll(zippedFile);
-			finalizeFiles.addAll(files); // mark for final delete
+			for (File file : files) {
+				registerTempFile(file);
+			}
 			
 			for(File file : files){
 				if(file.getName().toLowerCase().endsWith(".tif") || file.getName().toLowerCase().endsWith(".tiff")){
@@ -47,6 +47,8 @@
  */
 package org.n52.wps.io.test.datahandler.generator;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -103,6 +105,13 @@ public class GML3BasicGeneratorTest extends AbstractTestCase<GML3BasicGenerator>
 			assertTrue(parsedGeneratedBinding.getPayloadAsShpFile().exists());
 			assertTrue(!parsedGeneratedBinding.getPayload().isEmpty());
 
+			ByteArrayOutputStream written = new ByteArrayOutputStream();
+			dataHandler.writeTo(theBinding, written, "text/xml; subtype=gml/3.2.1", "http://schemas.opengis.net/gml/3.2.1/base/feature.xsd");
+
+			GTVectorDataBinding parsedWrittenBinding = theParser.parse(new ByteArrayInputStream(written.toByteArray()), "text/xml; subtype=gml/3.2.1", "http://schemas.opengis.net/gml/3.2.1/base/feature.xsd");
+
+			assertTrue(!parsedWrittenBinding.getPayload().isEmpty());
+
 			InputStream resultStreamBase64 = dataHandler.generateBase64Stream(theBinding, "text/xml; subtype=gml/3.2.1", "http://schemas.opengis.net/gml/3.2.1/base/feature.xsd");
 
 			GTVectorDataBinding parsedGeneratedBindingBase64 = (GTVectorDataBinding) theParser.parseBase64(resultStreamBase64, "text/xml; subtype=gml/3.2.1", "http://schemas.opengis.net/gml/3.2.1/base/feature.xsd");
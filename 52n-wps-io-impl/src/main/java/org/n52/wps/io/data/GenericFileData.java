@@ -40,6 +40,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 import org.apache.commons.io.IOUtils;
+import org.n52.wps.commons.ScratchSpace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -212,7 +213,8 @@ public class GenericFileData {
 			if(fileExtension.equals("shp")){
 				extension = "zip";
 			}
-			primaryFile = File.createTempFile(UUID.randomUUID().toString(), "."+extension);
+			primaryFile = ScratchSpace.getInstance().createTempFile(UUID.randomUUID().toString(), "."+extension,
+					ScratchSpace.UNKNOWN_SIZE);
 			OutputStream out = new FileOutputStream(primaryFile);
 			byte buf[]=new byte[1024];
 			int len;
@@ -230,8 +232,7 @@ public class GenericFileData {
 		}
 		if(unzipIfPossible && extension.contains("zip")){
 			try{
-			File tempFile1 = File.createTempFile(UUID.randomUUID().toString(),"");
-			File dir = new File(tempFile1.getParentFile()+"/"+UUID.randomUUID().toString());
+			File dir = new File(ScratchSpace.getInstance().getDirectory(ScratchSpace.UNKNOWN_SIZE), UUID.randomUUID().toString());
 			dir.mkdir();
 			FileInputStream fis = new FileInputStream(primaryFile);
 			ZipInputStream zis = new ZipInputStream(fis);
@@ -16,11 +16,14 @@
  */
 package org.n52.wps.io;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.n52.wps.FormatDocument.Format;
 import org.n52.wps.PropertyDocument.Property;
+import org.n52.wps.commons.context.ExecutionContextFactory;
 
 
 /**
@@ -46,6 +49,30 @@ public abstract class AbstractIOHandler implements IOHandler {
 		this.supportedIDataTypes = new ArrayList<Class<?>>();
 	}
 	
+	/**
+	 * Registers a temporary file or directory written during parsing or
+	 * generation. It is deleted once the response to the current request has
+	 * been written, outside of requests when the JVM exits.
+	 * 
+	 * @throws IOException
+	 *             if the temporary files exceed the limit of the request
+	 */
+	protected void registerTempFile(File file) throws IOException {
+		ExecutionContextFactory.getContext().getTempFileArena().register(file);
+	}
+	
+	/**
+	 * Creates an empty temporary file on the scratch space, which is deleted
+	 * like files passed to {@link #registerTempFile(File)}.
+	 * 
+	 * @throws IOException
+	 *             if the temporary files exceed the limit of the request or no
+	 *             scratch space is available
+	 */
+	protected File createTempFile(String prefix, String suffix) throws IOException {
+		return ExecutionContextFactory.getContext().getTempFileArena().createTempFile(prefix, suffix);
+	}
+	
 	/**
 	 * Returns true if the given format is supported, else false.
 	 */ 
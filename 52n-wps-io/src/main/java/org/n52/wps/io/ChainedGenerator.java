@@ -0,0 +1,172 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.n52.wps.FormatDocument.Format;
+import org.n52.wps.io.data.IData;
+
+/**
+ * Generates a format no registered generator writes from the output binding
+ * directly, by converting the output through intermediate formats into a
+ * binding the last generator supports.
+ * 
+ * @see ConversionPlanner
+ */
+final class ChainedGenerator implements IGenerator {
+	
+	private final List<FormatConversion> conversions;
+	private final IGenerator generator;
+	
+	ChainedGenerator(List<FormatConversion> conversions, IGenerator generator) {
+		this.conversions = conversions;
+		this.generator = generator;
+	}
+
+	@Override
+	public InputStream generateStream(IData data, String mimeType, String schema) throws IOException {
+		IData converted = FormatConversion.applyAll(conversions, data);
+		try {
+			return new DisposingInputStream(generator.generateStream(converted, mimeType, schema), converted, data);
+		} catch (IOException e) {
+			FormatConversion.dispose(converted, data);
+			throw e;
+		}
+	}
+
+	@Override
+	public InputStream generateBase64Stream(IData data, String mimeType, String schema) throws IOException {
+		IData converted = FormatConversion.applyAll(conversions, data);
+		try {
+			return new DisposingInputStream(generator.generateBase64Stream(converted, mimeType, schema), converted, data);
+		} catch (IOException e) {
+			FormatConversion.dispose(converted, data);
+			throw e;
+		}
+	}
+
+	@Override
+	public void writeTo(IData data, OutputStream os, String mimeType, String schema) throws IOException {
+		IData converted = FormatConversion.applyAll(conversions, data);
+		try {
+			generator.writeTo(converted, os, mimeType, schema);
+		} finally {
+			FormatConversion.dispose(converted, data);
+		}
+	}
+
+	@Override
+	public void writeBase64To(IData data, OutputStream os, String mimeType, String schema) throws IOException {
+		IData converted = FormatConversion.applyAll(conversions, data);
+		try {
+			generator.writeBase64To(converted, os, mimeType, schema);
+		} finally {
+			FormatConversion.dispose(converted, data);
+		}
+	}
+
+	@Override
+	public boolean isSupportedSchema(String schema) {
+		return generator.isSupportedSchema(schema);
+	}
+
+	@Override
+	public boolean isSupportedFormat(String format) {
+		return generator.isSupportedFormat(format);
+	}
+
+	@Override
+	public boolean isSupportedEncoding(String encoding) {
+		return generator.isSupportedEncoding(encoding);
+	}
+
+	@Override
+	public boolean isSupportedDataBinding(Class<?> clazz) {
+		return conversions.get(0).getGenerator().isSupportedDataBinding(clazz);
+	}
+
+	@Override
+	public String[] getSupportedSchemas() {
+		return generator.getSupportedSchemas();
+	}
+
+	@Override
+	public String[] getSupportedFormats() {
+		return generator.getSupportedFormats();
+	}
+
+	@Override
+	public String[] getSupportedEncodings() {
+		return generator.getSupportedEncodings();
+	}
+
+	@Override
+	public Format[] getSupportedFullFormats() {
+		return generator.getSupportedFullFormats();
+	}
+
+	@Override
+	public Class<?>[] getSupportedDataBindings() {
+		return conversions.get(0).getGenerator().getSupportedDataBindings();
+	}
+	
+	@Override
+	public String toString() {
+		return conversions + " -> " + generator.getClass().getSimpleName();
+	}
+	
+	/**
+	 * Disposes the converted output once the generated stream is closed.
+	 */
+	private static class DisposingInputStream extends FilterInputStream {
+		
+		private final IData converted;
+		private final IData original;
+		
+		DisposingInputStream(InputStream in, IData converted, IData original) {
+			super(in);
+			this.converted = converted;
+			this.original = original;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				FormatConversion.dispose(converted, original);
+			}
+		}
+	}
+}
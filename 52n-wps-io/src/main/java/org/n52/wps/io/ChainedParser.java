@@ -0,0 +1,125 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.n52.wps.FormatDocument.Format;
+import org.n52.wps.io.data.IData;
+
+/**
+ * Parses a format no registered parser reads into the required binding
+ * directly, by converting the result of the first parser through
+ * intermediate formats.
+ * 
+ * @see ConversionPlanner
+ */
+final class ChainedParser implements IParser {
+	
+	private final IParser parser;
+	private final List<FormatConversion> conversions;
+	
+	ChainedParser(IParser parser, List<FormatConversion> conversions) {
+		this.parser = parser;
+		this.conversions = conversions;
+	}
+	
+	@Override
+	public IData parse(InputStream input, String mimeType, String schema) {
+		return convert(parser.parse(input, mimeType, schema));
+	}
+	
+	@Override
+	public IData parseBase64(InputStream input, String mimeType, String schema) {
+		return convert(parser.parseBase64(input, mimeType, schema));
+	}
+	
+	private IData convert(IData data) {
+		try {
+			IData result = FormatConversion.applyAll(conversions, data);
+			FormatConversion.dispose(data, result);
+			return result;
+		} catch (IOException e) {
+			FormatConversion.dispose(data, null);
+			throw new RuntimeException("Error converting input data: " + this, e);
+		}
+	}
+
+	@Override
+	public boolean isSupportedSchema(String schema) {
+		return parser.isSupportedSchema(schema);
+	}
+
+	@Override
+	public boolean isSupportedFormat(String format) {
+		return parser.isSupportedFormat(format);
+	}
+
+	@Override
+	public boolean isSupportedEncoding(String encoding) {
+		return parser.isSupportedEncoding(encoding);
+	}
+
+	@Override
+	public boolean isSupportedDataBinding(Class<?> clazz) {
+		return conversions.get(conversions.size() - 1).getParser().isSupportedDataBinding(clazz);
+	}
+
+	@Override
+	public String[] getSupportedSchemas() {
+		return parser.getSupportedSchemas();
+	}
+
+	@Override
+	public String[] getSupportedFormats() {
+		return parser.getSupportedFormats();
+	}
+
+	@Override
+	public String[] getSupportedEncodings() {
+		return parser.getSupportedEncodings();
+	}
+
+	@Override
+	public Format[] getSupportedFullFormats() {
+		return parser.getSupportedFullFormats();
+	}
+
+	@Override
+	public Class<?>[] getSupportedDataBindings() {
+		return conversions.get(conversions.size() - 1).getParser().getSupportedDataBindings();
+	}
+	
+	@Override
+	public String toString() {
+		return parser.getClass().getSimpleName() + " -> " + conversions;
+	}
+}
@@ -0,0 +1,350 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.n52.wps.FormatDocument.Format;
+import org.n52.wps.PropertyDocument.Property;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Plans indirect conversions when no single parser or generator connects a
+ * format with a binding.
+ * 
+ * <p>Parsers and generators form a graph over formats and bindings: a parser
+ * leads from each of its formats to each of its bindings, a generator from
+ * each of its bindings to each of its formats. The cheapest path is chosen;
+ * every handler costs 1 unless its configuration sets the property
+ * {@value #PROPERTY_CONVERSION_COST}. Planned paths, and the absence of one,
+ * are remembered until the parsers or generators are reloaded.
+ */
+final class ConversionPlanner {
+	
+	private static Logger LOGGER = LoggerFactory.getLogger(ConversionPlanner.class);
+	
+	public static final String PROPERTY_CONVERSION_COST = "conversionCost";
+	
+	/** maximum number of intermediate formats of a conversion */
+	static final int MAX_CONVERSIONS = 2;
+	
+	static final int MAX_CACHED_PLANS = 1024;
+	
+	private static final double DEFAULT_COST = 1.0;
+	
+	private static final Object NO_PLAN = new Object();
+	
+	/** node of the requested format while planning a generator */
+	private static final Object TARGET = new Object();
+	
+	private static volatile ConversionPlanner planner;
+	
+	private final List<IParser> parsers;
+	private final List<IGenerator> generators;
+	private final ConcurrentMap<IOHandler, Double> costs = new ConcurrentHashMap<IOHandler, Double>();
+	private final ConcurrentMap<List<Object>, Object> plans = new ConcurrentHashMap<List<Object>, Object>();
+	
+	ConversionPlanner(List<IParser> parsers, List<IGenerator> generators) {
+		this.parsers = parsers;
+		this.generators = generators;
+	}
+	
+	/**
+	 * @return the planner for the given handlers, a new one once the
+	 *         factories have reloaded their handlers
+	 */
+	static ConversionPlanner getInstance(List<IParser> parsers, List<IGenerator> generators) {
+		ConversionPlanner current = planner;
+		if (current == null || current.parsers != parsers || current.generators != generators) {
+			current = new ConversionPlanner(parsers, generators);
+			planner = current;
+		}
+		return current;
+	}
+	
+	/**
+	 * Finds a parser reading the format into the binding through
+	 * intermediate formats.
+	 * 
+	 * @return the chained parser or <code>null</code> if there is no path
+	 */
+	IParser planParser(String schema, String format, String encoding, Class<?> binding) {
+		if (binding == null) {
+			return null;
+		}
+		List<Object> key = Arrays.<Object>asList(IParser.class, binding, format, schema, encoding);
+		Object plan = plans.get(key);
+		if (plan == null) {
+			plan = searchParser(schema, format, encoding, binding);
+			remember(key, plan);
+		}
+		return plan == NO_PLAN ? null : (IParser) plan;
+	}
+	
+	/**
+	 * Finds a generator writing the binding in the format through
+	 * intermediate formats.
+	 * 
+	 * @return the chained generator or <code>null</code> if there is no path
+	 */
+	IGenerator planGenerator(String schema, String format, String encoding, Class<?> binding) {
+		if (binding == null) {
+			return null;
+		}
+		List<Object> key = Arrays.<Object>asList(IGenerator.class, binding, format, schema, encoding);
+		Object plan = plans.get(key);
+		if (plan == null) {
+			plan = searchGenerator(schema, format, encoding, binding);
+			remember(key, plan);
+		}
+		return plan == NO_PLAN ? null : (IGenerator) plan;
+	}
+	
+	private void remember(List<Object> key, Object plan) {
+		if (plans.size() < MAX_CACHED_PLANS) {
+			plans.putIfAbsent(key, plan);
+		}
+		if (plan != NO_PLAN) {
+			LOGGER.info("Planned conversion for {}: {}", key, plan);
+		}
+	}
+	
+	private Object searchParser(String schema, String format, String encoding, Class<?> binding) {
+		PriorityQueue<Step> queue = new PriorityQueue<Step>();
+		for (IParser parser : parsers) {
+			if (parser.isSupportedFormat(format) && parser.isSupportedSchema(schema) && parser.isSupportedEncoding(encoding)) {
+				for (Class<?> parsedBinding : parser.getSupportedDataBindings()) {
+					queue.add(new Step(parsedBinding, null, parser, cost(parser)));
+				}
+			}
+		}
+		Set<Object> visited = new HashSet<Object>();
+		Step step;
+		while ((step = queue.poll()) != null) {
+			if (!visited.add(step.node)) {
+				continue;
+			}
+			if (step.node instanceof Class<?>) {
+				Class<?> stepBinding = (Class<?>) step.node;
+				if (binding.isAssignableFrom(stepBinding)) {
+					List<Step> path = step.path();
+					if (path.size() == 1) {
+						return step.handler;
+					}
+					List<FormatConversion> conversions = toConversions(path.subList(1, path.size()));
+					return new ChainedParser((IParser) path.get(0).handler, conversions);
+				}
+				if (step.conversions < MAX_CONVERSIONS) {
+					addGeneratorSteps(queue, step, stepBinding);
+				}
+			} else {
+				addParserSteps(queue, step, (FormatNode) step.node);
+			}
+		}
+		return NO_PLAN;
+	}
+	
+	private Object searchGenerator(String schema, String format, String encoding, Class<?> binding) {
+		PriorityQueue<Step> queue = new PriorityQueue<Step>();
+		queue.add(new Step(binding, null, null, 0));
+		Set<Object> visited = new HashSet<Object>();
+		Step step;
+		while ((step = queue.poll()) != null) {
+			if (!visited.add(step.node)) {
+				continue;
+			}
+			if (step.node == TARGET) {
+				List<Step> path = step.path();
+				List<FormatConversion> conversions = toConversions(path.subList(0, path.size() - 1));
+				return new ChainedGenerator(conversions, (IGenerator) step.handler);
+			}
+			if (step.node instanceof Class<?>) {
+				Class<?> stepBinding = (Class<?>) step.node;
+				if (step.previous != null) {
+					for (IGenerator generator : generators) {
+						if (accepts(generator, stepBinding) && generator.isSupportedFormat(format)
+								&& generator.isSupportedSchema(schema) && generator.isSupportedEncoding(encoding)) {
+							queue.add(new Step(TARGET, step, generator, step.cost + cost(generator)));
+						}
+					}
+				}
+				if (step.conversions < MAX_CONVERSIONS) {
+					addGeneratorSteps(queue, step, stepBinding);
+				}
+			} else {
+				addParserSteps(queue, step, (FormatNode) step.node);
+			}
+		}
+		return NO_PLAN;
+	}
+	
+	private void addGeneratorSteps(PriorityQueue<Step> queue, Step step, Class<?> binding) {
+		for (IGenerator generator : generators) {
+			Format[] formats = generator.getSupportedFullFormats();
+			if (formats == null || !accepts(generator, binding)) {
+				continue;
+			}
+			for (Format format : formats) {
+				FormatNode node = new FormatNode(format.getMimetype(), format.getSchema());
+				queue.add(new Step(node, step, generator, step.cost + cost(generator)));
+			}
+		}
+	}
+	
+	private void addParserSteps(PriorityQueue<Step> queue, Step step, FormatNode node) {
+		for (IParser parser : parsers) {
+			// intermediate data is passed as a plain stream, whatever encodings the parser lists
+			if (parser.isSupportedFormat(node.mimeType) && parser.isSupportedSchema(node.schema)) {
+				for (Class<?> parsedBinding : parser.getSupportedDataBindings()) {
+					queue.add(new Step(parsedBinding, step, parser, step.cost + cost(parser)));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param path alternating generator and parser steps
+	 */
+	private static List<FormatConversion> toConversions(List<Step> path) {
+		List<FormatConversion> conversions = new ArrayList<FormatConversion>();
+		for (int i = 0; i + 1 < path.size(); i += 2) {
+			FormatNode node = (FormatNode) path.get(i).node;
+			conversions.add(new FormatConversion((IGenerator) path.get(i).handler, node.mimeType, node.schema,
+					(IParser) path.get(i + 1).handler));
+		}
+		return Collections.unmodifiableList(conversions);
+	}
+	
+	private static boolean accepts(IGenerator generator, Class<?> binding) {
+		for (Class<?> supportedBinding : generator.getSupportedDataBindings()) {
+			if (supportedBinding.isAssignableFrom(binding)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private double cost(IOHandler handler) {
+		Double cost = costs.get(handler);
+		if (cost == null) {
+			cost = DEFAULT_COST;
+			Property[] properties = handler instanceof AbstractIOHandler ? ((AbstractIOHandler) handler).properties : null;
+			if (properties != null) {
+				for (Property property : properties) {
+					if (property.getName().equalsIgnoreCase(PROPERTY_CONVERSION_COST) && property.getActive()) {
+						try {
+							cost = Math.max(0, Double.parseDouble(property.getStringValue().trim()));
+						} catch (NumberFormatException e) {
+							LOGGER.warn("Invalid {} for {}: {}", PROPERTY_CONVERSION_COST, handler.getClass().getName(), property.getStringValue());
+						}
+					}
+				}
+			}
+			costs.put(handler, cost);
+		}
+		return cost;
+	}
+	
+	/**
+	 * An intermediate format, the encoding is irrelevant as data is passed
+	 * between handlers as a plain stream.
+	 */
+	private static final class FormatNode {
+		
+		final String mimeType;
+		final String schema;
+		
+		FormatNode(String mimeType, String schema) {
+			this.mimeType = mimeType;
+			this.schema = schema == null || schema.isEmpty() ? null : schema;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof FormatNode)) {
+				return false;
+			}
+			FormatNode other = (FormatNode) o;
+			return (mimeType == null ? other.mimeType == null : mimeType.equalsIgnoreCase(other.mimeType))
+					&& (schema == null ? other.schema == null : schema.equals(other.schema));
+		}
+		
+		@Override
+		public int hashCode() {
+			return (mimeType == null ? 0 : mimeType.toLowerCase().hashCode()) * 31 + (schema == null ? 0 : schema.hashCode());
+		}
+	}
+	
+	private static final class Step implements Comparable<Step> {
+		
+		final Object node;
+		final Step previous;
+		final IOHandler handler;
+		final double cost;
+		final int conversions;
+		
+		Step(Object node, Step previous, IOHandler handler, double cost) {
+			this.node = node;
+			this.previous = previous;
+			this.handler = handler;
+			this.cost = cost;
+			int previousConversions = previous == null ? 0 : previous.conversions;
+			this.conversions = node instanceof FormatNode ? previousConversions + 1 : previousConversions;
+		}
+		
+		/**
+		 * @return the steps leading here, the start node excluded if it
+		 *         wasn't reached by a handler
+		 */
+		List<Step> path() {
+			LinkedList<Step> path = new LinkedList<Step>();
+			for (Step step = this; step != null; step = step.previous) {
+				if (step.handler != null) {
+					path.addFirst(step);
+				}
+			}
+			return path;
+		}
+		
+		@Override
+		public int compareTo(Step other) {
+			return Double.compare(cost, other.cost);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.n52.wps.io.data.IComplexData;
+import org.n52.wps.io.data.IData;
+
+/**
+ * One hop of an indirect conversion: data is written by a generator in an
+ * intermediate format and read back by a parser into another binding. The
+ * parser consumes the generator's stream while it is produced, wherever the
+ * generator streams its output.
+ */
+final class FormatConversion {
+	
+	private final IGenerator generator;
+	private final String mimeType;
+	private final String schema;
+	private final IParser parser;
+	
+	FormatConversion(IGenerator generator, String mimeType, String schema, IParser parser) {
+		this.generator = generator;
+		this.mimeType = mimeType;
+		this.schema = schema;
+		this.parser = parser;
+	}
+	
+	IGenerator getGenerator() {
+		return generator;
+	}
+	
+	IParser getParser() {
+		return parser;
+	}
+	
+	IData apply(IData data) throws IOException {
+		InputStream stream = generator.generateStream(data, mimeType, schema);
+		try {
+			return parser.parse(stream, mimeType, schema);
+		} finally {
+			stream.close();
+		}
+	}
+	
+	/**
+	 * Applies the conversions in order. Intermediate results are disposed,
+	 * the given data is left to the caller.
+	 */
+	static IData applyAll(Iterable<FormatConversion> conversions, IData data) throws IOException {
+		IData current = data;
+		try {
+			for (FormatConversion conversion : conversions) {
+				IData next = conversion.apply(current);
+				dispose(current, data);
+				current = next;
+			}
+		} catch (IOException e) {
+			dispose(current, data);
+			throw e;
+		} catch (RuntimeException e) {
+			dispose(current, data);
+			throw e;
+		}
+		return current;
+	}
+	
+	static void dispose(IData intermediate, IData original) {
+		if (intermediate != original && intermediate instanceof IComplexData) {
+			((IComplexData) intermediate).dispose();
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return generator.getClass().getSimpleName() + " -> " + mimeType
+				+ (schema == null ? "" : " (" + schema + ")") + " -> " + parser.getClass().getSimpleName();
+	}
+}
@@ -33,7 +33,7 @@ public class GeneratorFactory {
 	private static GeneratorFactory factory;
 	private static Logger LOGGER = LoggerFactory.getLogger(GeneratorFactory.class);
 	
-	private List<IGenerator> registeredGenerators;
+	private volatile IOHandlerIndex<IGenerator> registeredGenerators = new IOHandlerIndex<IGenerator>(new ArrayList<IGenerator>());
 
 	/**
 	 * This factory provides all available {@link AbstractXMLGenerator} to WPS.
@@ -63,7 +63,7 @@ public class GeneratorFactory {
 	}
 
     private void loadAllGenerators(Generator[] generators){
-        registeredGenerators = new ArrayList<IGenerator>();
+        List<IGenerator> generatorList = new ArrayList<IGenerator>();
 		for(Generator currentGenerator : generators) {
 
 			// remove inactive properties
@@ -92,9 +92,11 @@ public class GeneratorFactory {
 			}
 			if(generator != null) {
 				LOGGER.info("Generator class registered: " + generatorClass);
-				registeredGenerators.add(generator);
+				generatorList.add(generator);
 			}
 		}
+		// lookups see either the previous or the new set of generators
+		registeredGenerators = new IOHandlerIndex<IGenerator>(generatorList);
     }
 
 	public static GeneratorFactory getInstance() {
@@ -112,22 +114,18 @@ public class GeneratorFactory {
 			encoding = IOHandler.DEFAULT_ENCODING;
 		}
 		
-		for(IGenerator generator : registeredGenerators) {
-			Class<?>[] supportedBindings = generator.getSupportedDataBindings();
-			for(Class<?> clazz : supportedBindings){
-				if(clazz.equals(outputInternalClass)) {
-					if(generator.isSupportedSchema(schema) && generator.isSupportedEncoding(encoding) && generator.isSupportedFormat(format)){
-						return generator;
-					}
-				}
-			}
+		IOHandlerIndex<IGenerator> generators = registeredGenerators;
+		IGenerator generator = generators.lookup(outputInternalClass, format, schema, encoding);
+		if (generator != null) {
+			return generator;
 		}
-		//TODO: try a chaining approach, by calculation all permutations and look for matches.
-		return null;
+		// try a chaining approach, converting the output through intermediate formats
+		List<IParser> parsers = ParserFactory.getInstance().getAllParsers();
+		return ConversionPlanner.getInstance(parsers, generators.getHandlers()).planGenerator(schema, format, encoding, outputInternalClass);
 	}
 
 	public List<IGenerator> getAllGenerators() {
-		return registeredGenerators;
+		return registeredGenerators.getHandlers();
 	}
 
 	
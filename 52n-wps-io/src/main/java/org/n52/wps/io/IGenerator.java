@@ -18,7 +18,9 @@ package org.n52.wps.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.n52.wps.io.data.IData;
 
 /** 
@@ -57,4 +59,55 @@ public interface IGenerator extends IOHandler {
 	 */
 	public InputStream generateBase64Stream(IData data, String mimeType, String schema) throws IOException;
 	
+	/**
+	 * 
+	 * @param data
+	 * @param os
+	 * @param mimeType
+	 * @param schema
+	 * 
+	 * generates final output data produced by an IAlgorithm
+	 * directly into the given OutputStream, which is not closed.
+	 * Generators able to encode into a stream should override this
+	 * method, the default copies the result of
+	 * {@link #generateStream(IData, String, String)}.
+	 * 
+	 */
+	public default void writeTo(IData data, OutputStream os, String mimeType, String schema) throws IOException {
+		InputStream is = generateStream(data, mimeType, schema);
+		if (is == null) {
+			return;
+		}
+		try {
+			IOUtils.copyLarge(is, os);
+		} finally {
+			is.close();
+		}
+	}
+	
+	/**
+	 * 
+	 * @param data
+	 * @param os
+	 * @param mimeType
+	 * @param schema
+	 * 
+	 * generates final output data produced by an IAlgorithm, encodes it in Base64
+	 * and writes it into the given OutputStream, which is not closed.
+	 * The default copies the result of
+	 * {@link #generateBase64Stream(IData, String, String)}.
+	 * 
+	 */
+	public default void writeBase64To(IData data, OutputStream os, String mimeType, String schema) throws IOException {
+		InputStream is = generateBase64Stream(data, mimeType, schema);
+		if (is == null) {
+			return;
+		}
+		try {
+			IOUtils.copyLarge(is, os);
+		} finally {
+			is.close();
+		}
+	}
+	
 }
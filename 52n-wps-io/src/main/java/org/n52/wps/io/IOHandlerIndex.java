@@ -0,0 +1,153 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable index of the registered parsers or generators. Handlers are
+ * grouped by the data bindings they support; the handler matching a
+ * combination of binding, format, schema and encoding is resolved once
+ * and then looked up without scanning the handlers again.
+ * 
+ * <p>Only handlers supporting exactly the requested binding class match,
+ * so the index selects the same handler as a scan of the handlers in order
+ * of precedence. Handlers of compatible bindings are left to the
+ * {@link ConversionPlanner}.
+ * 
+ * <p>A factory replaces the whole index when its configuration changes.
+ */
+final class IOHandlerIndex<T extends IOHandler> {
+	
+	/**
+	 * Upper bound of remembered lookups, formats and schemas are taken from
+	 * requests and must not grow the index without limit.
+	 */
+	static final int MAX_CACHED_LOOKUPS = 4096;
+	
+	private static final Object NULL_KEY = new Object();
+	private static final Object NO_HANDLER = new Object();
+	
+	private final List<T> handlers;
+	private final ConcurrentMap<Class<?>, List<T>> candidates = new ConcurrentHashMap<Class<?>, List<T>>();
+	private final ConcurrentMap<Class<?>, ConcurrentMap<Object, ConcurrentMap<Object, ConcurrentMap<Object, Object>>>> lookups =
+			new ConcurrentHashMap<Class<?>, ConcurrentMap<Object, ConcurrentMap<Object, ConcurrentMap<Object, Object>>>>();
+	private final AtomicInteger cachedLookups = new AtomicInteger();
+	
+	/**
+	 * @param handlers the handlers in order of precedence
+	 */
+	IOHandlerIndex(List<T> handlers) {
+		this.handlers = Collections.unmodifiableList(new ArrayList<T>(handlers));
+	}
+	
+	List<T> getHandlers() {
+		return handlers;
+	}
+	
+	/**
+	 * Finds the first handler supporting the binding.
+	 */
+	@SuppressWarnings("unchecked")
+	T lookup(Class<?> binding, String format, String schema, String encoding) {
+		if (binding == null) {
+			return null;
+		}
+		Object result = null;
+		ConcurrentMap<Object, ConcurrentMap<Object, ConcurrentMap<Object, Object>>> byFormat = lookups.get(binding);
+		ConcurrentMap<Object, ConcurrentMap<Object, Object>> bySchema = byFormat == null ? null : byFormat.get(key(format));
+		ConcurrentMap<Object, Object> byEncoding = bySchema == null ? null : bySchema.get(key(schema));
+		if (byEncoding != null) {
+			result = byEncoding.get(key(encoding));
+		}
+		if (result == null) {
+			T handler = find(binding, format, schema, encoding);
+			result = handler == null ? NO_HANDLER : handler;
+			if (cachedLookups.incrementAndGet() <= MAX_CACHED_LOOKUPS) {
+				remember(binding, format, schema, encoding, result);
+			}
+		}
+		return result == NO_HANDLER ? null : (T) result;
+	}
+	
+	private T find(Class<?> binding, String format, String schema, String encoding) {
+		for (T handler : getCandidates(binding)) {
+			if (handler.isSupportedSchema(schema) && handler.isSupportedEncoding(encoding) && handler.isSupportedFormat(format)) {
+				return handler;
+			}
+		}
+		return null;
+	}
+	
+	private List<T> getCandidates(Class<?> binding) {
+		List<T> bindingCandidates = candidates.get(binding);
+		if (bindingCandidates == null) {
+			List<T> exact = new ArrayList<T>();
+			for (T handler : handlers) {
+				for (Class<?> supportedBinding : handler.getSupportedDataBindings()) {
+					if (supportedBinding.equals(binding)) {
+						exact.add(handler);
+						break;
+					}
+				}
+			}
+			candidates.putIfAbsent(binding, Collections.unmodifiableList(exact));
+			bindingCandidates = candidates.get(binding);
+		}
+		return bindingCandidates;
+	}
+	
+	private void remember(Class<?> binding, String format, String schema, String encoding, Object result) {
+		ConcurrentMap<Object, ConcurrentMap<Object, ConcurrentMap<Object, Object>>> byFormat = lookups.get(binding);
+		if (byFormat == null) {
+			lookups.putIfAbsent(binding, new ConcurrentHashMap<Object, ConcurrentMap<Object, ConcurrentMap<Object, Object>>>());
+			byFormat = lookups.get(binding);
+		}
+		ConcurrentMap<Object, ConcurrentMap<Object, Object>> bySchema = byFormat.get(key(format));
+		if (bySchema == null) {
+			byFormat.putIfAbsent(key(format), new ConcurrentHashMap<Object, ConcurrentMap<Object, Object>>());
+			bySchema = byFormat.get(key(format));
+		}
+		ConcurrentMap<Object, Object> byEncoding = bySchema.get(key(schema));
+		if (byEncoding == null) {
+			bySchema.putIfAbsent(key(schema), new ConcurrentHashMap<Object, Object>());
+			byEncoding = bySchema.get(key(schema));
+		}
+		byEncoding.putIfAbsent(key(encoding), result);
+	}
+	
+	private static Object key(String value) {
+		return value == null ? NULL_KEY : value;
+	}
+}
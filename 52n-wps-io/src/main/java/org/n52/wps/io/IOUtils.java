@@ -38,6 +38,8 @@ import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 
 import org.apache.commons.codec.binary.Base64InputStream;
+import org.n52.wps.commons.ScratchSpace;
+import org.n52.wps.commons.context.ExecutionContextFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.xpath.XPathAPI;
@@ -67,10 +69,7 @@ public class IOUtils {
 	public static File writeBase64ToFile(InputStream input, String extension)
 			throws IOException {
 
-        File file = File.createTempFile(
-                "file" + UUID.randomUUID(),
-                "." + extension,
-                new File(System.getProperty("java.io.tmpdir")));
+        File file = createTempFile("file" + UUID.randomUUID(), "." + extension);
         OutputStream outputStream = null;
         try {
             outputStream = new FileOutputStream(file);
@@ -84,7 +83,7 @@ public class IOUtils {
 	
 	public static File writeStreamToFile(InputStream inputStream, String extension)
 	throws IOException {
-		File file = File.createTempFile("file" + UUID.randomUUID(), "." + extension);
+		File file = createTempFile("file" + UUID.randomUUID(), "." + extension);
 		return writeStreamToFile(inputStream, extension, file);
 	}
 
@@ -132,9 +131,31 @@ public class IOUtils {
 	 *             if the zipping process fails.
 	 */
 	public static File zip(File... files) throws IOException {
-		File zip = File.createTempFile("zip" + UUID.randomUUID(), ".zip");
+		File zip = createTempFile("zip" + UUID.randomUUID(), ".zip");
 
-		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+		OutputStream out = new FileOutputStream(zip);
+		try {
+			zip(out, files);
+		} finally {
+			out.close();
+		}
+
+		return zip;
+	}
+
+	/**
+	 * Zip the files into the stream, which is not closed, and delete the
+	 * specified files
+	 * 
+	 * @param output
+	 *            the stream to write the zip archive to
+	 * @param files
+	 *            files to zipped
+	 * @throws IOException
+	 *             if the zipping process fails.
+	 */
+	public static void zip(OutputStream output, File... files) throws IOException {
+		ZipOutputStream out = new ZipOutputStream(output);
 
 		byte[] buffer = new byte[4096];
 		for (File file : files) {
@@ -157,9 +178,7 @@ public class IOUtils {
 
 		deleteResources(files);
 
-		out.close();
-
-		return zip;
+		out.finish();
 	}
 
 	/**
@@ -187,10 +206,7 @@ public class IOUtils {
 		ZipEntry entry;
 		File tempDir = directory;
 		if (tempDir == null || !directory.isDirectory()) {
-			tempDir = File.createTempFile("unzipped" + UUID.randomUUID(), "", new File(System
-					.getProperty("java.io.tmpdir")));
-			tempDir.delete();
-			tempDir.mkdir();
+			tempDir = createTempDirectory("unzipped");
 		}
 		while ((entry = zipInputStream.getNextEntry()) != null) {
 			int count;
@@ -225,10 +241,7 @@ public class IOUtils {
 		ZipInputStream zipInputStream = new ZipInputStream(
 				new BufferedInputStream(new FileInputStream(file)));
 		ZipEntry entry;
-		File tempDir = File.createTempFile("unzipped" + UUID.randomUUID(), "", new File(System
-				.getProperty("java.io.tmpdir")));
-		tempDir.delete();
-		tempDir.mkdir();
+		File tempDir = createTempDirectory("unzipped");
 		while ((entry = zipInputStream.getNextEntry()) != null) {
 			int count;
 			File entryFile = new File(tempDir, entry.getName());
@@ -262,15 +275,16 @@ public class IOUtils {
 	 *            the files to delete
 	 */
 	public static void deleteResources(File... files) {
+		ScratchSpace scratchSpace = ScratchSpace.getInstance();
 		for (File file : files) {
 			if (file != null) {
 				if (file.getAbsolutePath().startsWith(
-						System.getProperty("java.io.tmpdir"))) {
+						System.getProperty("java.io.tmpdir")) || scratchSpace.contains(file)) {
 					delete(file);
 					File parent = file.getAbsoluteFile().getParentFile();
 					if (parent != null
 							&& !(parent.getAbsolutePath().equals(System
-									.getProperty("java.io.tmpdir")))) {
+									.getProperty("java.io.tmpdir"))) && !scratchSpace.isVolume(parent)) {
 						parent.deleteOnExit();
 					}
 				}
@@ -278,6 +292,19 @@ public class IOUtils {
 		}
 	}
 
+	/**
+	 * Temporary files are placed on the scratch space and deleted once the
+	 * current request has finished.
+	 */
+	private static File createTempFile(String prefix, String suffix) throws IOException {
+		return ExecutionContextFactory.getContext().getTempFileArena().createTempFile(prefix, suffix);
+	}
+
+	private static File createTempDirectory(String prefix) throws IOException {
+		return ExecutionContextFactory.getContext().getTempFileArena()
+				.createTempDirectory(prefix, ScratchSpace.UNKNOWN_SIZE);
+	}
+
 	/**
 	 * Delete the given files and all the files with the same name but different
 	 * extension. If some file is <code>null</code> just doesn't process it and
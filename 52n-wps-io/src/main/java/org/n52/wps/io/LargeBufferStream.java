@@ -44,6 +44,8 @@ package org.n52.wps.io;
  import java.io.OutputStream;
  import java.util.ArrayList;
 
+ import org.n52.wps.commons.ScratchSpace;
+
 
  /**
   * A fully buffered output stream using local disk storage for large data.
@@ -140,7 +142,8 @@ package org.n52.wps.io;
                  if (blocks.size() * Block.SZ < inCoreLimit)
                          return false;
 
-                 onDiskFile = File.createTempFile("jgit_", ".buffer");
+                 // the buffer holds at least inCoreLimit bytes, so it belongs on a large volume
+                 onDiskFile = ScratchSpace.getInstance().createTempFile("jgit_", ".buffer", inCoreLimit);
                  diskOut = new FileOutputStream(onDiskFile);
 
                  final Block last = blocks.remove(blocks.size() - 1);
@@ -237,6 +240,7 @@ package org.n52.wps.io;
                 if (onDiskFile != null) {
                          if (!onDiskFile.delete())
                                  onDiskFile.deleteOnExit();
+                         ScratchSpace.getInstance().release(onDiskFile);
                        onDiskFile = null;
                  }
          }
@@ -39,7 +39,7 @@ public class ParserFactory {
 	private static ParserFactory factory;
 	private static Logger LOGGER = LoggerFactory.getLogger(ParserFactory.class);
 	
-	private List<IParser> registeredParsers;
+	private volatile IOHandlerIndex<IParser> registeredParsers = new IOHandlerIndex<IParser>(new ArrayList<IParser>());
 
 	/**
 	 * This factory provides all available {@link IParser} to WPS.
@@ -69,7 +69,7 @@ public class ParserFactory {
 	}
 
     private void loadAllParsers(Parser[] parsers){
-        registeredParsers = new ArrayList<IParser>();
+        List<IParser> parserList = new ArrayList<IParser>();
 		for(Parser currentParser : parsers) {
 			
 			// remove inactive parser
@@ -101,9 +101,11 @@ public class ParserFactory {
 			if(parser != null) {
 				
 				LOGGER.info("Parser class registered: " + parserClass);
-				registeredParsers.add(parser);
+				parserList.add(parser);
 			}
 		}
+		// lookups see either the previous or the new set of parsers
+		registeredParsers = new IOHandlerIndex<IParser>(parserList);
     }
 
 	public static ParserFactory getInstance() {
@@ -121,26 +123,21 @@ public class ParserFactory {
 			encoding = IOHandler.DEFAULT_ENCODING;
 		}
 		
-		//first, look if we can find a direct way		
-		for(IParser parser : registeredParsers) {
-			Class<?>[] supportedClasses = parser.getSupportedDataBindings();
-			for(Class<?> clazz : supportedClasses){
-				if(clazz.equals(requiredInputClass)) {
-					if(parser.isSupportedSchema(schema) &&	parser.isSupportedEncoding(encoding) && parser.isSupportedFormat(format)) {
-						LOGGER.info("Matching parser found: " + parser);
-						return parser;
-					}
-				}
-			}
+		//first, look if we can find a direct way
+		IOHandlerIndex<IParser> parsers = registeredParsers;
+		IParser parser = parsers.lookup(requiredInputClass, format, schema, encoding);
+		if (parser != null) {
+			LOGGER.debug("Matching parser found: {}", parser);
+			return parser;
 		}
 		
 		//no parser could be found
-		//try an indirect way by creating all permutations and look if one matches
-		//TODO
-		return null;
+		//try an indirect way, converting the data through intermediate formats
+		List<IGenerator> generators = GeneratorFactory.getInstance().getAllGenerators();
+		return ConversionPlanner.getInstance(parsers.getHandlers(), generators).planParser(schema, format, encoding, requiredInputClass);
 	}
 
 	public List<IParser> getAllParsers() {
-		return registeredParsers;
+		return registeredParsers.getHandlers();
 	}
 }
@@ -0,0 +1,30 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.io.data;
+
+/**
+ * Data that can be copied, so that a single parsed instance can be handed to
+ * several executions, which may each modify their copy.
+ */
+public interface ICopyableData extends IData {
+
+    /**
+     * @return a copy of the data, modifications of the copy must not affect
+     *         this instance and vice versa
+     */
+    IData copy();
+}
@@ -16,13 +16,13 @@
  */
 package org.n52.wps.io.datahandler.generator;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.OutputStream;
 
 import org.apache.commons.codec.binary.Base64InputStream;
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.n52.wps.FormatDocument.Format;
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.io.AbstractIOHandler;
@@ -36,13 +36,6 @@ import org.n52.wps.io.data.IData;
  */
 public abstract class AbstractGenerator extends AbstractIOHandler implements IGenerator {
 	
-	/**
-	 * A list of files that shall be deleted by destructor.
-	 * Convenience mechanism to delete temporary files that had
-	 * to be written during the generation procedure.
-	 */
-	protected List<File> finalizeFiles;
-	
 	public AbstractGenerator(){
 		super();
 		
@@ -68,8 +61,18 @@ public abstract class AbstractGenerator extends AbstractIOHandler implements IGe
 				supportedEncodings.add(IOHandler.DEFAULT_ENCODING);
 			}			
 		}
-		
-		finalizeFiles = new ArrayList<File>();
+	}
+	
+	/**
+	 * Generators implementing {@link #writeTo(IData, OutputStream, String, String)}
+	 * inherit this method, the output is provided through a pipe without
+	 * writing it to a temporary file. Other generators override this method
+	 * and inherit the default of
+	 * {@link #writeTo(IData, OutputStream, String, String)}, which copies
+	 * its result.
+	 */
+	public InputStream generateStream(IData data, String mimeType, String schema) throws IOException {
+		return GeneratorPipe.open(this, data, mimeType, schema);
 	}
 	
 	public InputStream generateBase64Stream(IData data, String mimeType, String schema) throws IOException {
@@ -77,16 +80,14 @@ public abstract class AbstractGenerator extends AbstractIOHandler implements IGe
 	}
 	
 	/**
-	 * Destructor deletes generated temporary files.
+	 * Writes the generated output Base64 encoded to the stream, which is not
+	 * closed.
 	 */
-	@Override
-	protected void finalize() throws Throwable {
-		
-		for (File currentFile : finalizeFiles){
-			currentFile.delete();
-		}
-		
-		super.finalize();
+	public void writeBase64To(IData data, OutputStream os, String mimeType, String schema) throws IOException {
+		Base64OutputStream base64 = new Base64OutputStream(new CloseShieldOutputStream(os), true);
+		writeTo(data, base64, mimeType, schema);
+		// writes the final block
+		base64.close();
 	}
-
+	
 }
@@ -0,0 +1,161 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io.datahandler.generator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.n52.wps.commons.context.ExecutionContext;
+import org.n52.wps.commons.context.ExecutionContextFactory;
+import org.n52.wps.io.IGenerator;
+import org.n52.wps.io.data.IData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides the output of {@link IGenerator#writeTo} as an InputStream for
+ * callers of {@link IGenerator#generateStream}. The generator writes into a
+ * pipe from a separate thread, so the output is never completely buffered.
+ * A failure of the generator is thrown by the InputStream once all written
+ * data has been read.
+ * <p>
+ * The writing threads are bounded; if all of them are busy, opening another
+ * pipe fails with an IOException instead of starting a new thread.
+ */
+final class GeneratorPipe {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(GeneratorPipe.class);
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final int MAX_WRITERS = Math.max(16, 4 * Runtime.getRuntime().availableProcessors());
+
+	private static final long WRITER_KEEP_ALIVE_SECONDS = 60;
+
+	// no queue: a queued writer could wait forever for a thread held by a
+	// writer that is itself blocked on reading a nested pipe
+	private static final ThreadPoolExecutor WRITERS = new ThreadPoolExecutor(0, MAX_WRITERS,
+			WRITER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "wps-generator-pipe-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			}, new ThreadPoolExecutor.AbortPolicy());
+
+	private GeneratorPipe() {
+	}
+
+	static InputStream open(final IGenerator generator, final IData data, final String mimeType,
+			final String schema) throws IOException {
+		final PipedStream in = new PipedStream();
+		final PipedOutputStream out = new PipedOutputStream(in);
+		// temporary files of the generator belong to the request of the caller
+		final ExecutionContext context = ExecutionContextFactory.getContext(false);
+		Runnable writer = new Runnable() {
+			@Override
+			public void run() {
+				if (context != null) {
+					ExecutionContextFactory.registerContext(context);
+				}
+				try {
+					generator.writeTo(data, out, mimeType, schema);
+				} catch (Throwable t) {
+					LOGGER.debug("Generator {} failed", generator.getClass().getName(), t);
+					in.failure = t;
+				} finally {
+					if (context != null) {
+						ExecutionContextFactory.unregisterContext();
+					}
+					try {
+						out.close();
+					} catch (IOException e) {
+						// the reader closed the pipe
+					}
+				}
+			}
+		};
+		try {
+			WRITERS.execute(writer);
+		} catch (RejectedExecutionException e) {
+			out.close();
+			in.close();
+			throw new IOException("Too many outputs are generated concurrently (at most " + MAX_WRITERS + ")", e);
+		}
+		return in;
+	}
+
+	private static class PipedStream extends PipedInputStream {
+
+		private volatile Throwable failure;
+
+		PipedStream() {
+			super(BUFFER_SIZE);
+		}
+
+		@Override
+		public synchronized int read() throws IOException {
+			int b = super.read();
+			if (b < 0) {
+				checkFailure();
+			}
+			return b;
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n < 0) {
+				checkFailure();
+			}
+			return n;
+		}
+
+		private void checkFailure() throws IOException {
+			Throwable t = failure;
+			if (t instanceof IOException) {
+				throw (IOException) t;
+			}
+			if (t != null) {
+				throw new IOException("Error while generating output", t);
+			}
+		}
+	}
+}
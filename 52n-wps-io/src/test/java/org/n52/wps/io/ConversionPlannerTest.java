@@ -0,0 +1,215 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.n52.wps.FormatDocument.Format;
+import org.n52.wps.PropertyDocument.Property;
+import org.n52.wps.io.data.IData;
+
+public class ConversionPlannerTest {
+
+	private final TestParser csvParser = new TestParser("text/csv", CsvData.class);
+	private final TestParser textParser = new TestParser("text/plain", TextData.class);
+	private final TestParser textToCsvParser = new TestParser("text/plain", CsvData.class);
+	private final TestGenerator csvGenerator = new TestGenerator("text/csv", CsvData.class);
+	private final TestGenerator textGenerator = new TestGenerator("text/plain", CsvData.class, TextData.class);
+
+	@Test
+	public void testChainedParser() throws IOException {
+		ConversionPlanner planner = new ConversionPlanner(Arrays.<IParser>asList(csvParser, textParser),
+				Arrays.<IGenerator>asList(textGenerator));
+
+		IParser parser = planner.planParser(null, "text/csv", IOHandler.DEFAULT_ENCODING, TextData.class);
+		Assert.assertNotNull(parser);
+		IData data = parser.parse(new ByteArrayInputStream("a,b".getBytes("UTF-8")), "text/csv", null);
+		Assert.assertTrue(data instanceof TextData);
+		Assert.assertEquals("a,b", data.getPayload());
+		Assert.assertSame(parser, planner.planParser(null, "text/csv", IOHandler.DEFAULT_ENCODING, TextData.class));
+	}
+
+	@Test
+	public void testChainedGenerator() throws IOException {
+		ConversionPlanner planner = new ConversionPlanner(Arrays.<IParser>asList(textToCsvParser),
+				Arrays.<IGenerator>asList(textGenerator, csvGenerator));
+
+		IGenerator generator = planner.planGenerator(null, "text/csv", IOHandler.DEFAULT_ENCODING, TextData.class);
+		Assert.assertNotNull(generator);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		generator.writeTo(new TextData("x"), out, "text/csv", null);
+		Assert.assertEquals("x", out.toString("UTF-8"));
+		InputStream in = generator.generateStream(new TextData("y"), "text/csv", null);
+		try {
+			Assert.assertEquals("y", IOUtils.toString(in, "UTF-8"));
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void testNoPath() {
+		ConversionPlanner planner = new ConversionPlanner(Arrays.<IParser>asList(csvParser),
+				Collections.<IGenerator>emptyList());
+
+		Assert.assertNull(planner.planParser(null, "text/csv", IOHandler.DEFAULT_ENCODING, TextData.class));
+		Assert.assertNull(planner.planParser(null, "text/csv", IOHandler.DEFAULT_ENCODING, TextData.class));
+		Assert.assertNull(planner.planGenerator(null, "text/csv", IOHandler.DEFAULT_ENCODING, TextData.class));
+	}
+
+	@Test
+	public void testCheapestPathIsChosen() {
+		TestGenerator expensiveGenerator = new TestGenerator("text/plain", CsvData.class);
+		expensiveGenerator.setCost("10");
+		TestGenerator cheapGenerator = new TestGenerator("text/xml", CsvData.class);
+		TestParser xmlParser = new TestParser("text/xml", TextData.class);
+		ConversionPlanner planner = new ConversionPlanner(Arrays.<IParser>asList(csvParser, textParser, xmlParser),
+				Arrays.<IGenerator>asList(expensiveGenerator, cheapGenerator));
+
+		IParser parser = planner.planParser(null, "text/csv", IOHandler.DEFAULT_ENCODING, TextData.class);
+		Assert.assertNotNull(parser);
+		Assert.assertTrue(parser.toString().contains("text/xml"));
+	}
+
+	public static abstract class TestData implements IData {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String text;
+
+		TestData(String text) {
+			this.text = text;
+		}
+
+		@Override
+		public Object getPayload() {
+			return text;
+		}
+
+		@Override
+		public Class<?> getSupportedClass() {
+			return String.class;
+		}
+	}
+
+	public static class TextData extends TestData {
+
+		private static final long serialVersionUID = 1L;
+
+		public TextData(String text) {
+			super(text);
+		}
+	}
+
+	public static class CsvData extends TestData {
+
+		private static final long serialVersionUID = 1L;
+
+		public CsvData(String text) {
+			super(text);
+		}
+	}
+
+	private static Format[] formats(String mimeType) {
+		Format format = Format.Factory.newInstance();
+		format.setMimetype(mimeType);
+		return new Format[] { format };
+	}
+
+	private static class TestParser extends AbstractIOHandler implements IParser {
+
+		private final Class<? extends TestData> binding;
+
+		TestParser(String mimeType, Class<? extends TestData> binding) {
+			this.binding = binding;
+			this.formats = formats(mimeType);
+			supportedFormats.add(mimeType);
+			supportedEncodings.add(IOHandler.DEFAULT_ENCODING);
+			supportedIDataTypes.add(binding);
+		}
+
+		@Override
+		public IData parse(InputStream input, String mimeType, String schema) {
+			try {
+				String text = IOUtils.toString(input, "UTF-8");
+				return binding == CsvData.class ? new CsvData(text) : new TextData(text);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public IData parseBase64(InputStream input, String mimeType, String schema) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static class TestGenerator extends AbstractIOHandler implements IGenerator {
+
+		TestGenerator(String mimeType, Class<?>... bindings) {
+			this.formats = formats(mimeType);
+			supportedFormats.add(mimeType);
+			supportedEncodings.add(IOHandler.DEFAULT_ENCODING);
+			supportedIDataTypes.addAll(Arrays.<Class<?>>asList(bindings));
+		}
+
+		void setCost(String cost) {
+			Property property = Property.Factory.newInstance();
+			property.setName(ConversionPlanner.PROPERTY_CONVERSION_COST);
+			property.setActive(true);
+			property.setStringValue(cost);
+			this.properties = new Property[] { property };
+		}
+
+		@Override
+		public InputStream generateStream(IData data, String mimeType, String schema) throws IOException {
+			return new ByteArrayInputStream(((String) data.getPayload()).getBytes("UTF-8"));
+		}
+
+		@Override
+		public InputStream generateBase64Stream(IData data, String mimeType, String schema) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void writeTo(IData data, OutputStream os, String mimeType, String schema) throws IOException {
+			os.write(((String) data.getPayload()).getBytes("UTF-8"));
+		}
+	}
+}
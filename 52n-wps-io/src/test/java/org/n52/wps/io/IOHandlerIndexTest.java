@@ -0,0 +1,125 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.ILiteralData;
+import org.n52.wps.io.data.binding.literal.LiteralIntBinding;
+import org.n52.wps.io.data.binding.literal.LiteralStringBinding;
+
+public class IOHandlerIndexTest {
+
+	@Test
+	public void testExactBindingIsPreferred() {
+		TestHandler generic = new TestHandler("text/xml", ILiteralData.class);
+		TestHandler exact = new TestHandler("text/xml", LiteralStringBinding.class);
+		IOHandlerIndex<TestHandler> parsers = new IOHandlerIndex<TestHandler>(Arrays.asList(generic, exact));
+		IOHandlerIndex<TestHandler> generators = new IOHandlerIndex<TestHandler>(Arrays.asList(generic, exact));
+
+		Assert.assertSame(exact, parsers.lookup(LiteralStringBinding.class, "text/xml", null, IOHandler.DEFAULT_ENCODING));
+		Assert.assertSame(exact, generators.lookup(LiteralStringBinding.class, "text/xml", null, IOHandler.DEFAULT_ENCODING));
+	}
+
+	@Test
+	public void testCompatibleBindingsDoNotMatch() {
+		TestHandler generic = new TestHandler("text/xml", ILiteralData.class);
+		TestHandler string = new TestHandler("text/xml", LiteralStringBinding.class);
+		IOHandlerIndex<TestHandler> handlers = new IOHandlerIndex<TestHandler>(Arrays.asList(generic, string));
+
+		Assert.assertNull(handlers.lookup(IData.class, "text/xml", null, IOHandler.DEFAULT_ENCODING));
+		Assert.assertNull(handlers.lookup(LiteralIntBinding.class, "text/xml", null, IOHandler.DEFAULT_ENCODING));
+	}
+
+	@Test
+	public void testSelectsTheSameHandlerAsScanningInOrder() {
+		List<TestHandler> handlers = Arrays.asList(
+				new TestHandler("text/xml", ILiteralData.class),
+				new TestHandler("text/plain", LiteralStringBinding.class),
+				new TestHandler("text/xml", LiteralIntBinding.class, LiteralStringBinding.class),
+				new TestHandler("text/xml", LiteralStringBinding.class),
+				new TestHandler("text/plain", IData.class, LiteralIntBinding.class));
+		IOHandlerIndex<TestHandler> index = new IOHandlerIndex<TestHandler>(handlers);
+
+		Class<?>[] bindings = { IData.class, ILiteralData.class, LiteralStringBinding.class, LiteralIntBinding.class };
+		String[] formats = { "text/xml", "text/plain", "text/html" };
+		// the second round is answered from the remembered lookups
+		for (int round = 0; round < 2; round++) {
+			for (Class<?> binding : bindings) {
+				for (String format : formats) {
+					Assert.assertSame(binding + " " + format, scan(handlers, binding, format),
+							index.lookup(binding, format, null, IOHandler.DEFAULT_ENCODING));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFormatSchemaAndEncodingMustMatch() {
+		TestHandler handler = new TestHandler("text/xml", LiteralStringBinding.class);
+		IOHandlerIndex<TestHandler> parsers = new IOHandlerIndex<TestHandler>(Arrays.asList(handler));
+
+		Assert.assertSame(handler, parsers.lookup(LiteralStringBinding.class, "TEXT/XML", null, IOHandler.DEFAULT_ENCODING));
+		Assert.assertNull(parsers.lookup(LiteralStringBinding.class, "text/plain", null, IOHandler.DEFAULT_ENCODING));
+		Assert.assertNull(parsers.lookup(LiteralStringBinding.class, "text/xml", "http://schemas.example.org/a.xsd", IOHandler.DEFAULT_ENCODING));
+		Assert.assertNull(parsers.lookup(LiteralStringBinding.class, "text/xml", null, IOHandler.ENCODING_BASE64));
+		// negative results are remembered as well
+		Assert.assertNull(parsers.lookup(LiteralStringBinding.class, "text/plain", null, IOHandler.DEFAULT_ENCODING));
+	}
+
+	/**
+	 * The selection of the factories before the index was introduced.
+	 */
+	private static TestHandler scan(List<TestHandler> handlers, Class<?> binding, String format) {
+		for (TestHandler handler : handlers) {
+			for (Class<?> clazz : handler.getSupportedDataBindings()) {
+				if (clazz.equals(binding)) {
+					if (handler.isSupportedSchema(null) && handler.isSupportedEncoding(IOHandler.DEFAULT_ENCODING)
+							&& handler.isSupportedFormat(format)) {
+						return handler;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private static class TestHandler extends AbstractIOHandler {
+
+		TestHandler(String format, Class<?>... bindings) {
+			supportedFormats.add(format);
+			supportedEncodings.add(IOHandler.DEFAULT_ENCODING);
+			supportedIDataTypes.addAll(Arrays.asList(bindings));
+		}
+	}
+}
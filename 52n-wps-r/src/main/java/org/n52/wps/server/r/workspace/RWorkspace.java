@@ -38,6 +38,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.UUID;
 
+import org.n52.wps.commons.ScratchSpace;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.r.FilteredRConnection;
 import org.n52.wps.server.r.RWPSConfigVariables;
@@ -116,7 +117,15 @@ public class RWorkspace {
     }
 
     private REXP createAndSetNewWorkspaceDirectoryInSystemTemp(RConnection connection) throws RserveException {
-        File tempdir = new File(System.getProperty("java.io.tmpdir"), createNewWorkspaceDirectoryName());
+        File scratchDirectory;
+        try {
+            scratchDirectory = ScratchSpace.getInstance().getDirectory(ScratchSpace.UNKNOWN_SIZE);
+        }
+        catch (IOException e) {
+            log.error("No scratch space available for a new workspace directory", e);
+            return null;
+        }
+        File tempdir = new File(scratchDirectory, createNewWorkspaceDirectoryName());
         return createAndSetNewWorkspaceDirectory(tempdir, connection);
     }
 
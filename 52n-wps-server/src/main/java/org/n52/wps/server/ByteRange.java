@@ -0,0 +1,133 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+/**
+ * A single byte range of an HTTP <code>Range</code> request header, resolved against the length of the
+ * representation. Multiple ranges are not supported, such requests are answered with the complete
+ * representation (as permitted by RFC 7233).
+ */
+final class ByteRange {
+
+    static final String UNIT = "bytes";
+
+    /**
+     * Returned by {@link #parse(String, long)} if the range lies completely beyond the representation.
+     */
+    static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+    private final long first;
+
+    private final long last;
+
+    private ByteRange(long first, long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    long getFirst() {
+        return first;
+    }
+
+    long getLast() {
+        return last;
+    }
+
+    long getLength() {
+        return last - first + 1;
+    }
+
+    String toContentRange(long contentLength) {
+        return this == UNSATISFIABLE ? UNIT + " */" + contentLength
+                                     : UNIT + " " + first + "-" + last + "/" + contentLength;
+    }
+
+    /**
+     * @param header
+     *        the value of the <code>Range</code> header, may be <code>null</code>
+     * @param contentLength
+     *        the length of the complete representation
+     * @return the requested range, {@link #UNSATISFIABLE} or <code>null</code> if the complete representation
+     *         should be returned (no, malformed or multiple ranges)
+     */
+    static ByteRange parse(String header, long contentLength) {
+        if (header == null || contentLength < 0) {
+            return null;
+        }
+        header = header.trim();
+        if ( !header.startsWith(UNIT + "=")) {
+            return null;
+        }
+        String spec = header.substring(UNIT.length() + 1).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        String start = spec.substring(0, dash).trim();
+        String end = spec.substring(dash + 1).trim();
+        try {
+            if (start.isEmpty()) {
+                // suffix range, the last n bytes
+                if (end.isEmpty()) {
+                    return null;
+                }
+                long suffixLength = parseNumber(end);
+                if (suffixLength == 0 || contentLength == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new ByteRange(Math.max(0, contentLength - suffixLength), contentLength - 1);
+            }
+            long first = parseNumber(start);
+            if (end.isEmpty()) {
+                return first < contentLength ? new ByteRange(first, contentLength - 1) : UNSATISFIABLE;
+            }
+            long last = parseNumber(end);
+            if (last < first) {
+                return null;
+            }
+            if (first >= contentLength) {
+                return UNSATISFIABLE;
+            }
+            return new ByteRange(first, Math.min(last, contentLength - 1));
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long parseNumber(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if ( !Character.isDigit(value.charAt(i))) {
+                throw new NumberFormatException(value);
+            }
+        }
+        return Long.parseLong(value);
+    }
+
+}
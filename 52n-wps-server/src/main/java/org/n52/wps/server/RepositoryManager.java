@@ -33,7 +33,18 @@ import java.beans.PropertyChangeListener;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
 
 import net.opengis.wps.x100.ProcessDescriptionType;
 
@@ -51,7 +62,18 @@ public class RepositoryManager {
 	
 	private static RepositoryManager instance;
 	private static Logger LOGGER = LoggerFactory.getLogger(RepositoryManager.class);
-	private List<IAlgorithmRepository> repositories;
+	// bounds the unknown identifiers remembered per registry, clients choose them freely
+	private static final int MAX_CACHED_MISSES = 1024;
+	// reloads triggered by configuration changes run here, readers keep using the previous registry meanwhile
+	private static final ExecutorService RELOAD_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "wps-repository-reload");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private final AtomicReference<Registry> registry = new AtomicReference<Registry>(Registry.EMPTY);
 	private ProcessIDRegistry globalProcessIDs = ProcessIDRegistry.getInstance();
 	private UpdateThread updateThread;
 	
@@ -70,7 +92,12 @@ public class RepositoryManager {
                     final PropertyChangeEvent propertyChangeEvent) {
                                                                   LOGGER.info("Received Property Change Event: {}",
                                                                               propertyChangeEvent.getPropertyName());
-                loadAllRepositories();
+                RELOAD_EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        reloadRepositories();
+                    }
+                });
             }
         });
         
@@ -88,7 +115,7 @@ public class RepositoryManager {
 	}
 
     private void loadAllRepositories(){
-        repositories = new ArrayList<IAlgorithmRepository>();
+        List<IAlgorithmRepository> repositories = new ArrayList<IAlgorithmRepository>();
         LOGGER.debug("Loading all repositories: {} (doing a gc beforehand...)", repositories);
 
         System.gc();
@@ -163,6 +190,9 @@ public class RepositoryManager {
                             e.getMessage());
 			}
 		}
+		registry.set(new Registry(repositories));
+		// cached process descriptions may be outdated now
+		ServiceMetadataCache.invalidate();
     }
 	
 	public static RepositoryManager getInstance(){
@@ -181,11 +211,59 @@ public class RepositoryManager {
 	}
 	
 	/**
-	 * Allows to reInitialize the Repositories
+	 * Allows to reInitialize the Repositories. The capabilities are notified about
+	 * the new set of processes afterwards.
 	 *
 	 */
 	protected void reloadRepositories() {
 		loadAllRepositories();
+		WPSConfig.getInstance().firePropertyChange(WPSConfig.WPSCAPABILITIES_SKELETON_PROPERTY_EVENT_NAME);
+	}
+	
+	/**
+	 * Finds the repository of an algorithm using the index of the current
+	 * registry. Hits are trusted, {@link #registerAlgorithm} and
+	 * {@link #unregisterAlgorithm} invalidate the entries of algorithms that
+	 * are deployed or undeployed. Algorithms missing from the index are
+	 * resolved by scanning the repositories once. Identifiers no repository
+	 * contains are remembered until the registry changes, so repeated
+	 * requests for them do not probe every repository.
+	 */
+	private IAlgorithmRepository lookup(String algorithmName) {
+		if (algorithmName == null) {
+			return null;
+		}
+		Registry current = registry.get();
+		if (current.misses.contains(algorithmName)) {
+			return null;
+		}
+		IAlgorithmRepository repository = current.index.get(algorithmName);
+		if (repository != null) {
+			return repository;
+		}
+		for (IAlgorithmRepository candidate : current.repositories) {
+			if (candidate.containsAlgorithm(algorithmName)) {
+				registry.compareAndSet(current, current.with(algorithmName, candidate));
+				return candidate;
+			}
+		}
+		if (current.misses.size() < MAX_CACHED_MISSES) {
+			current.misses.add(algorithmName);
+		}
+		return null;
+	}
+	
+	/**
+	 * Publishes a new registry version without cached lookups of the given
+	 * algorithm and without any remembered unknown identifiers. The cached
+	 * capabilities and process descriptions are outdated as well.
+	 */
+	private void invalidate(String algorithmName) {
+		Registry current;
+		do {
+			current = registry.get();
+		} while ( !registry.compareAndSet(current, current.without(algorithmName)));
+		ServiceMetadataCache.invalidate();
 	}
 	
 	/**
@@ -198,12 +276,22 @@ public class RepositoryManager {
 	 * @throws Exception
 	 */
 	public IAlgorithm getAlgorithm(String className){
-		for(IAlgorithmRepository repository : repositories){
-			if(repository.containsAlgorithm(className)){
-				return repository.getAlgorithm(className);
-			}
+		IAlgorithmRepository repository = lookup(className);
+		return repository == null ? null : repository.getAlgorithm(className);
+	}
+	
+	/**
+	 * Hands an algorithm instance back to its repository once it has been
+	 * executed, so that repositories pooling stateless algorithms can reuse it.
+	 *
+	 * @param className
+	 * @param algorithm the instance obtained from {@link #getAlgorithm(String)}
+	 */
+	public void releaseAlgorithm(String className, IAlgorithm algorithm){
+		IAlgorithmRepository repository = lookup(className);
+		if (repository instanceof IPooledAlgorithmRepository) {
+			((IPooledAlgorithmRepository) repository).releaseAlgorithm(className, algorithm);
 		}
-		return null;
 	}
 	
 	/**
@@ -212,51 +300,70 @@ public class RepositoryManager {
 	 */
 	public List<String> getAlgorithms(){
 		List<String> allAlgorithmNamesCollection = new ArrayList<String>();
-		for(IAlgorithmRepository repository : repositories){
+		for(IAlgorithmRepository repository : registry.get().repositories){
 			allAlgorithmNamesCollection.addAll(repository.getAlgorithmNames());
 		}
 		return allAlgorithmNamesCollection;
 		
 	}
 
+	/**
+	 * Checks whether an algorithm exists without creating or taking an
+	 * instance of it.
+	 */
 	public boolean containsAlgorithm(String algorithmName) {
-		for(IAlgorithmRepository repository : repositories){
-			if(repository.containsAlgorithm(algorithmName)){
-				return true;
-			}
-		}
-		return false;
+		return lookup(algorithmName) != null;
 	}
 	
 	public IAlgorithmRepository getRepositoryForAlgorithm(String algorithmName){
-		for(IAlgorithmRepository repository : repositories){
-			if(repository.containsAlgorithm(algorithmName)){
-				return repository;
-			}
-		}
-		return null;
+		return lookup(algorithmName);
 	}
 	
+	/**
+	 * Looks up the binding of an input. Pooling repositories answer without
+	 * taking an instance from their pool.
+	 */
 	public Class getInputDataTypeForAlgorithm(String algorithmIdentifier, String inputIdentifier){
+		IAlgorithmRepository repository = lookup(algorithmIdentifier);
+		if (repository instanceof IPooledAlgorithmRepository) {
+			return ((IPooledAlgorithmRepository) repository).getInputDataType(algorithmIdentifier, inputIdentifier);
+		}
 		IAlgorithm algorithm = getAlgorithm(algorithmIdentifier);
 		return algorithm.getInputDataType(inputIdentifier);
 		
 	}
 	
+	/**
+	 * Looks up the binding of an output. Pooling repositories answer without
+	 * taking an instance from their pool.
+	 */
 	public Class getOutputDataTypeForAlgorithm(String algorithmIdentifier, String inputIdentifier){
+		IAlgorithmRepository repository = lookup(algorithmIdentifier);
+		if (repository instanceof IPooledAlgorithmRepository) {
+			return ((IPooledAlgorithmRepository) repository).getOutputDataType(algorithmIdentifier, inputIdentifier);
+		}
 		IAlgorithm algorithm = getAlgorithm(algorithmIdentifier);
 		return algorithm.getOutputDataType(inputIdentifier);
 		
 	}
 	
+	/**
+	 * Announces a process deployed to a repository after the registry was
+	 * built.
+	 */
 	public boolean registerAlgorithm(String id, IAlgorithmRepository repository){
+		invalidate(id);
 		if (globalProcessIDs.addID(id)){
 			return true;
 		}
 		else return false;
 	}
 	
+	/**
+	 * Announces a process undeployed from its repository.
+	 */
 	public boolean unregisterAlgorithm(String id){
+		invalidate(id);
 		if (globalProcessIDs.removeID(id)){
 			return true;
 		}
@@ -264,7 +371,7 @@ public class RepositoryManager {
 	}
 	
 	public IAlgorithmRepository getAlgorithmRepository(String name){
-	  for (IAlgorithmRepository repo : repositories ){
+	  for (IAlgorithmRepository repo : registry.get().repositories ){
 		   if(repo.getClass().getName().equals(name)){
 			   return repo;
 		  }
@@ -274,7 +381,7 @@ public class RepositoryManager {
 
 	public IAlgorithmRepository getRepositoryForClassName(
 			String className) {
-		for(IAlgorithmRepository repository : repositories){
+		for(IAlgorithmRepository repository : registry.get().repositories){
 			if(repository.getClass().getName().equals(className)){
 				return repository;
 			}
@@ -283,12 +390,19 @@ public class RepositoryManager {
 	}
 	
 	public ProcessDescriptionType getProcessDescription(String processClassName){
-		for(IAlgorithmRepository repository : repositories){
-			if(repository.containsAlgorithm(processClassName)){
-				return repository.getProcessDescription(processClassName);
+		IAlgorithmRepository repository = lookup(processClassName);
+		if (repository == null) {
+			return null;
+		}
+		Registry current = registry.get();
+		ProcessDescriptionType description = current.descriptions.get(processClassName);
+		if (description == null) {
+			description = repository.getProcessDescription(processClassName);
+			if (description != null) {
+				current.descriptions.putIfAbsent(processClassName, description);
 			}
 		}
-		return null;
+		return description;
 	}
 	
     static class UpdateThread extends Thread {
@@ -337,9 +451,71 @@ public class RepositoryManager {
 
 	public void shutdown() {
         LOGGER.debug("Shutting down all repositories..");
-		for (IAlgorithmRepository repo : repositories) {
+		for (IAlgorithmRepository repo : registry.get().repositories) {
 			repo.shutdown();
 		}
 	}
 
+    /**
+     * Immutable snapshot of the loaded repositories and the index of their
+     * algorithms. The first repository containing an algorithm wins. Unknown
+     * identifiers are only remembered for the lifetime of a snapshot.
+     */
+    private static final class Registry {
+
+        static final Registry EMPTY = new Registry(Collections.<IAlgorithmRepository>emptyList());
+
+        final List<IAlgorithmRepository> repositories;
+
+        final Map<String, IAlgorithmRepository> index;
+
+        final ConcurrentMap<String, ProcessDescriptionType> descriptions;
+
+        final Set<String> misses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        Registry(List<IAlgorithmRepository> repositories) {
+            this.repositories = Collections.unmodifiableList(new ArrayList<IAlgorithmRepository>(repositories));
+            Map<String, IAlgorithmRepository> index = new LinkedHashMap<String, IAlgorithmRepository>();
+            for (IAlgorithmRepository repository : this.repositories) {
+                Collection<String> algorithmNames;
+                try {
+                    algorithmNames = repository.getAlgorithmNames();
+                }
+                catch (RuntimeException e) {
+                    LOGGER.warn("Could not index algorithms of repository {}", repository.getClass().getName(), e);
+                    continue;
+                }
+                if (algorithmNames == null) {
+                    continue;
+                }
+                for (String algorithmName : algorithmNames) {
+                    if ( !index.containsKey(algorithmName)) {
+                        index.put(algorithmName, repository);
+                    }
+                }
+            }
+            this.index = Collections.unmodifiableMap(index);
+            this.descriptions = new ConcurrentHashMap<String, ProcessDescriptionType>();
+        }
+
+        private Registry(Registry registry, Map<String, IAlgorithmRepository> index, String changedAlgorithm) {
+            this.repositories = registry.repositories;
+            this.index = Collections.unmodifiableMap(index);
+            this.descriptions = new ConcurrentHashMap<String, ProcessDescriptionType>(registry.descriptions);
+            this.descriptions.remove(changedAlgorithm);
+        }
+
+        Registry with(String algorithmName, IAlgorithmRepository repository) {
+            Map<String, IAlgorithmRepository> index = new LinkedHashMap<String, IAlgorithmRepository>(this.index);
+            index.put(algorithmName, repository);
+            return new Registry(this, index, algorithmName);
+        }
+
+        Registry without(String algorithmName) {
+            Map<String, IAlgorithmRepository> index = new LinkedHashMap<String, IAlgorithmRepository>(this.index);
+            index.remove(algorithmName);
+            return new Registry(this, index, algorithmName);
+        }
+    }
+
 }
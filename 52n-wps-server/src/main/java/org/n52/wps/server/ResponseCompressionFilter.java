@@ -0,0 +1,486 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compresses responses with the gzip or deflate content coding if the client accepts it, the content type is
+ * listed as compressible and the response is larger than the configured minimum size. Responses which already
+ * carry a <code>Content-Encoding</code> are left untouched.
+ * 
+ * The filter has to be mapped before the {@link ResponseURLFilter}, so URLs are replaced before the content
+ * is compressed.
+ */
+public class ResponseCompressionFilter implements Filter {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(ResponseCompressionFilter.class);
+
+    public final static String PROP_ENABLED = "responseCompression.enabled";
+
+    public final static String PROP_MIN_SIZE = "responseCompression.minSize";
+
+    public final static String PROP_MIME_TYPES = "responseCompression.mimeTypes";
+
+    private final static boolean DEFAULT_ENABLED = true;
+
+    private final static long DEFAULT_MIN_SIZE = 2048;
+
+    private final static String DEFAULT_MIME_TYPES = "text/xml,application/xml,text/plain,application/json";
+
+    final static String GZIP = "gzip";
+
+    final static String DEFLATE = "deflate";
+
+    private boolean enabled;
+
+    private int minSize;
+
+    private Set<String> mimeTypes;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        PropertyUtil propertyUtil = new PropertyUtil(WPSConfig.getInstance().getPropertiesForServer());
+        enabled = propertyUtil.extractBoolean(PROP_ENABLED, DEFAULT_ENABLED);
+        minSize = (int) Math.max(0, Math.min(Integer.MAX_VALUE, propertyUtil.extractLong(PROP_MIN_SIZE, DEFAULT_MIN_SIZE)));
+        mimeTypes = new HashSet<String>();
+        for (String mimeType : propertyUtil.extractString(PROP_MIME_TYPES, DEFAULT_MIME_TYPES).split(",")) {
+            if ( !mimeType.trim().isEmpty()) {
+                mimeTypes.add(mimeType.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        if (enabled) {
+            LOGGER.info("Response compression enabled for {} responses of at least {} bytes", mimeTypes, minSize);
+        } else {
+            LOGGER.info("Response compression disabled.");
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        if ( !enabled || !(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        HttpServletResponse responseHTTP = (HttpServletResponse) response;
+        responseHTTP.addHeader("Vary", "Accept-Encoding");
+
+        String coding = selectCoding(((HttpServletRequest) request).getHeader("Accept-Encoding"));
+        if (coding == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        CompressingHttpServletResponse wrapper = new CompressingHttpServletResponse(responseHTTP, coding);
+        boolean async = false;
+        try {
+            chain.doFilter(request, wrapper);
+            async = request.isAsyncStarted();
+            if (async) {
+                // the response is written after doFilter returns, finish it once the async cycle is over
+                request.getAsyncContext().addListener(new FinishingAsyncListener(wrapper));
+            }
+        } finally {
+            if ( !async) {
+                wrapper.finish();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // nothing to do yet
+    }
+
+    /**
+     * @return the preferred of the supported content codings accepted by the client, or <code>null</code>
+     */
+    static String selectCoding(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        float gzipQuality = -1;
+        float deflateQuality = -1;
+        float wildcardQuality = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            float quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Float.parseFloat(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (GZIP.equals(name) || "x-gzip".equals(name)) {
+                gzipQuality = quality;
+            } else if (DEFLATE.equals(name)) {
+                deflateQuality = quality;
+            } else if ("*".equals(name)) {
+                wildcardQuality = quality;
+            }
+        }
+        if (gzipQuality < 0) {
+            gzipQuality = wildcardQuality;
+        }
+        if (deflateQuality < 0) {
+            deflateQuality = wildcardQuality;
+        }
+        if (gzipQuality > 0 && gzipQuality >= deflateQuality) {
+            return GZIP;
+        }
+        return deflateQuality > 0 ? DEFLATE : null;
+    }
+
+    boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int separator = contentType.indexOf(';');
+        String mimeType = (separator < 0 ? contentType : contentType.substring(0, separator)).trim().toLowerCase(Locale.ROOT);
+        return mimeTypes.contains(mimeType) || mimeType.endsWith("+xml");
+    }
+
+    private class CompressingHttpServletResponse extends HttpServletResponseWrapper {
+
+        private final String coding;
+
+        private CompressingServletOutputStream outputStream;
+
+        private PrintWriter writer;
+
+        private String contentLength;
+
+        private boolean encoded;
+
+        private boolean finished;
+
+        CompressingHttpServletResponse(HttpServletResponse response, String coding) {
+            super(response);
+            this.coding = coding;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called on this response");
+            }
+            return getCompressingOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (outputStream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called on this response");
+                }
+                writer = new PrintWriter(new OutputStreamWriter(getCompressingOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        private CompressingServletOutputStream getCompressingOutputStream() {
+            if (outputStream == null) {
+                outputStream = new CompressingServletOutputStream(this);
+            }
+            return outputStream;
+        }
+
+        @Override
+        public void setContentLength(int length) {
+            contentLength = Integer.toString(length);
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (interceptHeader(name, value)) {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (interceptHeader(name, value)) {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            if (interceptHeader(name, Integer.toString(value))) {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            if (interceptHeader(name, Integer.toString(value))) {
+                super.addIntHeader(name, value);
+            }
+        }
+
+        /**
+         * Holds back the content length until it is known whether the response gets compressed.
+         * 
+         * @return <code>true</code> if the header should be passed on
+         */
+        private boolean interceptHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                contentLength = value;
+                return false;
+            }
+            if ("Content-Encoding".equalsIgnoreCase(name)) {
+                encoded = true;
+            }
+            return true;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (outputStream != null) {
+                outputStream.flush();
+            }
+            super.flushBuffer();
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            if (outputStream != null) {
+                outputStream.resetBuffer();
+            }
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            contentLength = null;
+            encoded = false;
+            if (outputStream != null) {
+                outputStream.resetBuffer();
+            }
+        }
+
+        boolean shouldCompress() {
+            int status = getStatus();
+            return !encoded && !isCommitted() && status != HttpServletResponse.SC_NO_CONTENT
+                    && status != HttpServletResponse.SC_NOT_MODIFIED && isCompressible(getContentType());
+        }
+
+        OutputStream startCompression() throws IOException {
+            super.setHeader("Content-Encoding", coding);
+            OutputStream target = super.getOutputStream();
+            return GZIP.equals(coding) ? new GZIPOutputStream(target, 8192) : new DeflaterOutputStream(target);
+        }
+
+        OutputStream startPassThrough(long bufferedLength, boolean complete) throws IOException {
+            if (contentLength != null) {
+                super.setHeader("Content-Length", contentLength);
+            } else if (complete) {
+                super.setHeader("Content-Length", Long.toString(bufferedLength));
+            }
+            return super.getOutputStream();
+        }
+
+        void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (writer != null) {
+                writer.close();
+            } else if (outputStream != null) {
+                outputStream.close();
+            } else if (contentLength != null) {
+                super.setHeader("Content-Length", contentLength);
+            }
+        }
+    }
+
+    /**
+     * Finishes the compressed response of an asynchronously processed request when the async cycle ends.
+     */
+    private static class FinishingAsyncListener implements AsyncListener {
+
+        private final CompressingHttpServletResponse response;
+
+        FinishingAsyncListener(CompressingHttpServletResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            response.finish();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            response.finish();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) throws IOException {
+            response.finish();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // the listener has to be registered again for a new async cycle
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+    /**
+     * Buffers the first bytes of the response until the compression decision can be made: responses reaching the
+     * minimum size are compressed, smaller ones are passed through when the stream is closed.
+     */
+    private class CompressingServletOutputStream extends ServletOutputStream {
+
+        private final CompressingHttpServletResponse response;
+
+        private ByteArrayOutputStream buffer;
+
+        private OutputStream target;
+
+        private boolean compressing;
+
+        private boolean closed;
+
+        CompressingServletOutputStream(CompressingHttpServletResponse response) {
+            this.response = response;
+            this.buffer = new ByteArrayOutputStream(Math.min(minSize, 8192) + 1);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkOpen();
+            if (target == null) {
+                buffer.write(b);
+                if (buffer.size() > minSize) {
+                    decide(false);
+                }
+            } else {
+                target.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkOpen();
+            if (target == null) {
+                buffer.write(b, off, len);
+                if (buffer.size() > minSize) {
+                    decide(false);
+                }
+            } else {
+                target.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // flushing an undecided response would commit it uncompressed, keep buffering instead
+            if (target != null) {
+                target.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            if (target == null) {
+                decide(true);
+            }
+            closed = true;
+            if (compressing) {
+                ((DeflaterOutputStream) target).finish();
+            }
+            target.close();
+        }
+
+        void resetBuffer() {
+            if (target == null) {
+                buffer.reset();
+            }
+        }
+
+        private void decide(boolean complete) throws IOException {
+            compressing = buffer.size() >= minSize && response.shouldCompress();
+            target = compressing ? response.startCompression() : response.startPassThrough(buffer.size(), complete);
+            buffer.writeTo(target);
+            buffer = null;
+        }
+
+        private void checkOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Stream already closed");
+            }
+        }
+    }
+
+}
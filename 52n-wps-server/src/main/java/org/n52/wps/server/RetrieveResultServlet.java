@@ -28,10 +28,16 @@
  */
 package org.n52.wps.server;
 
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.UUID;
 
 import javax.servlet.ServletConfig;
@@ -44,6 +50,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.n52.wps.server.database.DatabaseFactory;
 import org.n52.wps.server.database.IDatabase;
+import org.n52.wps.server.database.StoredResponse;
 import org.n52.wps.commons.MIMEUtil;
 import org.n52.wps.commons.XMLUtil;
 import org.slf4j.Logger;
@@ -84,26 +91,22 @@ public class RetrieveResultServlet extends HttpServlet {
 
         if (StringUtils.isEmpty(id)) {
             errorResponse("id parameter missing", response);
+        } else if (!isIDValid(id)) {
+            errorResponse("id parameter not valid", response);
         } else {
 
-        	if(!isIDValid(id)){
-        		errorResponse("id parameter not valid", response);
-        	}
-        	
-            IDatabase db = DatabaseFactory.getDatabase();
-            String mimeType = db.getMimeTypeForStoreResponse(id);
-            long contentLength = db.getContentLengthForStoreResponse(id);
-            
+            IDatabase db = getDatabase();
+            StoredResponse storedResponse = db.lookupStoredResponse(id);
+
             InputStream inputStream = null;
             OutputStream outputStream = null;
             try {
-                inputStream = db.lookupResponse(id);
-
-                if (inputStream == null) {
+                if (storedResponse == null) {
                     errorResponse("id " + id + " is unknown to server", response);
-                } else if (mimeType == null) {
+                } else if (storedResponse.getMimeType() == null) {
                     errorResponse("Unable to determine mime-type for id " + id, response);
                 } else {
+                    String mimeType = storedResponse.getMimeType();
                     String suffix = MIMEUtil.getSuffixFromMIMEType(mimeType).toLowerCase();
 
                     // if attachment parameter unset, default to false for mime-type of 'xml' and true for everything else.
@@ -128,6 +131,11 @@ public class RetrieveResultServlet extends HttpServlet {
                         response.addHeader("Pragma", "no-cache");
                         response.addHeader("Expires", "-1");
 
+                        inputStream = db.lookupResponse(id);
+                        if (inputStream == null) {
+                            errorResponse("id " + id + " is unknown to server", response);
+                            return;
+                        }
                         try {
                             outputStream = response.getOutputStream();
                         } catch (IOException e) {
@@ -136,20 +144,83 @@ public class RetrieveResultServlet extends HttpServlet {
                         copyResponseAsXML(inputStream, outputStream, useAttachment || indentXML, id);
                     } else {
 
+                        // gzip stored results are sent as they are to clients accepting them
+                        boolean sendGzip = storedResponse.isGzipBacked() && acceptsGzip(request);
+                        File file = sendGzip ? storedResponse.getGzipFile() : storedResponse.getFile();
+                        long contentLength = sendGzip ? file.length() : storedResponse.getContentLength();
+                        long lastModified = storedResponse.getLastModified();
+                        String eTag = createETag(storedResponse, sendGzip);
+
+                        if (storedResponse.isGzipBacked()) {
+                            response.setHeader("Vary", "Accept-Encoding");
+                        }
+                        if (eTag != null) {
+                            response.setHeader("ETag", eTag);
+                        }
+                        if (lastModified > -1) {
+                            response.setDateHeader("Last-Modified", lastModified);
+                        }
+                        if (isNotModified(request, eTag, lastModified)) {
+                            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                            return;
+                        }
+
+                        ByteRange range = null;
                         if (contentLength > -1) {
-                            // Can't use response.setContentLength(...) as it accepts an int (max of 2^31 - 1) ?!
-                            // response.setContentLength(contentLength);
-                            response.setHeader("Content-Length", Long.toString(contentLength));
+                            response.setHeader("Accept-Ranges", ByteRange.UNIT);
+                            if (isIfRangeSatisfied(request, eTag, lastModified)) {
+                                range = ByteRange.parse(request.getHeader("Range"), contentLength);
+                            }
                         } else {
                             LOGGER.warn("Content-Length unknown for response to id {}", id);
                         }
 
-                        try {
-                            outputStream = response.getOutputStream();
-                        } catch (IOException e) {
-                            throw new IOException("Error obtaining output stream for response", e);
+                        if (range == ByteRange.UNSATISFIABLE) {
+                            response.setHeader("Content-Range", range.toContentRange(contentLength));
+                            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                            return;
+                        }
+
+                        long offset = 0;
+                        long length = contentLength;
+                        if (range != null) {
+                            offset = range.getFirst();
+                            length = range.getLength();
+                            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                            response.setHeader("Content-Range", range.toContentRange(contentLength));
+                        }
+                        if (sendGzip) {
+                            response.setHeader("Content-Encoding", "gzip");
+                        }
+                        if (length > -1) {
+                            // Can't use response.setContentLength(...) as it accepts an int (max of 2^31 - 1) ?!
+                            response.setHeader("Content-Length", Long.toString(length));
+                        }
+
+                        if (file != null) {
+                            try {
+                                outputStream = response.getOutputStream();
+                            } catch (IOException e) {
+                                throw new IOException("Error obtaining output stream for response", e);
+                            }
+                            transferResponseFile(file, outputStream, id, offset, length);
+                        } else {
+                            inputStream = db.lookupResponse(id);
+                            if (inputStream == null) {
+                                errorResponse("id " + id + " is unknown to server", response);
+                                return;
+                            }
+                            try {
+                                outputStream = response.getOutputStream();
+                            } catch (IOException e) {
+                                throw new IOException("Error obtaining output stream for response", e);
+                            }
+                            if (range == null) {
+                                copyResponseStream(inputStream, outputStream, id, contentLength);
+                            } else {
+                                copyResponseRange(inputStream, outputStream, id, offset, length);
+                            }
                         }
-                        copyResponseStream(inputStream, outputStream, id, contentLength);
                     }
                 }
             } catch (Exception e) {
@@ -161,6 +232,13 @@ public class RetrieveResultServlet extends HttpServlet {
         }
     }
 
+    /**
+     * @return the database holding the stored responses
+     */
+    protected IDatabase getDatabase() {
+        return DatabaseFactory.getDatabase();
+    }
+
     protected void errorResponse(String error, HttpServletResponse response) throws IOException {
         response.setContentType("text/html");
         response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
@@ -192,6 +270,172 @@ public class RetrieveResultServlet extends HttpServlet {
         LOGGER.info("{} bytes written in response to id {}", contentWritten, id);
     }
 
+    protected void copyResponseRange(
+            InputStream inputStream,
+            OutputStream outputStream,
+            String id,
+            long offset,
+            long length) throws IOException {
+        long contentWritten = 0;
+        try {
+            long skipped = 0;
+            while (skipped < offset) {
+                long count = inputStream.skip(offset - skipped);
+                if (count <= 0) {
+                    if (inputStream.read() == -1) {
+                        throw new EOFException("Response for id " + id + " ended before offset " + offset);
+                    }
+                    count = 1;
+                }
+                skipped += count;
+            }
+            byte[] buffer = new byte[8192];
+            int bufferRead;
+            while (contentWritten < length
+                    && (bufferRead = inputStream.read(buffer, 0, (int) Math.min(buffer.length, length - contentWritten))) != -1) {
+                outputStream.write(buffer, 0, bufferRead);
+                contentWritten += bufferRead;
+            }
+        } catch (IOException e) {
+            throw new IOException(String.format("Error writing response range to output stream for id %s, %d of %d bytes written", id, contentWritten, length), e);
+        }
+        LOGGER.info("{} bytes from offset {} written in response to id {}", new Object[] { contentWritten, offset, id });
+    }
+
+    /**
+     * Sends a section of a file-backed response using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * which avoids copying the content through the heap where the container's output channel allows it.
+     */
+    protected void transferResponseFile(
+            File file,
+            OutputStream outputStream,
+            String id,
+            long offset,
+            long length) throws IOException {
+        long contentWritten = 0;
+        FileInputStream fileInputStream = null;
+        try {
+            fileInputStream = new FileInputStream(file);
+            FileChannel fileChannel = fileInputStream.getChannel();
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            if (length < 0) {
+                length = fileChannel.size() - offset;
+            }
+            while (contentWritten < length) {
+                long transferred = fileChannel.transferTo(offset + contentWritten, length - contentWritten, target);
+                if (transferred <= 0) {
+                    throw new EOFException("Response file for id " + id + " is shorter than expected");
+                }
+                contentWritten += transferred;
+            }
+        } catch (IOException e) {
+            throw new IOException(String.format("Error writing response to output stream for id %s, %d of %d bytes written", id, contentWritten, length), e);
+        } finally {
+            IOUtils.closeQuietly(fileInputStream);
+        }
+        LOGGER.info("{} bytes from offset {} written in response to id {}", new Object[] { contentWritten, offset, id });
+    }
+
+    /**
+     * Stored results never change for a given id, so the id, modification date and length make up a strong
+     * validator. The gzip encoded representation gets its own validator.
+     */
+    protected String createETag(StoredResponse storedResponse, boolean gzip) {
+        if (storedResponse.getLastModified() < 0 && storedResponse.getContentLength() < 0) {
+            return null;
+        }
+        StringBuilder eTag = new StringBuilder("\"").append(storedResponse.getId())
+                .append('-').append(Long.toHexString(storedResponse.getLastModified()))
+                .append('-').append(Long.toHexString(storedResponse.getContentLength()));
+        if (gzip) {
+            eTag.append("-gzip");
+        }
+        return eTag.append('"').toString();
+    }
+
+    /**
+     * @return <code>true</code> if the <code>Accept-Encoding</code> header of the request allows the gzip
+     *         content coding
+     */
+    protected boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean accepted = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase();
+            boolean gzip = "gzip".equals(name) || "x-gzip".equals(name);
+            if ( !gzip && !"*".equals(name)) {
+                continue;
+            }
+            float quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Float.parseFloat(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (gzip) {
+                // an explicit gzip entry overrides the wildcard
+                return quality > 0;
+            }
+            accepted = quality > 0;
+        }
+        return accepted;
+    }
+
+    protected boolean isNotModified(HttpServletRequest request, String eTag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return eTag != null && matchesETag(ifNoneMatch, eTag);
+        }
+        if (lastModified > -1) {
+            long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+            return ifModifiedSince > -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+        }
+        return false;
+    }
+
+    protected boolean isIfRangeSatisfied(HttpServletRequest request, String eTag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(eTag);
+        }
+        long ifRangeDate = getDateHeader(request, "If-Range");
+        return lastModified > -1 && ifRangeDate > -1 && lastModified / 1000 == ifRangeDate / 1000;
+    }
+
+    private boolean matchesETag(String header, String eTag) {
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if ("*".equals(candidate) || eTag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long getDateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
     protected void copyResponseAsXML(
             InputStream inputStream,
             OutputStream outputStream,
@@ -0,0 +1,278 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+
+import net.opengis.wps.x100.CapabilitiesDocument;
+import net.opengis.wps.x100.ProcessDescriptionType;
+import net.opengis.wps.x100.ProcessDescriptionsDocument;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlOptions;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.request.Request;
+import org.n52.wps.util.XMLBeansHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the serialized GetCapabilities document and the serialized process descriptions, so these read-only
+ * operations are answered by copying bytes. DescribeProcess responses are assembled from the envelope and the
+ * description fragments of the requested processes.
+ * 
+ * The cached bytes belong to a version, which is advanced whenever the WPS configuration, the capabilities
+ * skeleton or the algorithm repositories change. A new version starts with an empty snapshot, so requests
+ * never need to synchronize with the invalidation. The version is part of the ETags of the responses.
+ */
+public final class ServiceMetadataCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceMetadataCache.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+
+    private static final String FRAGMENT_MARKER = "ProcessDescription";
+
+    // distinguishes the ETags of different server runs
+    private static final String EPOCH = Long.toHexString(System.currentTimeMillis());
+
+    private static final AtomicLong VERSION = new AtomicLong();
+
+    private static volatile Snapshot snapshot = new Snapshot(VERSION.get());
+
+    static {
+        PropertyChangeListener listener = new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent propertyChangeEvent) {
+                LOGGER.info("Received Property Change Event: {}", propertyChangeEvent.getPropertyName());
+                invalidate();
+            }
+        };
+        WPSConfig.getInstance().addPropertyChangeListener(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME, listener);
+        WPSConfig.getInstance().addPropertyChangeListener(WPSConfig.WPSCAPABILITIES_SKELETON_PROPERTY_EVENT_NAME,
+                                                          listener);
+    }
+
+    private ServiceMetadataCache() {
+        /* nothing here */
+    }
+
+    /**
+     * Discards all cached documents by advancing the version.
+     */
+    public static void invalidate() {
+        snapshot = new Snapshot(VERSION.incrementAndGet());
+        LOGGER.debug("Service metadata cache invalidated, now at version {}", snapshot.version);
+    }
+
+    public static long getVersion() {
+        return snapshot.version;
+    }
+
+    /**
+     * The capabilities are only held in the cache if caching is enabled in the WPS configuration, otherwise
+     * the skeleton is reloaded for every request.
+     */
+    public static boolean isCapabilitiesCacheEnabled() {
+        return WPSConfig.getInstance().getWPSConfig().getServer().getCacheCapabilites();
+    }
+
+    /**
+     * @return the ETag of the capabilities document, or <code>null</code> if the capabilities are not cached
+     */
+    public static String getCapabilitiesETag() {
+        return isCapabilitiesCacheEnabled() ? createETag(snapshot.version, "capabilities") : null;
+    }
+
+    /**
+     * @return the ETag of the process descriptions of the given processes
+     */
+    public static String getProcessDescriptionsETag(String... identifiers) {
+        StringBuilder key = new StringBuilder();
+        for (String identifier : identifiers) {
+            key.append(identifier).append('\n');
+        }
+        return createETag(snapshot.version, DigestUtils.md5Hex(key.toString()));
+    }
+
+    private static String createETag(long version, String suffix) {
+        return new StringBuilder("\"").append(EPOCH).append('-').append(version).append('-').append(suffix)
+                .append('"').toString();
+    }
+
+    public static void writeCapabilities(OutputStream os) throws ExceptionReport, IOException {
+        os.write(getCapabilities());
+    }
+
+    public static InputStream getCapabilitiesAsStream() throws ExceptionReport {
+        return new ByteArrayInputStream(getCapabilities());
+    }
+
+    private static byte[] getCapabilities() throws ExceptionReport {
+        Snapshot current = snapshot;
+        byte[] capabilities = current.capabilities;
+        if (capabilities == null) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                CapabilitiesConfiguration.getInstance().save(bytes, XMLBeansHelper.getXmlOptions());
+                capabilities = bytes.toByteArray();
+            }
+            catch (IOException e) {
+                throw new ExceptionReport("Exception occured while generating response",
+                                          ExceptionReport.NO_APPLICABLE_CODE,
+                                          e);
+            }
+            catch (XmlException e) {
+                throw new ExceptionReport("Exception occured while generating response",
+                                          ExceptionReport.NO_APPLICABLE_CODE,
+                                          e);
+            }
+            current.capabilities = capabilities;
+        }
+        return capabilities;
+    }
+
+    /**
+     * Writes a ProcessDescriptions document containing the descriptions of the given processes, which have to
+     * exist.
+     */
+    public static void writeProcessDescriptions(OutputStream os, String... identifiers) throws ExceptionReport,
+            IOException {
+        for (byte[] part : getProcessDescriptionParts(identifiers)) {
+            os.write(part);
+        }
+    }
+
+    public static InputStream getProcessDescriptionsAsStream(String... identifiers) throws ExceptionReport {
+        List<InputStream> streams = new ArrayList<InputStream>();
+        for (byte[] part : getProcessDescriptionParts(identifiers)) {
+            streams.add(new ByteArrayInputStream(part));
+        }
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    private static List<byte[]> getProcessDescriptionParts(String... identifiers) throws ExceptionReport {
+        Snapshot current = snapshot;
+        byte[][] envelope = current.envelope;
+        if (envelope == null) {
+            envelope = createEnvelope();
+            current.envelope = envelope;
+        }
+        List<byte[]> parts = new ArrayList<byte[]>(identifiers.length + 2);
+        parts.add(envelope[0]);
+        for (String identifier : identifiers) {
+            byte[] description = current.descriptions.get(identifier);
+            if (description == null) {
+                description = createDescription(identifier);
+                current.descriptions.putIfAbsent(identifier, description);
+            }
+            parts.add(description);
+        }
+        parts.add(envelope[1]);
+        return parts;
+    }
+
+    private static byte[][] createEnvelope() {
+        ProcessDescriptionsDocument document = ProcessDescriptionsDocument.Factory.newInstance();
+        document.addNewProcessDescriptions();
+        XmlCursor c = document.newCursor();
+        try {
+            c.toFirstChild();
+            c.toLastAttribute();
+            c.setAttributeText(new QName(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "schemaLocation"),
+                               "http://www.opengis.net/wps/1.0.0 http://schemas.opengis.net/wps/1.0.0/wpsDescribeProcess_response.xsd");
+            document.getProcessDescriptions().setLang(WebProcessingService.DEFAULT_LANGUAGE);
+            document.getProcessDescriptions().setService("WPS");
+            document.getProcessDescriptions().setVersion(Request.SUPPORTED_VERSION);
+            // placeholder to split the document at the position of the descriptions
+            c.toEndToken();
+            c.insertComment(FRAGMENT_MARKER);
+        }
+        finally {
+            c.dispose();
+        }
+        String text = document.xmlText(XMLBeansHelper.getXmlOptions());
+        String marker = "<!--" + FRAGMENT_MARKER + "-->";
+        int index = text.indexOf(marker);
+        return new byte[][] {(XML_DECLARATION + text.substring(0, index)).getBytes(UTF8),
+                             text.substring(index + marker.length()).getBytes(UTF8)};
+    }
+
+    private static byte[] createDescription(String identifier) throws ExceptionReport {
+        ProcessDescriptionType description = RepositoryManager.getInstance().getProcessDescription(identifier);
+        if (description == null) {
+            throw new ExceptionReport("Algorithm does not exist: " + identifier,
+                                      ExceptionReport.INVALID_PARAMETER_VALUE,
+                                      "identifier");
+        }
+        // copy into a ProcessDescriptions document, so the element is named like in the response
+        ProcessDescriptionsDocument document = ProcessDescriptionsDocument.Factory.newInstance();
+        ProcessDescriptionType copy = document.addNewProcessDescriptions().addNewProcessDescription();
+        copy.set(description);
+        XmlOptions options = XMLBeansHelper.getXmlOptions().setSaveOuter();
+        return copy.xmlText(options).getBytes(UTF8);
+    }
+
+    private static final class Snapshot {
+
+        private final long version;
+
+        private volatile byte[] capabilities;
+
+        private volatile byte[][] envelope;
+
+        private final ConcurrentMap<String, byte[]> descriptions = new ConcurrentHashMap<String, byte[]>();
+
+        Snapshot(long version) {
+            this.version = version;
+        }
+    }
+
+}
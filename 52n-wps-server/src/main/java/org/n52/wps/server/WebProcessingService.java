@@ -41,6 +41,7 @@ import java.net.URLDecoder;
 import java.util.Map;
 import java.util.zip.GZIPOutputStream;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -51,11 +52,16 @@ import org.apache.xmlbeans.XmlException;
 import org.n52.wps.GeneratorDocument.Generator;
 import org.n52.wps.ParserDocument.Parser;
 import org.n52.wps.PropertyDocument.Property;
+import org.n52.wps.commons.PropertyUtil;
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.io.GeneratorFactory;
 import org.n52.wps.io.ParserFactory;
 import org.n52.wps.server.database.DatabaseFactory;
+import org.n52.wps.server.handler.RequestBodyBuffer;
 import org.n52.wps.server.handler.RequestHandler;
+import org.n52.wps.server.request.ExecuteRequest;
+import org.n52.wps.server.request.ParsedDataCache;
+import org.n52.wps.server.request.strategy.ReferenceHttpClient;
 import org.n52.wps.util.XMLBeansHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -147,6 +153,12 @@ public class WebProcessingService extends HttpServlet {
 			}
 		}
         
+        PropertyUtil propertyUtil = new PropertyUtil(serverProps);
+        requestSpillThreshold = (int) Math.min(propertyUtil.extractLong(PROP_requestSpillThreshold,
+                                                                        RequestHandler.DEFAULT_SPILL_THRESHOLD),
+                                               MAXIMUM_REQUEST_SIZE);
+        asyncExecuteEnabled = propertyUtil.extractBoolean(PROP_asyncExecuteEnabled, false);
+
         BASE_DIR = this.getServletContext().getRealPath("");
 
         Parser[] parsers = WPSConfig.getInstance().getActiveRegisteredParser();
@@ -198,6 +210,7 @@ public class WebProcessingService extends HttpServlet {
                                                                           + propertyChangeEvent.getPropertyName());
                                                                   try {
                                                                       CapabilitiesConfiguration.reloadSkeleton();
+                                                                      ServiceMetadataCache.invalidate();
                                                                   }
                                                                   catch (IOException e) {
                                                                       LOGGER.error("error while initializing capabilitiesConfiguration",
@@ -221,6 +234,7 @@ public class WebProcessingService extends HttpServlet {
                                                                           + propertyChangeEvent.getPropertyName());
                                                                   try {
                                                                       CapabilitiesConfiguration.reloadSkeleton();
+                                                                      ServiceMetadataCache.invalidate();
                                                                   }
                                                                   catch (IOException e) {
                                                                       LOGGER.error("error while initializing capabilitiesConfiguration",
@@ -236,15 +250,30 @@ public class WebProcessingService extends HttpServlet {
     }
 
     protected void doGet(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
+        boolean async = false;
         try {
             @SuppressWarnings("resource")
             OutputStream out = res.getOutputStream(); // closed by res.flushBuffer();
             RequestHandler handler = new RequestHandler((Map<String, String[]>) req.getParameterMap(), out);
             String mimeType = handler.getResponseMimeType();
             res.setContentType(mimeType);
-            handler.handle();
 
-            res.setStatus(HttpServletResponse.SC_OK);
+            // GetCapabilities and DescribeProcess responses are versioned by the ServiceMetadataCache
+            String eTag = handler.getResponseETag();
+            if (eTag != null) {
+                res.setHeader("ETag", eTag);
+                if (matchesETag(req.getHeader("If-None-Match"), eTag)) {
+                    res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+            }
+
+            async = handleAsync(req, res, handler);
+            if ( !async) {
+                handler.handle();
+
+                res.setStatus(HttpServletResponse.SC_OK);
+            }
         }
         catch (ExceptionReport e) {
             handleException(e, res);
@@ -256,7 +285,8 @@ public class WebProcessingService extends HttpServlet {
             handleException(er, res);
         }
         finally {
-            if (res != null) {
+            // asynchronous responses are flushed by the executing thread
+            if (res != null && !async) {
                 res.flushBuffer();
             }
             // out.flush();
@@ -264,12 +294,36 @@ public class WebProcessingService extends HttpServlet {
         }
     }
 
+    private static boolean matchesETag(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if ("*".equals(candidate) || eTag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public final static int MAXIMUM_REQUEST_SIZE = 128 << 20;
     public final static String SPECIAL_XML_POST_VARIABLE = "request";
     private static final String XML_CONTENT_TYPE = "text/xml";
+    public final static String PROP_requestSpillThreshold = "requestSpillThreshold";
+
+    public final static String PROP_asyncExecuteEnabled = "asyncExecuteEnabled";
+
+    private int requestSpillThreshold = RequestHandler.DEFAULT_SPILL_THRESHOLD;
+
+    private boolean asyncExecuteEnabled = false;
 
     protected void doPost(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
-        BufferedReader reader = null;
+        RequestBodyBuffer body = null;
+        boolean async = false;
 
         try {
             String contentType = req.getContentType();
@@ -284,15 +338,75 @@ public class WebProcessingService extends HttpServlet {
                 ExceptionReport er = new ExceptionReport("Request body too large, limited to " + MAXIMUM_REQUEST_SIZE
                         + " bytes", ExceptionReport.NO_APPLICABLE_CODE);
                 handleException(er, res);
+                return;
             }
 
             LOGGER.debug("Received POST: Content-Type = " + contentType + ", Character-Encoding = " + characterEncoding
                     + ", Content-Length = " + contentLength);
 
+            // Perform URL decoding, if necessary
+            boolean formEncoded = contentType != null && contentType.startsWith("application/x-www-form-urlencoded");
+            if (formEncoded) {
+                body = readFormEncodedBody(req, characterEncoding);
+            }
+            else {
+                // the raw bytes are handed to the XML parsers, which take care of the encoding
+                body = new RequestBodyBuffer(req.getInputStream(), requestSpillThreshold, MAXIMUM_REQUEST_SIZE);
+            }
+
+            RequestHandler handler = new RequestHandler(body, res.getOutputStream());
+
+            // the scheduling priority may be passed in the query string, form encoded bodies are already consumed
+            String priority = formEncoded ? null : req.getParameter(ExecuteRequest.PRIORITY_PARAMETER);
+            if (priority != null) {
+                handler.setPriority(priority);
+            }
+
+            // the request is parsed, release the buffer before it is executed
+            body.close();
+            body = null;
+
+            String mimeType = handler.getResponseMimeType();
+            res.setContentType(mimeType);
+
+            async = handleAsync(req, res, handler);
+            if ( !async) {
+                handler.handle();
+
+                res.setStatus(HttpServletResponse.SC_OK);
+            }
+        }
+        catch (ExceptionReport e) {
+            handleException(e, res);
+        }
+        catch (Exception e) {
+            ExceptionReport er = new ExceptionReport("Error handing request: " + e.getMessage(), ExceptionReport.NO_APPLICABLE_CODE, e);
+            handleException(er, res);
+        }
+        finally {
+            // asynchronous responses are flushed by the executing thread
+            if (res != null && !async) {
+                res.flushBuffer();
+            }
+
+            if (body != null) {
+                body.close();
+            }
+        }
+    }
+
+    /**
+     * Reads a form encoded POST body. By convention the XML may be submitted as
+     * POST parameter "request".
+     */
+    private RequestBodyBuffer readFormEncodedBody(HttpServletRequest req, String characterEncoding) throws IOException,
+            ExceptionReport {
+        BufferedReader reader = req.getReader();
+        try {
             int requestSize = 0;
+            int contentLength = req.getContentLength();
 
             StringWriter writer = contentLength > 0 ? new StringWriter(contentLength) : new StringWriter();
-            reader = req.getReader();
             char[] buffer = new char[8192];
             int read;
             while ( (read = reader.read(buffer)) != -1 && requestSize < MAXIMUM_REQUEST_SIZE) {
@@ -305,52 +419,110 @@ public class WebProcessingService extends HttpServlet {
             // Protect against denial of service attacks.
             if (requestSize >= MAXIMUM_REQUEST_SIZE && reader.read() > -1) {
                 LOGGER.warn("POST request rejected, request size of " + requestSize + " too large.");
-                ExceptionReport er = new ExceptionReport("Request body too large, limited to " + MAXIMUM_REQUEST_SIZE
-                        + " bytes", ExceptionReport.NO_APPLICABLE_CODE);
-                handleException(er, res);
+                throw new ExceptionReport("Request body too large, limited to " + MAXIMUM_REQUEST_SIZE + " bytes",
+                                          ExceptionReport.NO_APPLICABLE_CODE);
             }
 
             String documentString = writer.toString();
-
-            // Perform URL decoding, if necessary
-            // if ("application/x-www-form-urlencoded".equals(contentType)) {
-            if ( (contentType).startsWith("application/x-www-form-urlencoded")) {
-                if (documentString.startsWith(SPECIAL_XML_POST_VARIABLE + "=")) {
-                    // This is a hack to permit xml to be easily submitted via a form POST.
-                    // By convention, we are allowing users to post xml if they name it
-                    // with a POST parameter "request" although this is not
-                    // valid per the specification.
-                    documentString = documentString.substring(SPECIAL_XML_POST_VARIABLE.length() + 1);
-                    LOGGER.debug("POST request form variable removed");
-                }
-                documentString = URLDecoder.decode(documentString, characterEncoding);
-                LOGGER.debug("Decoded of POST:\n" + documentString + "\n");
+            if (documentString.startsWith(SPECIAL_XML_POST_VARIABLE + "=")) {
+                // This is a hack to permit xml to be easily submitted via a form POST.
+                // By convention, we are allowing users to post xml if they name it
+                // with a POST parameter "request" although this is not
+                // valid per the specification.
+                documentString = documentString.substring(SPECIAL_XML_POST_VARIABLE.length() + 1);
+                LOGGER.debug("POST request form variable removed");
             }
+            documentString = URLDecoder.decode(documentString, characterEncoding);
+            LOGGER.debug("Decoded of POST:\n" + documentString + "\n");
 
-            RequestHandler handler = new RequestHandler(new ByteArrayInputStream(documentString.getBytes("UTF-8")),
-                                                        res.getOutputStream());
-            String mimeType = handler.getResponseMimeType();
-            res.setContentType(mimeType);
+            return new RequestBodyBuffer(new ByteArrayInputStream(documentString.getBytes("UTF-8")),
+                                         requestSpillThreshold,
+                                         MAXIMUM_REQUEST_SIZE);
+        }
+        finally {
+            reader.close();
+        }
+    }
 
-            handler.handle();
+    /**
+     * Hands synchronous Execute requests over to the RequestExecutor without blocking the servlet thread
+     * while the process is running, if enabled and supported by the container. All other requests are left
+     * to {@link RequestHandler#handle()}.
+     *
+     * @return <code>true</code> if the response is completed asynchronously
+     */
+    private boolean handleAsync(HttpServletRequest req, HttpServletResponse res, RequestHandler handler) {
+        if ( !asyncExecuteEnabled || !handler.isAsyncExecution() || !req.isAsyncSupported()) {
+            return false;
+        }
+        AsyncContext asyncContext = req.startAsync(req, res);
+        // processes may run for a long time, the container must not time out the request
+        asyncContext.setTimeout(0);
+        dispatchAsync(asyncContext, handler);
+        return true;
+    }
 
-            res.setStatus(HttpServletResponse.SC_OK);
+    /**
+     * Schedules the request of the handler and completes the async context once the response is written. If
+     * the request can not be scheduled, the exception is written and the context is completed immediately.
+     */
+    static void dispatchAsync(AsyncContext asyncContext, RequestHandler handler) {
+        HttpServletResponse res = (HttpServletResponse) asyncContext.getResponse();
+        try {
+            handler.handleAsync(new AsyncExecuteListener(asyncContext));
+            LOGGER.debug("ExecuteRequest scheduled, servlet thread released.");
         }
         catch (ExceptionReport e) {
             handleException(e, res);
+            completeAsync(asyncContext);
         }
-        catch (Exception e) {
-            ExceptionReport er = new ExceptionReport("Error handing request: " + e.getMessage(), ExceptionReport.NO_APPLICABLE_CODE, e);
+        catch (RuntimeException e) {
+            ExceptionReport er = new ExceptionReport("Error handing request: " + e.getMessage(),
+                                                     ExceptionReport.NO_APPLICABLE_CODE,
+                                                     e);
             handleException(er, res);
+            completeAsync(asyncContext);
+        }
+    }
+
+    private static void completeAsync(AsyncContext asyncContext) {
+        try {
+            // closing the stream finishes wrapping filters, e.g. writes the trailer of a compressed response,
+            // before the container ends the async cycle
+            asyncContext.getResponse().getOutputStream().close();
+        }
+        catch (IOException e) {
+            LOGGER.warn("exception occured while closing asynchronous response", e);
+        }
+        catch (IllegalStateException e) {
+            LOGGER.warn("asynchronous response has not been written to its output stream", e);
         }
         finally {
-            if (res != null) {
-                res.flushBuffer();
-            }
+            asyncContext.complete();
+        }
+    }
 
-            if (reader != null) {
-                reader.close();
-            }
+    /**
+     * Completes the asynchronous response after the process has been executed.
+     */
+    private static class AsyncExecuteListener implements RequestHandler.CompletionListener {
+
+        private final AsyncContext asyncContext;
+
+        public AsyncExecuteListener(AsyncContext asyncContext) {
+            this.asyncContext = asyncContext;
+        }
+
+        @Override
+        public void completed() {
+            ((HttpServletResponse) asyncContext.getResponse()).setStatus(HttpServletResponse.SC_OK);
+            completeAsync(asyncContext);
+        }
+
+        @Override
+        public void failed(ExceptionReport exceptionReport) {
+            handleException(exceptionReport, (HttpServletResponse) asyncContext.getResponse());
+            completeAsync(asyncContext);
         }
     }
 
@@ -389,5 +561,7 @@ public class WebProcessingService extends HttpServlet {
     public void destroy() {
         super.destroy();
         DatabaseFactory.getDatabase().shutdown();
+        ReferenceHttpClient.shutdown();
+        ParsedDataCache.shutdown();
     }
 }
\ No newline at end of file
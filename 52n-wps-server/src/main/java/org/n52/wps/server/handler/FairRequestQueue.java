@@ -0,0 +1,447 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Work queue of the {@link RequestExecutor}. Instead of a single FIFO queue,
+ * every process identifier gets its own sub-queue, so a burst of requests for
+ * one slow process neither delays nor pushes out requests for other
+ * processes.
+ * 
+ * Dequeueing works as follows:
+ * <ul>
+ * <li>The sub-queues are served by stride scheduling: every sub-queue
+ * advances its virtual time by the expected runtime of the served task
+ * divided by its weight, and the sub-queue with the lowest virtual time is
+ * served next. Processes therefore share the pool by computation time, not by
+ * number of requests.</li>
+ * <li>Ties are broken shortest-expected-job-first, then by arrival.</li>
+ * </ul>
+ * Within a sub-queue tasks are ordered by priority, then by arrival. The
+ * priority is requested by clients, so it never lets a process overtake
+ * another one, it only reorders the requests for the same process.
+ * 
+ * The capacity is enforced per process identifier.
+ */
+class FairRequestQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    private static final String DEFAULT_PROCESS_IDENTIFIER = "";
+
+    private static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry e1, Entry e2) {
+            if (e1.priority != e2.priority) {
+                return e1.priority > e2.priority ? -1 : 1;
+            }
+            return e1.sequenceNumber < e2.sequenceNumber ? -1 : (e1.sequenceNumber == e2.sequenceNumber ? 0 : 1);
+        }
+    };
+
+    private final int capacityPerProcess;
+
+    private final Map<String, Double> weights;
+
+    private final Map<String, ProcessQueue> queues = new HashMap<String, ProcessQueue>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    private int count;
+
+    private long sequenceNumber;
+
+    private double virtualTime;
+
+    /**
+     * @param capacityPerProcess
+     *        maximum number of queued tasks per process identifier
+     * @param weights
+     *        scheduling weights by process identifier, processes not
+     *        contained have a weight of 1
+     */
+    FairRequestQueue(int capacityPerProcess, Map<String, Double> weights) {
+        if (capacityPerProcess <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacityPerProcess);
+        }
+        this.capacityPerProcess = capacityPerProcess;
+        this.weights = new HashMap<String, Double>(weights);
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        lock.lock();
+        try {
+            return enqueue(task);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while ( !enqueue(task)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        lock.lockInterruptibly();
+        try {
+            while ( !enqueue(task)) {
+                notFull.await();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return count == 0 ? null : dequeue();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            ProcessQueue next = selectNext();
+            return next == null ? null : next.entries.peek().task;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            for (ProcessQueue queue : queues.values()) {
+                Iterator<Entry> iterator = queue.entries.iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next().task == o) {
+                        iterator.remove();
+                        count--;
+                        notFull.signal();
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of queued tasks of the given process
+     */
+    public int size(String processIdentifier) {
+        lock.lock();
+        try {
+            ProcessQueue queue = queues.get(processIdentifier);
+            return queue == null ? 0 : queue.entries.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The capacity is enforced per process identifier, so there is no global
+     * limit.
+     */
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(Collection< ? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection< ? super Runnable> c, int maxElements) {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        lock.lock();
+        try {
+            int n = 0;
+            while (n < maxElements && count > 0) {
+                c.add(dequeue());
+                n++;
+            }
+            return n;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return an iterator over a snapshot of the queued tasks, in no
+     *         particular order
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        final List<Runnable> snapshot = new ArrayList<Runnable>();
+        lock.lock();
+        try {
+            for (ProcessQueue queue : queues.values()) {
+                for (Entry entry : queue.entries) {
+                    snapshot.add(entry.task);
+                }
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        final Iterator<Runnable> delegate = snapshot.iterator();
+        return new Iterator<Runnable>() {
+
+            private Runnable last;
+
+            @Override
+            public boolean hasNext() {
+                return delegate.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                last = delegate.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                FairRequestQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    private boolean enqueue(Runnable task) {
+        String processIdentifier = DEFAULT_PROCESS_IDENTIFIER;
+        int priority = 0;
+        long expectedRuntimeMillis = RequestExecutor.DEFAULT_EXPECTED_RUNTIME_MILLIS;
+        if (task instanceof RequestTask) {
+            RequestTask< ? > requestTask = (RequestTask< ? >) task;
+            if (requestTask.getProcessIdentifier() != null) {
+                processIdentifier = requestTask.getProcessIdentifier();
+            }
+            priority = requestTask.getPriority();
+            expectedRuntimeMillis = requestTask.getExpectedRuntimeMillis();
+        }
+        ProcessQueue queue = queues.get(processIdentifier);
+        if (queue == null) {
+            Double weight = weights.get(processIdentifier);
+            queue = new ProcessQueue(weight == null ? 1 : weight.doubleValue());
+            queue.pass = virtualTime;
+            queues.put(processIdentifier, queue);
+        }
+        if (queue.entries.size() >= capacityPerProcess) {
+            return false;
+        }
+        if (queue.entries.isEmpty()) {
+            // an idle process must not save up credit while it has nothing to do
+            queue.pass = Math.max(queue.pass, virtualTime);
+        }
+        queue.entries.add(new Entry(task, priority, expectedRuntimeMillis, sequenceNumber++ ));
+        count++;
+        notEmpty.signal();
+        return true;
+    }
+
+    private Runnable dequeue() {
+        ProcessQueue queue = selectNext();
+        Entry entry = queue.entries.poll();
+        virtualTime = queue.pass;
+        queue.pass += Math.max(entry.expectedRuntimeMillis, 1) / queue.weight;
+        count--;
+        notFull.signal();
+        return entry.task;
+    }
+
+    private ProcessQueue selectNext() {
+        ProcessQueue next = null;
+        for (ProcessQueue queue : queues.values()) {
+            if (queue.entries.isEmpty()) {
+                continue;
+            }
+            if (next == null || precedes(queue, next)) {
+                next = queue;
+            }
+        }
+        return next;
+    }
+
+    private static boolean precedes(ProcessQueue q1, ProcessQueue q2) {
+        Entry e1 = q1.entries.peek();
+        Entry e2 = q2.entries.peek();
+        if (q1.pass != q2.pass) {
+            return q1.pass < q2.pass;
+        }
+        if (e1.expectedRuntimeMillis != e2.expectedRuntimeMillis) {
+            return e1.expectedRuntimeMillis < e2.expectedRuntimeMillis;
+        }
+        return e1.sequenceNumber < e2.sequenceNumber;
+    }
+
+    private static class ProcessQueue {
+
+        private final double weight;
+
+        private final PriorityQueue<Entry> entries = new PriorityQueue<Entry>(11, ENTRY_ORDER);
+
+        private double pass;
+
+        ProcessQueue(double weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static class Entry {
+
+        private final Runnable task;
+
+        private final int priority;
+
+        private final long expectedRuntimeMillis;
+
+        private final long sequenceNumber;
+
+        Entry(Runnable task, int priority, long expectedRuntimeMillis, long sequenceNumber) {
+            this.task = task;
+            this.priority = priority;
+            this.expectedRuntimeMillis = expectedRuntimeMillis;
+            this.sequenceNumber = sequenceNumber;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue-wait and service-time statistics of the requests the
+ * {@link RequestExecutor} executed for one process. The smoothed service time
+ * is used to estimate the runtime of the next request of this process.
+ */
+public class ProcessStatistics {
+
+    /** Weight of the latest sample in the smoothed service time */
+    private static final double SMOOTHING_FACTOR = 0.2;
+
+    private final String processIdentifier;
+
+    private long completedCount;
+
+    private long totalQueueWaitNanos;
+
+    private long maximumQueueWaitNanos;
+
+    private long totalServiceNanos;
+
+    private long maximumServiceNanos;
+
+    private double smoothedServiceMillis = -1;
+
+    public ProcessStatistics(String processIdentifier) {
+        this.processIdentifier = processIdentifier;
+    }
+
+    synchronized void record(long queueWaitNanos, long serviceNanos) {
+        completedCount++;
+        totalQueueWaitNanos += queueWaitNanos;
+        maximumQueueWaitNanos = Math.max(maximumQueueWaitNanos, queueWaitNanos);
+        totalServiceNanos += serviceNanos;
+        maximumServiceNanos = Math.max(maximumServiceNanos, serviceNanos);
+        double serviceMillis = serviceNanos / 1e6;
+        if (smoothedServiceMillis < 0) {
+            smoothedServiceMillis = serviceMillis;
+        }
+        else {
+            smoothedServiceMillis += SMOOTHING_FACTOR * (serviceMillis - smoothedServiceMillis);
+        }
+    }
+
+    public String getProcessIdentifier() {
+        return processIdentifier;
+    }
+
+    public synchronized long getCompletedCount() {
+        return completedCount;
+    }
+
+    public synchronized long getMeanQueueWaitMillis() {
+        return completedCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalQueueWaitNanos / completedCount);
+    }
+
+    public synchronized long getMaximumQueueWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maximumQueueWaitNanos);
+    }
+
+    public synchronized long getMeanServiceTimeMillis() {
+        return completedCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalServiceNanos / completedCount);
+    }
+
+    public synchronized long getMaximumServiceTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maximumServiceNanos);
+    }
+
+    /**
+     * @return the exponentially smoothed service time, or <code>-1</code> if
+     *         no request has been completed yet
+     */
+    public synchronized long getExpectedServiceTimeMillis() {
+        return smoothedServiceMillis < 0 ? -1 : Math.round(smoothedServiceMillis);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return processIdentifier + ": completed=" + completedCount + ", meanQueueWait=" + getMeanQueueWaitMillis()
+                + "ms, maxQueueWait=" + getMaximumQueueWaitMillis() + "ms, meanServiceTime="
+                + getMeanServiceTimeMillis() + "ms, expectedServiceTime=" + getExpectedServiceTimeMillis() + "ms";
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.n52.wps.commons.ScratchSpace;
+import org.n52.wps.server.ExceptionReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the raw bytes of a POST body so that it can be read more than once
+ * (first to determine the request type, then to parse it). Bodies up to the
+ * spill threshold are kept in a single byte array, larger bodies are written
+ * to a temporary file on the {@link ScratchSpace}. The body is never decoded
+ * into a String. The buffer exists before the Execute request and its
+ * temporary file arena, so it releases the spill file itself.
+ * 
+ * Call {@link #close()} to release the spill file as soon as the request has
+ * been parsed.
+ */
+public class RequestBodyBuffer implements Closeable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(RequestBodyBuffer.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private byte[] buffer;
+
+    private int count;
+
+    private File spillFile;
+
+    private long size;
+
+    /**
+     * Reads the given stream completely.
+     * 
+     * @param in
+     *        the request body, it is not closed by this constructor
+     * @param spillThreshold
+     *        number of bytes which are held in memory before the body is
+     *        written to disk
+     * @param maximumSize
+     *        number of bytes the body may contain at most
+     * @throws ExceptionReport
+     *         if the body exceeds <code>maximumSize</code>
+     * @throws IOException
+     *         if the body could not be read or spilled
+     */
+    public RequestBodyBuffer(InputStream in, int spillThreshold, long maximumSize) throws ExceptionReport, IOException {
+        this.buffer = new byte[Math.min(BUFFER_SIZE, Math.max(spillThreshold, 1))];
+        OutputStream spillStream = null;
+        boolean complete = false;
+        try {
+            byte[] chunk = new byte[BUFFER_SIZE];
+            int read;
+            while ( (read = in.read(chunk)) != -1) {
+                size += read;
+                if (size > maximumSize) {
+                    LOGGER.warn("POST request rejected, request size exceeds " + maximumSize + " bytes.");
+                    throw new ExceptionReport("Request body too large, limited to " + maximumSize + " bytes",
+                                              ExceptionReport.NO_APPLICABLE_CODE);
+                }
+                if (spillStream == null && size > spillThreshold) {
+                    spillFile = ScratchSpace.getInstance().createTempFile("wps-request-", ".xml",
+                                                                          ScratchSpace.UNKNOWN_SIZE);
+                    spillStream = new BufferedOutputStream(new FileOutputStream(spillFile), BUFFER_SIZE);
+                    spillStream.write(buffer, 0, count);
+                    buffer = null;
+                    count = 0;
+                    LOGGER.debug("POST request exceeds {} bytes, spilling to {}", spillThreshold, spillFile);
+                }
+                if (spillStream != null) {
+                    spillStream.write(chunk, 0, read);
+                }
+                else {
+                    if (count + read > buffer.length) {
+                        buffer = Arrays.copyOf(buffer, Math.min(Math.max(buffer.length << 1, count + read), spillThreshold));
+                    }
+                    System.arraycopy(chunk, 0, buffer, count, read);
+                    count += read;
+                }
+            }
+            if (spillStream != null) {
+                spillStream.close();
+                spillStream = null;
+                ScratchSpace.getInstance().updateSize(spillFile, size);
+            }
+            complete = true;
+        }
+        finally {
+            IOUtils.closeQuietly(spillStream);
+            if ( !complete) {
+                close();
+            }
+        }
+        LOGGER.debug("POST request contained {} bytes", size);
+    }
+
+    /**
+     * @return a new stream positioned at the beginning of the body
+     * @throws IOException
+     *         if the spill file could not be opened
+     */
+    public InputStream newInputStream() throws IOException {
+        if (spillFile != null) {
+            return new BufferedInputStream(new FileInputStream(spillFile), BUFFER_SIZE);
+        }
+        if (buffer == null) {
+            throw new IOException("Request body has already been released");
+        }
+        return new ByteArrayInputStream(buffer, 0, count);
+    }
+
+    /**
+     * @return the number of bytes of the body
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return <code>true</code> if the body has been written to a temporary
+     *         file
+     */
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    @Override
+    public void close() {
+        buffer = null;
+        count = 0;
+        if (spillFile != null) {
+            if ( !spillFile.delete()) {
+                LOGGER.warn("Could not delete request spill file {}", spillFile);
+                spillFile.deleteOnExit();
+            }
+            ScratchSpace.getInstance().release(spillFile);
+            spillFile = null;
+        }
+    }
+}
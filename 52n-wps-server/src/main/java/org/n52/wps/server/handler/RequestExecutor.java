@@ -28,12 +28,29 @@
  */
 package org.n52.wps.server.handler;
 
-import java.util.concurrent.ArrayBlockingQueue;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.n52.wps.PropertyDocument.Property;
 import org.n52.wps.ServerDocument.Server;
+import org.n52.wps.commons.PropertyUtil;
 import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.request.ExecuteRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * After the client Request is accepted, it should be executed. To prevent
@@ -44,19 +61,182 @@ import org.n52.wps.commons.WPSConfig;
  * Proper pool size estimation: N = Number of processors WT = Average waiting
  * time of a task ST = Average service time of a task #Threads = N * (1 + WT/ST)
  * 
+ * The queue is a {@link FairRequestQueue}: Execute requests are queued per
+ * process identifier (maxQueuedTasks applies to each process) and scheduled
+ * fairly by their expected runtime, which is taken from the recorded
+ * {@link ProcessStatistics}. The weight of a process can be set with the
+ * server property <code>scheduler.weight.&lt;process identifier&gt;</code>.
+ * The priority requested by a client only orders the requests for the same
+ * process and is capped by the server property
+ * <code>scheduler.maxClientPriority</code> (default 0, so clients can only
+ * lower the priority of their requests). The statistics are available through
+ * JMX, see {@link RequestExecutorMXBean}.
+ * 
  * @author Timon ter Braak
  */
-public class RequestExecutor extends ThreadPoolExecutor {
+public class RequestExecutor extends ThreadPoolExecutor implements RequestExecutorMXBean {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(RequestExecutor.class);
 
 	public static Server serverConfig = WPSConfig.getInstance().getWPSConfig().getServer();
+
+	/** Prefix of the server properties holding the scheduling weight of a process */
+	public static final String PROP_SCHEDULER_WEIGHT_PREFIX = "scheduler.weight.";
+
+	/** Server property holding the highest priority a client may request */
+	public static final String PROP_SCHEDULER_MAX_CLIENT_PRIORITY = "scheduler.maxClientPriority";
+
+	/** Expected runtime of requests for processes without recorded runtimes */
+	public static final long DEFAULT_EXPECTED_RUNTIME_MILLIS = 1000;
+
+	private static final String MBEAN_NAME = "org.n52.wps.server:type=RequestExecutor";
+
+	private final ConcurrentMap<String, ProcessStatistics> statistics = new ConcurrentHashMap<String, ProcessStatistics>();
+
+	private final int maxClientPriority;
 	
 	/**
 	 * Create a RequestExecutor.
 	 */
 	public RequestExecutor() {
 		super(serverConfig.getMinPoolSize().intValue(), serverConfig.getMaxPoolSize().intValue(), serverConfig.getKeepAliveSeconds().intValue(),
-				TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
-						serverConfig.getMaxQueuedTasks().intValue()));
+				TimeUnit.SECONDS, new FairRequestQueue(
+						serverConfig.getMaxQueuedTasks().intValue(), getSchedulerWeights(serverConfig.getPropertyArray())));
+		maxClientPriority = (int) Math.max(ExecuteRequest.MIN_PRIORITY, Math.min(ExecuteRequest.MAX_PRIORITY,
+				new PropertyUtil(serverConfig.getPropertyArray()).extractLong(PROP_SCHEDULER_MAX_CLIENT_PRIORITY,
+						ExecuteRequest.DEFAULT_PRIORITY)));
+		registerMBean();
+	}
+
+	/**
+	 * Executes a command on behalf of an ExecuteRequest, so that it is
+	 * scheduled like the request itself.
+	 * 
+	 * @param request
+	 *            the request the command belongs to
+	 * @param command
+	 *            the command to execute
+	 */
+	public void execute(ExecuteRequest request, Runnable command) {
+		String processIdentifier = request.getAlgorithmIdentifier();
+		execute(new RequestTask<Object>(command, null, processIdentifier, getPriority(request),
+				getExpectedRuntimeMillis(processIdentifier)));
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+		if (callable instanceof ExecuteRequest) {
+			ExecuteRequest request = (ExecuteRequest) callable;
+			String processIdentifier = request.getAlgorithmIdentifier();
+			return new RequestTask<T>(callable, processIdentifier, getPriority(request),
+					getExpectedRuntimeMillis(processIdentifier));
+		}
+		return super.newTaskFor(callable);
+	}
+
+	@Override
+	protected void beforeExecute(Thread t, Runnable r) {
+		super.beforeExecute(t, r);
+		if (r instanceof RequestTask) {
+			((RequestTask<?>) r).started();
+		}
+	}
+
+	@Override
+	protected void afterExecute(Runnable r, Throwable t) {
+		super.afterExecute(r, t);
+		if (r instanceof RequestTask) {
+			RequestTask<?> task = (RequestTask<?>) r;
+			if (task.getProcessIdentifier() == null) {
+				return;
+			}
+			ProcessStatistics processStatistics = getStatistics(task.getProcessIdentifier());
+			processStatistics.record(task.getQueueWaitNanos(), task.getServiceNanos());
+			LOGGER.debug("Request executed, {}", processStatistics);
+		}
+	}
+
+	/**
+	 * @return the priority requested by the client, capped by the server
+	 *         property {@value #PROP_SCHEDULER_MAX_CLIENT_PRIORITY}
+	 */
+	int getPriority(ExecuteRequest request) {
+		return Math.min(request.getPriority(), maxClientPriority);
+	}
+
+	/**
+	 * @return the expected runtime of the next request for the given process
+	 */
+	public long getExpectedRuntimeMillis(String processIdentifier) {
+		ProcessStatistics processStatistics = processIdentifier == null ? null : statistics.get(processIdentifier);
+		if (processStatistics == null || processStatistics.getExpectedServiceTimeMillis() < 0) {
+			return DEFAULT_EXPECTED_RUNTIME_MILLIS;
+		}
+		return processStatistics.getExpectedServiceTimeMillis();
+	}
+
+	@Override
+	public int getQueuedTaskCount() {
+		return getQueue().size();
+	}
+
+	@Override
+	public List<ProcessStatistics> getProcessStatistics() {
+		return new ArrayList<ProcessStatistics>(statistics.values());
+	}
+
+	private ProcessStatistics getStatistics(String processIdentifier) {
+		ProcessStatistics processStatistics = statistics.get(processIdentifier);
+		if (processStatistics == null) {
+			ProcessStatistics newStatistics = new ProcessStatistics(processIdentifier);
+			processStatistics = statistics.putIfAbsent(processIdentifier, newStatistics);
+			if (processStatistics == null) {
+				processStatistics = newStatistics;
+			}
+		}
+		return processStatistics;
+	}
+
+	static Map<String, Double> getSchedulerWeights(Property[] properties) {
+		Map<String, Double> weights = new HashMap<String, Double>();
+		if (properties == null) {
+			return weights;
+		}
+		for (Property property : properties) {
+			String name = property.getName();
+			if (name == null || !name.startsWith(PROP_SCHEDULER_WEIGHT_PREFIX) || !property.getActive()) {
+				continue;
+			}
+			String processIdentifier = name.substring(PROP_SCHEDULER_WEIGHT_PREFIX.length());
+			try {
+				double weight = Double.parseDouble(property.getStringValue());
+				if (weight > 0) {
+					weights.put(processIdentifier, weight);
+					LOGGER.info("Using scheduling weight {} for process {}", weight, processIdentifier);
+				} else {
+					LOGGER.warn("Ignoring non-positive scheduling weight {} for process {}", weight, processIdentifier);
+				}
+			} catch (NumberFormatException e) {
+				LOGGER.error("Invalid scheduling weight \"{}\" for process {}", property.getStringValue(), processIdentifier);
+			}
+		}
+		return weights;
+	}
+
+	private void registerMBean() {
+		try {
+			MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			// replace the executor of a previous deployment
+			if (mBeanServer.isRegistered(name)) {
+				mBeanServer.unregisterMBean(name);
+			}
+			mBeanServer.registerMBean(this, name);
+		} catch (JMException e) {
+			LOGGER.warn("Could not register RequestExecutor statistics with JMX.", e);
+		} catch (SecurityException e) {
+			LOGGER.warn("Could not register RequestExecutor statistics with JMX.", e);
+		}
 	}
 
-}
\ No newline at end of file
+}
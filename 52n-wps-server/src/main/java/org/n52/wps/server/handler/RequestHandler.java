@@ -36,8 +36,13 @@ import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.RejectedExecutionException;
 
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.collections.map.CaseInsensitiveMap;
 import org.apache.commons.io.IOUtils;
@@ -53,7 +58,6 @@ import org.n52.wps.server.request.RetrieveResultRequest;
 import org.n52.wps.server.response.ExecuteResponse;
 import org.n52.wps.server.response.Response;
 import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 /**
@@ -76,6 +80,18 @@ public class RequestHandler {
 	protected OutputStream os;
 
 	private static Logger LOGGER = LoggerFactory.getLogger(RequestHandler.class);
+
+	/** POST bodies larger than this are buffered on disk instead of the heap */
+	public static final int DEFAULT_SPILL_THRESHOLD = 4 << 20;
+
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+	private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+
+	static {
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		DOCUMENT_BUILDER_FACTORY.setNamespaceAware(true);
+	}
 	
 	protected String responseMimeType;
 	
@@ -159,9 +175,9 @@ public class RequestHandler {
 	}
 
 	/**
-	 * Handles requests of type HTTP_POST (currently executeProcess). A Document
-	 * is used to represent the client input. This Document must first be parsed
-	 * from an InputStream.
+	 * Handles requests of type HTTP_POST (currently executeProcess). The
+	 * InputStream is buffered before it is parsed, see
+	 * {@link #RequestHandler(RequestBodyBuffer, OutputStream)}.
 	 * 
 	 * @param is
 	 *            The client input
@@ -171,63 +187,94 @@ public class RequestHandler {
 	 */
 	public RequestHandler(InputStream is, OutputStream os)
 			throws ExceptionReport {
-		String nodeName, localName, nodeURI, version = null;
-		Document doc;
 		this.os = os;
+		RequestBodyBuffer body = null;
+		try {
+			body = new RequestBodyBuffer(is, DEFAULT_SPILL_THRESHOLD, WebProcessingService.MAXIMUM_REQUEST_SIZE);
+			parsePOSTRequest(body);
+		} catch (IOException e) {
+			throw new ExceptionReport(
+					"There went something wrong with the network connection.",
+					ExceptionReport.NO_APPLICABLE_CODE, e);
+		} finally {
+			if (body != null) {
+				body.close();
+			}
+		}
+	}
+
+	/**
+	 * Handles requests of type HTTP_POST (currently executeProcess). Only the
+	 * root element of the body is read to determine the request type. Execute
+	 * requests are then parsed directly into an ExecuteDocument, all other
+	 * requests are parsed into a Document.
+	 * 
+	 * @param body
+	 *            The client input, it can be closed as soon as this
+	 *            constructor returns
+	 * @param os
+	 *            The OutputStream to write the response to.
+	 * @throws ExceptionReport
+	 */
+	public RequestHandler(RequestBodyBuffer body, OutputStream os)
+			throws ExceptionReport {
+		this.os = os;
+		parsePOSTRequest(body);
+	}
+
+	private void parsePOSTRequest(RequestBodyBuffer body) throws ExceptionReport {
+		String localName, nodeURI, version = null;
 		
 		boolean isCapabilitiesNode = false;
 		
+		InputStream is = null;
+		XMLStreamReader reader = null;
 		try {
-			System.setProperty("javax.xml.parsers.DocumentBuilderFactory", "org.apache.xerces.jaxp.DocumentBuilderFactoryImpl");
-		
-			DocumentBuilderFactory fac = DocumentBuilderFactory.newInstance();
-			fac.setNamespaceAware(true);
-
-			// parse the InputStream to create a Document
-			doc = fac.newDocumentBuilder().parse(is);
+			is = body.newInputStream();
+			reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
 			
-			// Get the first non-comment child.
-			Node child = doc.getFirstChild();
-			while(child.getNodeName().compareTo("#comment")==0) {
-				child = child.getNextSibling();
+			// Get the root element, skipping prolog and comments.
+			while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+				// skip
+			}
+			if (!reader.isStartElement()) {
+				throw new ExceptionReport("POST data does not contain an XML element.",
+						ExceptionReport.NO_APPLICABLE_CODE);
 			}
-			nodeName = child.getNodeName();
-			localName = child.getLocalName();
-			nodeURI = child.getNamespaceURI();
-			Node versionNode = child.getAttributes().getNamedItem("version");
+			localName = reader.getLocalName();
+			nodeURI = reader.getNamespaceURI();
+			String versionValue = reader.getAttributeValue(null, "version");
 			
 			/*
 			 * check for service parameter. this has to be present for all requests
 			 */
-			Node serviceNode = child.getAttributes().getNamedItem("service");
+			String serviceValue = reader.getAttributeValue(null, "service");
 			
-			if(serviceNode == null){
+			if(serviceValue == null){
 				throw new ExceptionReport("Parameter <service> not specified.", ExceptionReport.MISSING_PARAMETER_VALUE, "service");
 			}else{
-				if(!serviceNode.getNodeValue().equalsIgnoreCase("WPS")){
+				if(!serviceValue.equalsIgnoreCase("WPS")){
 					throw new ExceptionReport("Parameter <service> not specified.", ExceptionReport.INVALID_PARAMETER_VALUE, "service");
 				}
 			}
 			
-            isCapabilitiesNode = nodeName.toLowerCase().contains("capabilities");
-			if(versionNode == null && !isCapabilitiesNode) {
+            isCapabilitiesNode = localName.toLowerCase().contains("capabilities");
+			if(versionValue == null && !isCapabilitiesNode) {
 				throw new ExceptionReport("Parameter <version> not specified.", ExceptionReport.MISSING_PARAMETER_VALUE, "version");
 			}
 			//TODO: I think this can be removed, as capabilities requests do not have a version parameter (BenjaminPross)
 			if(!isCapabilitiesNode){
-//				version = child.getFirstChild().getTextContent();//.getNextSibling().getFirstChild().getNextSibling().getFirstChild().getNodeValue();
-				version = child.getAttributes().getNamedItem("version").getNodeValue();
+				version = versionValue;
 			}
 			/*
 			 * check language, if not supported, return ExceptionReport
 			 * Fix for https://bugzilla.52north.org/show_bug.cgi?id=905
 			 */
-			Node languageNode = child.getAttributes().getNamedItem("language");
-			if(languageNode != null){
-				String language = languageNode.getNodeValue();
+			String language = reader.getAttributeValue(null, "language");
+			if(language != null){
 				Request.checkLanguageSupported(language);
 			}
-		} catch (SAXException e) {
+		} catch (XMLStreamException e) {
 			throw new ExceptionReport(
 					"There went something wrong with parsing the POST data: "
 							+ e.getMessage(),
@@ -236,10 +283,15 @@ public class RequestHandler {
 			throw new ExceptionReport(
 					"There went something wrong with the network connection.",
 					ExceptionReport.NO_APPLICABLE_CODE, e);
-		} catch (ParserConfigurationException e) {
-			throw new ExceptionReport(
-					"There is a internal parser configuration error",
-					ExceptionReport.NO_APPLICABLE_CODE, e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					LOGGER.debug("Could not close XMLStreamReader.", e);
+				}
+			}
+			IOUtils.closeQuietly(is);
 		}
 		//Fix for Bug 904 https://bugzilla.52north.org/show_bug.cgi?id=904
 		if(!isCapabilitiesNode && version == null) {
@@ -248,27 +300,69 @@ public class RequestHandler {
 		if(!isCapabilitiesNode && !version.equals(Request.SUPPORTED_VERSION)) {
 			throw new ExceptionReport("Version not supported." , ExceptionReport.INVALID_PARAMETER_VALUE, "version");
 		}
+		boolean isWPSNamespace = WebProcessingService.WPS_NAMESPACE.equals(nodeURI);
 		// get the request type
-		if (nodeURI.equals(WebProcessingService.WPS_NAMESPACE) && localName.equals("Execute")) {
-			req = new ExecuteRequest(doc);
+		if (isWPSNamespace && localName.equals("Execute")) {
+			try {
+				is = body.newInputStream();
+				req = new ExecuteRequest(is);
+			} catch (IOException e) {
+				throw new ExceptionReport(
+						"There went something wrong with the network connection.",
+						ExceptionReport.NO_APPLICABLE_CODE, e);
+			} finally {
+				IOUtils.closeQuietly(is);
+			}
 			setResponseMimeType((ExecuteRequest)req);
-		}else if (nodeURI.equals(WebProcessingService.WPS_NAMESPACE) && localName.equals("GetCapabilities")){
-			req = new CapabilitiesRequest(doc);
+		}else if (isWPSNamespace && localName.equals("GetCapabilities")){
+			req = new CapabilitiesRequest(parseDocument(body));
 			this.responseMimeType = "text/xml";
-		} else if (nodeURI.equals(WebProcessingService.WPS_NAMESPACE) && localName.equals("DescribeProcess")) {
-			req = new DescribeProcessRequest(doc);
+		} else if (isWPSNamespace && localName.equals("DescribeProcess")) {
+			req = new DescribeProcessRequest(parseDocument(body));
 			this.responseMimeType = "text/xml";
 			
 		}  else if(!localName.equals("Execute")){
 			throw new ExceptionReport("The requested Operation not supported or not applicable to the specification: "
-					+ nodeName, ExceptionReport.OPERATION_NOT_SUPPORTED, localName);
+					+ localName, ExceptionReport.OPERATION_NOT_SUPPORTED, localName);
 		}
-		else if(nodeURI.equals(WebProcessingService.WPS_NAMESPACE)) {
+		else if(!isWPSNamespace) {
 			throw new ExceptionReport("specified namespace is not supported: "
 					+ nodeURI, ExceptionReport.INVALID_PARAMETER_VALUE);
 		}
 	}
 
+	/**
+	 * Parses the (small) GetCapabilities and DescribeProcess requests into a
+	 * Document.
+	 */
+	private static Document parseDocument(RequestBodyBuffer body) throws ExceptionReport {
+		InputStream is = null;
+		try {
+			DocumentBuilder builder;
+			// DocumentBuilderFactory is not guaranteed to be thread safe
+			synchronized (DOCUMENT_BUILDER_FACTORY) {
+				builder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+			}
+			is = body.newInputStream();
+			return builder.parse(is);
+		} catch (SAXException e) {
+			throw new ExceptionReport(
+					"There went something wrong with parsing the POST data: "
+							+ e.getMessage(),
+					ExceptionReport.NO_APPLICABLE_CODE, e);
+		} catch (IOException e) {
+			throw new ExceptionReport(
+					"There went something wrong with the network connection.",
+					ExceptionReport.NO_APPLICABLE_CODE, e);
+		} catch (ParserConfigurationException e) {
+			throw new ExceptionReport(
+					"There is a internal parser configuration error",
+					ExceptionReport.NO_APPLICABLE_CODE, e);
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+	}
+
 	/**
 	 * Handle a request after its type is determined. The request is scheduled
 	 * for execution. If the server has enough free resources, the client will
@@ -293,9 +387,7 @@ public class RequestHandler {
 			try {
 				if (execReq.isStoreResponse()) {
 					resp = new ExecuteResponse(execReq);
-					InputStream is = resp.getAsStream();
-					IOUtils.copy(is, os);
-					is.close();
+					resp.save(os);
                     pool.submit(execReq);
 					return;
 				}
@@ -339,9 +431,8 @@ public class RequestHandler {
 						throw new ExceptionReport("Problem with handling threads in RequestHandler", ExceptionReport.NO_APPLICABLE_CODE);
 					}
 					if(!execReq.isStoreResponse()) {
-						InputStream is = resp.getAsStream();
-						IOUtils.copy(is, os);
-						is.close();
+						// raw data is generated directly into the client's stream
+						resp.save(os);
 						LOGGER.info("Served ExecuteRequest.");
 					}
 				}
@@ -361,17 +452,97 @@ public class RequestHandler {
 		} else {
 			// for GetCapabilities and DescribeProcess:
 			resp = req.call();
-			try {
-				InputStream is = resp.getAsStream();
-				IOUtils.copy(is, os);
-				is.close();
-			} catch (IOException e) {
-				throw new ExceptionReport("Could not read from response stream.", ExceptionReport.NO_APPLICABLE_CODE);
-			}
+			resp.save(os);
 			
 		}
 	}
 	
+	/**
+	 * @return <code>true</code> if the request is an Execute request whose
+	 *         response is only available after the computation finished and
+	 *         which therefore can be served by
+	 *         {@link #handleAsync(CompletionListener)}
+	 */
+	public boolean isAsyncExecution() {
+		return req instanceof ExecuteRequest && !((ExecuteRequest) req).isStoreResponse();
+	}
+
+	/**
+	 * Schedules a synchronous Execute request without waiting for its
+	 * completion. The thread of the {@link RequestExecutor} that runs the
+	 * computation writes the response to the OutputStream and informs the
+	 * listener afterwards, so the calling thread is released immediately.
+	 * 
+	 * @param listener
+	 *            notified after the response has been written or the
+	 *            request failed
+	 * @throws ExceptionReport
+	 *             if the request is no synchronous Execute request or could
+	 *             not be scheduled. The listener is not notified in this
+	 *             case.
+	 */
+	public void handleAsync(final CompletionListener listener) throws ExceptionReport {
+		if (!isAsyncExecution()) {
+			throw new ExceptionReport("Request can not be handled asynchronously", ExceptionReport.NO_APPLICABLE_CODE);
+		}
+		final ExecuteRequest execReq = (ExecuteRequest) req;
+		
+		execReq.updateStatusAccepted();
+		
+		try {
+			pool.execute(execReq, new Runnable() {
+				@Override
+				public void run() {
+					ExceptionReport exceptionReport = null;
+					try {
+						Response resp = execReq.call();
+						resp.save(os);
+						LOGGER.info("Served ExecuteRequest.");
+					} catch (ExceptionReport e) {
+						LOGGER.warn("exception while handling ExecuteRequest.");
+						exceptionReport = e;
+					} catch (RuntimeException e) {
+						LOGGER.error("exception handling ExecuteRequest.", e);
+						exceptionReport = new ExceptionReport("An error occurred in the computation: "
+								+ e.getMessage(), ExceptionReport.NO_APPLICABLE_CODE, e);
+					} catch (Error e) {
+						// the waiting client has to be served anyway
+						listener.failed(new ExceptionReport("An error occurred in the computation: "
+								+ e.getMessage(), ExceptionReport.NO_APPLICABLE_CODE, e));
+						throw e;
+					}
+					if (exceptionReport == null) {
+						listener.completed();
+					} else {
+						listener.failed(exceptionReport);
+					}
+				}
+			});
+		} catch (RejectedExecutionException ree) {
+			LOGGER.warn("exception handling ExecuteRequest.", ree);
+			// server too busy?
+			throw new ExceptionReport(
+					"The requested process was rejected. Maybe the server is flooded with requests.",
+					ExceptionReport.SERVER_BUSY);
+		}
+	}
+	
+	/**
+	 * Sets the scheduling priority of an Execute request, see
+	 * {@link ExecuteRequest#setPriority(String)}. Ignored for all other
+	 * requests.
+	 * 
+	 * @param priority
+	 *            the priority requested by the client
+	 * @throws ExceptionReport
+	 *             if the priority is no integer
+	 */
+	public void setPriority(String priority) throws ExceptionReport {
+		if (req instanceof ExecuteRequest) {
+			((ExecuteRequest) req).setPriority(priority);
+		}
+	}
+
 	protected void setResponseMimeType(ExecuteRequest req) {
 		if(req.isRawData()){
 			responseMimeType = req.getExecuteResponseBuilder().getMimeType();
@@ -384,15 +555,44 @@ public class RequestHandler {
 	
 	
 
+	/**
+	 * Validates the request and returns the ETag of the response, so
+	 * conditional requests can be answered without handling the request.
+	 * 
+	 * @return the ETag, or null if the response is not served from a cache
+	 * @throws ExceptionReport
+	 *             if the request is not valid
+	 */
+	public String getResponseETag() throws ExceptionReport {
+		return req == null ? null : req.getETag();
+	}
+
 	public String getResponseMimeType(){
 		if(responseMimeType == null){
 			return "text/xml";
 		}
 		return responseMimeType.toLowerCase();
 	}
-	
-	
-}
 
+	/**
+	 * Receives the outcome of a request handled by
+	 * {@link RequestHandler#handleAsync(CompletionListener)}.
+	 */
+	public interface CompletionListener {
 
+		/**
+		 * The response has been written completely.
+		 */
+		void completed();
 
+		/**
+		 * The request failed, nothing or only a part of the response has
+		 * been written.
+		 * 
+		 * @param exceptionReport
+		 *            the reason of the failure
+		 */
+		void failed(ExceptionReport exceptionReport);
+	}
+	
+}
@@ -0,0 +1,98 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A task of the {@link RequestExecutor} which carries the information the
+ * {@link FairRequestQueue} needs to schedule it: the process it belongs to,
+ * the priority requested by the client and its expected runtime.
+ */
+class RequestTask<V> extends FutureTask<V> {
+
+    private final String processIdentifier;
+
+    private final int priority;
+
+    private final long expectedRuntimeMillis;
+
+    private final long creationTime = System.nanoTime();
+
+    private volatile long startTime;
+
+    RequestTask(Callable<V> callable, String processIdentifier, int priority, long expectedRuntimeMillis) {
+        super(callable);
+        this.processIdentifier = processIdentifier;
+        this.priority = priority;
+        this.expectedRuntimeMillis = expectedRuntimeMillis;
+    }
+
+    RequestTask(Runnable runnable,
+                V result,
+                String processIdentifier,
+                int priority,
+                long expectedRuntimeMillis) {
+        super(runnable, result);
+        this.processIdentifier = processIdentifier;
+        this.priority = priority;
+        this.expectedRuntimeMillis = expectedRuntimeMillis;
+    }
+
+    String getProcessIdentifier() {
+        return processIdentifier;
+    }
+
+    int getPriority() {
+        return priority;
+    }
+
+    long getExpectedRuntimeMillis() {
+        return expectedRuntimeMillis;
+    }
+
+    void started() {
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * @return the time the task spent in the queue
+     */
+    long getQueueWaitNanos() {
+        return startTime - creationTime;
+    }
+
+    /**
+     * @return the time the task has been running
+     */
+    long getServiceNanos() {
+        return System.nanoTime() - startTime;
+    }
+}
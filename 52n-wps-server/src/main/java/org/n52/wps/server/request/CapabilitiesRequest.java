@@ -32,6 +32,7 @@ import java.util.ArrayList;
 
 import org.apache.commons.collections.map.CaseInsensitiveMap;
 import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.ServiceMetadataCache;
 import org.n52.wps.server.handler.RequestHandler;
 import org.n52.wps.server.response.CapabilitiesResponse;
 import org.n52.wps.server.response.Response;
@@ -150,6 +151,12 @@ public class CapabilitiesRequest extends Request {
         return new CapabilitiesResponse(this);
     }
 
+    @Override
+    public String getETag() throws ExceptionReport {
+        validate();
+        return ServiceMetadataCache.getCapabilitiesETag();
+    }
+
     /**
      * Not used in this class. Returns null;
      */
@@ -42,6 +42,7 @@ import org.apache.commons.collections.map.CaseInsensitiveMap;
 import org.apache.xmlbeans.XmlCursor;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.RepositoryManager;
+import org.n52.wps.server.ServiceMetadataCache;
 import org.n52.wps.server.WebProcessingService;
 import org.n52.wps.server.response.DescribeProcessResponse;
 import org.n52.wps.server.response.Response;
@@ -58,6 +59,8 @@ public class DescribeProcessRequest extends Request {
 
 	private ProcessDescriptionsDocument document;
 	
+	private String[] identifiers;
+	
 	/**
 	 * Creates a DescribeProcessRequest based on a Map (HTTP_GET)
 	 * @param ciMap The client input
@@ -124,28 +127,40 @@ public class DescribeProcessRequest extends Request {
 	}
 	
 	public Object getAttachedResult(){
+		if(document == null && identifiers != null){
+			document = createDocument(identifiers);
+		}
 		return document;
 	}
 	
 	/**
-	 * Actually serves the Request.
+	 * @return the identifiers of the described processes, available after the request was handled
+	 */
+	public String[] getIdentifiers(){
+		return identifiers;
+	}
+	
+	@Override
+	public String getETag() throws ExceptionReport {
+		return ServiceMetadataCache.getProcessDescriptionsETag(resolveIdentifiers());
+	}
+	
+	/**
+	 * Actually serves the Request. The descriptions are written from the
+	 * {@link ServiceMetadataCache} by the {@link DescribeProcessResponse}.
 	 * @throws ExceptionReport
 	 * @return Response The result of the computation
 	 */
 	public Response call() throws ExceptionReport {
+		identifiers = resolveIdentifiers();
+		LOGGER.info("Handled Request successfully for: " + getMapValue("identifier", true));
+		return new DescribeProcessResponse(this);
+	}
+	
+	private String[] resolveIdentifiers() throws ExceptionReport {
 		validate();
 		
-		document = ProcessDescriptionsDocument.Factory.newInstance();
-		document.addNewProcessDescriptions();
-		XmlCursor c = document.newCursor();
-		c.toFirstChild();
-		c.toLastAttribute();
-		c.setAttributeText(new QName(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "schemaLocation"), "http://www.opengis.net/wps/1.0.0 http://schemas.opengis.net/wps/1.0.0/wpsDescribeProcess_response.xsd");
-				
 		String[] identifiers = getMapValue("identifier", true).split(",");
-		document.getProcessDescriptions().setLang(WebProcessingService.DEFAULT_LANGUAGE);
-		document.getProcessDescriptions().setService("WPS");
-		document.getProcessDescriptions().setVersion(Request.SUPPORTED_VERSION);
 		
 		if(identifiers.length==1 && identifiers[0].equalsIgnoreCase("all")){
 			List<String> identifierList = RepositoryManager.getInstance().getAlgorithms();
@@ -174,12 +189,28 @@ public class DescribeProcessRequest extends Request {
 											ExceptionReport.INVALID_PARAMETER_VALUE, 
 											"identifier");
 			}
+		}
+		return identifiers;
+	}
+	
+	private ProcessDescriptionsDocument createDocument(String[] identifiers) {
+		ProcessDescriptionsDocument document = ProcessDescriptionsDocument.Factory.newInstance();
+		document.addNewProcessDescriptions();
+		XmlCursor c = document.newCursor();
+		c.toFirstChild();
+		c.toLastAttribute();
+		c.setAttributeText(new QName(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "schemaLocation"), "http://www.opengis.net/wps/1.0.0 http://schemas.opengis.net/wps/1.0.0/wpsDescribeProcess_response.xsd");
+		c.dispose();
+		
+		document.getProcessDescriptions().setLang(WebProcessingService.DEFAULT_LANGUAGE);
+		document.getProcessDescriptions().setService("WPS");
+		document.getProcessDescriptions().setVersion(Request.SUPPORTED_VERSION);
+		
+		for(String algorithmName : identifiers) {
 			ProcessDescriptionType description = RepositoryManager.getInstance().getProcessDescription(algorithmName);
 			document.getProcessDescriptions().addNewProcessDescription().set(description);
 		}
-		
-		LOGGER.info("Handled Request successfully for: " + getMapValue("identifier", true));
-		return new DescribeProcessResponse(this);
+		return document;
 	}
 
 }
@@ -31,6 +31,7 @@ package org.n52.wps.server.request;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
@@ -94,7 +95,23 @@ public class ExecuteRequest extends Request implements IObserver {
 	private static Logger LOGGER = LoggerFactory.getLogger(ExecuteRequest.class);
 	private ExecuteDocument execDom;
 	private Map<String, IData> returnResults;
+	private boolean resultsDisposed;
+	private ExecutionContext context;
+	private final StatusUpdateCoalescer statusUpdateCoalescer = new StatusUpdateCoalescer(
+			new StatusUpdateCoalescer.StatusWriter() {
+				@Override
+				public void write(StatusType status) {
+					writeStatus(status);
+				}
+			});
 	private ExecuteResponseBuilder execRespType;
+	private int priority = DEFAULT_PRIORITY;
+
+	/** Name of the optional request parameter holding the scheduling priority */
+	public static final String PRIORITY_PARAMETER = "priority";
+	public static final int DEFAULT_PRIORITY = 0;
+	public static final int MIN_PRIORITY = -10;
+	public static final int MAX_PRIORITY = 10;
 	
 	
 
@@ -111,15 +128,60 @@ public class ExecuteRequest extends Request implements IObserver {
 			XmlOptions option = new XmlOptions();
 			option.setLoadTrimTextBuffer();
 			this.execDom = ExecuteDocument.Factory.parse(doc, option);
-			if (this.execDom == null) {
-				LOGGER.error("ExecuteDocument is null");
-				throw new ExceptionReport("Error while parsing post data",
-						ExceptionReport.MISSING_PARAMETER_VALUE);
-			}
 		} catch (XmlException e) {
 			throw new ExceptionReport("Error while parsing post data",
 					ExceptionReport.MISSING_PARAMETER_VALUE, e);
 		}
+		initForPOST();
+	}
+
+	/**
+	 * Creates an ExecuteRequest based on the raw XML of the clients submission
+	 * (HTTP_POST). The stream is parsed directly into an ExecuteDocument,
+	 * without building an intermediate Document.
+	 * 
+	 * @param is
+	 *            The clients submission
+	 * @throws ExceptionReport
+	 */
+	public ExecuteRequest(InputStream is) throws ExceptionReport {
+		this(parseExecuteDocument(is));
+	}
+
+	/**
+	 * Creates an ExecuteRequest based on an already parsed ExecuteDocument
+	 * (HTTP_POST)
+	 * 
+	 * @param execDom
+	 *            The clients submission
+	 * @throws ExceptionReport
+	 */
+	public ExecuteRequest(ExecuteDocument execDom) throws ExceptionReport {
+		super();
+		this.execDom = execDom;
+		initForPOST();
+	}
+
+	private static ExecuteDocument parseExecuteDocument(InputStream is) throws ExceptionReport {
+		try {
+			XmlOptions option = new XmlOptions();
+			option.setLoadTrimTextBuffer();
+			return ExecuteDocument.Factory.parse(is, option);
+		} catch (XmlException e) {
+			throw new ExceptionReport("Error while parsing post data",
+					ExceptionReport.MISSING_PARAMETER_VALUE, e);
+		} catch (IOException e) {
+			throw new ExceptionReport("Error while reading post data",
+					ExceptionReport.NO_APPLICABLE_CODE, e);
+		}
+	}
+
+	private void initForPOST() throws ExceptionReport {
+		if (this.execDom == null) {
+			LOGGER.error("ExecuteDocument is null");
+			throw new ExceptionReport("Error while parsing post data",
+					ExceptionReport.MISSING_PARAMETER_VALUE);
+		}
 
 		// validate the client input
 		validate();
@@ -138,6 +200,9 @@ public class ExecuteRequest extends Request implements IObserver {
 	public ExecuteRequest(CaseInsensitiveMap ciMap) throws ExceptionReport {
 		super(ciMap);
 		initForGET(ciMap);
+		if (ciMap.containsKey(PRIORITY_PARAMETER)) {
+			setPriority(getMapValue(PRIORITY_PARAMETER, true));
+		}
 		// validate the client input
 		validate();
 
@@ -636,8 +701,9 @@ public class ExecuteRequest extends Request implements IObserver {
 	public Response call() throws ExceptionReport {
         IAlgorithm algorithm = null;
         Map<String, List<IData>> inputMap = null;
+        boolean resultsPending = false;
+        boolean reusable = false;
 		try {
-			ExecutionContext context;
 			if (getExecute().isSetResponseForm()) {
 				context = getExecute().getResponseForm().isSetRawDataOutput() ?
 	                    new ExecutionContext(getExecute().getResponseForm().getRawDataOutput()) :
@@ -654,6 +720,25 @@ public class ExecuteRequest extends Request implements IObserver {
             
 			updateStatusStarted();
             
+			algorithm = RepositoryManager.getInstance().getAlgorithm(getAlgorithmIdentifier());
+
+			// identical requests to deterministic processes are answered from the memoized results
+			ExecuteResultCache resultCache = ExecuteResultCache.getInstance();
+			String resultKey = null;
+			if (resultCache != null && !(algorithm instanceof AbstractTransactionalAlgorithm)
+					&& resultCache.isMemoizable(getAlgorithmIdentifier(), algorithm)) {
+				resultKey = resultCache.createKey(getExecute());
+				Map<String, IData> memoized = resultKey == null ? null : resultCache.get(resultKey);
+				if (memoized != null) {
+					LOGGER.debug("using memoized result for {}", getAlgorithmIdentifier());
+					returnResults = memoized;
+					updateStatusSuccess();
+					reusable = true;
+					resultsPending = !isStoreResponse();
+					return new ExecuteResponse(this);
+				}
+			}
+
 			// parse the input
 			InputType[] inputs = new InputType[0];
 			if( getExecute().getDataInputs()!=null){
@@ -662,15 +747,7 @@ public class ExecuteRequest extends Request implements IObserver {
 			InputHandler parser = new InputHandler.Builder(inputs, getAlgorithmIdentifier()).build();
 			
 			// we got so far:
-			// get the algorithm, and run it with the clients input
-		
-			/*
-			 * IAlgorithm algorithm =
-			 * RepositoryManager.getInstance().getAlgorithm(getAlgorithmIdentifier());
-			 * returnResults = algorithm.run((Map)parser.getParsedInputLayers(),
-			 * (Map)parser.getParsedInputParameters());
-			 */
-			algorithm = RepositoryManager.getInstance().getAlgorithm(getAlgorithmIdentifier());
+			// run the algorithm with the clients input
 			
 			if(algorithm instanceof ISubject){
 				ISubject subject = (ISubject) algorithm;
@@ -682,6 +759,7 @@ public class ExecuteRequest extends Request implements IObserver {
 				returnResults = ((AbstractTransactionalAlgorithm)algorithm).run(execDom);
 			} else {
 				inputMap = parser.getParsedInputData();
+				checkTempFileQuota();
 				returnResults = algorithm.run(inputMap);
 			} 
 
@@ -691,8 +769,13 @@ public class ExecuteRequest extends Request implements IObserver {
                 LOGGER.error("Error reported while handling ExecuteRequest for " + getAlgorithmIdentifier() + ": " + errorMessage);
                 updateStatusError(errorMessage);
             } else {
+                if (resultKey != null && returnResults != null) {
+                    resultCache.put(resultKey, returnResults);
+                }
                 updateStatusSuccess();
+                reusable = true;
             }
+            resultsPending = !isStoreResponse();
 		} catch(Throwable e) {
             String errorMessage = null;
             if (algorithm != null && algorithm.getErrors() != null && !algorithm.getErrors().isEmpty()) {
@@ -721,6 +804,10 @@ public class ExecuteRequest extends Request implements IObserver {
             if (algorithm instanceof ISubject) {
                 ((ISubject)algorithm).removeObserver(this);
             }
+            // instances of stateless algorithms are reused by later requests
+            if (reusable && !(algorithm instanceof AbstractTransactionalAlgorithm)) {
+                RepositoryManager.getInstance().releaseAlgorithm(getAlgorithmIdentifier(), algorithm);
+            }
             if (inputMap != null) {
                 for(List<IData> l : inputMap.values()) {
                     for (IData d : l) {
@@ -730,18 +817,63 @@ public class ExecuteRequest extends Request implements IObserver {
                     }
                 }
             }
-            if (returnResults != null) {
-                for (IData d : returnResults.values()) {
-                    if (d instanceof IComplexData) {
-                        ((IComplexData)d).dispose();
-                    }
-                }
+            // outputs of synchronous requests are generated while the response is written
+            if (!resultsPending) {
+                disposeResults();
             }
 		}
 		
 		ExecuteResponse response = new ExecuteResponse(this);
         return response;
 	}
+
+	/**
+	 * Disposes the outputs of the process and deletes the temporary files of
+	 * the request once the response has been written.
+	 */
+	public void disposeResults() {
+		Map<String, IData> results;
+		synchronized (this) {
+			if (resultsDisposed) {
+				return;
+			}
+			resultsDisposed = true;
+			results = returnResults;
+		}
+		try {
+			if (results != null) {
+				for (IData d : results.values()) {
+					if (d instanceof IComplexData) {
+						((IComplexData)d).dispose();
+					}
+				}
+			}
+		} finally {
+			if (context != null) {
+				context.getTempFileArena().close();
+			}
+		}
+	}
+
+	/**
+	 * @return the context of the execution, <code>null</code> if it has not
+	 *         been started
+	 */
+	public ExecutionContext getExecutionContext() {
+		return context;
+	}
+
+	/**
+	 * Files written while parsing the inputs are registered before they are
+	 * complete, so the limit is checked again before the process runs.
+	 */
+	private void checkTempFileQuota() throws ExceptionReport {
+		try {
+			context.getTempFileArena().checkQuota();
+		} catch (IOException e) {
+			throw new ExceptionReport(e.getMessage(), ExceptionReport.NO_APPLICABLE_CODE, e);
+		}
+	}
     
 
 	/**
@@ -792,6 +924,42 @@ public class ExecuteRequest extends Request implements IObserver {
 				.getStatus();
 	}
 
+	/**
+	 * @return the scheduling priority requested by the client, higher values
+	 *         are executed first
+	 */
+	public int getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Sets the scheduling priority, values outside of [{@link #MIN_PRIORITY},
+	 * {@link #MAX_PRIORITY}] are clamped.
+	 * 
+	 * @param priority
+	 *            the priority requested by the client
+	 */
+	public void setPriority(int priority) {
+		this.priority = Math.max(MIN_PRIORITY, Math.min(MAX_PRIORITY, priority));
+	}
+
+	/**
+	 * Sets the scheduling priority from a request parameter value.
+	 * 
+	 * @param priority
+	 *            the priority requested by the client
+	 * @throws ExceptionReport
+	 *             if the value is no integer
+	 */
+	public void setPriority(String priority) throws ExceptionReport {
+		try {
+			setPriority(Integer.parseInt(priority.trim()));
+		} catch (NumberFormatException e) {
+			throw new ExceptionReport("Invalid value for parameter <" + PRIORITY_PARAMETER + ">: " + priority,
+					ExceptionReport.INVALID_PARAMETER_VALUE, PRIORITY_PARAMETER);
+		}
+	}
+
 	public ExecuteResponseBuilder getExecuteResponseBuilder() {
 		return this.execRespType;
 	}
@@ -810,17 +978,18 @@ public class ExecuteRequest extends Request implements IObserver {
 	
 	public void update(ISubject subject) {
 		Object state = subject.getState();
-		LOGGER.info("Update received from Subject, state changed to : " + state);
+		LOGGER.debug("Update received from Subject, state changed to : {}", state);
 		StatusType status = StatusType.Factory.newInstance();
 		
-		int percentage = 0;
+		int percentage = -1;
 		if (state instanceof Integer) {
 			percentage = (Integer) state;
 			status.addNewProcessStarted().setPercentCompleted(percentage);
 		}else if(state instanceof String){
 			status.addNewProcessStarted().setStringValue((String)state);
 		}
-		updateStatus(status);
+		// progress is reported by the process thread, it must not wait for the storage
+		statusUpdateCoalescer.progress(status, percentage);
 	}
     
 	public void updateStatusAccepted() {
@@ -853,6 +1022,10 @@ public class ExecuteRequest extends Request implements IObserver {
 	}
 	
 	private void updateStatus(StatusType status) {
+		statusUpdateCoalescer.flush(status);
+	}
+
+	private void writeStatus(StatusType status) {
 		getExecuteResponseBuilder().setStatus(status);
         try {
             getExecuteResponseBuilder().update();
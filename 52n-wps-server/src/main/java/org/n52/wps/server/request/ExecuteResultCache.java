@@ -0,0 +1,425 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.opengis.wps.x100.DocumentOutputDefinitionType;
+import net.opengis.wps.x100.ExecuteDocument.Execute;
+import net.opengis.wps.x100.InputType;
+import net.opengis.wps.x100.OutputDefinitionType;
+import net.opengis.wps.x100.ProcessDescriptionType;
+import net.opengis.wps.x100.ResponseFormType;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.apache.xmlbeans.XmlOptions;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.server.AbstractDescriptorAlgorithm;
+import org.n52.wps.server.IAlgorithm;
+import org.n52.wps.server.RepositoryManager;
+import org.n52.wps.server.database.DatabaseFactory;
+import org.n52.wps.server.database.IDatabase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Memoizes the results of deterministic processes, so identical Execute
+ * requests are answered without running the process again. A process takes
+ * part if its descriptor is marked deterministic (see
+ * {@link org.n52.wps.algorithm.annotation.Algorithm#deterministic()}) or if
+ * its identifier is listed in the server property
+ * <code>resultCache.algorithms</code>.
+ * 
+ * The key is a digest of the process identifier and version, the inline
+ * inputs in canonical form and the requested outputs. Requests with
+ * referenced inputs are not memoized, as the referenced data may change.
+ * 
+ * Results are serialized and kept in the configured database, an in-memory
+ * index maps keys to the stored results. Entries expire after
+ * <code>resultCache.ttl</code> and are evicted least recently used once the
+ * stored results exceed <code>resultCache.maxSize</code> bytes. Results
+ * larger than <code>resultCache.maxEntrySize</code> bytes or not serializable
+ * are not memoized.
+ */
+public class ExecuteResultCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ExecuteResultCache.class);
+
+	public static final String PROP_ENABLED = "resultCache.enabled";
+
+	public static final String PROP_ALGORITHMS = "resultCache.algorithms";
+
+	public static final String PROP_TTL = "resultCache.ttl";
+
+	public static final String PROP_MAX_SIZE = "resultCache.maxSize";
+
+	public static final String PROP_MAX_ENTRY_SIZE = "resultCache.maxEntrySize";
+
+	public static final long DEFAULT_TTL = 24L * 60 * 60 * 1000;
+
+	public static final long DEFAULT_MAX_SIZE = 256L << 20;
+
+	public static final long DEFAULT_MAX_ENTRY_SIZE = 16L << 20;
+
+	private static final String MIME_TYPE = "application/x-java-serialized-object";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static ExecuteResultCache instance;
+
+	private static boolean initialized;
+
+	private final Set<String> algorithms;
+
+	private final long ttl;
+
+	private final long maxSize;
+
+	private final long maxEntrySize;
+
+	/** access ordered, guarded by this */
+	private final LinkedHashMap<String, Entry> index = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	private long size;
+
+	private long hitCount;
+
+	private long missCount;
+
+	/**
+	 * @return the cache, or <code>null</code> if it is disabled
+	 */
+	public static synchronized ExecuteResultCache getInstance() {
+		if ( !initialized) {
+			initialized = true;
+			PropertyUtil propertyUtil = new PropertyUtil(WPSConfig.getInstance().getPropertiesForServer());
+			if (propertyUtil.extractBoolean(PROP_ENABLED, false)) {
+				Set<String> algorithms = new HashSet<String>();
+				for (String algorithm : propertyUtil.extractString(PROP_ALGORITHMS, "").split(",")) {
+					if ( !algorithm.trim().isEmpty()) {
+						algorithms.add(algorithm.trim());
+					}
+				}
+				instance = new ExecuteResultCache(algorithms, propertyUtil.extractPeriodAsMillis(PROP_TTL, DEFAULT_TTL),
+						propertyUtil.extractLong(PROP_MAX_SIZE, DEFAULT_MAX_SIZE),
+						propertyUtil.extractLong(PROP_MAX_ENTRY_SIZE, DEFAULT_MAX_ENTRY_SIZE));
+				LOGGER.info("Memoizing results of deterministic processes and {}", algorithms);
+			}
+		}
+		return instance;
+	}
+
+	ExecuteResultCache(Set<String> algorithms, long ttl, long maxSize, long maxEntrySize) {
+		this.algorithms = new HashSet<String>(algorithms);
+		this.ttl = ttl;
+		this.maxSize = maxSize;
+		this.maxEntrySize = maxEntrySize;
+	}
+
+	/**
+	 * @return <code>true</code> if results of the algorithm may be memoized
+	 */
+	public boolean isMemoizable(String identifier, IAlgorithm algorithm) {
+		if (algorithms.contains(identifier)) {
+			return true;
+		}
+		return algorithm instanceof AbstractDescriptorAlgorithm
+				&& ((AbstractDescriptorAlgorithm) algorithm).isDeterministic();
+	}
+
+	/**
+	 * Creates the key of an Execute request.
+	 * 
+	 * @return the key, or <code>null</code> if the request must not be
+	 *         memoized
+	 */
+	public String createKey(Execute execute) {
+		String identifier = execute.getIdentifier().getStringValue();
+		String version = null;
+		ProcessDescriptionType description = RepositoryManager.getInstance().getProcessDescription(identifier);
+		if (description != null) {
+			version = description.getProcessVersion();
+		}
+		List<InputType> inputs = new ArrayList<InputType>();
+		if (execute.getDataInputs() != null) {
+			for (InputType input : execute.getDataInputs().getInputArray()) {
+				if (input.isSetReference()) {
+					return null;
+				}
+				inputs.add(input);
+			}
+		}
+		return createKey(identifier, version, inputs, execute.isSetResponseForm() ? execute.getResponseForm() : null);
+	}
+
+	static String createKey(String identifier, String version, List<InputType> inputs, ResponseFormType responseForm) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		update(digest, identifier);
+		update(digest, version);
+
+		// the order of distinct inputs is irrelevant, the order of
+		// occurrences of the same input is kept by the stable sort
+		List<InputType> sorted = new ArrayList<InputType>(inputs);
+		Collections.sort(sorted, new Comparator<InputType>() {
+			@Override
+			public int compare(InputType o1, InputType o2) {
+				return o1.getIdentifier().getStringValue().compareTo(o2.getIdentifier().getStringValue());
+			}
+		});
+		XmlOptions options = new XmlOptions().setSaveAggressiveNamespaces().setSaveNoXmlDecl();
+		for (InputType input : sorted) {
+			update(digest, input.getIdentifier().getStringValue());
+			update(digest, input.getData() == null ? null : input.getData().xmlText(options));
+		}
+
+		List<String> outputs = new ArrayList<String>();
+		if (responseForm != null && responseForm.isSetRawDataOutput()) {
+			outputs.add("raw|" + describe(responseForm.getRawDataOutput()));
+		}
+		else if (responseForm != null && responseForm.isSetResponseDocument()) {
+			for (DocumentOutputDefinitionType output : responseForm.getResponseDocument().getOutputArray()) {
+				outputs.add(describe(output) + "|" + output.getAsReference());
+			}
+			Collections.sort(outputs);
+		}
+		for (String output : outputs) {
+			update(digest, output);
+		}
+		return Hex.encodeHexString(digest.digest());
+	}
+
+	private static String describe(OutputDefinitionType output) {
+		return output.getIdentifier().getStringValue() + "|" + output.getMimeType() + "|" + output.getSchema() + "|"
+				+ output.getEncoding() + "|" + output.getUom();
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		if (value != null) {
+			digest.update(value.getBytes(UTF_8));
+		}
+		// separator, so adjacent values cannot be shifted into each other
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * @return the memoized results, or <code>null</code> if there are none
+	 */
+	public Map<String, IData> get(String key) {
+		Entry entry;
+		synchronized (this) {
+			entry = index.get(key);
+			if (entry != null && entry.isExpired()) {
+				remove(key);
+				entry = null;
+			}
+			if (entry == null) {
+				missCount++;
+				return null;
+			}
+		}
+		InputStream stream = null;
+		try {
+			stream = getDatabase().lookupResponse(entry.resultId);
+			if (stream != null) {
+				ObjectInputStream in = new ObjectInputStream(stream);
+				@SuppressWarnings("unchecked")
+				Map<String, IData> results = (Map<String, IData>) in.readObject();
+				synchronized (this) {
+					hitCount++;
+				}
+				return results;
+			}
+		}
+		catch (IOException e) {
+			LOGGER.warn("Could not read memoized result {}: {}", entry.resultId, e.getMessage());
+		}
+		catch (ClassNotFoundException e) {
+			LOGGER.warn("Could not read memoized result {}: {}", entry.resultId, e.getMessage());
+		}
+		finally {
+			IOUtils.closeQuietly(stream);
+		}
+		// the stored result is gone or unreadable
+		synchronized (this) {
+			if (index.get(key) == entry) {
+				remove(key);
+			}
+			missCount++;
+		}
+		return null;
+	}
+
+	/**
+	 * Memoizes the results. Results which are not serializable, too large or
+	 * cannot be stored are skipped, memoizing never fails the execution.
+	 */
+	public void put(String key, Map<String, IData> results) {
+		byte[] serialized;
+		String url;
+		try {
+			LimitedOutputStream buffer = new LimitedOutputStream(maxEntrySize);
+			ObjectOutputStream out = new ObjectOutputStream(buffer);
+			out.writeObject(new HashMap<String, IData>(results));
+			out.close();
+			serialized = buffer.toByteArray();
+			url = getDatabase().storeComplexValue("memo-" + key, new ByteArrayInputStream(serialized),
+					"MemoizedResult", MIME_TYPE);
+		}
+		catch (IOException e) {
+			LOGGER.debug("Not memoizing result for {}: {}", key, e.toString());
+			return;
+		}
+		catch (RuntimeException e) {
+			// e.g. bindings refusing serialization in writeObject or a failing database
+			LOGGER.warn("Not memoizing result for {}: {}", key, e.toString());
+			return;
+		}
+		if (url == null || !url.contains("id=")) {
+			return;
+		}
+		Entry entry = new Entry(url.substring(url.lastIndexOf("id=") + 3), serialized.length);
+		synchronized (this) {
+			remove(key);
+			index.put(key, entry);
+			size += entry.size;
+			Iterator<Map.Entry<String, Entry>> it = index.entrySet().iterator();
+			while (size > maxSize && it.hasNext()) {
+				Entry eldest = it.next().getValue();
+				it.remove();
+				delete(eldest);
+			}
+		}
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	private void remove(String key) {
+		Entry entry = index.remove(key);
+		if (entry != null) {
+			delete(entry);
+		}
+	}
+
+	private void delete(Entry entry) {
+		size -= entry.size;
+		getDatabase().deleteStoredResponse(entry.resultId);
+	}
+
+	IDatabase getDatabase() {
+		return DatabaseFactory.getDatabase();
+	}
+
+	private class Entry {
+
+		private final String resultId;
+
+		private final long size;
+
+		private final long created = System.currentTimeMillis();
+
+		Entry(String resultId, long size) {
+			this.resultId = resultId;
+			this.size = size;
+		}
+
+		boolean isExpired() {
+			return ttl > 0 && System.currentTimeMillis() - created > ttl;
+		}
+	}
+
+	/**
+	 * Buffers serialized results and fails once the limit is exceeded.
+	 */
+	private static class LimitedOutputStream extends OutputStream {
+
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		private final long limit;
+
+		LimitedOutputStream(long limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			check(1);
+			buffer.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			check(len);
+			buffer.write(b, off, len);
+		}
+
+		private void check(int len) throws IOException {
+			if (buffer.size() + (long) len > limit) {
+				throw new IOException("result exceeds " + limit + " bytes");
+			}
+		}
+
+		byte[] toByteArray() {
+			return buffer.toByteArray();
+		}
+	}
+}
@@ -29,15 +29,23 @@
 package org.n52.wps.server.request;
 
 import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactoryConfigurationError;
@@ -53,9 +61,18 @@ import net.opengis.wps.x100.InputReferenceType;
 import net.opengis.wps.x100.InputType;
 import net.opengis.wps.x100.ProcessDescriptionType;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.lang.StringUtils;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.XmlOptions;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.commons.XMLUtil;
+import org.n52.wps.commons.context.ExecutionContext;
+import org.n52.wps.commons.context.ExecutionContextFactory;
+import org.n52.wps.commons.context.TempFileArena;
 import org.n52.wps.io.BasicXMLTypeFactory;
 import org.n52.wps.io.IOHandler;
 import org.n52.wps.io.IParser;
@@ -84,6 +101,13 @@ import com.google.common.primitives.Doubles;
 
 /**
  * Handles the input of the client and stores it into a Map.
+ * 
+ * Complex inputs (inline and referenced) are fetched and parsed concurrently
+ * on a bounded pool, so a request with several references waits for the
+ * slowest instead of the sum of all. The number of threads is set by the
+ * server property <code>inputResolutionThreads</code>, a value of 1 resolves
+ * all inputs sequentially. Multiple occurrences of an input keep the order of
+ * the request.
  */
 public class InputHandler {
 
@@ -96,6 +120,11 @@ public class InputHandler {
 	private ProcessDescriptionType processDesc;
 	private String algorithmIdentifier = null; // Needed to take care of handling a conflict between different parsers.
 
+	/** Server property holding the number of threads resolving complex inputs */
+	public static final String PROP_INPUT_RESOLUTION_THREADS = "inputResolutionThreads";
+
+	public static final int DEFAULT_INPUT_RESOLUTION_THREADS = 8;
+
         public static class Builder {
             protected InputType[] inputs;
             protected String algorithmIdentifier = null;
@@ -123,7 +152,7 @@ public class InputHandler {
 	/**
 	 * Initializes a parser that handles each (line of) input based on the type of input.
 	 * @see #handleComplexData(IOValueType)
-	 * @see #handleComplexValueReference(IOValueType)
+	 * @see #parseComplexValueReference(IOValueType)
 	 * @see #handleLiteralData(IOValueType)
 	 * @see #handleBBoxValue(IOValueType)
          * @param builder
@@ -140,36 +169,221 @@ public class InputHandler {
 
 		Map<String, InterceptorInstance> inputInterceptors = resolveInputInterceptors(algorithmIdentifier);
 
-		for (InputType input : builder.inputs) {
-			String inputId = input.getIdentifier().getStringValue().trim();
-			if (inputInterceptors.containsKey(inputId)) {
-				InterceptorInstance interceptor = inputInterceptors.get(inputId);
-				List<IData> result = interceptor.applyInterception(input);
+		// start fetching and parsing the complex inputs before anything else is handled
+		Map<InputType, Future<IData>> pending = resolveComplexInputs(builder.inputs, inputInterceptors);
 
-				if (result != null && !result.isEmpty()) {
-					this.inputData.put(inputId, result);
-					continue;
+		List<ExceptionReport> failures = new ArrayList<ExceptionReport>();
+		try {
+			for (InputType input : builder.inputs) {
+				try {
+					handleInput(input, inputInterceptors, pending.get(input));
+				} catch (ExceptionReport e) {
+					failures.add(e);
 				}
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExceptionReport("Interrupted while resolving the inputs", ExceptionReport.NO_APPLICABLE_CODE, e);
+		} finally {
+			for (Future<IData> future : pending.values()) {
+				future.cancel(true);
+			}
+		}
+		if (failures.size() == 1) {
+			throw failures.get(0);
+		}
+		if (failures.size() > 1) {
+			throw aggregate(failures);
+		}
+	}
 
-			if(input.getData() != null) {
-				if(input.getData().getComplexData() != null) {
-					handleComplexData(input, inputId);
-				}
-				else if(input.getData().getLiteralData() != null) {
-					handleLiteralData(input);
+	private void handleInput(InputType input, Map<String, InterceptorInstance> inputInterceptors, Future<IData> pending)
+			throws ExceptionReport, InterruptedException {
+		String inputId = input.getIdentifier().getStringValue().trim();
+		if (inputInterceptors.containsKey(inputId)) {
+			InterceptorInstance interceptor = inputInterceptors.get(inputId);
+			List<IData> result = interceptor.applyInterception(input);
+
+			if (result != null && !result.isEmpty()) {
+				this.inputData.put(inputId, result);
+				return;
+			}
+		}
+
+		if (pending != null) {
+			String key = input.getData() != null ? inputId : input.getIdentifier().getStringValue();
+			addInputData(key, getResolved(pending, inputId));
+		}
+		else if(input.getData() != null) {
+			if(input.getData().getComplexData() != null) {
+				handleComplexData(input, inputId);
+			}
+			else if(input.getData().getLiteralData() != null) {
+				handleLiteralData(input);
+			}
+			else if(input.getData().getBoundingBoxData() != null) {
+				handleBBoxValue(input);
+			}
+		}
+		else if(input.getReference() != null) {
+			addInputData(input.getIdentifier().getStringValue(), parseComplexValueReference(input));
+		}
+		else {
+			throw new ExceptionReport("Error while accessing the inputValue: " + inputId,
+					ExceptionReport.INVALID_PARAMETER_VALUE);
+		}
+	}
+
+	/**
+	 * Submits all complex inputs, which are not subject to an interceptor, to
+	 * the input resolution pool. Nothing is submitted if there is at most one
+	 * such input, it is resolved on the calling thread then.
+	 */
+	private Map<InputType, Future<IData>> resolveComplexInputs(InputType[] inputs,
+			Map<String, InterceptorInstance> inputInterceptors) {
+		List<InputType> complexInputs = new ArrayList<InputType>();
+		for (InputType input : inputs) {
+			if (inputInterceptors.containsKey(input.getIdentifier().getStringValue().trim())) {
+				continue;
+			}
+			if ((input.getData() != null && input.getData().getComplexData() != null)
+					|| (input.getData() == null && input.getReference() != null)) {
+				complexInputs.add(input);
+			}
+		}
+		// XmlObjects may compare by value, but identical inputs must not share a result
+		Map<InputType, Future<IData>> pending = new IdentityHashMap<InputType, Future<IData>>();
+		if (complexInputs.size() < 2) {
+			return pending;
+		}
+		ExecutorService executor = InputResolutionPool.get();
+		if (executor == null) {
+			return pending;
+		}
+		ExecutionContext context = ExecutionContextFactory.getContext(false);
+		for (InputType input : complexInputs) {
+			pending.put(input, executor.submit(new InputResolution(input, context)));
+		}
+		LOGGER.debug("Resolving {} complex inputs concurrently", complexInputs.size());
+		return pending;
+	}
+
+	private static IData getResolved(Future<IData> pending, String inputId) throws ExceptionReport, InterruptedException {
+		try {
+			return pending.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ExceptionReport) {
+				throw (ExceptionReport) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new ExceptionReport("Error while resolving input " + inputId, ExceptionReport.NO_APPLICABLE_CODE, inputId, cause);
+		}
+	}
+
+	/**
+	 * Aggregates the failures of several inputs into a single report, each
+	 * failure is listed as an exception of its own.
+	 */
+	private static ExceptionReport aggregate(List<ExceptionReport> failures) {
+		String errorKey = failures.get(0).getErrorKey();
+		for (ExceptionReport failure : failures) {
+			if (errorKey == null || !errorKey.equals(failure.getErrorKey())) {
+				errorKey = ExceptionReport.NO_APPLICABLE_CODE;
+				break;
+			}
+		}
+		ExceptionReport report = new ExceptionReport(failures.size() + " inputs could not be resolved", errorKey,
+				failures.get(0));
+		for (ExceptionReport failure : failures) {
+			report.addSuppressed(failure);
+		}
+		return report;
+	}
+
+	private void addInputData(String inputId, IData data) {
+		//enable maxoccurs of parameters with the same name.
+		List<IData> list = inputData.get(inputId);
+		if (list == null) {
+			list = new ArrayList<IData>();
+			inputData.put(inputId, list);
+		}
+		list.add(data);
+	}
+
+	/**
+	 * Fetches and parses a single complex input on a thread of the input
+	 * resolution pool, using the execution context of the request.
+	 */
+	private class InputResolution implements Callable<IData> {
+
+		private final InputType input;
+
+		private final ExecutionContext context;
+
+		InputResolution(InputType input, ExecutionContext context) {
+			this.input = input;
+			this.context = context;
+		}
+
+		@Override
+		public IData call() throws ExceptionReport {
+			if (context != null) {
+				ExecutionContextFactory.registerContext(context);
+			}
+			try {
+				if (input.getData() != null) {
+					return parseComplexData(input, input.getIdentifier().getStringValue().trim());
 				}
-				else if(input.getData().getBoundingBoxData() != null) {
-					handleBBoxValue(input);
+				return parseComplexValueReference(input);
+			} finally {
+				if (context != null) {
+					ExecutionContextFactory.unregisterContext();
 				}
 			}
-			else if(input.getReference() != null) {
-				handleComplexValueReference(input);
+		}
+	}
+
+	/**
+	 * Lazily created pool shared by all requests. Its size bounds the number
+	 * of concurrent downloads and parses.
+	 */
+	private static class InputResolutionPool {
+
+		private static final ExecutorService INSTANCE = create();
+
+		static ExecutorService get() {
+			return INSTANCE;
+		}
+
+		private static ExecutorService create() {
+			int threads = DEFAULT_INPUT_RESOLUTION_THREADS;
+			try {
+				PropertyUtil propertyUtil = new PropertyUtil(WPSConfig.getInstance().getPropertiesForServer());
+				threads = (int) propertyUtil.extractLong(PROP_INPUT_RESOLUTION_THREADS, DEFAULT_INPUT_RESOLUTION_THREADS);
+			} catch (RuntimeException e) {
+				LOGGER.warn("Could not read property {}, using {} threads", PROP_INPUT_RESOLUTION_THREADS, threads);
 			}
-			else {
-				throw new ExceptionReport("Error while accessing the inputValue: " + inputId,
-						ExceptionReport.INVALID_PARAMETER_VALUE);
+			if (threads <= 1) {
+				LOGGER.info("Resolving inputs sequentially");
+				return null;
 			}
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "wps-input-resolution-" + count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			executor.allowCoreThreadTimeOut(true);
+			LOGGER.info("Resolving inputs with up to {} threads", threads);
+			return executor;
 		}
 	}
 
@@ -290,6 +504,17 @@ public class InputHandler {
          * @throws ExceptionReport If error occured while parsing XML
 	 */
 	 protected void handleComplexData(InputType input, String inputId) throws ExceptionReport{
+		addInputData(inputId, parseComplexData(input, inputId));
+	}
+
+	/**
+	 * Parses inline complex data with the parser matching its format.
+	 * @param input The client input
+	 * @param inputId the trimmed identifier of the input
+	 * @return the parsed input
+	 * @throws ExceptionReport If error occured while parsing XML
+	 */
+	protected IData parseComplexData(InputType input, String inputId) throws ExceptionReport{
 		String complexValue;
 		InputDescriptionType inputReferenceDesc;
 		ComplexDataType data;
@@ -314,8 +539,6 @@ public class InputHandler {
                 dataMimeType = data.getMimeType();
                 dataEncoding = data.getEncoding();
 
-                complexValueNode =  input.getData().getComplexData().getDomNode();
-                complexValue = getComplexValueNodeString(complexValueNode);
 
                 //select parser
 		//1. mimeType set?
@@ -527,15 +750,50 @@ public class InputHandler {
                     throw new ExceptionReport("Error. No applicable parser found for " + formatSchema + "," + dataMimeType + "," + formatEncoding, ExceptionReport.NO_APPLICABLE_CODE);
 		}
 
-		IData collection = parseComplexValue(formatEncoding, complexValue, dataMimeType, formatSchema, parser);
+		if (formatEncoding != null && formatEncoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)) {
+			// decoded from the request document without copying the text
+			return getBase64EncodedData(data, parser, dataMimeType, formatSchema);
+		}
+		XmlObject content = null;
+		if (StringUtils.isBlank(formatEncoding) || formatEncoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)) {
+			content = getComplexValueElement(data);
+		}
+		if (content != null) {
+			// streamed from the request document without a serialized copy
+			return parseComplexValueElement(content, dataMimeType, formatSchema, parser);
+		}
+		complexValueNode = data.getDomNode();
+		complexValue = getComplexValueNodeString(complexValueNode);
+		return parseComplexValue(formatEncoding, complexValue, dataMimeType, formatSchema, parser);
+	}
 
-		//enable maxoccurs of parameters with the same name.
-                List<IData> list = new ArrayList<IData>();
-		if(inputData.containsKey(inputId)) {
-                    list = inputData.get(inputId);
+	/**
+	 * @return the first child element of the ComplexData, or
+	 *         <code>null</code> if it holds text only
+	 */
+	protected XmlObject getComplexValueElement(ComplexDataType data) {
+		XmlCursor cursor = data.newCursor();
+		try {
+			return cursor.toFirstChild() ? cursor.getObject() : null;
+		} finally {
+			cursor.dispose();
+		}
+	}
+
+	/**
+	 * Parses inline XML. XMLBeans serializes the element while the parser
+	 * reads and declares all namespaces used within the element, e.g. of
+	 * <code>xsi:schemaLocation</code>.
+	 */
+	protected IData parseComplexValueElement(XmlObject content, String dataMimeType, String formatSchema, IParser parser) throws ExceptionReport {
+		InputStream stream = content.newInputStream(new XmlOptions().setSaveOuter().setSaveAggressiveNamespaces());
+		try {
+			return parser.parse(stream, dataMimeType, formatSchema);
+		} catch(RuntimeException e) {
+			throw new ExceptionReport("Error occured, while XML parsing", ExceptionReport.NO_APPLICABLE_CODE, e);
+		} finally {
+			IOUtils.closeQuietly(stream);
 		}
-                list.add(collection);
-                inputData.put(inputId, list);
 	}
 
          protected ComplexDataDescriptionType findComplexDataDescriptionType(InputDescriptionType inputReferenceDesc, String dataMimeType, String dataSchema, String dataEncoding, String potentialFormatSchema, String potentialFormatEncoding) {
@@ -597,31 +855,38 @@ public class InputHandler {
                 return idata;
          }
 
-    //TODO-- Needs testing
     protected IData getBase64EncodedData(String complexValue, IParser parser, String dataMimeType, String formatSchema) throws ExceptionReport {
-        File f = null;
         String complexValueCopy = complexValue.toString();
 
-        try {
-            f = File.createTempFile("wps" + UUID.randomUUID(), "tmp");
-
-            if (complexValueCopy.startsWith("<xml-fragment")) {
-                int startIndex = complexValueCopy.indexOf(">");
-                complexValueCopy = complexValueCopy.substring(startIndex + 1);
-
-                int endIndex = complexValueCopy.indexOf("</xml-fragment");
-                complexValueCopy = complexValueCopy.substring(0, endIndex);
-            }
-
-            FileUtils.write(f, complexValueCopy);
+        if (complexValueCopy.startsWith("<xml-fragment")) {
+            int startIndex = complexValueCopy.indexOf(">");
+            complexValueCopy = complexValueCopy.substring(startIndex + 1);
 
-            return parser.parseBase64(new FileInputStream(f), dataMimeType, formatSchema);
+            int endIndex = complexValueCopy.indexOf("</xml-fragment");
+            complexValueCopy = complexValueCopy.substring(0, endIndex);
+        }
 
+        try {
+            return parser.parseBase64(new ByteArrayInputStream(complexValueCopy.getBytes("US-ASCII")), dataMimeType, formatSchema);
         } catch (IOException e) {
             throw new ExceptionReport("Error occured, while Base64 extracting", ExceptionReport.NO_APPLICABLE_CODE, e);
+        } catch (RuntimeException e) {
+            throw new ExceptionReport("Error occured, while Base64 extracting", ExceptionReport.NO_APPLICABLE_CODE, e);
+        }
+    }
+
+    /**
+     * Decodes inline base64 data incrementally from the request document
+     * into the parser.
+     */
+    protected IData getBase64EncodedData(ComplexDataType complexData, IParser parser, String dataMimeType, String formatSchema) throws ExceptionReport {
+        XmlTextInputStream stream = new XmlTextInputStream(complexData);
+        try {
+            return parser.parseBase64(stream, dataMimeType, formatSchema);
+        } catch (RuntimeException e) {
+            throw new ExceptionReport("Error occured, while Base64 extracting", ExceptionReport.NO_APPLICABLE_CODE, e);
         } finally {
-            FileUtils.deleteQuietly(f);
-            System.gc();
+            stream.close();
         }
     }
 
@@ -778,9 +1043,10 @@ public class InputHandler {
 	/**
 	 * Handles the ComplexValueReference
 	 * @param input The client input
+	 * @return the parsed input
 	 * @throws ExceptionReport If the input (as url) is invalid, or there is an error while parsing the XML.
 	 */
-	private void handleComplexValueReference(InputType input) throws ExceptionReport{
+	private IData parseComplexValueReference(InputType input) throws ExceptionReport{
 		String inputID = input.getIdentifier().getStringValue();
 
 		ReferenceStrategyRegister register = ReferenceStrategyRegister.getInstance();
@@ -1156,8 +1422,9 @@ public class InputHandler {
 				+ "\", encoding = \"" + encoding + "\"");
 
 		IParser parser = null;
+		Class<?> algorithmInputClass = null;
 		try {
-			Class<?> algorithmInputClass = RepositoryManager.getInstance().getInputDataTypeForAlgorithm(this.algorithmIdentifier, inputID);
+			algorithmInputClass = RepositoryManager.getInstance().getInputDataTypeForAlgorithm(this.algorithmIdentifier, inputID);
 			if(algorithmInputClass == null) {
 				throw new RuntimeException("Could not determine internal input class for input" + inputID);
 			}
@@ -1208,21 +1475,55 @@ public class InputHandler {
 
 
 
-			IData parsedInputData = parser.parse(stream, mimeType, schema);
-
-			//enable maxxoccurs of parameters with the same name.
-			if(inputData.containsKey(inputID)) {
-				List<IData> list = inputData.get(inputID);
-				list.add(parsedInputData);
-				inputData.put(inputID, list);
-			}
-			else {
-				List<IData> list = new ArrayList<IData>();
-				list.add(parsedInputData);
-				inputData.put(inputID, list);
+			try {
+				ParsedDataCache parsedDataCache = ParsedDataCache.getInstance();
+				String validator = stream.getValidator();
+				if (parsedDataCache == null || validator == null || !parsedDataCache.isCacheable(algorithmInputClass)) {
+					return parser.parse(stream, mimeType, schema);
+				}
+				ExecutionContext context = ExecutionContextFactory.getContext(false);
+				TempFileArena requestArena = context == null ? null : context.getTempFileArena();
+				IData cached = parsedDataCache.get(validator, mimeType, schema, encoding, algorithmInputClass, requestArena);
+				if (cached != null) {
+					LOGGER.debug("Using cached parsed data of {}", dataURLString);
+					return cached;
+				}
+				CountingInputStream counter = new CountingInputStream(stream);
+				TempFileArena arena = new TempFileArena();
+				IData parsed;
+				try {
+					parsed = parseShared(parser, counter, mimeType, schema, arena);
+				} catch (RuntimeException e) {
+					arena.close();
+					throw e;
+				}
+				return parsedDataCache.put(validator, mimeType, schema, encoding, algorithmInputClass, parsed, arena,
+						counter.getByteCount(), requestArena);
+			} finally {
+				// returns a pooled HTTP connection even if the parser did not read to the end
+				IOUtils.closeQuietly(stream);
 			}
+	}
 
-
+	/**
+	 * Parses data that is shared with other requests through the
+	 * {@link ParsedDataCache}, its temporary files are written to the arena
+	 * of the cache entry instead of the arena of the request.
+	 */
+	private static IData parseShared(IParser parser, InputStream stream, String mimeType, String schema,
+			TempFileArena arena) {
+		ExecutionContext context = ExecutionContextFactory.getContext(false);
+		ExecutionContextFactory.registerContext(new ExecutionContext(
+				context == null ? ExecutionContextFactory.getDefault() : context, arena));
+		try {
+			return parser.parse(stream, mimeType, schema);
+		} finally {
+			if (context == null) {
+				ExecutionContextFactory.unregisterContext();
+			} else {
+				ExecutionContextFactory.registerContext(context);
+			}
+		}
 	}
 
 	/**
@@ -0,0 +1,334 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import java.io.Closeable;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.commons.context.TempFileArena;
+import org.n52.wps.io.data.IComplexData;
+import org.n52.wps.io.data.ICopyableData;
+import org.n52.wps.io.data.IData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+/**
+ * Caches parsed reference inputs, so repeated analyses on the same data skip
+ * the parsing. Entries are keyed by the validator of the referenced data (see
+ * {@link org.n52.wps.server.request.strategy.ReferenceInputStream#getValidator()}),
+ * the mime type, schema, encoding and the binding class the algorithm
+ * expects. Thus only references served through the
+ * {@link org.n52.wps.server.request.strategy.ReferenceCache} are cached.
+ * 
+ * Only bindings listed in the server property
+ * <code>parsedDataCache.bindings</code> that implement {@link ICopyableData}
+ * are cached. The cached instance is never handed out, every request gets a
+ * copy of its own, so processes may modify their inputs. Data that fails to
+ * be copied is not cached. Each entry keeps the temporary files written while
+ * parsing in an arena of its own, as copies may still refer to them. A
+ * removed entry is disposed and its files are deleted once the last request
+ * using it has closed its arena.
+ * 
+ * The weight of an entry is estimated as the number of bytes parsed times
+ * <code>parsedDataCache.weightFactor</code>. Entries are evicted once the
+ * total weight exceeds <code>parsedDataCache.maxSize</code> bytes.
+ */
+public class ParsedDataCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ParsedDataCache.class);
+
+	public static final String PROP_ENABLED = "parsedDataCache.enabled";
+
+	public static final String PROP_MAX_SIZE = "parsedDataCache.maxSize";
+
+	public static final String PROP_WEIGHT_FACTOR = "parsedDataCache.weightFactor";
+
+	public static final String PROP_BINDINGS = "parsedDataCache.bindings";
+
+	public static final long DEFAULT_MAX_SIZE = 512L << 20;
+
+	public static final double DEFAULT_WEIGHT_FACTOR = 4;
+
+	private static ParsedDataCache instance;
+
+	private static boolean initialized;
+
+	private final Cache<String, Entry> cache;
+
+	private final Set<String> bindings;
+
+	private final double weightFactor;
+
+	/**
+	 * Invalidates the cache, if it has been created, so the temporary files
+	 * of unused entries are deleted.
+	 */
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			instance.invalidateAll();
+		}
+	}
+
+	/**
+	 * @return the cache, or <code>null</code> if it is disabled
+	 */
+	public static synchronized ParsedDataCache getInstance() {
+		if ( !initialized) {
+			initialized = true;
+			PropertyUtil propertyUtil = new PropertyUtil(WPSConfig.getInstance().getPropertiesForServer());
+			if (propertyUtil.extractBoolean(PROP_ENABLED, false)) {
+				Set<String> bindings = new HashSet<String>();
+				for (String binding : propertyUtil.extractString(PROP_BINDINGS, "").split(",")) {
+					if ( !binding.trim().isEmpty()) {
+						bindings.add(binding.trim());
+					}
+				}
+				instance = new ParsedDataCache(propertyUtil.extractLong(PROP_MAX_SIZE, DEFAULT_MAX_SIZE),
+						propertyUtil.extractDouble(PROP_WEIGHT_FACTOR, DEFAULT_WEIGHT_FACTOR), bindings);
+				LOGGER.info("Caching parsed inputs of {}", bindings);
+			}
+		}
+		return instance;
+	}
+
+	ParsedDataCache(long maxSize, double weightFactor, Set<String> bindings) {
+		this.weightFactor = weightFactor;
+		this.bindings = new HashSet<String>(bindings);
+		// weights are kept in KiB to fit into an int, a single segment lets one
+		// entry use the whole budget
+		this.cache = CacheBuilder.newBuilder().concurrencyLevel(1).maximumWeight(Math.max(maxSize >> 10, 1))
+				.weigher(new Weigher<String, Entry>() {
+					@Override
+					public int weigh(String key, Entry entry) {
+						return entry.weight;
+					}
+				}).removalListener(new RemovalListener<String, Entry>() {
+					@Override
+					public void onRemoval(RemovalNotification<String, Entry> notification) {
+						notification.getValue().remove();
+					}
+				}).recordStats().build();
+	}
+
+	/**
+	 * @return <code>true</code> if parsed data of the binding may be cached,
+	 *         that is it is configured and can be copied
+	 */
+	public boolean isCacheable(Class< ? > binding) {
+		return binding != null && bindings.contains(binding.getName()) && ICopyableData.class.isAssignableFrom(binding);
+	}
+
+	/**
+	 * @param requestArena
+	 *            the arena of the request using the data, the files of the
+	 *            entry are kept until it is closed. May be <code>null</code>
+	 *            outside of requests.
+	 * @return a copy of the cached data, or <code>null</code> if there is
+	 *         none
+	 */
+	public IData get(String validator,
+			String mimeType,
+			String schema,
+			String encoding,
+			Class< ? > binding,
+			TempFileArena requestArena) {
+		Entry entry = cache.getIfPresent(createKey(validator, mimeType, schema, encoding, binding));
+		if (entry == null || !entry.acquire(requestArena)) {
+			return null;
+		}
+		try {
+			return ((ICopyableData) entry.data).copy();
+		} catch (RuntimeException e) {
+			LOGGER.warn("Could not copy cached data, parsing it again", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Caches the parsed data. If the data can not be cached, its arena is
+	 * closed with the arena of the request.
+	 * 
+	 * @param arena
+	 *            the arena holding the temporary files written while parsing
+	 *            the data, closed when the entry is removed and no longer used
+	 * @param parsedBytes
+	 *            the number of bytes read to parse the data
+	 * @param requestArena
+	 *            the arena of the request using the data, see
+	 *            {@link #get(String, String, String, String, Class, TempFileArena)}
+	 * @return the data to be used by the request, a copy if the data has
+	 *         been cached
+	 */
+	public IData put(String validator,
+			String mimeType,
+			String schema,
+			String encoding,
+			Class< ? > binding,
+			IData data,
+			TempFileArena arena,
+			long parsedBytes,
+			TempFileArena requestArena) {
+		IData copy = null;
+		if (isCacheable(binding) && data instanceof ICopyableData) {
+			try {
+				copy = ((ICopyableData) data).copy();
+			} catch (RuntimeException e) {
+				LOGGER.warn("Could not copy parsed data of " + binding.getName() + ", it is not cached", e);
+			}
+		}
+		if (copy == null) {
+			if (requestArena != null) {
+				requestArena.registerResource(arena);
+			}
+			return data;
+		}
+		long weight = (long) (parsedBytes * weightFactor) >> 10;
+		Entry entry = new Entry(data, arena, (int) Math.min(Math.max(weight, 1), Integer.MAX_VALUE));
+		// acquired before it is cached, an entry exceeding the maximum size is removed right away
+		entry.acquire(requestArena);
+		cache.put(createKey(validator, mimeType, schema, encoding, binding), entry);
+		return copy;
+	}
+
+	/**
+	 * Removes all entries, entries still in use are disposed once the requests
+	 * using them have finished.
+	 */
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	public long getHitCount() {
+		return cache.stats().hitCount();
+	}
+
+	public long getMissCount() {
+		return cache.stats().missCount();
+	}
+
+	@Override
+	public String toString() {
+		return "ParsedDataCache [size=" + cache.size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "]";
+	}
+
+	private static String createKey(String validator, String mimeType, String schema, String encoding, Class< ? > binding) {
+		StringBuilder key = new StringBuilder(validator);
+		for (String part : new String[] {mimeType, schema, encoding, binding.getName()}) {
+			key.append('\n').append(part);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Counts the requests using the data, the entry is disposed when it has
+	 * been removed from the cache and is no longer used.
+	 */
+	private class Entry {
+
+		private final IData data;
+
+		private final TempFileArena arena;
+
+		private final int weight;
+
+		private int users;
+
+		private boolean removed;
+
+		private boolean disposed;
+
+		Entry(IData data, TempFileArena arena, int weight) {
+			this.data = data;
+			this.arena = arena;
+			this.weight = weight;
+		}
+
+		/**
+		 * @return <code>false</code> if the entry has already been disposed
+		 */
+		boolean acquire(TempFileArena requestArena) {
+			synchronized (this) {
+				if (disposed) {
+					return false;
+				}
+				if (requestArena == null) {
+					return true;
+				}
+				users++;
+			}
+			requestArena.registerResource(new Closeable() {
+
+				private boolean released;
+
+				@Override
+				public void close() {
+					synchronized (Entry.this) {
+						if (released) {
+							return;
+						}
+						released = true;
+						users--;
+					}
+					disposeIfUnused();
+				}
+			});
+			return true;
+		}
+
+		void remove() {
+			synchronized (this) {
+				removed = true;
+			}
+			disposeIfUnused();
+		}
+
+		private void disposeIfUnused() {
+			synchronized (this) {
+				if ( !removed || users > 0 || disposed) {
+					return;
+				}
+				disposed = true;
+			}
+			if (data instanceof IComplexData) {
+				((IComplexData) data).dispose();
+			}
+			arena.close();
+		}
+	}
+
+}
@@ -71,9 +71,17 @@ abstract public class Request implements Callable <Response> {
 		this.doc = doc;
 	}
 	
+	/**
+	 * Create a Request whose input has already been parsed by the subclass
+	 * (HTTP POST without an intermediate Document)
+	 */
+	protected Request() throws ExceptionReport{
+		super();
+	}
+	
 	/**
 	 * Returns the user input in Document form
-	 * @return Document || null if Request(Map, outputstream) was used
+	 * @return Document || null if Request(Map, outputstream) or Request() was used
 	 */
 	public Document getDocument(){
 		return doc;
@@ -275,5 +283,14 @@ abstract public class Request implements Callable <Response> {
 	 */
 	abstract public boolean validate() throws ExceptionReport;
 
+	/**
+	 * Validates the Request and returns the ETag of its Response, if the Response
+	 * is served from a cache.
+	 * @return the ETag, or null if the Response is generated for every Request
+	 */
+	public String getETag() throws ExceptionReport {
+		return null;
+	}
+
 }
 	
\ No newline at end of file
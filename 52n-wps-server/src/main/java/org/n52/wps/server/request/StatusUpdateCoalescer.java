@@ -0,0 +1,211 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.opengis.wps.x100.StatusType;
+
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces the progress updates of a running process. Processes may report
+ * progress very often, while each stored status is a full serialization of
+ * the ExecuteResponse. Progress updates only replace the latest status kept in
+ * memory, which is written by a background thread at most once per
+ * <code>statusUpdate.minInterval</code> and only if the progress advanced by
+ * at least <code>statusUpdate.minPercentStep</code> percent. Thus the process
+ * thread never waits for the storage.
+ * 
+ * All other states (accepted, started, succeeded, failed) are written
+ * immediately by the calling thread and supersede pending progress updates.
+ */
+public class StatusUpdateCoalescer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(StatusUpdateCoalescer.class);
+
+	public static final String PROP_MIN_INTERVAL = "statusUpdate.minInterval";
+
+	public static final String PROP_MIN_PERCENT_STEP = "statusUpdate.minPercentStep";
+
+	public static final long DEFAULT_MIN_INTERVAL = 1000;
+
+	public static final int DEFAULT_MIN_PERCENT_STEP = 1;
+
+	/**
+	 * Writes a status, e.g. into the response document and the database.
+	 */
+	public interface StatusWriter {
+
+		void write(StatusType status);
+	}
+
+	private final StatusWriter writer;
+
+	private final ScheduledExecutorService scheduler;
+
+	private final long minInterval;
+
+	private final int minPercentStep;
+
+	/** serializes the writes, so a pending write never overtakes a later one */
+	private final Object writeLock = new Object();
+
+	/** guarded by this */
+	private StatusType pending;
+
+	private int pendingPercent = -1;
+
+	private boolean scheduled;
+
+	private long lastWrite;
+
+	private int lastPercent = -1;
+
+	private final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			flushPending();
+		}
+	};
+
+	public StatusUpdateCoalescer(StatusWriter writer) {
+		this(writer, Settings.MIN_INTERVAL, Settings.MIN_PERCENT_STEP, Settings.SCHEDULER);
+	}
+
+	StatusUpdateCoalescer(StatusWriter writer, long minInterval, int minPercentStep, ScheduledExecutorService scheduler) {
+		this.writer = writer;
+		this.minInterval = minInterval;
+		this.minPercentStep = minPercentStep;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Reports progress. Returns immediately, the status is written later
+	 * unless it is superseded.
+	 * 
+	 * @param percent
+	 *            the percentage completed, or -1 if the status carries a
+	 *            message only
+	 */
+	public void progress(StatusType status, int percent) {
+		synchronized (this) {
+			pending = status;
+			pendingPercent = percent;
+			if (scheduled) {
+				return;
+			}
+			if (percent >= 0 && lastPercent >= 0 && percent < 100 && Math.abs(percent - lastPercent) < minPercentStep) {
+				// kept as latest state, written with the next significant step
+				return;
+			}
+			scheduled = true;
+			long delay = Math.max(0, lastWrite + minInterval - System.currentTimeMillis());
+			scheduler.schedule(flushTask, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Writes the status immediately, discarding pending progress updates.
+	 */
+	public void flush(StatusType status) {
+		synchronized (writeLock) {
+			synchronized (this) {
+				pending = null;
+				lastWrite = System.currentTimeMillis();
+			}
+			writer.write(status);
+		}
+	}
+
+	void flushPending() {
+		synchronized (writeLock) {
+			StatusType status;
+			synchronized (this) {
+				scheduled = false;
+				status = pending;
+				if (status == null) {
+					return;
+				}
+				pending = null;
+				lastWrite = System.currentTimeMillis();
+				if (pendingPercent >= 0) {
+					lastPercent = pendingPercent;
+				}
+			}
+			try {
+				writer.write(status);
+			}
+			catch (RuntimeException e) {
+				LOGGER.warn("Could not write process status", e);
+			}
+		}
+	}
+
+	private static class Settings {
+
+		static final long MIN_INTERVAL;
+
+		static final int MIN_PERCENT_STEP;
+
+		static final ScheduledExecutorService SCHEDULER;
+
+		static {
+			long minInterval = DEFAULT_MIN_INTERVAL;
+			int minPercentStep = DEFAULT_MIN_PERCENT_STEP;
+			try {
+				PropertyUtil propertyUtil = new PropertyUtil(WPSConfig.getInstance().getPropertiesForServer());
+				minInterval = propertyUtil.extractPeriodAsMillis(PROP_MIN_INTERVAL, DEFAULT_MIN_INTERVAL);
+				minPercentStep = (int) propertyUtil.extractLong(PROP_MIN_PERCENT_STEP, DEFAULT_MIN_PERCENT_STEP);
+			} catch (RuntimeException e) {
+				LOGGER.warn("Could not read status update properties, using defaults");
+			}
+			MIN_INTERVAL = minInterval;
+			MIN_PERCENT_STEP = minPercentStep;
+			SCHEDULER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "wps-status-writer-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			LOGGER.info("Writing process progress at most every {} ms", minInterval);
+		}
+	}
+}
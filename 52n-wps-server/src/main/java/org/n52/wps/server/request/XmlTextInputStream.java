@@ -0,0 +1,128 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlCursor.TokenType;
+import org.apache.xmlbeans.XmlObject;
+
+/**
+ * Reads the text content of an element, e.g. inline base64 encoded
+ * ComplexData, in chunks from an XmlCursor. The text is never copied into a
+ * single String. Markup of child elements is skipped, their text is included.
+ * Characters are returned as their lower byte, so only ASCII content (like
+ * base64) is read correctly.
+ */
+class XmlTextInputStream extends InputStream {
+
+	private static final int CHUNK_SIZE = 8192;
+
+	private final XmlCursor cursor;
+
+	private final char[] chars = new char[CHUNK_SIZE];
+
+	private int position;
+
+	private int length;
+
+	private int depth;
+
+	private boolean finished;
+
+	XmlTextInputStream(XmlObject element) {
+		this.cursor = element.newCursor();
+		// move into the element
+		cursor.toNextToken();
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (position == length && !fill()) {
+			return -1;
+		}
+		return chars[position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (position == length && !fill()) {
+			return -1;
+		}
+		int n = Math.min(len, length - position);
+		for (int i = 0; i < n; i++) {
+			b[off + i] = (byte) chars[position++];
+		}
+		return n;
+	}
+
+	@Override
+	public void close() {
+		if ( !finished) {
+			finished = true;
+			cursor.dispose();
+		}
+	}
+
+	private boolean fill() {
+		position = 0;
+		length = 0;
+		while ( !finished) {
+			TokenType token = cursor.currentTokenType();
+			if (token.isText()) {
+				length = cursor.getChars(chars, 0, chars.length);
+				cursor.toNextChar(length);
+				if (length > 0) {
+					return true;
+				}
+			}
+			else if (token.isStart()) {
+				depth++;
+				cursor.toNextToken();
+			}
+			else if (token.isEnd() && depth > 0) {
+				depth--;
+				cursor.toNextToken();
+			}
+			else if (token.isEnd() || token.isEnddoc() || token.isNone()) {
+				close();
+			}
+			else {
+				// attributes, namespaces, comments and processing instructions
+				cursor.toNextToken();
+			}
+		}
+		return false;
+	}
+}
@@ -29,6 +29,7 @@
 package org.n52.wps.server.request.strategy;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
 import java.net.MalformedURLException;
 
@@ -37,14 +38,11 @@ import net.opengis.wps.x100.InputType;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DecompressingHttpClient;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicHeader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,10 +61,6 @@ public class DefaultReferenceStrategy implements IReferenceStrategy{
 	
 	Logger logger = LoggerFactory.getLogger(DefaultReferenceStrategy.class);
 	
-	//TODO: get proxy from config
-	//static final HttpHost proxy = new HttpHost("127.0.0.1", 8080, "http");
-	static final HttpHost proxy = null;
-	
 	@Override
 	public boolean isApplicable(InputType input) {
 		// TODO Auto-generated method stub
@@ -89,7 +83,13 @@ public class DefaultReferenceStrategy implements IReferenceStrategy{
 				
 				// but Body reference into a String
 				StringWriter writer = new StringWriter();
-				IOUtils.copy(httpGet(bodyHref, null), writer);
+				InputStream bodyStream = httpGet(bodyHref, null);
+				try {
+					IOUtils.copy(bodyStream, writer);
+				} finally {
+					// releases the connection
+					bodyStream.close();
+				}
 				String body = writer.toString();
 				
 				// trigger POST request
@@ -117,43 +117,36 @@ public class DefaultReferenceStrategy implements IReferenceStrategy{
 		catch(MalformedURLException e) {
 			String inputID = input.getIdentifier().getStringValue();
 			throw new ExceptionReport("The inputURL of the execute is wrong: inputID: " + inputID + " | dataURL: " + href, 
-										ExceptionReport.INVALID_PARAMETER_VALUE );
+										ExceptionReport.INVALID_PARAMETER_VALUE, inputID);
 		}
 		catch(IOException e) {
 			 String inputID = input.getIdentifier().getStringValue();
 			 throw new ExceptionReport("Error occured while receiving the complexReferenceURL: inputID: " + inputID + " | dataURL: " + href, 
-					 				ExceptionReport.INVALID_PARAMETER_VALUE );
+					 				ExceptionReport.INVALID_PARAMETER_VALUE, inputID, e);
 		}
 	}
 	
 	/**
 	 * Make a GET request using mimeType and href
 	 * 
-	 * TODO: add support for autoretry, proxy
+	 * TODO: add support for autoretry
 	 */
 	private ReferenceInputStream httpGet(final String dataURLString, final String mimeType) throws IOException {
-		HttpClient backend = new DefaultHttpClient();
-		DecompressingHttpClient httpclient = new DecompressingHttpClient(backend);
-		
 		HttpGet httpget = new HttpGet(dataURLString);
 		
 		if (mimeType != null){
 			httpget.addHeader(new BasicHeader("Content-type", mimeType));
 		}
 		        
-		return processResponse(httpclient.execute(httpget));
+		return execute(httpget, dataURLString, null, mimeType);
 	}
 	
 	/**
 	 * Make a POST request using mimeType and href
 	 * 
-	 * TODO: add support for autoretry, proxy
+	 * TODO: add support for autoretry
 	 */
 	private ReferenceInputStream httpPost(final String dataURLString, final String body, final String mimeType) throws IOException {
-		HttpClient backend = new DefaultHttpClient();
-		
-		DecompressingHttpClient httpclient = new DecompressingHttpClient(backend);
-		
 		HttpPost httppost = new HttpPost(dataURLString);
 		
 		if (mimeType != null){
@@ -164,7 +157,18 @@ public class DefaultReferenceStrategy implements IReferenceStrategy{
 		HttpEntity postEntity = new StringEntity(body);
 		httppost.setEntity(postEntity);
 		
-		return processResponse(httpclient.execute(httppost));
+		return execute(httppost, dataURLString, body, mimeType);
+	}
+
+	/**
+	 * Executes the request through the reference cache, if it is enabled.
+	 */
+	private ReferenceInputStream execute(HttpRequestBase request, String dataURLString, String body, String mimeType) throws IOException {
+		ReferenceCache cache = ReferenceCache.getInstance();
+		if (cache != null) {
+			return cache.fetch(request, dataURLString, body, mimeType);
+		}
+		return processResponse(ReferenceHttpClient.getInstance().getHttpClient().execute(request));
 	}
 
     private ReferenceInputStream processResponse(HttpResponse response) throws IOException {
@@ -0,0 +1,601 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.util.EntityUtils;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A disk-backed cache of referenced input data. Entries are addressed by a
+ * hash of the href, the request body and the requested mime type, so the
+ * same data fetched by different Execute requests is downloaded once.
+ * 
+ * Entries stay fresh as long as the Cache-Control (max-age, s-maxage) or
+ * Expires headers of the response allow. Stale entries are revalidated with
+ * a conditional request using their ETag or Last-Modified date. Responses
+ * without a validator and without an expiry, or marked no-store or private,
+ * are not cached. The least recently used entries are evicted once the
+ * cached bytes exceed the budget.
+ * 
+ * The cache is configured with the server properties
+ * <code>referenceCache.enabled</code>, <code>referenceCache.directory</code>
+ * (defaults to a folder in the temporary directory) and
+ * <code>referenceCache.maxSize</code> (bytes).
+ */
+public class ReferenceCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceCache.class);
+
+	public static final String PROP_ENABLED = "referenceCache.enabled";
+
+	public static final String PROP_DIRECTORY = "referenceCache.directory";
+
+	public static final String PROP_MAX_SIZE = "referenceCache.maxSize";
+
+	public static final long DEFAULT_MAX_SIZE = 1L << 30;
+
+	private static final String DATA_SUFFIX = ".data";
+
+	private static final String METADATA_SUFFIX = ".properties";
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static ReferenceCache instance;
+
+	private static boolean initialized;
+
+	private final File directory;
+
+	private final long maxSize;
+
+	private final HttpClient httpClient;
+
+	/** entries in access order, guarded by this */
+	private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+
+	private long size;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong revalidations = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @return the cache, or <code>null</code> if it is disabled
+	 */
+	public static synchronized ReferenceCache getInstance() {
+		if ( !initialized) {
+			initialized = true;
+			PropertyUtil propertyUtil = new PropertyUtil(WPSConfig.getInstance().getPropertiesForServer());
+			if (propertyUtil.extractBoolean(PROP_ENABLED, false)) {
+				String path = propertyUtil.extractString(PROP_DIRECTORY, null);
+				File directory = path == null || path.trim().isEmpty() ? new File(System.getProperty("java.io.tmpdir"),
+						"wps-reference-cache") : new File(path.trim());
+				long maxSize = propertyUtil.extractLong(PROP_MAX_SIZE, DEFAULT_MAX_SIZE);
+				try {
+					instance = new ReferenceCache(directory, maxSize, ReferenceHttpClient.getInstance().getHttpClient());
+				} catch (IOException e) {
+					LOGGER.error("Could not initialize the reference cache in " + directory + ", references are not cached.", e);
+				}
+			}
+		}
+		return instance;
+	}
+
+	ReferenceCache(File directory, long maxSize, HttpClient httpClient) throws IOException {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.httpClient = httpClient;
+		if ( !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create directory " + directory);
+		}
+		load();
+		LOGGER.info("Caching references in {}, {} of {} bytes used", directory, size, maxSize);
+	}
+
+	/**
+	 * Executes the request unless a fresh entry is cached, revalidates stale
+	 * entries and stores cacheable responses.
+	 * 
+	 * @param request
+	 *            the request for the reference
+	 * @param href
+	 *            the referenced URL
+	 * @param body
+	 *            the body of a POST request, may be <code>null</code>
+	 * @param mimeType
+	 *            the requested mime type, may be <code>null</code>
+	 * @return the referenced data, from the cache or the response
+	 * @throws IOException
+	 *             if the data could not be retrieved
+	 */
+	public ReferenceInputStream fetch(HttpRequestBase request, String href, String body, String mimeType) throws IOException {
+		String key = createKey(href, body, mimeType);
+		long now = System.currentTimeMillis();
+		CacheEntry entry = get(key);
+		if (entry != null) {
+			if (entry.isFresh(now)) {
+				ReferenceInputStream stream = open(entry);
+				if (stream != null) {
+					hits.incrementAndGet();
+					LOGGER.debug("Serving {} from the reference cache", href);
+					return stream;
+				}
+			}
+			if (entry.etag != null) {
+				request.setHeader("If-None-Match", entry.etag);
+			}
+			if (entry.lastModified != null) {
+				request.setHeader("If-Modified-Since", entry.lastModified);
+			}
+		}
+
+		HttpResponse response = httpClient.execute(request);
+		if (entry != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+			EntityUtils.consumeQuietly(response.getEntity());
+			entry.update(response, now);
+			writeMetadata(entry);
+			ReferenceInputStream stream = open(entry);
+			if (stream != null) {
+				revalidations.incrementAndGet();
+				LOGGER.debug("Revalidated cached {}", href);
+				return stream;
+			}
+			// the entry vanished in the meantime, fetch it unconditionally
+			request.removeHeaders("If-None-Match");
+			request.removeHeaders("If-Modified-Since");
+			response = httpClient.execute(request);
+		}
+		misses.incrementAndGet();
+
+		HttpEntity entity = response.getEntity();
+		if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK || !isCacheable(response, now)
+				|| entity.getContentLength() > maxSize) {
+			return toReferenceInputStream(entity);
+		}
+		return store(key, href, response, now);
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getRevalidationCount() {
+		return revalidations.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public synchronized long getSize() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "ReferenceCache [directory=" + directory + ", size=" + getSize() + ", maxSize=" + maxSize + ", hits="
+				+ hits + ", revalidations=" + revalidations + ", misses=" + misses + "]";
+	}
+
+	static String createKey(String href, String body, String mimeType) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			update(digest, href);
+			update(digest, body);
+			update(digest, mimeType);
+			return Hex.encodeHexString(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		// separate the parts, so that moving characters between them changes the key
+		if (value == null) {
+			digest.update((byte) 0);
+		} else {
+			digest.update((byte) 1);
+			digest.update(value.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+	}
+
+	static boolean isCacheable(HttpResponse response, long now) {
+		for (Header header : response.getHeaders("Cache-Control")) {
+			for (HeaderElement element : header.getElements()) {
+				String name = element.getName();
+				if ("no-store".equalsIgnoreCase(name) || "private".equalsIgnoreCase(name)) {
+					return false;
+				}
+			}
+		}
+		return response.containsHeader("ETag") || response.containsHeader("Last-Modified")
+				|| getExpires(response, now) > now;
+	}
+
+	/**
+	 * @return the time until which the response is fresh, <code>now</code> if
+	 *         it has to be revalidated before each use
+	 */
+	static long getExpires(HttpResponse response, long now) {
+		long maxAge = -1;
+		long sharedMaxAge = -1;
+		for (Header header : response.getHeaders("Cache-Control")) {
+			for (HeaderElement element : header.getElements()) {
+				String name = element.getName();
+				if ("no-cache".equalsIgnoreCase(name)) {
+					return now;
+				} else if ("max-age".equalsIgnoreCase(name)) {
+					maxAge = parseSeconds(element.getValue());
+				} else if ("s-maxage".equalsIgnoreCase(name)) {
+					sharedMaxAge = parseSeconds(element.getValue());
+				}
+			}
+		}
+		// the cache is shared by all clients of the service
+		long age = sharedMaxAge >= 0 ? sharedMaxAge : maxAge;
+		if (age >= 0) {
+			return now + age * 1000;
+		}
+		Header expires = response.getFirstHeader("Expires");
+		if (expires != null) {
+			Date date = DateUtils.parseDate(expires.getValue());
+			return date == null ? now : Math.max(date.getTime(), now);
+		}
+		return now;
+	}
+
+	private static long parseSeconds(String value) {
+		try {
+			return value == null ? 0 : Math.max(Long.parseLong(value.trim()), 0);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static ReferenceInputStream toReferenceInputStream(HttpEntity entity) throws IOException {
+		Header header = entity.getContentType();
+		String mimeType = header == null ? null : header.getValue();
+		header = entity.getContentEncoding();
+		String encoding = header == null ? null : header.getValue();
+		return new ReferenceInputStream(entity.getContent(), mimeType, encoding);
+	}
+
+	private ReferenceInputStream store(String key, String href, HttpResponse response, long now) throws IOException {
+		HttpEntity entity = response.getEntity();
+		File temp = File.createTempFile("download-", TEMP_SUFFIX, directory);
+		InputStream in = entity.getContent();
+		OutputStream out = null;
+		long length;
+		try {
+			out = new FileOutputStream(temp);
+			length = IOUtils.copyLarge(in, out);
+		} catch (IOException e) {
+			IOUtils.closeQuietly(out);
+			deleteFile(temp);
+			throw e;
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		out.close();
+
+		ReferenceInputStream source = toReferenceInputStream(entity);
+		if (length > maxSize) {
+			// too large to be cached, but already downloaded
+			return new ReferenceInputStream(new DeleteOnCloseInputStream(temp), source.getMimeType(), source.getEncoding());
+		}
+
+		CacheEntry entry = new CacheEntry(key, href, new File(directory, key + DATA_SUFFIX), length, UUID.randomUUID().toString());
+		entry.mimeType = source.getMimeType();
+		entry.encoding = source.getEncoding();
+		entry.update(response, now);
+		source.close();
+
+		synchronized (this) {
+			Files.move(temp.toPath(), entry.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			CacheEntry replaced = entries.put(key, entry);
+			if (replaced != null) {
+				size -= replaced.size;
+			}
+			size += length;
+			writeMetadata(entry);
+			evict();
+		}
+		LOGGER.debug("Cached {} bytes of {}", length, href);
+		ReferenceInputStream stream = open(entry);
+		if (stream == null) {
+			throw new FileNotFoundException("Cached data of " + href + " was evicted immediately");
+		}
+		return stream;
+	}
+
+	private synchronized CacheEntry get(String key) {
+		return entries.get(key);
+	}
+
+	private ReferenceInputStream open(CacheEntry entry) {
+		try {
+			ReferenceInputStream stream = new ReferenceInputStream(new FileInputStream(entry.file), entry.mimeType,
+					entry.encoding, entry.getValidator());
+			// keeps the least recently used order across restarts
+			entry.file.setLastModified(System.currentTimeMillis());
+			return stream;
+		} catch (FileNotFoundException e) {
+			remove(entry);
+			return null;
+		}
+	}
+
+	private synchronized void remove(CacheEntry entry) {
+		if (entries.get(entry.key) == entry) {
+			entries.remove(entry.key);
+			size -= entry.size;
+		}
+	}
+
+	/**
+	 * Removes the least recently used entries until the cache fits into its
+	 * budget. Must be called holding the lock.
+	 */
+	private void evict() {
+		Iterator<CacheEntry> iterator = entries.values().iterator();
+		while (size > maxSize && iterator.hasNext()) {
+			CacheEntry eldest = iterator.next();
+			iterator.remove();
+			size -= eldest.size;
+			// open streams on POSIX systems keep reading the unlinked file
+			deleteFile(new File(directory, eldest.key + METADATA_SUFFIX));
+			deleteFile(eldest.file);
+			LOGGER.debug("Evicted cached {}", eldest.href);
+		}
+	}
+
+	private void writeMetadata(CacheEntry entry) {
+		Properties properties = entry.toProperties();
+		File file = new File(directory, entry.key + METADATA_SUFFIX);
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(file);
+			properties.store(out, null);
+		} catch (IOException e) {
+			LOGGER.warn("Could not write cache metadata " + file, e);
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	/**
+	 * Restores the entries of a previous run, ordered by their last access.
+	 */
+	private void load() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		List<CacheEntry> loaded = new ArrayList<CacheEntry>();
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(TEMP_SUFFIX)) {
+				deleteFile(file);
+			} else if (name.endsWith(METADATA_SUFFIX)) {
+				String key = name.substring(0, name.length() - METADATA_SUFFIX.length());
+				File data = new File(directory, key + DATA_SUFFIX);
+				Properties properties = new Properties();
+				InputStream in = null;
+				try {
+					in = new FileInputStream(file);
+					properties.load(in);
+					if (data.isFile()) {
+						loaded.add(CacheEntry.fromProperties(key, data, properties));
+						continue;
+					}
+				} catch (IOException e) {
+					LOGGER.warn("Could not read cache metadata " + file, e);
+				} catch (RuntimeException e) {
+					LOGGER.warn("Invalid cache metadata " + file, e);
+				} finally {
+					IOUtils.closeQuietly(in);
+				}
+				deleteFile(file);
+				deleteFile(data);
+			}
+		}
+		Collections.sort(loaded, new Comparator<CacheEntry>() {
+			@Override
+			public int compare(CacheEntry e1, CacheEntry e2) {
+				long t1 = e1.file.lastModified();
+				long t2 = e2.file.lastModified();
+				return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+			}
+		});
+		synchronized (this) {
+			for (CacheEntry entry : loaded) {
+				entries.put(entry.key, entry);
+				size += entry.size;
+			}
+			evict();
+		}
+	}
+
+	private static void deleteFile(File file) {
+		if (file.exists() && !file.delete()) {
+			LOGGER.warn("Could not delete {}", file);
+			file.deleteOnExit();
+		}
+	}
+
+	private static class CacheEntry {
+
+		private final String key;
+
+		private final String href;
+
+		private final File file;
+
+		private final long size;
+
+		/** identifies the downloaded data, kept when the entry is revalidated */
+		private final String version;
+
+		private String mimeType;
+
+		private String encoding;
+
+		private volatile String etag;
+
+		private volatile String lastModified;
+
+		private volatile long expires;
+
+		CacheEntry(String key, String href, File file, long size, String version) {
+			this.key = key;
+			this.href = href;
+			this.file = file;
+			this.size = size;
+			this.version = version;
+		}
+
+		boolean isFresh(long now) {
+			return now < expires;
+		}
+
+		/**
+		 * @return the entity tag or last modification date of the data, its
+		 *         download otherwise
+		 */
+		String getValidator() {
+			String validator = etag != null ? etag : lastModified;
+			return key + ":" + (validator != null ? validator : version);
+		}
+
+		/**
+		 * Takes validators and freshness from a full or a not modified response.
+		 */
+		void update(HttpResponse response, long now) {
+			Header header = response.getFirstHeader("ETag");
+			if (header != null) {
+				etag = header.getValue();
+			}
+			header = response.getFirstHeader("Last-Modified");
+			if (header != null) {
+				lastModified = header.getValue();
+			}
+			expires = getExpires(response, now);
+		}
+
+		Properties toProperties() {
+			Properties properties = new Properties();
+			properties.setProperty("href", href);
+			properties.setProperty("size", Long.toString(size));
+			properties.setProperty("version", version);
+			properties.setProperty("expires", Long.toString(expires));
+			setIfNotNull(properties, "mimeType", mimeType);
+			setIfNotNull(properties, "encoding", encoding);
+			setIfNotNull(properties, "etag", etag);
+			setIfNotNull(properties, "lastModified", lastModified);
+			return properties;
+		}
+
+		static CacheEntry fromProperties(String key, File file, Properties properties) {
+			CacheEntry entry = new CacheEntry(key, properties.getProperty("href"), file,
+					Long.parseLong(properties.getProperty("size")), properties.getProperty("version", key));
+			entry.expires = Long.parseLong(properties.getProperty("expires"));
+			entry.mimeType = properties.getProperty("mimeType");
+			entry.encoding = properties.getProperty("encoding");
+			entry.etag = properties.getProperty("etag");
+			entry.lastModified = properties.getProperty("lastModified");
+			return entry;
+		}
+
+		private static void setIfNotNull(Properties properties, String name, String value) {
+			if (value != null) {
+				properties.setProperty(name, value);
+			}
+		}
+	}
+
+	private static class DeleteOnCloseInputStream extends FilterInputStream {
+
+		private final File file;
+
+		DeleteOnCloseInputStream(File file) throws FileNotFoundException {
+			super(new FileInputStream(file));
+			this.file = file;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				deleteFile(file);
+			}
+		}
+	}
+
+}
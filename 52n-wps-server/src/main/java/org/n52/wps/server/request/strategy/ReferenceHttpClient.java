@@ -0,0 +1,263 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ProxySelector;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultRoutePlanner;
+import org.apache.http.pool.PoolStats;
+import org.n52.wps.PropertyDocument.Property;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The HTTP client shared by all {@link IReferenceStrategy} implementations.
+ * Connections are pooled and kept alive, so references to the same server
+ * reuse established TCP and TLS connections across inputs and jobs.
+ * 
+ * The client is configured with the following server properties:
+ * <ul>
+ * <li><code>referenceHttp.maxConnections</code>: connections in total</li>
+ * <li><code>referenceHttp.maxConnectionsPerRoute</code>: connections per
+ * route, a single route can be set with
+ * <code>referenceHttp.maxConnectionsPerRoute.&lt;scheme://host:port&gt;</code></li>
+ * <li><code>referenceHttp.connectTimeout</code>,
+ * <code>referenceHttp.socketTimeout</code> and
+ * <code>referenceHttp.connectionRequestTimeout</code>: ISO 8601 periods</li>
+ * <li><code>referenceHttp.idleTimeout</code>: ISO 8601 period after which idle
+ * connections are closed</li>
+ * <li><code>referenceHttp.proxy</code>: proxy URL, e.g.
+ * <code>http://proxy:3128</code>. Without it, the JVM proxy settings are
+ * used.</li>
+ * </ul>
+ * The utilisation of the pool is available through JMX, see
+ * {@link ReferenceHttpClientMXBean}.
+ */
+public class ReferenceHttpClient implements ReferenceHttpClientMXBean {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceHttpClient.class);
+
+	public static final String PROP_MAX_CONNECTIONS = "referenceHttp.maxConnections";
+
+	public static final String PROP_MAX_CONNECTIONS_PER_ROUTE = "referenceHttp.maxConnectionsPerRoute";
+
+	public static final String PROP_CONNECT_TIMEOUT = "referenceHttp.connectTimeout";
+
+	public static final String PROP_SOCKET_TIMEOUT = "referenceHttp.socketTimeout";
+
+	public static final String PROP_CONNECTION_REQUEST_TIMEOUT = "referenceHttp.connectionRequestTimeout";
+
+	public static final String PROP_IDLE_TIMEOUT = "referenceHttp.idleTimeout";
+
+	public static final String PROP_PROXY = "referenceHttp.proxy";
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 100;
+
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+
+	public static final long DEFAULT_CONNECT_TIMEOUT = 30 * 1000;
+
+	public static final long DEFAULT_SOCKET_TIMEOUT = 5 * 60 * 1000;
+
+	public static final long DEFAULT_CONNECTION_REQUEST_TIMEOUT = 60 * 1000;
+
+	public static final long DEFAULT_IDLE_TIMEOUT = 30 * 1000;
+
+	private static final String MBEAN_NAME = "org.n52.wps.server:type=ReferenceHttpClient";
+
+	private static ReferenceHttpClient instance;
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+
+	private final CloseableHttpClient httpClient;
+
+	public static synchronized ReferenceHttpClient getInstance() {
+		if (instance == null) {
+			instance = new ReferenceHttpClient(WPSConfig.getInstance().getPropertiesForServer());
+			instance.registerMBean();
+		}
+		return instance;
+	}
+
+	/**
+	 * Closes the shared client and all pooled connections.
+	 */
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			try {
+				instance.httpClient.close();
+			} catch (IOException e) {
+				LOGGER.warn("Could not close the reference HTTP client.", e);
+			}
+			instance = null;
+		}
+	}
+
+	ReferenceHttpClient(Property[] properties) {
+		PropertyUtil propertyUtil = new PropertyUtil(properties);
+
+		connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(toInt(propertyUtil.extractLong(PROP_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS)));
+		connectionManager.setDefaultMaxPerRoute(toInt(propertyUtil.extractLong(PROP_MAX_CONNECTIONS_PER_ROUTE,
+				DEFAULT_MAX_CONNECTIONS_PER_ROUTE)));
+		// validate connections that were idle for a while before they are reused
+		connectionManager.setValidateAfterInactivity(2000);
+
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(toInt(propertyUtil.extractPeriodAsMillis(PROP_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT)))
+				.setSocketTimeout(toInt(propertyUtil.extractPeriodAsMillis(PROP_SOCKET_TIMEOUT, DEFAULT_SOCKET_TIMEOUT)))
+				.setConnectionRequestTimeout(toInt(propertyUtil.extractPeriodAsMillis(PROP_CONNECTION_REQUEST_TIMEOUT,
+						DEFAULT_CONNECTION_REQUEST_TIMEOUT)))
+				.build();
+
+		HttpClientBuilder builder = HttpClientBuilder.create()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.evictExpiredConnections()
+				.evictIdleConnections(propertyUtil.extractPeriodAsMillis(PROP_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT),
+						TimeUnit.MILLISECONDS);
+
+		String proxyURL = propertyUtil.extractString(PROP_PROXY, null);
+		HttpHost proxy = null;
+		if (proxyURL != null && !proxyURL.trim().isEmpty()) {
+			proxy = HttpHost.create(proxyURL.trim());
+			builder.setProxy(proxy);
+			LOGGER.info("Fetching references through proxy {}", proxy);
+		} else {
+			builder.setRoutePlanner(new SystemDefaultRoutePlanner(ProxySelector.getDefault()));
+		}
+
+		setRouteLimits(properties, proxy);
+
+		httpClient = builder.build();
+		LOGGER.info("Reference HTTP client pools up to {} connections, {} per route", connectionManager.getMaxTotal(),
+				connectionManager.getDefaultMaxPerRoute());
+	}
+
+	/**
+	 * @return the shared client, it decompresses gzip and deflate encoded
+	 *         responses. The content of each response must be consumed or
+	 *         closed to release the connection.
+	 */
+	public CloseableHttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	@Override
+	public int getLeasedConnections() {
+		return connectionManager.getTotalStats().getLeased();
+	}
+
+	@Override
+	public int getAvailableConnections() {
+		return connectionManager.getTotalStats().getAvailable();
+	}
+
+	@Override
+	public int getPendingRequests() {
+		return connectionManager.getTotalStats().getPending();
+	}
+
+	@Override
+	public int getMaxConnections() {
+		return connectionManager.getTotalStats().getMax();
+	}
+
+	@Override
+	public int getRouteCount() {
+		return connectionManager.getRoutes().size();
+	}
+
+	@Override
+	public String toString() {
+		PoolStats stats = connectionManager.getTotalStats();
+		return "ReferenceHttpClient [leased=" + stats.getLeased() + ", available=" + stats.getAvailable()
+				+ ", pending=" + stats.getPending() + ", max=" + stats.getMax() + "]";
+	}
+
+	private void setRouteLimits(Property[] properties, HttpHost proxy) {
+		if (properties == null) {
+			return;
+		}
+		String prefix = PROP_MAX_CONNECTIONS_PER_ROUTE + ".";
+		for (Property property : properties) {
+			String name = property.getName();
+			if (name == null || !name.startsWith(prefix) || !property.getActive()) {
+				continue;
+			}
+			String target = name.substring(prefix.length());
+			try {
+				HttpHost host = HttpHost.create(target);
+				int max = Integer.parseInt(property.getStringValue().trim());
+				boolean secure = "https".equalsIgnoreCase(host.getSchemeName());
+				HttpRoute route = proxy == null ? new HttpRoute(host, null, secure) : new HttpRoute(host, null, proxy, secure);
+				connectionManager.setMaxPerRoute(route, max);
+				LOGGER.info("Using up to {} connections to {}", max, target);
+			} catch (IllegalArgumentException e) {
+				LOGGER.error("Invalid connection limit \"{}\" for route {}", property.getStringValue(), target);
+			}
+		}
+	}
+
+	private static int toInt(long value) {
+		return (int) Math.max(Math.min(value, Integer.MAX_VALUE), 0);
+	}
+
+	private void registerMBean() {
+		try {
+			MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			// replace the client of a previous deployment
+			if (mBeanServer.isRegistered(name)) {
+				mBeanServer.unregisterMBean(name);
+			}
+			mBeanServer.registerMBean(this, name);
+		} catch (JMException e) {
+			LOGGER.warn("Could not register reference HTTP client statistics with JMX.", e);
+		} catch (SecurityException e) {
+			LOGGER.warn("Could not register reference HTTP client statistics with JMX.", e);
+		}
+	}
+
+}
@@ -39,11 +39,22 @@ public class ReferenceInputStream extends FilterInputStream {
     
     private final String mimeType;
     private final String encoding;
+    private final String validator;
     
     public ReferenceInputStream(InputStream inputStream, String mimeType, String encoding) {
+        this(inputStream, mimeType, encoding, null);
+    }
+    
+    /**
+     * @param validator
+     *            identifies the version of the referenced data, see
+     *            {@link #getValidator()}
+     */
+    public ReferenceInputStream(InputStream inputStream, String mimeType, String encoding, String validator) {
         super(inputStream);
         this.mimeType = mimeType;
         this.encoding = encoding;
+        this.validator = validator;
     }
     
     public String getMimeType() {
@@ -53,4 +64,12 @@ public class ReferenceInputStream extends FilterInputStream {
     public String getEncoding() {
         return encoding;
     }
+    
+    /**
+     * @return a string that changes whenever the referenced data changes, or
+     *         <code>null</code> if the version of the data is unknown
+     */
+    public String getValidator() {
+        return validator;
+    }
 }
@@ -30,20 +30,22 @@ package org.n52.wps.server.request.strategy;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
-import java.util.zip.GZIPInputStream;
 
 import net.opengis.wps.x100.InputType;
 
 import org.apache.commons.codec.binary.Base64InputStream;
 import org.apache.commons.io.IOUtils;
-import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.xmlbeans.XmlObject;
 import org.n52.wps.server.ExceptionReport;
 
@@ -73,31 +75,38 @@ public class WCS111XMLEmbeddedBase64OutputReferenceStrategy implements IReferenc
 		String encoding = input.getReference().getEncoding();
 		String mimeType = input.getReference().getMimeType();
 		
+		// the shared client negotiates and decodes gzip content
+		CloseableHttpClient httpClient = ReferenceHttpClient.getInstance().getHttpClient();
+		BufferedReader bRead = null;
 		try {
-			URL dataURL = new URL(dataURLString);
 			// Do not give a direct inputstream.
 			// The XML handlers cannot handle slow connections
-			URLConnection conn = dataURL.openConnection();
-			conn.setRequestProperty("Accept-Encoding", "gzip");
-			conn.setRequestProperty("Content-type", "multipart/mixed");
+			HttpRequestBase request;
 			//Handling POST with referenced document
 			if(input.getReference().isSetBodyReference()) {
 				String bodyReference = input.getReference().getBodyReference().getHref();
-				URL bodyReferenceURL = new URL (bodyReference);
-				URLConnection bodyReferenceConn = bodyReferenceURL.openConnection();
-				bodyReferenceConn.setRequestProperty("Accept-Encoding", "gzip");
-				InputStream referenceInputStream = retrievingZippedContent(bodyReferenceConn);
-				IOUtils.copy(referenceInputStream, conn.getOutputStream());
+				InputStream referenceInputStream = httpClient.execute(new HttpGet(bodyReference)).getEntity().getContent();
+				byte[] body;
+				try {
+					body = IOUtils.toByteArray(referenceInputStream);
+				} finally {
+					referenceInputStream.close();
+				}
+				request = createPost(dataURLString, body);
 			}
 			//Handling POST with inline message
 			else if (input.getReference().isSetBody()) {
-				conn.setDoOutput(true);
-				
-				input.getReference().getBody().save(conn.getOutputStream());
+				ByteArrayOutputStream body = new ByteArrayOutputStream();
+				input.getReference().getBody().save(body);
+				request = createPost(dataURLString, body.toByteArray());
+			}
+			else {
+				request = new HttpGet(dataURLString);
 			}
-			InputStream inputStream = retrievingZippedContent(conn);
+			request.setHeader("Content-type", "multipart/mixed");
+			InputStream inputStream = httpClient.execute(request).getEntity().getContent();
 			
-			BufferedReader bRead = new BufferedReader(new InputStreamReader(inputStream));
+			bRead = new BufferedReader(new InputStreamReader(inputStream));
 			
 			String line = "";
 			
@@ -170,15 +179,16 @@ public class WCS111XMLEmbeddedBase64OutputReferenceStrategy implements IReferenc
 			 throw new ExceptionReport("Error occured while receiving the complexReferenceURL: inputID: " + inputID + " | dataURL: " + dataURLString, 
 					 				ExceptionReport.INVALID_PARAMETER_VALUE );
 		}
+		finally {
+			// releases the connection
+			IOUtils.closeQuietly(bRead);
+		}
 	}
 
-	private InputStream retrievingZippedContent(URLConnection conn) throws IOException{
-		String contentType = conn.getContentEncoding();
-		if(contentType != null && contentType.equals("gzip")) {
-			return new GZIPInputStream(conn.getInputStream());
-		}
-		else{
-			return conn.getInputStream();
-		}
+	private HttpPost createPost(String dataURLString, byte[] body) {
+		HttpPost post = new HttpPost(dataURLString);
+		HttpEntity entity = new ByteArrayEntity(body);
+		post.setEntity(entity);
+		return post;
 	}
 }
@@ -30,10 +30,12 @@ package org.n52.wps.server.response;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import org.apache.xmlbeans.XmlException;
 import org.n52.wps.server.CapabilitiesConfiguration;
 import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.ServiceMetadataCache;
 import org.n52.wps.server.request.CapabilitiesRequest;
 import org.n52.wps.util.XMLBeansHelper;
 
@@ -57,6 +59,9 @@ public class CapabilitiesResponse extends Response {
 	 * @throws ExceptionReport
 	 */
 	public InputStream getAsStream() throws ExceptionReport{
+		if (ServiceMetadataCache.isCapabilitiesCacheEnabled()) {
+			return ServiceMetadataCache.getCapabilitiesAsStream();
+		}
 		try {
 			return CapabilitiesConfiguration.getInstance().newInputStream(XMLBeansHelper.getXmlOptions());
 		} catch (IOException e) {
@@ -65,4 +70,17 @@ public class CapabilitiesResponse extends Response {
 			throw new ExceptionReport("Exception occured while generating response", ExceptionReport.NO_APPLICABLE_CODE, e);
 		}
 	}
+
+	@Override
+	public void save(OutputStream os) throws ExceptionReport {
+		if (!ServiceMetadataCache.isCapabilitiesCacheEnabled()) {
+			super.save(os);
+			return;
+		}
+		try {
+			ServiceMetadataCache.writeCapabilities(os);
+		} catch (IOException e) {
+			throw new ExceptionReport("Exception occured while generating response", ExceptionReport.NO_APPLICABLE_CODE, e);
+		}
+	}
 }
@@ -28,13 +28,13 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.IOException;
 import java.io.InputStream;
-
-import net.opengis.wps.x100.ProcessDescriptionsDocument;
+import java.io.OutputStream;
 
 import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.ServiceMetadataCache;
 import org.n52.wps.server.request.DescribeProcessRequest;
-import org.n52.wps.util.XMLBeansHelper;
 
 
 public class DescribeProcessResponse extends Response{
@@ -45,10 +45,15 @@ public class DescribeProcessResponse extends Response{
 	
     @Override
 	public InputStream getAsStream() throws ExceptionReport{
+		return ServiceMetadataCache.getProcessDescriptionsAsStream(((DescribeProcessRequest) request).getIdentifiers());
+	}
+	
+    @Override
+	public void save(OutputStream os) throws ExceptionReport {
 		try {
-			return ((ProcessDescriptionsDocument)request.getAttachedResult()).newInputStream(XMLBeansHelper.getXmlOptions());
+			ServiceMetadataCache.writeProcessDescriptions(os, ((DescribeProcessRequest) request).getIdentifiers());
 		}
-		catch(Exception e) {
+		catch(IOException e) {
 			throw new ExceptionReport("Exception occured while writing response document", ExceptionReport.NO_APPLICABLE_CODE, e);
 		}
 	}
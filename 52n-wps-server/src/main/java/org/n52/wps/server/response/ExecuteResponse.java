@@ -29,6 +29,10 @@
 package org.n52.wps.server.response;
 
 import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.n52.wps.commons.context.ExecutionContext;
+import org.n52.wps.commons.context.ExecutionContextFactory;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.request.ExecuteRequest;
 
@@ -46,6 +50,27 @@ public class ExecuteResponse extends Response {
 		return this.builder.getAsStream();
 	}
 	
+    @Override
+	public void save(OutputStream os) throws ExceptionReport{
+		ExecuteRequest executeRequest = (ExecuteRequest) this.request;
+		// outputs of synchronous requests are generated while they are written
+		ExecutionContext context = executeRequest.getExecutionContext();
+		if (context != null) {
+			ExecutionContextFactory.registerContext(context);
+		}
+		try {
+			this.builder.save(os);
+		} finally {
+			if (context != null) {
+				ExecutionContextFactory.unregisterContext();
+			}
+			// the outputs of synchronous requests are not needed anymore
+			if (!executeRequest.isStoreResponse()) {
+				executeRequest.disposeResults();
+			}
+		}
+	}
+	
 	public ExecuteResponseBuilder getExecuteResponseBuilder(){
 		return builder;
 	}
@@ -28,7 +28,12 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Calendar;
 
 import javax.xml.XMLConstants;
@@ -49,7 +54,11 @@ import org.apache.xmlbeans.XmlCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.commons.context.ExecutionContext;
+import org.n52.wps.commons.context.ExecutionContextFactory;
 import org.n52.wps.io.data.IBBOXData;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.server.CapabilitiesConfiguration;
@@ -57,6 +66,7 @@ import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.RepositoryManager;
 import org.n52.wps.server.WebProcessingService;
 import org.n52.wps.server.database.DatabaseFactory;
+import org.n52.wps.server.database.SelfCleaningFileInputStream;
 import org.n52.wps.server.request.ExecuteRequest;
 import org.n52.wps.server.request.Request;
 import org.n52.wps.util.XMLBeansHelper;
@@ -77,6 +87,7 @@ public class ExecuteResponseBuilder {
 	private ExecuteRequest request;
 	private ExecuteResponseDocument doc;
 	private RawData rawDataHandler = null;
+	private final InlineDataSplicer inlineDataSplicer = new InlineDataSplicer();
 	private ProcessDescriptionType description;
 	private static Logger LOGGER = LoggerFactory.getLogger(ExecuteResponseBuilder.class);
 	private Calendar creationTime;
@@ -119,6 +130,7 @@ public class ExecuteResponseBuilder {
 				responseElem.setDataInputs(dataInputs);
 			}
 			responseElem.addNewProcessOutputs();
+			inlineDataSplicer.clear();
 			// has the client specified the outputs?
 			if (request.getExecute().isSetResponseForm()) {
 				// Get the outputdescriptions from the algorithm
@@ -327,7 +339,7 @@ public class ExecuteResponseBuilder {
 				handler.updateResponseAsReference(doc, (request.getUniqueId()).toString(),mimeType);
 			}
 			else {
-				handler.updateResponseForInlineComplexData(doc);
+				handler.updateResponseForInlineComplexData(doc, inlineDataSplicer);
 			}
 		}
 
@@ -358,17 +370,60 @@ public class ExecuteResponseBuilder {
 		if(request.isRawData() && rawDataHandler != null) {
 			return rawDataHandler.getAsStream();
 		}
+		setStatusLocation();
+		if(inlineDataSplicer.isEmpty()) {
+			try {
+				return doc.newInputStream(XMLBeansHelper.getXmlOptions());
+			}
+			catch(Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+		// inline outputs are generated into a temporary file, bounded by disk instead of heap
+		OutputStream os = null;
+		File file = null;
+		try {
+			ExecutionContext context = request.getExecutionContext();
+			if (context == null) {
+				context = ExecutionContextFactory.getContext();
+			}
+			file = context.getTempFileArena().createTempFile("ExecuteResponse", ".xml");
+			os = new BufferedOutputStream(new FileOutputStream(file));
+			inlineDataSplicer.save(doc, XMLBeansHelper.getXmlOptions(), os);
+			os.close();
+			return new SelfCleaningFileInputStream(file);
+		}
+		catch(IOException e) {
+			IOUtils.closeQuietly(os);
+			FileUtils.deleteQuietly(file);
+			throw new ExceptionReport("Could not create Inline Complex Data from the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
+		}
+	}
+
+	/**
+	 * Writes the response to the stream, which is not closed. Raw data and
+	 * inline complex outputs are generated directly into the stream.
+	 */
+	public void save(OutputStream os) throws ExceptionReport{
+		if(request.isRawData() && rawDataHandler != null) {
+			rawDataHandler.writeTo(os);
+			return;
+		}
+		setStatusLocation();
+		try {
+			inlineDataSplicer.save(doc, XMLBeansHelper.getXmlOptions(), os);
+		}
+		catch(IOException e) {
+			throw new ExceptionReport("Could not create Inline Complex Data from the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
+		}
+	}
+
+	private void setStatusLocation() {
 		if(request.isStoreResponse()) {
 			String id = request.getUniqueId().toString();
 			String statusLocation = DatabaseFactory.getDatabase().generateRetrieveResultURL(id);
 			doc.getExecuteResponse().setStatusLocation(statusLocation);
 		}
-		try {
-			return doc.newInputStream(XMLBeansHelper.getXmlOptions());
-		}
-		catch(Exception e) {
-			throw new RuntimeException(e);
-		}
 	}
 
 	public void setStatus(StatusType status) {
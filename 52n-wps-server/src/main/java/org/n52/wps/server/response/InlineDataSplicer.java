@@ -0,0 +1,220 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.XmlOptions;
+import org.n52.wps.server.ExceptionReport;
+
+/**
+ * Writes an ExecuteResponse whose inline complex outputs are generated while
+ * the response is serialized. The document only holds a processing
+ * instruction as placeholder within each ComplexData element. While XMLBeans
+ * streams the envelope, the placeholders are replaced by the output of the
+ * generators, so no output is ever held in memory as a whole.
+ * 
+ * The target of the processing instructions is chosen randomly for each
+ * response, so instructions within the data of the response are never taken
+ * for placeholders. Whitespace the pretty printer writes around a
+ * placeholder is dropped, the ComplexData element holds the generated output
+ * only.
+ */
+class InlineDataSplicer {
+
+	private static final String PI_TARGET_PREFIX = "wps-inline-data-";
+
+	private static final int MAX_MARKER_DATA = 16;
+
+	private final String piTarget = PI_TARGET_PREFIX + UUID.randomUUID().toString().replace("-", "");
+
+	private final byte[] marker = ("<?" + piTarget + " ").getBytes(Charset.forName("UTF-8"));
+
+	private final List<OutputDataItem> outputs = new ArrayList<OutputDataItem>();
+
+	/**
+	 * Inserts the placeholder of an inline output into the (empty) element.
+	 */
+	void register(XmlObject complexData, OutputDataItem output) {
+		XmlCursor cursor = complexData.newCursor();
+		try {
+			cursor.toEndToken();
+			cursor.insertProcInst(piTarget, String.valueOf(outputs.size()));
+		} finally {
+			cursor.dispose();
+		}
+		outputs.add(output);
+	}
+
+	boolean isEmpty() {
+		return outputs.isEmpty();
+	}
+
+	void clear() {
+		outputs.clear();
+	}
+
+	String getPITarget() {
+		return piTarget;
+	}
+
+	void save(XmlObject document, XmlOptions options, OutputStream os) throws IOException {
+		if (outputs.isEmpty()) {
+			document.save(os, options);
+			return;
+		}
+		SplicingOutputStream splicing = new SplicingOutputStream(os);
+		document.save(splicing, options);
+		splicing.finish();
+	}
+
+	private static boolean isWhitespace(int b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+
+	/**
+	 * Passes the serialized envelope through and writes the output of the
+	 * referenced generator in place of each placeholder.
+	 */
+	private class SplicingOutputStream extends FilterOutputStream {
+
+		private final byte[] pending = new byte[marker.length + MAX_MARKER_DATA];
+
+		private int matched;
+
+		/** whitespace preceding a possible placeholder */
+		private final ByteArrayOutputStream whitespace = new ByteArrayOutputStream();
+
+		/** drops the whitespace following a placeholder */
+		private boolean skipWhitespace;
+
+		private final BitSet written = new BitSet();
+
+		SplicingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (matched == 0) {
+				if (isWhitespace(b)) {
+					if ( !skipWhitespace) {
+						whitespace.write(b);
+					}
+					return;
+				}
+				skipWhitespace = false;
+				if (b == marker[0]) {
+					pending[matched++] = (byte) b;
+				} else {
+					flushPending();
+					out.write(b);
+				}
+				return;
+			}
+			if (matched < marker.length) {
+				if (b == marker[matched]) {
+					pending[matched++] = (byte) b;
+					return;
+				}
+				flushPending();
+				write(b);
+				return;
+			}
+			// within the data of the placeholder
+			pending[matched++] = (byte) b;
+			if (b == '>' && pending[matched - 2] == '?') {
+				String index = new String(pending, marker.length, matched - marker.length - 2, "UTF-8").trim();
+				matched = 0;
+				whitespace.reset();
+				writeOutput(index);
+				skipWhitespace = true;
+			} else if (matched == pending.length) {
+				throw new IOException("Invalid placeholder in response");
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			for (int i = off; i < off + len; i++) {
+				write(b[i]);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			// pending bytes may still turn out to be a placeholder
+			out.flush();
+		}
+
+		void finish() throws IOException {
+			flushPending();
+			out.flush();
+		}
+
+		private void flushPending() throws IOException {
+			if (whitespace.size() > 0) {
+				whitespace.writeTo(out);
+				whitespace.reset();
+			}
+			if (matched > 0) {
+				out.write(pending, 0, matched);
+				matched = 0;
+			}
+		}
+
+		private void writeOutput(String placeholder) throws IOException {
+			int index;
+			try {
+				index = Integer.parseInt(placeholder);
+			} catch (NumberFormatException e) {
+				throw new IOException("Unknown placeholder " + placeholder + " in response");
+			}
+			if (index < 0 || index >= outputs.size() || written.get(index)) {
+				throw new IOException("Unknown placeholder " + placeholder + " in response");
+			}
+			written.set(index);
+			try {
+				outputs.get(index).writeInlineData(out);
+			} catch (ExceptionReport e) {
+				throw new IOException(e.getMessage(), e);
+			}
+		}
+	}
+}
@@ -28,13 +28,18 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 import net.opengis.ows.x11.BoundingBoxType;
 import net.opengis.ows.x11.CodeType;
@@ -46,14 +51,8 @@ import net.opengis.wps.x100.OutputDataType;
 import net.opengis.wps.x100.OutputReferenceType;
 import net.opengis.wps.x100.ProcessDescriptionType;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.output.ByteArrayOutputStream;
-import org.apache.xmlbeans.XmlException;
-import org.apache.xmlbeans.XmlObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 
 import org.n52.wps.io.BasicXMLTypeFactory;
 import org.n52.wps.io.IOHandler;
@@ -64,6 +63,7 @@ import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.database.DatabaseFactory;
 import org.n52.wps.server.database.IDatabase;
 
+import com.google.common.base.Charsets;
 import com.google.common.primitives.Doubles;
 
 /*
@@ -74,6 +74,11 @@ public class OutputDataItem extends ResponseData {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(OutputDataItem.class);
 	private static final String COMPLEX_DATA_TYPE = "ComplexDataResponse";
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+	private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+	private static final byte[] AMP = "&amp;".getBytes(Charsets.US_ASCII);
+	private static final byte[] LT = "&lt;".getBytes(Charsets.US_ASCII);
+	private static final byte[] GT = "&gt;".getBytes(Charsets.US_ASCII);
 	private LanguageStringType title;
 
 	/**
@@ -95,83 +100,186 @@ public class OutputDataItem extends ResponseData {
 	}
 
 	/**
+	 * Adds the ComplexData element of the output. The data itself is written
+	 * by {@link #writeInlineData(OutputStream)} when the response is
+	 * serialized.
 	 *
 	 * @param res
+	 * @param splicer
 	 * @throws ExceptionReport
 	 */
-	public void updateResponseForInlineComplexData(ExecuteResponseDocument res) throws ExceptionReport {
+	void updateResponseForInlineComplexData(ExecuteResponseDocument res, InlineDataSplicer splicer) throws ExceptionReport {
+		if (!isDefaultEncoding() && !encoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)) {
+			throw new ExceptionReport("Unable to generate encoding " + encoding, ExceptionReport.NO_APPLICABLE_CODE);
+		}
 		OutputDataType output = prepareOutput(res);
 		prepareGenerator();
-		ComplexDataType complexData = null;
-
-
+		ComplexDataType complexData = output.addNewData().addNewComplexData();
+		if (schema != null) {
+			// setting the schema attribute for the output.
+			complexData.setSchema(schema);
+		}
+		if (encoding != null) {
+			complexData.setEncoding(encoding);
+		}
+		if (mimeType != null) {
+			complexData.setMimeType(mimeType);
+		}
+		splicer.register(complexData, this);
+	}
 
+	/**
+	 * Writes the content of the ComplexData element.
+	 *
+	 * in case encoding is NULL -or- empty -or- UTF-8 XML is copied as
+	 * markup, any other format as escaped text.
+	 *
+	 * in case encoding is base64 the encoded (binary) data is written.
+	 *
+	 * @param os
+	 *            the stream of the serialized response, not closed
+	 * @throws ExceptionReport
+	 */
+	void writeInlineData(OutputStream os) throws ExceptionReport {
 		try {
-			// CHECKING IF STORE IS TRUE AND THEN PROCESSING.... SOMEHOW!
-			// CREATING A COMPLEXVALUE
-
-			// in case encoding is NULL -or- empty -or- UTF-8
-			// send plain text (XML or not) in response node
-			//
-			// in case encoding is base64
-			// send base64encoded (binary) data in node
-			//
-			// in case encoding is
-			//
-			InputStream stream = null;
-			if (encoding == null || encoding.equals("") || encoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)){
-				stream = generator.generateStream(super.obj, mimeType, schema);
+			if (!isDefaultEncoding()) {
+				generator.writeBase64To(super.obj, os, mimeType, schema);
 			}
-
-			// in case encoding is base64 create a new text node
-			// and parse the generator's result into it
-			else if (encoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)){
-				stream = generator.generateBase64Stream(super.obj, mimeType, schema);
+			else if (mimeType != null && (mimeType.contains("xml") || mimeType.contains("XML"))) {
+				InputStream stream = generator.generateStream(super.obj, mimeType, schema);
+				try {
+					copyXml(stream, os);
+				}
+				finally {
+					stream.close();
+				}
 			}
 			else {
-				throw new ExceptionReport("Unable to generate encoding " + encoding, ExceptionReport.NO_APPLICABLE_CODE);
+				// the markup characters are ASCII, they never occur within multibyte sequences
+				generator.writeTo(super.obj, new EscapingOutputStream(os), mimeType, schema);
 			}
-			complexData = output.addNewData().addNewComplexData();
-			if(mimeType.contains("xml") || mimeType.contains("XML")){
-				complexData.set(XmlObject.Factory.parse(stream));
-				stream.close();
-			}else{
-				DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-				Document document = builder.newDocument();
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				IOUtils.copy(stream, baos);
-				stream.close();
-				String text = baos.toString();
-				baos.close();
-				Node dataNode = document.createTextNode(text);
-				complexData.set(XmlObject.Factory.parse(dataNode));
-			}
-
 		} catch(RuntimeException e) {
 			LOGGER.error(e.getMessage(), e);
 			throw new ExceptionReport("Could not create Inline Complex Data from the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
 		} catch (IOException e) {
 			LOGGER.error(e.getMessage(), e);
 			throw new ExceptionReport("Could not create Inline Complex Data from the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
-		} catch (XmlException e) {
+		} catch (XMLStreamException e) {
 			LOGGER.error(e.getMessage(), e);
 			throw new ExceptionReport("Could not create Inline Complex Data from the process result. Check encoding (base64 for inline binary data or UTF-8 for XML based data)", ExceptionReport.NO_APPLICABLE_CODE, e);
-		} catch (ParserConfigurationException e) {
-			LOGGER.error(e.getMessage(), e);
-			throw new ExceptionReport("Could not create Inline Base64 Complex Data from the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
 		}
+	}
+
+	private boolean isDefaultEncoding() {
+		return encoding == null || encoding.equals("") || encoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING);
+	}
 
-		if (complexData != null) {
-			if (schema != null) {
-				// setting the schema attribute for the output.
-				complexData.setSchema(schema);
+	/**
+	 * Copies the document element of the generated XML, the XML declaration
+	 * and DTD are dropped.
+	 */
+	private static void copyXml(InputStream stream, OutputStream os) throws XMLStreamException {
+		XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(stream);
+		XMLStreamWriter writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(os, "UTF-8");
+		try {
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					writer.writeStartElement(nullToEmpty(reader.getPrefix()), reader.getLocalName(),
+							nullToEmpty(reader.getNamespaceURI()));
+					for (int i = 0; i < reader.getNamespaceCount(); i++) {
+						String prefix = reader.getNamespacePrefix(i);
+						if (prefix == null || prefix.isEmpty()) {
+							writer.writeDefaultNamespace(nullToEmpty(reader.getNamespaceURI(i)));
+						} else {
+							writer.writeNamespace(prefix, reader.getNamespaceURI(i));
+						}
+					}
+					for (int i = 0; i < reader.getAttributeCount(); i++) {
+						String namespace = reader.getAttributeNamespace(i);
+						if (namespace == null || namespace.isEmpty()) {
+							writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+						} else {
+							writer.writeAttribute(nullToEmpty(reader.getAttributePrefix(i)), namespace,
+									reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+						}
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					writer.writeEndElement();
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.SPACE:
+					writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+					break;
+				case XMLStreamConstants.CDATA:
+					writer.writeCData(reader.getText());
+					break;
+				case XMLStreamConstants.COMMENT:
+					writer.writeComment(reader.getText());
+					break;
+				case XMLStreamConstants.PROCESSING_INSTRUCTION:
+					writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+					break;
+				default:
+					// document start and end, DTD
+					break;
+				}
 			}
-			if (encoding != null) {
-				complexData.setEncoding(encoding);
+			writer.flush();
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	private static String nullToEmpty(String s) {
+		return s == null ? "" : s;
+	}
+
+	/**
+	 * Escapes markup characters of text written into the response.
+	 */
+	private static class EscapingOutputStream extends FilterOutputStream {
+
+		EscapingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			switch (b) {
+			case '&':
+				out.write(AMP);
+				break;
+			case '<':
+				out.write(LT);
+				break;
+			case '>':
+				out.write(GT);
+				break;
+			default:
+				out.write(b);
 			}
-			if (mimeType != null) {
-				complexData.setMimeType(mimeType);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			int start = off;
+			for (int i = off; i < off + len; i++) {
+				if (b[i] == '&' || b[i] == '<' || b[i] == '>') {
+					out.write(b, start, i - start);
+					write(b[i]);
+					start = i + 1;
+				}
 			}
+			out.write(b, start, off + len - start);
+		}
+
+		@Override
+		public void close() throws IOException {
+			// the response stream stays open
+			flush();
 		}
 	}
 
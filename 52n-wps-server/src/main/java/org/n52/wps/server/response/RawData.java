@@ -31,9 +31,11 @@ package org.n52.wps.server.response;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import net.opengis.wps.x100.ProcessDescriptionType;
 
+import org.apache.commons.io.IOUtils;
 import org.n52.wps.io.IOHandler;
 import org.n52.wps.io.data.IBBOXData;
 import org.n52.wps.io.data.IComplexData;
@@ -113,6 +115,34 @@ public class RawData extends ResponseData {
         throw new ExceptionReport("Could not determine encoding. Use default (=not set) or base64", ExceptionReport.NO_APPLICABLE_CODE);
     }
 
+    /**
+     * Writes the data to the stream, which is not closed. Complex data is
+     * encoded by the generator directly into the stream, so the first bytes
+     * are sent while the generator is still working.
+     */
+    public void writeTo(OutputStream os) throws ExceptionReport {
+        try {
+            if (obj instanceof IComplexData) {
+                if (encoding == null || "".equals(encoding) || encoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)) {
+                    generator.writeTo(obj, os, mimeType, schema);
+                    return;
+                }
+                else if (encoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)) {
+                    generator.writeBase64To(obj, os, mimeType, schema);
+                    return;
+                }
+            }
+            InputStream is = getAsStream();
+            try {
+                IOUtils.copyLarge(is, os);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            throw new ExceptionReport("Error while generating Complex Data out of the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
+        }
+    }
+
     private StringBuilder appendAttr(StringBuilder builder, String key, Object value) {
         return builder.append(' ').append(key).append('=')
                 .append('"').append(value).append('"');
@@ -0,0 +1,88 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class ByteRangeTest {
+
+    @Test
+    public void shouldParseClosedRange() {
+        ByteRange range = ByteRange.parse("bytes=10-19", 100);
+        assertEquals(10, range.getFirst());
+        assertEquals(19, range.getLast());
+        assertEquals(10, range.getLength());
+        assertEquals("bytes 10-19/100", range.toContentRange(100));
+    }
+
+    @Test
+    public void shouldParseOpenRange() {
+        ByteRange range = ByteRange.parse("bytes=90-", 100);
+        assertEquals(90, range.getFirst());
+        assertEquals(99, range.getLast());
+    }
+
+    @Test
+    public void shouldParseSuffixRange() {
+        ByteRange range = ByteRange.parse("bytes=-30", 100);
+        assertEquals(70, range.getFirst());
+        assertEquals(99, range.getLast());
+        range = ByteRange.parse("bytes=-300", 100);
+        assertEquals(0, range.getFirst());
+    }
+
+    @Test
+    public void shouldClampLastToContentLength() {
+        ByteRange range = ByteRange.parse("bytes=50-1000", 100);
+        assertEquals(99, range.getLast());
+    }
+
+    @Test
+    public void shouldRejectRangeBeyondContent() {
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=100-", 100));
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-0", 100));
+        assertEquals("bytes */100", ByteRange.UNSATISFIABLE.toContentRange(100));
+    }
+
+    @Test
+    public void shouldIgnoreUnsupportedRanges() {
+        assertNull(ByteRange.parse(null, 100));
+        assertNull(ByteRange.parse("items=0-1", 100));
+        assertNull(ByteRange.parse("bytes=0-1,5-6", 100));
+        assertNull(ByteRange.parse("bytes=20-10", 100));
+        assertNull(ByteRange.parse("bytes=a-b", 100));
+        assertNull(ByteRange.parse("bytes=-", 100));
+        assertNull(ByteRange.parse("bytes=0-1", -1));
+    }
+
+}
@@ -0,0 +1,477 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A request/response pair recording everything written to the response, used to test servlets and filters
+ * without a container. Methods which are not simulated return <code>null</code>, <code>0</code> or
+ * <code>false</code>.
+ */
+public class MockServletExchange {
+
+    /**
+     * The response is committed when more bytes are written, like a container buffers the response.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Map<String, String> requestHeaders = new HashMap<String, String>();
+
+    private final Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+
+    private final Map<String, List<String>> responseHeaders = new LinkedHashMap<String, List<String>>();
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    private final List<AsyncListener> asyncListeners = new ArrayList<AsyncListener>();
+
+    private final HttpServletRequest request;
+
+    private final HttpServletResponse response;
+
+    private String method = "GET";
+
+    private byte[] requestBody = new byte[0];
+
+    private String requestContentType;
+
+    private boolean asyncSupported = true;
+
+    private AsyncContext asyncContext;
+
+    private int completions;
+
+    private int status = HttpServletResponse.SC_OK;
+
+    private String contentType;
+
+    private String characterEncoding = "UTF-8";
+
+    private ServletOutputStream outputStream;
+
+    private PrintWriter writer;
+
+    private boolean committed;
+
+    public MockServletExchange() {
+        request = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                              new Class< ? >[] {HttpServletRequest.class},
+                                                              new RequestHandler());
+        response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                                new Class< ? >[] {HttpServletResponse.class},
+                                                                new ResponseHandler());
+    }
+
+    public HttpServletRequest getRequest() {
+        return request;
+    }
+
+    public HttpServletResponse getResponse() {
+        return response;
+    }
+
+    public MockServletExchange setMethod(String method) {
+        this.method = method;
+        return this;
+    }
+
+    public MockServletExchange setRequestHeader(String name, String value) {
+        requestHeaders.put(name.toLowerCase(Locale.ROOT), value);
+        return this;
+    }
+
+    public MockServletExchange setParameter(String name, String value) {
+        parameters.put(name, new String[] {value});
+        return this;
+    }
+
+    public MockServletExchange setRequestBody(byte[] requestBody, String contentType) {
+        this.requestBody = requestBody;
+        this.requestContentType = contentType;
+        return this;
+    }
+
+    public MockServletExchange setAsyncSupported(boolean asyncSupported) {
+        this.asyncSupported = asyncSupported;
+        return this;
+    }
+
+    public synchronized int getStatus() {
+        return status;
+    }
+
+    public synchronized String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return the last value of the response header, or <code>null</code>
+     */
+    public synchronized String getHeader(String name) {
+        List<String> values = responseHeaders.get(name.toLowerCase(Locale.ROOT));
+        return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+    }
+
+    public synchronized List<String> getHeaders(String name) {
+        List<String> values = responseHeaders.get(name.toLowerCase(Locale.ROOT));
+        return values == null ? Collections.<String> emptyList() : new ArrayList<String>(values);
+    }
+
+    public synchronized byte[] getBody() {
+        if (writer != null) {
+            writer.flush();
+        }
+        return body.toByteArray();
+    }
+
+    public synchronized boolean isAsyncStarted() {
+        return asyncContext != null;
+    }
+
+    /**
+     * @return how often {@link AsyncContext#complete()} has been called
+     */
+    public synchronized int getCompletions() {
+        return completions;
+    }
+
+    /**
+     * Waits until {@link AsyncContext#complete()} has been called.
+     */
+    public synchronized void awaitCompletion(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (completions == 0) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new IllegalStateException("async request has not been completed");
+            }
+            wait(remaining);
+        }
+    }
+
+    private synchronized void complete() throws IOException {
+        completions++;
+        notifyAll();
+        for (AsyncListener listener : new ArrayList<AsyncListener>(asyncListeners)) {
+            listener.onComplete(new AsyncEvent(asyncContext));
+        }
+    }
+
+    private synchronized void setHeader(String name, String value, boolean add) {
+        if (committed) {
+            return;
+        }
+        String key = name.toLowerCase(Locale.ROOT);
+        List<String> values = responseHeaders.get(key);
+        if (values == null) {
+            values = new ArrayList<String>();
+            responseHeaders.put(key, values);
+        }
+        else if ( !add) {
+            values.clear();
+        }
+        values.add(value);
+    }
+
+    private synchronized ServletOutputStream getOutputStream() {
+        if (outputStream == null) {
+            outputStream = new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    synchronized (MockServletExchange.this) {
+                        body.write(b);
+                        committed |= body.size() > BUFFER_SIZE;
+                    }
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    synchronized (MockServletExchange.this) {
+                        body.write(b, off, len);
+                        committed |= body.size() > BUFFER_SIZE;
+                    }
+                }
+
+                @Override
+                public void flush() {
+                    synchronized (MockServletExchange.this) {
+                        committed = true;
+                    }
+                }
+
+                @Override
+                public void close() {
+                    flush();
+                }
+            };
+        }
+        return outputStream;
+    }
+
+    private static Object defaultValue(Class< ? > type) {
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (type == int.class) {
+            return Integer.valueOf(0);
+        }
+        if (type == long.class) {
+            return Long.valueOf(0);
+        }
+        return null;
+    }
+
+    private class RequestHandler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            String name = m.getName();
+            if ("getMethod".equals(name)) {
+                return method;
+            }
+            if ("getHeader".equals(name)) {
+                return requestHeaders.get(((String) args[0]).toLowerCase(Locale.ROOT));
+            }
+            if ("getDateHeader".equals(name)) {
+                String value = requestHeaders.get(((String) args[0]).toLowerCase(Locale.ROOT));
+                return value == null ? Long.valueOf( -1) : Long.valueOf(value);
+            }
+            if ("getParameter".equals(name)) {
+                String[] values = parameters.get(args[0]);
+                return values == null ? null : values[0];
+            }
+            if ("getParameterMap".equals(name)) {
+                return parameters;
+            }
+            if ("getContentType".equals(name)) {
+                return requestContentType;
+            }
+            if ("getContentLength".equals(name)) {
+                return Integer.valueOf(requestBody.length);
+            }
+            if ("getCharacterEncoding".equals(name)) {
+                return "UTF-8";
+            }
+            if ("getInputStream".equals(name)) {
+                final ByteArrayInputStream in = new ByteArrayInputStream(requestBody);
+                return new ServletInputStream() {
+                    @Override
+                    public int read() {
+                        return in.read();
+                    }
+                };
+            }
+            if ("getContextPath".equals(name)) {
+                return "/wps";
+            }
+            if ("isAsyncSupported".equals(name)) {
+                return Boolean.valueOf(asyncSupported);
+            }
+            if ("isAsyncStarted".equals(name)) {
+                return Boolean.valueOf(isAsyncStarted());
+            }
+            if ("startAsync".equals(name)) {
+                synchronized (MockServletExchange.this) {
+                    ServletRequest req = args == null ? request : (ServletRequest) args[0];
+                    ServletResponse res = args == null ? response : (ServletResponse) args[1];
+                    asyncContext = (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                                         new Class< ? >[] {AsyncContext.class},
+                                                                         new AsyncContextHandler(req, res));
+                    return asyncContext;
+                }
+            }
+            if ("getAsyncContext".equals(name)) {
+                synchronized (MockServletExchange.this) {
+                    if (asyncContext == null) {
+                        throw new IllegalStateException("async not started");
+                    }
+                    return asyncContext;
+                }
+            }
+            return defaultValue(m.getReturnType());
+        }
+    }
+
+    private class AsyncContextHandler implements InvocationHandler {
+
+        private final ServletRequest req;
+
+        private final ServletResponse res;
+
+        AsyncContextHandler(ServletRequest req, ServletResponse res) {
+            this.req = req;
+            this.res = res;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            String name = m.getName();
+            if ("getRequest".equals(name)) {
+                return req;
+            }
+            if ("getResponse".equals(name)) {
+                return res;
+            }
+            if ("addListener".equals(name)) {
+                synchronized (MockServletExchange.this) {
+                    asyncListeners.add((AsyncListener) args[0]);
+                }
+                return null;
+            }
+            if ("complete".equals(name)) {
+                complete();
+                return null;
+            }
+            if ("start".equals(name)) {
+                new Thread((Runnable) args[0]).start();
+                return null;
+            }
+            return defaultValue(m.getReturnType());
+        }
+    }
+
+    private class ResponseHandler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            String name = m.getName();
+            synchronized (MockServletExchange.this) {
+                if ("setStatus".equals(name)) {
+                    if ( !committed) {
+                        status = ((Integer) args[0]).intValue();
+                    }
+                    return null;
+                }
+                if ("sendError".equals(name)) {
+                    status = ((Integer) args[0]).intValue();
+                    committed = true;
+                    return null;
+                }
+                if ("getStatus".equals(name)) {
+                    return Integer.valueOf(status);
+                }
+                if ("setHeader".equals(name) || "addHeader".equals(name) || "setIntHeader".equals(name)
+                        || "addIntHeader".equals(name) || "setDateHeader".equals(name)) {
+                    setHeader((String) args[0], String.valueOf(args[1]), name.startsWith("add"));
+                    return null;
+                }
+                if ("containsHeader".equals(name)) {
+                    return Boolean.valueOf(responseHeaders.containsKey(((String) args[0]).toLowerCase(Locale.ROOT)));
+                }
+                if ("getHeader".equals(name)) {
+                    return getHeader((String) args[0]);
+                }
+                if ("setContentType".equals(name)) {
+                    if ( !committed) {
+                        contentType = (String) args[0];
+                    }
+                    return null;
+                }
+                if ("getContentType".equals(name)) {
+                    return contentType;
+                }
+                if ("setContentLength".equals(name)) {
+                    setHeader("Content-Length", String.valueOf(args[0]), false);
+                    return null;
+                }
+                if ("setCharacterEncoding".equals(name)) {
+                    characterEncoding = (String) args[0];
+                    return null;
+                }
+                if ("getCharacterEncoding".equals(name)) {
+                    return characterEncoding;
+                }
+                if ("getOutputStream".equals(name)) {
+                    if (writer != null) {
+                        throw new IllegalStateException("getWriter() has already been called");
+                    }
+                    return getOutputStream();
+                }
+                if ("getWriter".equals(name)) {
+                    if (writer == null) {
+                        if (outputStream != null) {
+                            throw new IllegalStateException("getOutputStream() has already been called");
+                        }
+                        writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), characterEncoding));
+                    }
+                    return writer;
+                }
+                if ("flushBuffer".equals(name)) {
+                    if (writer != null) {
+                        writer.flush();
+                    }
+                    committed = true;
+                    return null;
+                }
+                if ("isCommitted".equals(name)) {
+                    return Boolean.valueOf(committed);
+                }
+                if ("resetBuffer".equals(name) || "reset".equals(name)) {
+                    if (committed) {
+                        throw new IllegalStateException("response already committed");
+                    }
+                    body.reset();
+                    if ("reset".equals(name)) {
+                        responseHeaders.clear();
+                        status = HttpServletResponse.SC_OK;
+                        contentType = null;
+                    }
+                    return null;
+                }
+                return defaultValue(m.getReturnType());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.xmlbeans.XmlException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.n52.wps.commons.WPSConfig;
+
+public class ResponseCompressionFilterTest {
+
+    @BeforeClass
+    public static void setUpClass() throws XmlException, IOException {
+        WPSConfig.forceInitialization("src/test/resources/org/n52/wps/io/test/inputhandler/generator/wps_config.xml");
+    }
+
+    @Test
+    public void shouldPreferGzip() {
+        assertEquals(ResponseCompressionFilter.GZIP, ResponseCompressionFilter.selectCoding("gzip, deflate"));
+        assertEquals(ResponseCompressionFilter.GZIP, ResponseCompressionFilter.selectCoding("deflate, x-gzip"));
+        assertEquals(ResponseCompressionFilter.GZIP, ResponseCompressionFilter.selectCoding("*"));
+    }
+
+    @Test
+    public void shouldHonourQualityValues() {
+        assertEquals(ResponseCompressionFilter.DEFLATE, ResponseCompressionFilter.selectCoding("gzip;q=0.5, deflate"));
+        assertEquals(ResponseCompressionFilter.DEFLATE, ResponseCompressionFilter.selectCoding("gzip;q=0, *"));
+        assertNull(ResponseCompressionFilter.selectCoding("gzip;q=0, deflate;q=0"));
+        assertNull(ResponseCompressionFilter.selectCoding("*;q=0"));
+    }
+
+    @Test
+    public void shouldIgnoreUnsupportedCodings() {
+        assertNull(ResponseCompressionFilter.selectCoding(null));
+        assertNull(ResponseCompressionFilter.selectCoding("identity"));
+        assertNull(ResponseCompressionFilter.selectCoding("br, compress"));
+    }
+
+    @Test
+    public void shouldFinishAsyncResponseWhenCompleted() throws Exception {
+        final byte[] content = createContent(10000);
+        MockServletExchange exchange = new MockServletExchange().setRequestHeader("Accept-Encoding", "gzip");
+        final AsyncContext[] asyncContext = new AsyncContext[1];
+
+        ResponseCompressionFilter filter = new ResponseCompressionFilter();
+        filter.init(null);
+        filter.doFilter(exchange.getRequest(), exchange.getResponse(), new FilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+                response.setContentType("text/xml");
+                asyncContext[0] = request.startAsync(request, response);
+            }
+        });
+
+        // the response is written by another thread after the filter returned
+        assertEquals(0, exchange.getBody().length);
+        asyncContext[0].getResponse().getOutputStream().write(content);
+        assertFalse(Arrays.equals(content, decompress(exchange.getBody())));
+        asyncContext[0].complete();
+
+        assertEquals("gzip", exchange.getHeader("Content-Encoding"));
+        assertTrue(Arrays.equals(content, decompress(exchange.getBody())));
+    }
+
+    @Test
+    public void shouldPassThroughSmallAsyncResponseWhenCompleted() throws Exception {
+        final byte[] content = createContent(100);
+        MockServletExchange exchange = new MockServletExchange().setRequestHeader("Accept-Encoding", "gzip");
+        final AsyncContext[] asyncContext = new AsyncContext[1];
+
+        ResponseCompressionFilter filter = new ResponseCompressionFilter();
+        filter.init(null);
+        filter.doFilter(exchange.getRequest(), exchange.getResponse(), new FilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+                response.setContentType("text/xml");
+                asyncContext[0] = request.startAsync(request, response);
+            }
+        });
+
+        asyncContext[0].getResponse().getOutputStream().write(content);
+        assertEquals(0, exchange.getBody().length);
+        asyncContext[0].complete();
+
+        assertNull(exchange.getHeader("Content-Encoding"));
+        assertEquals("100", exchange.getHeader("Content-Length"));
+        assertTrue(Arrays.equals(content, exchange.getBody()));
+    }
+
+    private static byte[] createContent(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) ('a' + i % 26);
+        }
+        return content;
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        try {
+            return IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+        }
+        catch (IOException e) {
+            // incomplete stream
+            return new byte[0];
+        }
+    }
+
+}
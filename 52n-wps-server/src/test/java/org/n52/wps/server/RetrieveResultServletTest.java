@@ -0,0 +1,278 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.server.database.IDatabase;
+import org.n52.wps.server.database.StoredResponse;
+
+/**
+ * Tests content negotiation, conditional and range requests of the
+ * {@link RetrieveResultServlet} for a stored result with a gzip encoded
+ * representation.
+ */
+public class RetrieveResultServletTest {
+
+    private static final long LAST_MODIFIED = 1400000000000L;
+
+    private final String id = UUID.randomUUID().toString();
+
+    private File file;
+
+    private File gzipFile;
+
+    private byte[] content;
+
+    private byte[] gzipContent;
+
+    private RetrieveResultServlet servlet;
+
+    @Before
+    public void setUp() throws IOException {
+        content = new byte[20000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 100);
+        }
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(gzip);
+        out.write(content);
+        out.close();
+        gzipContent = gzip.toByteArray();
+
+        file = File.createTempFile("result", ".bin");
+        FileUtils.writeByteArrayToFile(file, content);
+        gzipFile = File.createTempFile("result", ".bin.gz");
+        FileUtils.writeByteArrayToFile(gzipFile, gzipContent);
+
+        final StoredResponse storedResponse = new StoredResponse(id, "application/octet-stream", content.length,
+                                                                 LAST_MODIFIED, file, gzipFile);
+        final IDatabase database = (IDatabase) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                                       new Class< ? >[] {IDatabase.class},
+                                                                       new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("lookupStoredResponse".equals(method.getName()) && id.equals(args[0])) {
+                    return storedResponse;
+                }
+                if ("lookupResponse".equals(method.getName()) && id.equals(args[0])) {
+                    return new FileInputStream(file);
+                }
+                return null;
+            }
+        });
+        servlet = new RetrieveResultServlet() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected IDatabase getDatabase() {
+                return database;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(file);
+        FileUtils.deleteQuietly(gzipFile);
+    }
+
+    private MockServletExchange get(String... headers) throws Exception {
+        MockServletExchange exchange = new MockServletExchange().setParameter("id", id);
+        for (int i = 0; i < headers.length; i += 2) {
+            exchange.setRequestHeader(headers[i], headers[i + 1]);
+        }
+        servlet.doGet(exchange.getRequest(), exchange.getResponse());
+        return exchange;
+    }
+
+    private boolean acceptsGzip(String acceptEncoding) {
+        MockServletExchange exchange = new MockServletExchange();
+        if (acceptEncoding != null) {
+            exchange.setRequestHeader("Accept-Encoding", acceptEncoding);
+        }
+        return servlet.acceptsGzip(exchange.getRequest());
+    }
+
+    private String eTag(boolean gzip) {
+        return "\"" + id + "-" + Long.toHexString(LAST_MODIFIED) + "-" + Long.toHexString(content.length)
+                + (gzip ? "-gzip" : "") + "\"";
+    }
+
+    @Test
+    public void shouldNegotiateGzipByAcceptEncoding() {
+        assertFalse(acceptsGzip(null));
+        assertFalse(acceptsGzip("identity"));
+        assertFalse(acceptsGzip("deflate, br"));
+        assertTrue(acceptsGzip("gzip"));
+        assertTrue(acceptsGzip("deflate, GZIP"));
+        assertTrue(acceptsGzip("x-gzip"));
+        assertTrue(acceptsGzip("gzip;q=0.5"));
+        assertFalse(acceptsGzip("gzip;q=0"));
+        assertFalse(acceptsGzip("gzip; q=0.0"));
+        assertFalse(acceptsGzip("gzip;q=invalid"));
+        assertTrue(acceptsGzip("*"));
+        assertFalse(acceptsGzip("*;q=0"));
+        // an explicit gzip entry overrides the wildcard, regardless of the order
+        assertFalse(acceptsGzip("gzip;q=0, *"));
+        assertFalse(acceptsGzip("*, gzip;q=0"));
+        assertTrue(acceptsGzip("*;q=0, gzip"));
+    }
+
+    @Test
+    public void shouldSendIdentityRepresentationWithoutAcceptEncoding() throws Exception {
+        MockServletExchange exchange = get();
+        assertEquals(HttpServletResponse.SC_OK, exchange.getStatus());
+        assertArrayEquals(content, exchange.getBody());
+        assertNull(exchange.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", exchange.getHeader("Vary"));
+        assertEquals(eTag(false), exchange.getHeader("ETag"));
+        assertEquals(Long.toString(content.length), exchange.getHeader("Content-Length"));
+        assertEquals("application/octet-stream", exchange.getContentType());
+    }
+
+    @Test
+    public void shouldSendGzipRepresentationWhenAccepted() throws Exception {
+        MockServletExchange exchange = get("Accept-Encoding", "gzip, deflate");
+        assertEquals(HttpServletResponse.SC_OK, exchange.getStatus());
+        assertArrayEquals(gzipContent, exchange.getBody());
+        assertEquals("gzip", exchange.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", exchange.getHeader("Vary"));
+        assertEquals(eTag(true), exchange.getHeader("ETag"));
+        assertEquals(Long.toString(gzipContent.length), exchange.getHeader("Content-Length"));
+    }
+
+    @Test
+    public void shouldSendIdentityRepresentationWhenGzipIsRefused() throws Exception {
+        MockServletExchange exchange = get("Accept-Encoding", "gzip;q=0, *");
+        assertArrayEquals(content, exchange.getBody());
+        assertNull(exchange.getHeader("Content-Encoding"));
+        assertEquals(eTag(false), exchange.getHeader("ETag"));
+    }
+
+    @Test
+    public void shouldSendRangeOfGzipRepresentation() throws Exception {
+        MockServletExchange exchange = get("Accept-Encoding", "gzip", "Range", "bytes=10-109");
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, exchange.getStatus());
+        assertArrayEquals(Arrays.copyOfRange(gzipContent, 10, 110), exchange.getBody());
+        // the range applies to the encoded bytes
+        assertEquals("bytes 10-109/" + gzipContent.length, exchange.getHeader("Content-Range"));
+        assertEquals("gzip", exchange.getHeader("Content-Encoding"));
+        assertEquals("100", exchange.getHeader("Content-Length"));
+        assertEquals("bytes", exchange.getHeader("Accept-Ranges"));
+    }
+
+    @Test
+    public void shouldSendRangeOfIdentityRepresentation() throws Exception {
+        MockServletExchange exchange = get("Range", "bytes=-50");
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, exchange.getStatus());
+        assertArrayEquals(Arrays.copyOfRange(content, content.length - 50, content.length), exchange.getBody());
+        assertEquals("bytes " + (content.length - 50) + "-" + (content.length - 1) + "/" + content.length,
+                     exchange.getHeader("Content-Range"));
+        assertNull(exchange.getHeader("Content-Encoding"));
+    }
+
+    @Test
+    public void shouldRejectUnsatisfiableRange() throws Exception {
+        MockServletExchange exchange = get("Accept-Encoding", "gzip", "Range", "bytes=" + gzipContent.length + "-");
+        assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, exchange.getStatus());
+        assertEquals("bytes */" + gzipContent.length, exchange.getHeader("Content-Range"));
+        assertEquals(0, exchange.getBody().length);
+    }
+
+    @Test
+    public void shouldAnswerNotModifiedForMatchingETag() throws Exception {
+        MockServletExchange exchange = get("Accept-Encoding", "gzip", "If-None-Match", "\"other\", " + eTag(true));
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, exchange.getStatus());
+        assertEquals(0, exchange.getBody().length);
+        assertEquals(eTag(true), exchange.getHeader("ETag"));
+
+        // the validator of the gzip representation does not match the identity representation
+        exchange = get("If-None-Match", eTag(true));
+        assertEquals(HttpServletResponse.SC_OK, exchange.getStatus());
+        assertArrayEquals(content, exchange.getBody());
+    }
+
+    @Test
+    public void shouldAnswerNotModifiedSinceLastModification() throws Exception {
+        MockServletExchange exchange = get("If-Modified-Since", Long.toString(LAST_MODIFIED + 500));
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, exchange.getStatus());
+        assertEquals(0, exchange.getBody().length);
+
+        exchange = get("If-Modified-Since", Long.toString(LAST_MODIFIED - 1000));
+        assertEquals(HttpServletResponse.SC_OK, exchange.getStatus());
+        assertArrayEquals(content, exchange.getBody());
+
+        // If-None-Match takes precedence over If-Modified-Since
+        exchange = get("If-None-Match", "\"other\"", "If-Modified-Since", Long.toString(LAST_MODIFIED));
+        assertEquals(HttpServletResponse.SC_OK, exchange.getStatus());
+    }
+
+    @Test
+    public void shouldSendRangeOnlyIfRangeValidatorMatches() throws Exception {
+        MockServletExchange exchange = get("Accept-Encoding", "gzip", "Range", "bytes=0-9", "If-Range", eTag(true));
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, exchange.getStatus());
+        assertArrayEquals(Arrays.copyOf(gzipContent, 10), exchange.getBody());
+
+        // a validator of the other representation means the client's copy is stale
+        exchange = get("Accept-Encoding", "gzip", "Range", "bytes=0-9", "If-Range", eTag(false));
+        assertEquals(HttpServletResponse.SC_OK, exchange.getStatus());
+        assertArrayEquals(gzipContent, exchange.getBody());
+        assertNull(exchange.getHeader("Content-Range"));
+
+        exchange = get("Range", "bytes=0-9", "If-Range", Long.toString(LAST_MODIFIED));
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, exchange.getStatus());
+        assertArrayEquals(Arrays.copyOf(content, 10), exchange.getBody());
+
+        exchange = get("Range", "bytes=0-9", "If-Range", Long.toString(LAST_MODIFIED - 1000));
+        assertEquals(HttpServletResponse.SC_OK, exchange.getStatus());
+        assertArrayEquals(content, exchange.getBody());
+    }
+}
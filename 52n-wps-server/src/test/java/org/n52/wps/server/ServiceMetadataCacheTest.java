@@ -0,0 +1,116 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.opengis.wps.x100.ProcessDescriptionType;
+import net.opengis.wps.x100.ProcessDescriptionsDocument;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.xmlbeans.XmlException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.n52.test.mock.MockUtil;
+
+public class ServiceMetadataCacheTest {
+
+    private static String identifier;
+
+    @BeforeClass
+    public static void setUpClass() throws XmlException, IOException {
+        MockUtil.getMockConfig();
+        for (String algorithm : RepositoryManager.getInstance().getAlgorithms()) {
+            try {
+                if (RepositoryManager.getInstance().getProcessDescription(algorithm) != null) {
+                    identifier = algorithm;
+                    break;
+                }
+            }
+            catch (RuntimeException e) {
+                // see CapabilitiesGetProcessDescriptionExceptionTest
+            }
+        }
+        assertNotNull("No process found in the mock configuration", identifier);
+    }
+
+    @Test
+    public void shouldConcatenateProcessDescriptions() throws ExceptionReport, XmlException, IOException {
+        InputStream stream = ServiceMetadataCache.getProcessDescriptionsAsStream(identifier, identifier);
+        ProcessDescriptionsDocument document;
+        try {
+            document = ProcessDescriptionsDocument.Factory.parse(stream);
+        }
+        finally {
+            IOUtils.closeQuietly(stream);
+        }
+        ProcessDescriptionType[] descriptions = document.getProcessDescriptions().getProcessDescriptionArray();
+        assertEquals(2, descriptions.length);
+        for (ProcessDescriptionType description : descriptions) {
+            assertEquals(identifier, description.getIdentifier().getStringValue());
+        }
+        assertEquals("1.0.0", document.getProcessDescriptions().getVersion());
+    }
+
+    @Test
+    public void shouldChangeETagOnInvalidation() {
+        String eTag = ServiceMetadataCache.getProcessDescriptionsETag(identifier);
+        assertEquals(eTag, ServiceMetadataCache.getProcessDescriptionsETag(identifier));
+        assertFalse(eTag.equals(ServiceMetadataCache.getProcessDescriptionsETag(identifier, identifier)));
+
+        long version = ServiceMetadataCache.getVersion();
+        ServiceMetadataCache.invalidate();
+        assertEquals(version + 1, ServiceMetadataCache.getVersion());
+        assertFalse(eTag.equals(ServiceMetadataCache.getProcessDescriptionsETag(identifier)));
+    }
+
+    @Test
+    public void shouldInvalidateOnDeployAndUndeploy() {
+        String deployed = "org.n52.wps.server.DeployedProcess";
+        String eTag = ServiceMetadataCache.getProcessDescriptionsETag(identifier);
+        long version = ServiceMetadataCache.getVersion();
+
+        RepositoryManager.getInstance().registerAlgorithm(deployed, null);
+        assertTrue(ServiceMetadataCache.getVersion() > version);
+        assertFalse(eTag.equals(ServiceMetadataCache.getProcessDescriptionsETag(identifier)));
+
+        eTag = ServiceMetadataCache.getProcessDescriptionsETag(identifier);
+        version = ServiceMetadataCache.getVersion();
+        RepositoryManager.getInstance().unregisterAlgorithm(deployed);
+        assertTrue(ServiceMetadataCache.getVersion() > version);
+        assertFalse(eTag.equals(ServiceMetadataCache.getProcessDescriptionsETag(identifier)));
+    }
+
+}
@@ -0,0 +1,161 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.xmlbeans.XmlException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.handler.RequestHandler;
+
+/**
+ * Tests that asynchronously executed requests are answered and completed exactly once.
+ */
+public class WebProcessingServiceAsyncTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @BeforeClass
+    public static void setUpClass() throws XmlException, IOException {
+        // the RequestExecutor of the RequestHandler is configured on class initialization
+        WPSConfig.forceInitialization("src/test/resources/org/n52/wps/io/test/inputhandler/generator/wps_config.xml");
+    }
+
+    @Test
+    public void testCompletedRequestWritesResponse() throws Exception {
+        MockServletExchange exchange = new MockServletExchange();
+        final AsyncContext asyncContext = startAsync(exchange);
+        final Thread[] executor = new Thread[1];
+
+        WebProcessingService.dispatchAsync(asyncContext, new RequestHandler() {
+            @Override
+            public void handleAsync(final CompletionListener listener) {
+                executor[0] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            asyncContext.getResponse().getOutputStream().write("<result/>".getBytes("UTF-8"));
+                        }
+                        catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                        listener.completed();
+                    }
+                };
+                executor[0].start();
+            }
+        });
+
+        exchange.awaitCompletion(TIMEOUT_MILLIS);
+        executor[0].join(TIMEOUT_MILLIS);
+        assertEquals(HttpServletResponse.SC_OK, exchange.getStatus());
+        assertEquals("<result/>", new String(exchange.getBody(), "UTF-8"));
+        assertEquals(1, exchange.getCompletions());
+    }
+
+    @Test
+    public void testFailedRequestWritesExceptionReport() throws Exception {
+        MockServletExchange exchange = new MockServletExchange();
+        AsyncContext asyncContext = startAsync(exchange);
+        final Thread[] executor = new Thread[1];
+
+        WebProcessingService.dispatchAsync(asyncContext, new RequestHandler() {
+            @Override
+            public void handleAsync(final CompletionListener listener) {
+                executor[0] = new Thread() {
+                    @Override
+                    public void run() {
+                        listener.failed(new ExceptionReport("computation failed", ExceptionReport.INVALID_PARAMETER_VALUE));
+                    }
+                };
+                executor[0].start();
+            }
+        });
+
+        exchange.awaitCompletion(TIMEOUT_MILLIS);
+        executor[0].join(TIMEOUT_MILLIS);
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, exchange.getStatus());
+        assertEquals("text/xml", exchange.getContentType());
+        String body = new String(exchange.getBody(), "UTF-8");
+        assertTrue(body.contains("ExceptionReport"));
+        assertTrue(body.contains("computation failed"));
+        assertEquals(1, exchange.getCompletions());
+    }
+
+    @Test
+    public void testRejectedRequestIsCompletedImmediately() throws Exception {
+        MockServletExchange exchange = new MockServletExchange();
+        AsyncContext asyncContext = startAsync(exchange);
+
+        WebProcessingService.dispatchAsync(asyncContext, new RequestHandler() {
+            @Override
+            public void handleAsync(CompletionListener listener) throws ExceptionReport {
+                throw new ExceptionReport("The requested process was rejected.", ExceptionReport.SERVER_BUSY);
+            }
+        });
+
+        assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, exchange.getStatus());
+        String body = new String(exchange.getBody(), "UTF-8");
+        assertTrue(body.contains(ExceptionReport.SERVER_BUSY));
+        assertTrue(body.contains("The requested process was rejected."));
+        assertEquals(1, exchange.getCompletions());
+    }
+
+    @Test
+    public void testUnexpectedErrorIsCompletedImmediately() throws Exception {
+        MockServletExchange exchange = new MockServletExchange();
+        AsyncContext asyncContext = startAsync(exchange);
+
+        WebProcessingService.dispatchAsync(asyncContext, new RequestHandler() {
+            @Override
+            public void handleAsync(CompletionListener listener) {
+                throw new IllegalStateException("executor is shut down");
+            }
+        });
+
+        assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, exchange.getStatus());
+        String body = new String(exchange.getBody(), "UTF-8");
+        assertTrue(body.contains(ExceptionReport.NO_APPLICABLE_CODE));
+        assertTrue(body.contains("executor is shut down"));
+        assertEquals(1, exchange.getCompletions());
+    }
+
+    private static AsyncContext startAsync(MockServletExchange exchange) {
+        return exchange.getRequest().startAsync(exchange.getRequest(), exchange.getResponse());
+    }
+
+}
@@ -0,0 +1,137 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.n52.wps.server.request.ExecuteRequest;
+
+/**
+ * Tests the per-process ordering of {@link FairRequestQueue}.
+ */
+public class FairRequestQueueTest {
+
+    private static final Runnable NOOP = new Runnable() {
+        @Override
+        public void run() {
+            // nothing to do
+        }
+    };
+
+    private static RequestTask<Void> task(String processIdentifier, int priority, long expectedRuntimeMillis) {
+        return new RequestTask<Void>(NOOP, null, processIdentifier, priority, expectedRuntimeMillis);
+    }
+
+    @Test
+    public void testCapacityIsEnforcedPerProcess() {
+        FairRequestQueue queue = new FairRequestQueue(2, Collections.<String, Double> emptyMap());
+        assertTrue(queue.offer(task("a", 0, 10)));
+        assertTrue(queue.offer(task("a", 0, 10)));
+        assertFalse(queue.offer(task("a", 0, 10)));
+        assertTrue(queue.offer(task("b", 0, 10)));
+        assertEquals(3, queue.size());
+        assertEquals(2, queue.size("a"));
+        assertEquals(1, queue.size("b"));
+    }
+
+    @Test
+    public void testHigherPriorityIsServedFirst() {
+        FairRequestQueue queue = new FairRequestQueue(10, Collections.<String, Double> emptyMap());
+        RequestTask<Void> low = task("a", 0, 10);
+        RequestTask<Void> high = task("a", 5, 10);
+        queue.offer(low);
+        queue.offer(high);
+        assertSame(high, queue.poll());
+        assertSame(low, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testHighPriorityFloodDoesNotStarveOthers() {
+        FairRequestQueue queue = new FairRequestQueue(100, Collections.<String, Double> emptyMap());
+        for (int i = 0; i < 50; i++) {
+            queue.offer(task("flood", ExecuteRequest.MAX_PRIORITY, 100));
+        }
+        for (int i = 0; i < 10; i++) {
+            queue.offer(task("victim", ExecuteRequest.MIN_PRIORITY, 100));
+        }
+        // the priority of the flooding client must not change the share of the other process
+        int victim = 0;
+        for (int i = 0; i < 20; i++) {
+            RequestTask< ? > next = (RequestTask< ? >) queue.poll();
+            if ("victim".equals(next.getProcessIdentifier())) {
+                victim++;
+            }
+        }
+        assertEquals(10, victim);
+    }
+
+    @Test
+    public void testLongRunningProcessDoesNotStarveOthers() {
+        FairRequestQueue queue = new FairRequestQueue(10, Collections.<String, Double> emptyMap());
+        for (int i = 0; i < 5; i++) {
+            queue.offer(task("slow", 0, 1000));
+        }
+        RequestTask<Void> fast = task("fast", 0, 10);
+        queue.offer(fast);
+        // the fast task must not wait behind all queued slow tasks
+        Runnable first = queue.poll();
+        Runnable second = queue.poll();
+        assertTrue(first == fast || second == fast);
+    }
+
+    @Test
+    public void testWeightsShareServiceTime() {
+        Map<String, Double> weights = new HashMap<String, Double>();
+        weights.put("heavy", 3.0);
+        FairRequestQueue queue = new FairRequestQueue(100, weights);
+        for (int i = 0; i < 40; i++) {
+            queue.offer(task("heavy", 0, 100));
+            queue.offer(task("light", 0, 100));
+        }
+        int heavy = 0;
+        for (int i = 0; i < 40; i++) {
+            RequestTask< ? > next = (RequestTask< ? >) queue.poll();
+            if ("heavy".equals(next.getProcessIdentifier())) {
+                heavy++;
+            }
+        }
+        assertEquals(30, heavy);
+    }
+
+}
@@ -0,0 +1,104 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.n52.wps.commons.ScratchSpace;
+import org.n52.wps.server.ExceptionReport;
+
+/**
+ * Tests the in-memory and spilled buffering of POST bodies.
+ */
+public class RequestBodyBufferTest {
+
+    private static byte[] createBody(int size) {
+        byte[] body = new byte[size];
+        for (int i = 0; i < size; i++) {
+            body[i] = (byte) i;
+        }
+        return body;
+    }
+
+    @Test
+    public void testSmallBodyStaysInMemory() throws Exception {
+        byte[] body = createBody(1000);
+        RequestBodyBuffer buffer = new RequestBodyBuffer(new ByteArrayInputStream(body), 1024, 2048);
+        try {
+            assertFalse(buffer.isSpilled());
+            assertEquals(body.length, buffer.getSize());
+            assertArrayEquals(body, read(buffer));
+            // the body can be read more than once
+            assertArrayEquals(body, read(buffer));
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void testLargeBodyIsSpilled() throws Exception {
+        byte[] body = createBody(50000);
+        ScratchSpace scratchSpace = ScratchSpace.getInstance();
+        long usedBytes = scratchSpace.getUsedBytes();
+        RequestBodyBuffer buffer = new RequestBodyBuffer(new ByteArrayInputStream(body), 1024, 100000);
+        try {
+            assertTrue(buffer.isSpilled());
+            assertEquals(body.length, buffer.getSize());
+            assertEquals(usedBytes + body.length, scratchSpace.getUsedBytes());
+            assertArrayEquals(body, read(buffer));
+            assertArrayEquals(body, read(buffer));
+        } finally {
+            buffer.close();
+        }
+        assertEquals(usedBytes, scratchSpace.getUsedBytes());
+    }
+
+    @Test(expected = ExceptionReport.class)
+    public void testTooLargeBodyIsRejected() throws Exception {
+        new RequestBodyBuffer(new ByteArrayInputStream(createBody(5000)), 1024, 4096);
+    }
+
+    private static byte[] read(RequestBodyBuffer buffer) throws IOException {
+        InputStream is = buffer.newInputStream();
+        try {
+            return IOUtils.toByteArray(is);
+        } finally {
+            is.close();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.xmlbeans.XmlException;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.request.ExecuteRequest;
+import org.n52.wps.server.response.Response;
+import org.w3c.dom.Document;
+
+/**
+ * Tests that {@link RequestHandler#handleAsync(RequestHandler.CompletionListener)} notifies its listener
+ * exactly once.
+ */
+public class RequestHandlerAsyncTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private DocumentBuilderFactory fac;
+
+    @BeforeClass
+    public static void setUpClass() throws XmlException, IOException {
+        WPSConfig.forceInitialization("src/test/resources/org/n52/wps/io/test/inputhandler/generator/wps_config.xml");
+    }
+
+    @Before
+    public void setUp() {
+        System.setProperty("javax.xml.parsers.DocumentBuilderFactory",
+                           "org.apache.xerces.jaxp.DocumentBuilderFactoryImpl");
+        fac = DocumentBuilderFactory.newInstance();
+        fac.setNamespaceAware(true);
+    }
+
+    @Test
+    public void testCompletedRequestWritesResponse() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordingListener listener = new RecordingListener();
+        long completedTasks = RequestHandler.pool.getCompletedTaskCount();
+
+        createHandler(createRequest(null), out).handleAsync(listener);
+
+        listener.await();
+        awaitTasks(completedTasks + 1);
+        assertEquals("<result/>", out.toString("UTF-8"));
+        assertEquals(1, listener.completed.get());
+        assertEquals(0, listener.failed.get());
+    }
+
+    @Test
+    public void testFailedRequestNotifiesListener() throws Exception {
+        ExceptionReport failure = new ExceptionReport("computation failed", ExceptionReport.INVALID_PARAMETER_VALUE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordingListener listener = new RecordingListener();
+        long completedTasks = RequestHandler.pool.getCompletedTaskCount();
+
+        createHandler(createRequest(failure), out).handleAsync(listener);
+
+        listener.await();
+        awaitTasks(completedTasks + 1);
+        assertEquals(0, out.size());
+        assertEquals(0, listener.completed.get());
+        assertEquals(1, listener.failed.get());
+        assertSame(failure, listener.exceptionReport);
+    }
+
+    @Test
+    public void testRejectedRequestIsReportedToCaller() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        RequestHandler handler = createHandler(createRequest(null), new ByteArrayOutputStream());
+
+        RequestExecutor pool = RequestHandler.pool;
+        RequestExecutor rejecting = new RequestExecutor();
+        rejecting.shutdown();
+        RequestHandler.pool = rejecting;
+        try {
+            handler.handleAsync(listener);
+            fail("rejected request has been accepted");
+        }
+        catch (ExceptionReport e) {
+            assertEquals(ExceptionReport.SERVER_BUSY, e.getErrorKey());
+        }
+        finally {
+            RequestHandler.pool = pool;
+        }
+        // the caller answers rejected requests, the listener must not be notified
+        assertEquals(0, listener.completed.get());
+        assertEquals(0, listener.failed.get());
+        assertNull(listener.exceptionReport);
+    }
+
+    private ExecuteRequest createRequest(final ExceptionReport failure) throws Exception {
+        InputStream is = new FileInputStream(new File("src/test/resources/DTCExecuteLiteralOutputRawData.xml"));
+        Document doc;
+        try {
+            doc = fac.newDocumentBuilder().parse(is);
+        }
+        finally {
+            is.close();
+        }
+        return new ExecuteRequest(doc) {
+            @Override
+            public Response call() throws ExceptionReport {
+                if (failure != null) {
+                    throw failure;
+                }
+                return new Response(this) {
+                    @Override
+                    public InputStream getAsStream() {
+                        return new ByteArrayInputStream("<result/>".getBytes());
+                    }
+                };
+            }
+        };
+    }
+
+    private static RequestHandler createHandler(final ExecuteRequest request, final OutputStream out) {
+        RequestHandler handler = new RequestHandler() {
+            {
+                req = request;
+                os = out;
+            }
+        };
+        assertTrue(handler.isAsyncExecution());
+        return handler;
+    }
+
+    /**
+     * Waits until the executor finished the task, so notifications after the first one would be seen.
+     */
+    private static void awaitTasks(long completedTasks) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (RequestHandler.pool.getCompletedTaskCount() < completedTasks) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("task has not been finished");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static class RecordingListener implements RequestHandler.CompletionListener {
+
+        private final CountDownLatch notified = new CountDownLatch(1);
+
+        private final AtomicInteger completed = new AtomicInteger();
+
+        private final AtomicInteger failed = new AtomicInteger();
+
+        private volatile ExceptionReport exceptionReport;
+
+        @Override
+        public void completed() {
+            completed.incrementAndGet();
+            notified.countDown();
+        }
+
+        @Override
+        public void failed(ExceptionReport exceptionReport) {
+            this.exceptionReport = exceptionReport;
+            failed.incrementAndGet();
+            notified.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("listener has not been notified", notified.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.n52.wps.algorithm.annotation.Algorithm;
+import org.n52.wps.algorithm.annotation.Execute;
+import org.n52.wps.algorithm.annotation.LiteralDataInput;
+import org.n52.wps.algorithm.annotation.LiteralDataOutput;
+import org.n52.wps.server.AbstractAnnotatedAlgorithm;
+
+/**
+ * A stateless algorithm counting its instances, used to show that executions
+ * reuse pooled instances.
+ */
+@Algorithm(version = "1.0.0", stateless = true, statusSupported = false, storeSupported = false)
+public class CountingStatelessAlgorithm extends AbstractAnnotatedAlgorithm {
+
+    static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private String input;
+
+    private String output;
+
+    public CountingStatelessAlgorithm() {
+        INSTANCES.incrementAndGet();
+    }
+
+    @LiteralDataInput(identifier = "INPUT")
+    public void setInput(String input) {
+        this.input = input;
+    }
+
+    @LiteralDataOutput(identifier = "OUTPUT")
+    public String getOutput() {
+        return output;
+    }
+
+    @Execute
+    public void upperCase() {
+        output = input.toUpperCase();
+    }
+}
@@ -28,8 +28,11 @@
  */
 package org.n52.wps.server.request;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -53,7 +56,10 @@ import org.xml.sax.SAXException;
 
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.LocalAlgorithmRepository;
+import org.n52.wps.server.RepositoryManager;
 import org.n52.wps.server.database.DatabaseFactory;
+import org.n52.wps.server.response.Response;
 
 /**
  *
@@ -103,6 +109,33 @@ public class ExecuteRequestTest {
 
     }
 
+    @Test
+    public void testStatelessAlgorithmInstancesAreReused() throws Exception {
+        String identifier = CountingStatelessAlgorithm.class.getName();
+        LocalAlgorithmRepository repository = (LocalAlgorithmRepository) RepositoryManager.getInstance()
+                .getRepositoryForClassName(LocalAlgorithmRepository.class.getName());
+        assertTrue(repository.addAlgorithm(identifier));
+        RepositoryManager.getInstance().registerAlgorithm(identifier, repository);
+        // the instance validated at registration
+        int registered = CountingStatelessAlgorithm.INSTANCES.get();
+
+        String execute = "<wps:Execute service=\"WPS\" version=\"1.0.0\" xmlns:wps=\"http://www.opengis.net/wps/1.0.0\""
+                + " xmlns:ows=\"http://www.opengis.net/ows/1.1\"><ows:Identifier>" + identifier + "</ows:Identifier>"
+                + "<wps:DataInputs><wps:Input><ows:Identifier>INPUT</ows:Identifier>"
+                + "<wps:Data><wps:LiteralData>abc</wps:LiteralData></wps:Data></wps:Input></wps:DataInputs>"
+                + "<wps:ResponseForm><wps:RawDataOutput><ows:Identifier>OUTPUT</ows:Identifier></wps:RawDataOutput>"
+                + "</wps:ResponseForm></wps:Execute>";
+        for (int i = 0; i < 5; i++) {
+            Document doc = fac.newDocumentBuilder().parse(new ByteArrayInputStream(execute.getBytes("UTF-8")));
+            Response response = new ExecuteRequest(doc).call();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            response.save(out);
+            assertEquals("ABC", out.toString("UTF-8").trim());
+        }
+        // looking up input and output types takes no instances, all executions share one
+        assertEquals(registered + 1, CountingStatelessAlgorithm.INSTANCES.get());
+    }
+
     private boolean validateExecuteResponse(ExecuteResponseDocument responseDoc) {
         XmlOptions xmlOptions = new XmlOptions();
         List<XmlValidationError> xmlValidationErrorList = new ArrayList<XmlValidationError>();
@@ -0,0 +1,241 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.opengis.wps.x100.InputType;
+import net.opengis.wps.x100.OutputDefinitionType;
+import net.opengis.wps.x100.ResponseFormType;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.server.database.IDatabase;
+
+/**
+ * Tests the canonical keys of {@link ExecuteResultCache} and that results
+ * which cannot be memoized are skipped.
+ */
+public class ExecuteResultCacheTest {
+
+    private static final String ID = "org.n52.wps.server.algorithm.SimpleBufferAlgorithm";
+
+    private static InputType literal(String identifier, String value) {
+        InputType input = InputType.Factory.newInstance();
+        input.addNewIdentifier().setStringValue(identifier);
+        input.addNewData().addNewLiteralData().setStringValue(value);
+        return input;
+    }
+
+    private static ResponseFormType raw(String identifier, String mimeType) {
+        ResponseFormType responseForm = ResponseFormType.Factory.newInstance();
+        OutputDefinitionType output = responseForm.addNewRawDataOutput();
+        output.addNewIdentifier().setStringValue(identifier);
+        output.setMimeType(mimeType);
+        return responseForm;
+    }
+
+    @Test
+    public void testKeyIgnoresInputOrder() {
+        String key = ExecuteResultCache.createKey(ID, "1.1.0",
+                Arrays.asList(literal("width", "20"), literal("data", "a")), raw("result", "text/xml"));
+
+        assertEquals(key, ExecuteResultCache.createKey(ID, "1.1.0",
+                Arrays.asList(literal("data", "a"), literal("width", "20")), raw("result", "text/xml")));
+    }
+
+    @Test
+    public void testKeyKeepsOrderOfRepeatedInputs() {
+        String key = ExecuteResultCache.createKey(ID, "1.1.0",
+                Arrays.asList(literal("data", "a"), literal("data", "b")), null);
+
+        assertFalse(key.equals(ExecuteResultCache.createKey(ID, "1.1.0",
+                Arrays.asList(literal("data", "b"), literal("data", "a")), null)));
+    }
+
+    @Test
+    public void testKeyDependsOnVersionAndOutputs() {
+        String key = ExecuteResultCache.createKey(ID, "1.1.0",
+                Arrays.asList(literal("width", "20")), raw("result", "text/xml"));
+
+        assertFalse(key.equals(ExecuteResultCache.createKey(ID, "1.2.0",
+                Arrays.asList(literal("width", "20")), raw("result", "text/xml"))));
+        assertFalse(key.equals(ExecuteResultCache.createKey(ID, "1.1.0",
+                Arrays.asList(literal("width", "20")), raw("result", "application/json"))));
+        assertFalse(key.equals(ExecuteResultCache.createKey(ID, "1.1.0",
+                Arrays.asList(literal("width", "21")), raw("result", "text/xml"))));
+    }
+
+    @Test
+    public void testPutAndGet() {
+        Map<String, byte[]> stored = new HashMap<String, byte[]>();
+        ExecuteResultCache cache = createCache(stored, false);
+
+        cache.put("key", Collections.<String, IData>singletonMap("result", new TextBinding("buffered")));
+
+        assertEquals(1, stored.size());
+        Map<String, IData> results = cache.get("key");
+        assertEquals("buffered", results.get("result").getPayload());
+    }
+
+    @Test
+    public void testPutSkipsResultsThatAreNotSerializable() {
+        Map<String, byte[]> stored = new HashMap<String, byte[]>();
+        ExecuteResultCache cache = createCache(stored, false);
+
+        cache.put("key", Collections.<String, IData>singletonMap("result", new UnserializableBinding()));
+
+        assertTrue(stored.isEmpty());
+        assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void testPutSkipsResultsThatRefuseSerialization() {
+        Map<String, byte[]> stored = new HashMap<String, byte[]>();
+        ExecuteResultCache cache = createCache(stored, false);
+
+        cache.put("key", Collections.<String, IData>singletonMap("result", new RefusingBinding()));
+
+        assertTrue(stored.isEmpty());
+        assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void testPutSkipsResultsTheDatabaseFailsToStore() {
+        Map<String, byte[]> stored = new HashMap<String, byte[]>();
+        ExecuteResultCache cache = createCache(stored, true);
+
+        cache.put("key", Collections.<String, IData>singletonMap("result", new TextBinding("buffered")));
+
+        assertNull(cache.get("key"));
+    }
+
+    /**
+     * @param failing <code>true</code> if storing results fails
+     */
+    private static ExecuteResultCache createCache(final Map<String, byte[]> stored, final boolean failing) {
+        final IDatabase database = (IDatabase) Proxy.newProxyInstance(ExecuteResultCacheTest.class.getClassLoader(),
+                new Class< ? >[] {IDatabase.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if ("storeComplexValue".equals(name)) {
+                            if (failing) {
+                                throw new IllegalStateException("database unavailable");
+                            }
+                            String id = String.valueOf(stored.size());
+                            stored.put(id, IOUtils.toByteArray((InputStream) args[1]));
+                            return "http://localhost/RetrieveResultServlet?id=" + id;
+                        }
+                        if ("lookupResponse".equals(name)) {
+                            byte[] bytes = stored.get(args[0]);
+                            return bytes == null ? null : new ByteArrayInputStream(bytes);
+                        }
+                        if ("deleteStoredResponse".equals(name)) {
+                            return stored.remove(args[0]) != null;
+                        }
+                        return null;
+                    }
+                });
+        return new ExecuteResultCache(Collections.<String>emptySet(), 0, Long.MAX_VALUE, Long.MAX_VALUE) {
+            @Override
+            IDatabase getDatabase() {
+                return database;
+            }
+        };
+    }
+
+    public static class TextBinding implements IData {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String payload;
+
+        public TextBinding(String payload) {
+            this.payload = payload;
+        }
+
+        @Override
+        public Object getPayload() {
+            return payload;
+        }
+
+        @Override
+        public Class< ? > getSupportedClass() {
+            return String.class;
+        }
+    }
+
+    public static class UnserializableBinding implements IData {
+
+        private static final long serialVersionUID = 1L;
+
+        // not serializable
+        private final Object payload = new Object();
+
+        @Override
+        public Object getPayload() {
+            return payload;
+        }
+
+        @Override
+        public Class< ? > getSupportedClass() {
+            return Object.class;
+        }
+    }
+
+    public static class RefusingBinding extends TextBinding {
+
+        private static final long serialVersionUID = 1L;
+
+        public RefusingBinding() {
+            super("refusing");
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            throw new UnsupportedOperationException("not serializable");
+        }
+    }
+}
@@ -28,14 +28,34 @@
  */
 package org.n52.wps.server.request;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import net.opengis.ows.x11.ExceptionType;
 import net.opengis.wps.x100.ComplexDataDescriptionType;
 import net.opengis.wps.x100.ExecuteDocument;
 import net.opengis.wps.x100.InputDescriptionType;
 import net.opengis.wps.x100.InputType;
+import org.apache.commons.io.IOUtils;
 import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlObject;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -43,8 +63,14 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import static org.hamcrest.Matchers.*;
+import org.n52.wps.io.IParser;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.binding.complex.GenericFileDataBinding;
+import org.n52.wps.io.datahandler.parser.AbstractParser;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.handler.DataInputInterceptors.InterceptorInstance;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
 /**
  *
@@ -157,4 +183,167 @@ public class InputHandlerTest {
         assertThat(result, containsString("46.75 13.05"));
 
     }
+    @Test
+    public void testInputHandlerGetComplexValueElement() throws ExceptionReport, XmlException, IOException {
+        System.out.println("Testing testInputHandlerGetComplexValueElement...");
+
+        InputHandler instance = new InputHandler.Builder(simpleBufferAlgorithmInputArray, "org.n52.wps.server.algorithm.SimpleBufferAlgorithm").build();
+        XmlObject content = instance.getComplexValueElement(simpleBufferAlgorithmInputArray[0].getData().getComplexData());
+        assertThat(content, is(notNullValue()));
+        assertThat(content.getDomNode().getLocalName(), is("FeatureCollection"));
+    }
+
+    @Test
+    public void testInputHandlerParseComplexValueElementDeclaresInheritedNamespaces() throws Exception {
+        System.out.println("Testing testInputHandlerParseComplexValueElementDeclaresInheritedNamespaces...");
+
+        // gml, topp and xsi are only declared on wps:Execute
+        String execute = "<wps:Execute service=\"WPS\" version=\"1.0.0\" xmlns:wps=\"http://www.opengis.net/wps/1.0.0\""
+                + " xmlns:ows=\"http://www.opengis.net/ows/1.1\" xmlns:gml=\"http://www.opengis.net/gml\""
+                + " xmlns:topp=\"http://www.openplans.org/topp\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+                + "<ows:Identifier>org.n52.wps.server.algorithm.SimpleBufferAlgorithm</ows:Identifier><wps:DataInputs>"
+                + "<wps:Input><ows:Identifier>data</ows:Identifier><wps:Data>"
+                + "<wps:ComplexData mimeType=\"text/xml; subtype=gml/3.1.0\">"
+                + "<gml:FeatureCollection xsi:schemaLocation=\"http://www.openplans.org/topp roads.xsd\">"
+                + "<gml:featureMember><topp:roads gml:id=\"roads.1\"><topp:the_geom>"
+                + "<gml:Point><gml:pos>146.46 -41.24</gml:pos></gml:Point>"
+                + "</topp:the_geom></topp:roads></gml:featureMember>"
+                + "</gml:FeatureCollection></wps:ComplexData></wps:Data></wps:Input></wps:DataInputs></wps:Execute>";
+        InputType[] inputs = ExecuteDocument.Factory.parse(execute).getExecute().getDataInputs().getInputArray();
+
+        InputHandler instance = new InputHandler.Builder(simpleBufferAlgorithmInputArray, "org.n52.wps.server.algorithm.SimpleBufferAlgorithm").build();
+        XmlObject content = instance.getComplexValueElement(inputs[0].getData().getComplexData());
+        final List<byte[]> parsed = new ArrayList<byte[]>();
+        IParser parser = new AbstractParser() {
+            @Override
+            public IData parse(InputStream input, String mimeType, String schema) {
+                try {
+                    parsed.add(IOUtils.toByteArray(input));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                return null;
+            }
+        };
+        instance.parseComplexValueElement(content, "text/xml; subtype=gml/3.1.0", null, parser);
+        assertThat(parsed.size(), is(1));
+
+        // a namespace aware parser rejects undeclared prefixes
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Element root = factory.newDocumentBuilder().parse(new ByteArrayInputStream(parsed.get(0))).getDocumentElement();
+        assertThat(root.getNamespaceURI(), is("http://www.opengis.net/gml"));
+        assertThat(root.getLocalName(), is("FeatureCollection"));
+        assertThat(root.getAttributeNS("http://www.w3.org/2001/XMLSchema-instance", "schemaLocation"),
+                is("http://www.openplans.org/topp roads.xsd"));
+        NodeList geometries = root.getElementsByTagNameNS("http://www.openplans.org/topp", "the_geom");
+        assertThat(geometries.getLength(), is(1));
+        Element feature = (Element) geometries.item(0).getParentNode();
+        assertThat(feature.getAttributeNS("http://www.opengis.net/gml", "id"), is("roads.1"));
+        assertThat(root.getElementsByTagNameNS("http://www.opengis.net/gml", "pos").item(0).getTextContent(),
+                is("146.46 -41.24"));
+    }
+
+    @Test
+    public void testInputHandlerKeepsOrderOfConcurrentlyResolvedInputs() throws Exception {
+        System.out.println("Testing testInputHandlerKeepsOrderOfConcurrentlyResolvedInputs...");
+
+        final CountDownLatch secondRequested = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/first", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    // the first input is completed after the second one
+                    secondRequested.await(10, TimeUnit.SECONDS);
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, "text/plain", "first");
+            }
+        });
+        server.createContext("/second", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                secondRequested.countDown();
+                respond(exchange, "image/png", "second");
+            }
+        });
+        server.start();
+        try {
+            String url = "http://localhost:" + server.getAddress().getPort();
+            InputType[] inputs = createReferenceInputs("org.n52.wps.server.algorithm.test.MultiReferenceInputAlgorithm",
+                    "data", url + "/first", "text/plain", "data", url + "/second", "image/png");
+            InputHandler instance = new InputHandler.Builder(inputs,
+                    "org.n52.wps.server.algorithm.test.MultiReferenceInputAlgorithm").build();
+
+            List<IData> data = instance.getParsedInputData().get("data");
+            assertThat(data.size(), equalTo(2));
+            assertThat(((GenericFileDataBinding) data.get(0)).getPayload().getMimeType(), equalTo("text/plain"));
+            assertThat(((GenericFileDataBinding) data.get(1)).getPayload().getMimeType(), equalTo("image/png"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testInputHandlerAggregatesFailuresOfSeveralInputs() throws Exception {
+        System.out.println("Testing testInputHandlerAggregatesFailuresOfSeveralInputs...");
+
+        // nothing listens on a port that has just been released
+        ServerSocket socket = new ServerSocket(0);
+        String url = "http://localhost:" + socket.getLocalPort() + "/missing";
+        socket.close();
+
+        InputType[] inputs = createReferenceInputs("org.n52.wps.server.algorithm.test.MultipleComplexInAndOutputsDummyTestClass",
+                "ComplexInputData1", url, "text/plain", "ComplexInputData2", url, "text/plain");
+        try {
+            new InputHandler.Builder(inputs, "org.n52.wps.server.algorithm.test.MultipleComplexInAndOutputsDummyTestClass").build();
+            fail("the inputs cannot be resolved");
+        } catch (ExceptionReport e) {
+            List<String> locators = new ArrayList<String>();
+            for (Throwable suppressed : e.getSuppressed()) {
+                locators.add(((ExceptionReport) suppressed).getLocator());
+            }
+            assertThat(locators, contains("ComplexInputData1", "ComplexInputData2"));
+            assertThat(e.getErrorKey(), equalTo(ExceptionReport.INVALID_PARAMETER_VALUE));
+
+            // both failures are listed in the single report sent to the client
+            List<String> reportedLocators = new ArrayList<String>();
+            for (ExceptionType exception : e.getExceptionDocument().getExceptionReport().getExceptionArray()) {
+                if (exception.getLocator() != null) {
+                    reportedLocators.add(exception.getLocator());
+                }
+            }
+            assertThat(reportedLocators, hasItems("ComplexInputData1", "ComplexInputData2"));
+        }
+    }
+
+    private static InputType[] createReferenceInputs(String processIdentifier, String... inputs) throws XmlException {
+        StringBuilder execute = new StringBuilder();
+        execute.append("<wps:Execute service=\"WPS\" version=\"1.0.0\" xmlns:wps=\"http://www.opengis.net/wps/1.0.0\"")
+                .append(" xmlns:ows=\"http://www.opengis.net/ows/1.1\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">")
+                .append("<ows:Identifier>").append(processIdentifier).append("</ows:Identifier><wps:DataInputs>");
+        for (int i = 0; i < inputs.length; i += 3) {
+            execute.append("<wps:Input><ows:Identifier>").append(inputs[i]).append("</ows:Identifier>")
+                    .append("<wps:Reference xlink:href=\"").append(inputs[i + 1]).append("\" mimeType=\"")
+                    .append(inputs[i + 2]).append("\"/></wps:Input>");
+        }
+        execute.append("</wps:DataInputs></wps:Execute>");
+        return ExecuteDocument.Factory.parse(execute.toString()).getExecute().getDataInputs().getInputArray();
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
 }
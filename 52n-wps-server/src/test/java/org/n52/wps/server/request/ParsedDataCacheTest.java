@@ -0,0 +1,216 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+import org.n52.wps.commons.context.TempFileArena;
+import org.n52.wps.io.data.ICopyableData;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.binding.literal.LiteralIntBinding;
+import org.n52.wps.io.data.binding.literal.LiteralStringBinding;
+
+/**
+ * Tests lookup, copying, weight based eviction and the disposal of evicted
+ * entries of {@link ParsedDataCache}.
+ */
+public class ParsedDataCacheTest {
+
+    private static ParsedDataCache createCache(long maxSize) {
+        return new ParsedDataCache(maxSize, 1, new HashSet<String>(Arrays.asList(TextBinding.class.getName(),
+                LiteralStringBinding.class.getName())));
+    }
+
+    private static String text(IData data) {
+        return ((TextBinding) data).getPayload().toString();
+    }
+
+    @Test
+    public void testEntriesAreKeyedByValidatorAndFormat() {
+        ParsedDataCache cache = createCache(1 << 20);
+        IData data = new TextBinding("parsed");
+        cache.put("href:\"v1\"", "text/xml", "schema", null, TextBinding.class, data, new TempFileArena(), 1024, null);
+
+        assertEquals("parsed", text(cache.get("href:\"v1\"", "text/xml", "schema", null, TextBinding.class, null)));
+        assertNull(cache.get("href:\"v2\"", "text/xml", "schema", null, TextBinding.class, null));
+        assertNull(cache.get("href:\"v1\"", "application/json", "schema", null, TextBinding.class, null));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testExecutionsGetCopiesOfTheirOwn() {
+        ParsedDataCache cache = createCache(1 << 20);
+        IData data = new TextBinding("parsed");
+        IData parsingExecution = cache.put("href:\"v1\"", "text/xml", null, null, TextBinding.class, data,
+                new TempFileArena(), 1024, null);
+        IData readingExecution = cache.get("href:\"v1\"", "text/xml", null, null, TextBinding.class, null);
+        assertNotSame(data, parsingExecution);
+        assertNotSame(data, readingExecution);
+        assertNotSame(parsingExecution, readingExecution);
+
+        // an execution modifying its input does not affect the others
+        ((TextBinding) parsingExecution).getPayload().append(" and modified");
+        ((TextBinding) readingExecution).getPayload().setLength(0);
+        assertEquals("parsed and modified", text(parsingExecution));
+        assertEquals("", text(readingExecution));
+        assertEquals("parsed", text(cache.get("href:\"v1\"", "text/xml", null, null, TextBinding.class, null)));
+    }
+
+    @Test
+    public void testBindingsThatCanNotBeCopiedAreNotCached() {
+        ParsedDataCache cache = createCache(1 << 20);
+        assertFalse(cache.isCacheable(LiteralStringBinding.class));
+        IData data = new LiteralStringBinding("parsed");
+        assertSame(data, cache.put("href:\"v1\"", "text/plain", null, null, LiteralStringBinding.class, data,
+                new TempFileArena(), 6, null));
+        assertNull(cache.get("href:\"v1\"", "text/plain", null, null, LiteralStringBinding.class, null));
+    }
+
+    @Test
+    public void testOnlyConfiguredBindingsAreCached() {
+        ParsedDataCache cache = createCache(1 << 20);
+        assertFalse(cache.isCacheable(LiteralIntBinding.class));
+        cache.put("href:\"v1\"", "text/plain", null, null, LiteralIntBinding.class, new LiteralIntBinding(1),
+                new TempFileArena(), 4, null);
+        assertNull(cache.get("href:\"v1\"", "text/plain", null, null, LiteralIntBinding.class, null));
+    }
+
+    @Test
+    public void testHeavyEntriesAreEvicted() {
+        ParsedDataCache cache = createCache(64 << 10);
+        for (int i = 0; i < 8; i++) {
+            cache.put("href:" + i, "text/xml", null, null, TextBinding.class, new TextBinding("" + i),
+                    new TempFileArena(), 32 << 10, null);
+        }
+        int cached = 0;
+        for (int i = 0; i < 8; i++) {
+            if (cache.get("href:" + i, "text/xml", null, null, TextBinding.class, null) != null) {
+                cached++;
+            }
+        }
+        assertEquals(2, cached);
+    }
+
+    @Test
+    public void testEvictedEntriesDeleteTheirFiles() throws IOException {
+        ParsedDataCache cache = createCache(64 << 10);
+        File[] files = new File[8];
+        for (int i = 0; i < 8; i++) {
+            TempFileArena arena = new TempFileArena();
+            files[i] = arena.createTempFile("parsed", ".tmp");
+            cache.put("href:" + i, "text/xml", null, null, TextBinding.class, new TextBinding("" + i), arena,
+                    32 << 10, null);
+        }
+        // the two most recent entries fit into the cache
+        for (int i = 0; i < 6; i++) {
+            assertFalse(files[i].exists());
+        }
+        assertTrue(files[6].exists());
+        assertTrue(files[7].exists());
+
+        cache.invalidateAll();
+        assertFalse(files[6].exists());
+        assertFalse(files[7].exists());
+    }
+
+    @Test
+    public void testEntriesInUseAreDeletedAfterTheRequest() throws IOException {
+        ParsedDataCache cache = createCache(1 << 20);
+        TempFileArena arena = new TempFileArena();
+        File file = arena.createTempFile("parsed", ".tmp");
+        IData data = new TextBinding("parsed");
+        TempFileArena parsingRequest = new TempFileArena();
+        cache.put("href:\"v1\"", "text/xml", null, null, TextBinding.class, data, arena, 1024, parsingRequest);
+        TempFileArena readingRequest = new TempFileArena();
+        IData copy = cache.get("href:\"v1\"", "text/xml", null, null, TextBinding.class, readingRequest);
+        assertEquals("parsed", text(copy));
+
+        cache.invalidateAll();
+        assertTrue(file.exists());
+        parsingRequest.close();
+        assertTrue(file.exists());
+        readingRequest.close();
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testUncacheableDataIsDeletedWithTheRequest() throws IOException {
+        ParsedDataCache cache = createCache(1 << 20);
+        TempFileArena arena = new TempFileArena();
+        File file = arena.createTempFile("parsed", ".tmp");
+        TempFileArena request = new TempFileArena();
+        cache.put("href:\"v1\"", "text/plain", null, null, LiteralIntBinding.class, new LiteralIntBinding(1), arena, 4,
+                request);
+        assertTrue(file.exists());
+        request.close();
+        assertFalse(file.exists());
+    }
+
+    /**
+     * Binding of a mutable payload.
+     */
+    public static class TextBinding implements ICopyableData {
+
+        private static final long serialVersionUID = 1L;
+
+        private final StringBuilder payload;
+
+        public TextBinding(String text) {
+            payload = new StringBuilder(text);
+        }
+
+        @Override
+        public StringBuilder getPayload() {
+            return payload;
+        }
+
+        @Override
+        public Class< ? > getSupportedClass() {
+            return StringBuilder.class;
+        }
+
+        @Override
+        public IData copy() {
+            return new TextBinding(payload.toString());
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.opengis.wps.x100.StatusType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests coalescing of progress updates by {@link StatusUpdateCoalescer}.
+ */
+public class StatusUpdateCoalescerTest {
+
+    private final List<StatusType> written = new ArrayList<StatusType>();
+
+    private ScheduledThreadPoolExecutor scheduler;
+
+    private int scheduledCount;
+
+    private StatusUpdateCoalescer coalescer;
+
+    @Before
+    public void setUp() {
+        // each test writes a status first, so pending writes are delayed by the
+        // interval and run explicitly
+        scheduler = new ScheduledThreadPoolExecutor(1) {
+            @Override
+            public ScheduledFuture< ? > schedule(Runnable command, long delay, TimeUnit unit) {
+                scheduledCount++;
+                return super.schedule(command, delay, unit);
+            }
+        };
+        coalescer = new StatusUpdateCoalescer(new StatusUpdateCoalescer.StatusWriter() {
+            @Override
+            public void write(StatusType status) {
+                synchronized (written) {
+                    written.add(status);
+                }
+            }
+        }, 60000, 5, scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private static StatusType started(int percent) {
+        StatusType status = StatusType.Factory.newInstance();
+        status.addNewProcessStarted().setPercentCompleted(percent);
+        return status;
+    }
+
+    @Test
+    public void testProgressIsCoalescedToLatestState() {
+        coalescer.flush(started(0));
+        StatusType latest = null;
+        for (int i = 1; i <= 50; i++) {
+            latest = started(i);
+            coalescer.progress(latest, i);
+        }
+        assertEquals(1, written.size());
+
+        coalescer.flushPending();
+        assertEquals(2, written.size());
+        assertSame(latest, written.get(1));
+    }
+
+    @Test
+    public void testSmallStepsAreNotScheduled() {
+        coalescer.flush(started(0));
+        coalescer.progress(started(10), 10);
+        coalescer.flushPending();
+        coalescer.progress(started(12), 12);
+        assertEquals(1, scheduledCount);
+
+        coalescer.progress(started(20), 20);
+        assertEquals(2, scheduledCount);
+        assertEquals(2, written.size());
+    }
+
+    @Test
+    public void testFinalStateSupersedesPendingProgress() {
+        coalescer.flush(started(0));
+        coalescer.progress(started(10), 10);
+        StatusType succeeded = StatusType.Factory.newInstance();
+        succeeded.setProcessSucceeded("Process successful");
+        coalescer.flush(succeeded);
+        coalescer.flushPending();
+
+        assertEquals(2, written.size());
+        assertSame(succeeded, written.get(1));
+    }
+}
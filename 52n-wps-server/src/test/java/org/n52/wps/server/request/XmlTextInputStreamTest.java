@@ -0,0 +1,70 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.codec.binary.Base64InputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlObject;
+import org.junit.Test;
+
+/**
+ * Tests reading inline text with {@link XmlTextInputStream}.
+ */
+public class XmlTextInputStreamTest {
+
+    private static XmlObject parseElement(String xml) throws XmlException {
+        XmlObject document = XmlObject.Factory.parse(xml);
+        return document.selectPath("./*")[0];
+    }
+
+    @Test
+    public void testReadsTextOfElementAndChildren() throws XmlException, IOException {
+        XmlObject element = parseElement("<a xmlns=\"urn:test\" mimeType=\"image/tiff\">QUJD\n<b>REVG</b></a>");
+
+        assertEquals("QUJD\nREVG", IOUtils.toString(new XmlTextInputStream(element), "US-ASCII"));
+    }
+
+    @Test
+    public void testDecodesLargeBase64Content() throws XmlException, IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            content.append("QUJD");
+        }
+        XmlObject element = parseElement("<a>" + content + "</a>");
+
+        InputStream decoded = new Base64InputStream(new XmlTextInputStream(element));
+        assertEquals(30000, IOUtils.toByteArray(decoded).length);
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests caching and revalidation of references against a local HTTP server.
+ */
+public class ReferenceCacheTest {
+
+    private static final String ETAG = "\"v1\"";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+
+    private CloseableHttpClient httpClient;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                String path = exchange.getRequestURI().getPath();
+                if (path.startsWith("/etag") && ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                if (path.startsWith("/etag")) {
+                    exchange.getResponseHeaders().set("ETag", ETAG);
+                } else if (path.startsWith("/fresh")) {
+                    exchange.getResponseHeaders().set("Cache-Control", "max-age=3600");
+                } else if (path.startsWith("/nostore")) {
+                    exchange.getResponseHeaders().set("ETag", ETAG);
+                    exchange.getResponseHeaders().set("Cache-Control", "no-store");
+                }
+                exchange.getResponseHeaders().set("Content-Type", "text/plain");
+                byte[] body = path.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        httpClient = HttpClients.createDefault();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        httpClient.close();
+        server.stop(0);
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    private String fetch(ReferenceCache cache, String path) throws IOException {
+        String href = url(path);
+        InputStream in = cache.fetch(new HttpGet(href), href, null, null);
+        try {
+            return IOUtils.toString(in, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testStaleEntryIsRevalidated() throws IOException {
+        ReferenceCache cache = new ReferenceCache(folder.getRoot(), 1024, httpClient);
+        assertEquals("/etag", fetch(cache, "/etag"));
+        assertEquals("/etag", fetch(cache, "/etag"));
+        assertEquals(2, requests.get());
+        assertEquals(1, notModified.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getRevalidationCount());
+    }
+
+    @Test
+    public void testFreshEntryIsServedFromDisk() throws IOException {
+        ReferenceCache cache = new ReferenceCache(folder.getRoot(), 1024, httpClient);
+        assertEquals("/fresh", fetch(cache, "/fresh"));
+        assertEquals("/fresh", fetch(cache, "/fresh"));
+        assertEquals(1, requests.get());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testNoStoreIsNotCached() throws IOException {
+        ReferenceCache cache = new ReferenceCache(folder.getRoot(), 1024, httpClient);
+        assertEquals("/nostore", fetch(cache, "/nostore"));
+        assertEquals("/nostore", fetch(cache, "/nostore"));
+        assertEquals(2, requests.get());
+        assertEquals(0, notModified.get());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() throws IOException {
+        ReferenceCache cache = new ReferenceCache(folder.getRoot(), 12, httpClient);
+        fetch(cache, "/fresh1");
+        fetch(cache, "/fresh2");
+        assertTrue(cache.getSize() <= 12);
+        fetch(cache, "/fresh2");
+        fetch(cache, "/fresh1");
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void testEntriesSurviveRestart() throws IOException {
+        fetch(new ReferenceCache(folder.getRoot(), 1024, httpClient), "/fresh");
+        ReferenceCache cache = new ReferenceCache(folder.getRoot(), 1024, httpClient);
+        assertEquals(6, cache.getSize());
+        assertEquals("/fresh", fetch(cache, "/fresh"));
+        assertEquals(1, requests.get());
+    }
+
+}
@@ -0,0 +1,243 @@
+/**
+ * ﻿Copyright (C) 2007 - 2019 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.opengis.ows.x11.LanguageStringType;
+import net.opengis.wps.x100.ComplexDataDescriptionType;
+import net.opengis.wps.x100.ExecuteResponseDocument;
+import net.opengis.wps.x100.ExecuteResponseDocument.ExecuteResponse;
+import net.opengis.wps.x100.OutputDescriptionType;
+import net.opengis.wps.x100.ProcessDescriptionType;
+import net.opengis.wps.x100.ProcessDescriptionsDocument;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlOptions;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.binding.literal.LiteralBase64BinaryBinding;
+import org.n52.wps.io.datahandler.generator.AbstractGenerator;
+import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.request.InputHandlerTest;
+import org.n52.wps.server.request.WPSConfigTestUtil;
+import org.n52.wps.util.XMLBeansHelper;
+
+/**
+ * Tests that the inline complex outputs spliced into an ExecuteResponse are
+ * written byte for byte as generated, with and without pretty printing.
+ */
+public class InlineDataSplicerTest {
+
+	private static final String PROCESS_ID = "org.n52.wps.server.response.InlineDataSplicerTest";
+
+	private static final String XML = "<test:root xmlns:test=\"http://example.org/test\">"
+			+ "<test:value a=\"1\">text &amp; more</test:value><test:value a=\"2\"/></test:root>";
+
+	private static final String TEXT = "  leading blanks, a < b && c > d\n\tsecond line\n";
+
+	private static final String ESCAPED_TEXT = "  leading blanks, a &lt; b &amp;&amp; c &gt; d\n\tsecond line\n";
+
+	private static final Pattern COMPLEX_DATA = Pattern.compile("<(\\w+:)?ComplexData[\\s>]");
+
+	private ProcessDescriptionType description;
+
+	private ExecuteResponseDocument document;
+
+	private LanguageStringType title;
+
+	@BeforeClass
+	public static void setUpClass() throws XmlException, IOException {
+		WPSConfigTestUtil.generateMockConfig(InputHandlerTest.class, "/org/n52/wps/io/test/inputhandler/generator/wps_config.xml");
+	}
+
+	@Before
+	public void setUp() {
+		ProcessDescriptionsDocument descriptionsDocument = ProcessDescriptionsDocument.Factory.newInstance();
+		description = descriptionsDocument.addNewProcessDescriptions().addNewProcessDescription();
+		description.addNewIdentifier().setStringValue(PROCESS_ID);
+		description.addNewProcessOutputs();
+
+		title = LanguageStringType.Factory.newInstance();
+		title.setStringValue("output title");
+
+		document = ExecuteResponseDocument.Factory.newInstance();
+		ExecuteResponse response = document.addNewExecuteResponse();
+		response.setService("WPS");
+		response.setVersion("1.0.0");
+		response.addNewProcess().addNewIdentifier().setStringValue(PROCESS_ID);
+		response.addNewStatus().setProcessSucceeded("Process successful");
+		response.addNewProcessOutputs();
+	}
+
+	@Test
+	public void testOutputsAreWrittenAsGenerated() throws Exception {
+		byte[] binary = new byte[200];
+		for (int i = 0; i < binary.length; i++) {
+			binary[i] = (byte) (i * 7);
+		}
+		for (XmlOptions options : new XmlOptions[] {XMLBeansHelper.getXmlOptions(), new XmlOptions()}) {
+			setUp();
+			InlineDataSplicer splicer = new InlineDataSplicer();
+			createOutput("xml", XML.getBytes("UTF-8"), "text/xml", null).updateResponseForInlineComplexData(document,
+					splicer);
+			createOutput("text", TEXT.getBytes("UTF-8"), "text/plain", null).updateResponseForInlineComplexData(document,
+					splicer);
+			createOutput("binary", binary, "application/octet-stream", "base64").updateResponseForInlineComplexData(
+					document, splicer);
+
+			List<String> contents = getComplexDataContents(save(splicer, options));
+
+			assertEquals(3, contents.size());
+			assertEquals(XML, contents.get(0));
+			assertEquals(ESCAPED_TEXT, contents.get(1));
+			assertEquals(new String(Base64.encodeBase64(binary, true), "ISO-8859-1"), contents.get(2));
+		}
+	}
+
+	@Test
+	public void testForeignProcessingInstructionsArePassedThrough() throws Exception {
+		InlineDataSplicer splicer = new InlineDataSplicer();
+		createOutput("text", TEXT.getBytes("UTF-8"), "text/plain", null).updateResponseForInlineComplexData(document,
+				splicer);
+		// e.g. copied from the data of a process, looks like a placeholder of a fixed target
+		insertProcessingInstruction("wps-inline-data", "0");
+
+		String response = new String(save(splicer, XMLBeansHelper.getXmlOptions()), "ISO-8859-1");
+
+		assertTrue(response.contains("<?wps-inline-data 0?>"));
+		List<String> contents = getComplexDataContents(response.getBytes("ISO-8859-1"));
+		assertEquals(1, contents.size());
+		assertEquals(ESCAPED_TEXT, contents.get(0));
+	}
+
+	@Test
+	public void testUnknownPlaceholderIsRejected() throws Exception {
+		InlineDataSplicer splicer = new InlineDataSplicer();
+		createOutput("text", TEXT.getBytes("UTF-8"), "text/plain", null).updateResponseForInlineComplexData(document,
+				splicer);
+		insertProcessingInstruction(splicer.getPITarget(), "1");
+		try {
+			save(splicer, XMLBeansHelper.getXmlOptions());
+			fail("unknown placeholder has been accepted");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("Unknown placeholder"));
+		}
+
+		InlineDataSplicer invalid = new InlineDataSplicer();
+		setUp();
+		createOutput("text", TEXT.getBytes("UTF-8"), "text/plain", null).updateResponseForInlineComplexData(document,
+				invalid);
+		insertProcessingInstruction(invalid.getPITarget(), "x");
+		try {
+			save(invalid, XMLBeansHelper.getXmlOptions());
+			fail("invalid placeholder has been accepted");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("Unknown placeholder"));
+		}
+	}
+
+	private byte[] save(InlineDataSplicer splicer, XmlOptions options) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		splicer.save(document, options, out);
+		return out.toByteArray();
+	}
+
+	private void insertProcessingInstruction(String target, String data) {
+		XmlCursor cursor = document.getExecuteResponse().getProcess().newCursor();
+		try {
+			cursor.toEndToken();
+			cursor.insertProcInst(target, data);
+		} finally {
+			cursor.dispose();
+		}
+	}
+
+	private OutputDataItem createOutput(String id, byte[] content, String mimeType, String encoding)
+			throws ExceptionReport {
+		OutputDescriptionType outputDescription = description.getProcessOutputs().addNewOutput();
+		outputDescription.addNewIdentifier().setStringValue(id);
+		ComplexDataDescriptionType format = outputDescription.addNewComplexOutput().addNewDefault().addNewFormat();
+		format.setMimeType(mimeType);
+		if (encoding != null) {
+			format.setEncoding(encoding);
+		}
+		return new OutputDataItem(new LiteralBase64BinaryBinding(content), id, null, encoding, mimeType, title,
+				PROCESS_ID, description) {
+			@Override
+			protected void prepareGenerator() {
+				generator = new PayloadGenerator();
+			}
+		};
+	}
+
+	/**
+	 * @return the content of each ComplexData element, bytes mapped to
+	 *         characters one to one
+	 */
+	private static List<String> getComplexDataContents(byte[] response) throws IOException {
+		String xml = new String(response, "ISO-8859-1");
+		List<String> contents = new ArrayList<String>();
+		Matcher element = COMPLEX_DATA.matcher(xml);
+		while (element.find()) {
+			int start = xml.indexOf('>', element.start()) + 1;
+			String prefix = element.group(1) == null ? "" : element.group(1);
+			int end = xml.indexOf("</" + prefix + "ComplexData>", start);
+			contents.add(xml.substring(start, end));
+		}
+		return contents;
+	}
+
+	/**
+	 * Generates the bytes of a binary literal.
+	 */
+	public static class PayloadGenerator extends AbstractGenerator {
+
+		@Override
+		public InputStream generateStream(IData data, String mimeType, String schema) {
+			return new ByteArrayInputStream((byte[]) data.getPayload());
+		}
+	}
+
+}
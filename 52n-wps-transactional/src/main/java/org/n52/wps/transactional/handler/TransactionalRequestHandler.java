@@ -103,6 +103,8 @@ public class TransactionalRequestHandler {
 				throw new ExceptionReport("Could not deploy process",
 						ExceptionReport.NO_APPLICABLE_CODE);
 			} else {
+				RepositoryManager.getInstance().registerAlgorithm(
+						request.getDeploymentProfile().getProcessID(), repository);
 				return new TransactionalResponse(
 						"Process successfully deployed");
 			}
@@ -168,8 +170,8 @@ public class TransactionalRequestHandler {
 	private static TransactionalResponse handleUnDeploy(
 			UndeployProcessRequest request) throws ExceptionReport {
 		try {
-			if (RepositoryManager.getInstance().getAlgorithm(
-					request.getProcessID()) == null) {
+			if (!RepositoryManager.getInstance().containsAlgorithm(
+					request.getProcessID())) {
 				throw new ExceptionReport("The process does not exist",
 						ExceptionReport.INVALID_PARAMETER_VALUE);
 			}
@@ -181,6 +183,8 @@ public class TransactionalRequestHandler {
 					throw new ExceptionReport("Could not undeploy process",
 							ExceptionReport.NO_APPLICABLE_CODE);
 				} else {
+					RepositoryManager.getInstance().unregisterAlgorithm(
+							request.getProcessID());
 					return new TransactionalResponse(
 							"Process successfully undeployed");
 				}